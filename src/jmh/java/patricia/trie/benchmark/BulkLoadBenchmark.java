@@ -0,0 +1,69 @@
+package patricia.trie.benchmark;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import patricia.trie.PatriciaTrie;
+
+/**
+ * Time to build a whole trie of size sorted keys, by {@link PatriciaTrie#bulkLoad(java.util.Iterator)}, by
+ * {@link PatriciaTrie#parallelBulkLoad(List)} on the common pool and by inserting the keys one by one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms8g", "-Xmx8g" })
+public class BulkLoadBenchmark {
+
+	@Param({ "WORDS", "URLS", "UUIDS", "SHARED_PREFIX" })
+	public KeySets.Dataset dataset;
+
+	@Param({ "1000", "100000", "1000000", "10000000" })
+	public int size;
+
+	private String[] keys;
+	private List<String> keyList;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		keys = KeySets.keys( dataset, size, KeySets.Order.SORTED );
+		keyList = Arrays.asList( keys );
+	}
+
+	@Benchmark
+	public PatriciaTrie bulkLoad() {
+		return PatriciaTrie.bulkLoad( Arrays.asList( keys ).iterator() );
+	}
+
+	@Benchmark
+	public PatriciaTrie parallelBulkLoad() {
+		return PatriciaTrie.parallelBulkLoad( keyList );
+	}
+
+	@Benchmark
+	public PatriciaTrie insertAll() {
+
+		PatriciaTrie trie = new PatriciaTrie();
+		for ( String key : keys ) {
+			trie.insert( key, null );
+		}
+
+		return trie;
+	}
+}
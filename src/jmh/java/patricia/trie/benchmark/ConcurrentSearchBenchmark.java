@@ -0,0 +1,81 @@
+package patricia.trie.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import patricia.trie.ConcurrentPatriciaTrie;
+
+/**
+ * Searches on a {@link ConcurrentPatriciaTrie} by several threads while one thread keeps inserting. Half of the keys
+ * are loaded up front, the writer inserts the other half and starts over on a new trie when it runs out.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms8g", "-Xmx8g" })
+public class ConcurrentSearchBenchmark {
+
+	@Param({ "WORDS", "URLS", "UUIDS", "SHARED_PREFIX" })
+	public KeySets.Dataset dataset;
+
+	@Param({ "100000", "1000000" })
+	public int size;
+
+	private String[] keys;
+	private volatile ConcurrentPatriciaTrie trie;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+
+		keys = KeySets.keys( dataset, size, KeySets.Order.RANDOM );
+		trie = load();
+	}
+
+	private ConcurrentPatriciaTrie load() {
+
+		ConcurrentPatriciaTrie t = new ConcurrentPatriciaTrie();
+		for ( int i = 0; i < keys.length / 2; i++ ) {
+			t.insert( keys[i], null );
+		}
+
+		return t;
+	}
+
+	@Benchmark
+	@Group("readWrite")
+	@GroupThreads(1)
+	public boolean insert(SearchBenchmark.Cursor cursor) {
+
+		int half = keys.length / 2;
+		if ( cursor.next >= keys.length - half ) {
+			cursor.next = 0;
+			trie = load();
+		}
+
+		return trie.insert( keys[half + cursor.next++], null );
+	}
+
+	@Benchmark
+	@Group("readWrite")
+	@GroupThreads(3)
+	public boolean search(SearchBenchmark.Cursor cursor) {
+		// the loaded half, always found
+		return trie.search( keys[SearchBenchmark.next( cursor, keys.length / 2 )] );
+	}
+}
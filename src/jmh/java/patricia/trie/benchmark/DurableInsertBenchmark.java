@@ -0,0 +1,93 @@
+package patricia.trie.benchmark;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import patricia.trie.DurablePatriciaTrie;
+
+/**
+ * Inserts per second into a DurablePatriciaTrie in a temporary directory, forcing the log every syncEvery keys, from
+ * one thread and from several threads sharing their forces.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms8g", "-Xmx8g" })
+public class DurableInsertBenchmark {
+
+	@Param({ "URLS" })
+	public KeySets.Dataset dataset;
+
+	@Param({ "1", "64", "1024" })
+	public int syncEvery;
+
+	@Param({ "1000000" })
+	public long checkpointEvery;
+
+	private String[] keys;
+	private Path directory;
+	private DurablePatriciaTrie trie;
+	private final AtomicInteger next = new AtomicInteger();
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		keys = KeySets.keys( dataset, 1000000, KeySets.Order.RANDOM );
+		directory = Files.createTempDirectory( "durable-trie" );
+		trie = DurablePatriciaTrie.open( directory, syncEvery, checkpointEvery );
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+
+		trie.close();
+		try ( DirectoryStream<Path> files = Files.newDirectoryStream( directory ) ) {
+			for ( Path file : files ) {
+				Files.delete( file );
+			}
+		}
+		Files.delete( directory );
+	}
+
+	@Benchmark
+	public boolean insert() {
+		return trie.insert( nextKey(), null );
+	}
+
+	@Benchmark
+	@Threads(8)
+	public boolean insertConcurrent() {
+		return trie.insert( nextKey(), null );
+	}
+
+	/**
+	 * Keys of the dataset, then the same keys with the round appended so that every insert adds a key.
+	 */
+	private String nextKey() {
+
+		int n = next.getAndIncrement();
+		String key = keys[n % keys.length];
+
+		return n < keys.length ? key : key + '#' + ( n / keys.length );
+	}
+}
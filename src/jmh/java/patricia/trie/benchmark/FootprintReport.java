@@ -0,0 +1,70 @@
+package patricia.trie.benchmark;
+
+import org.openjdk.jol.info.GraphLayout;
+import org.openjdk.jol.vm.VM;
+
+import patricia.trie.CompactPatriciaTrie;
+import patricia.trie.FrozenPatriciaTrie;
+import patricia.trie.PatriciaTrie;
+import patricia.trie.SharedPrefixPatriciaTrie;
+
+/**
+ * Retained heap of a built trie, per key. Not a JMH benchmark since it measures space rather than time:
+ *
+ * java -Xmx8g -cp target/benchmarks.jar patricia.trie.benchmark.FootprintReport [size...]
+ *
+ * trie/key is everything reachable from the trie, including the key Strings. keys/key is the part of it taken by
+ * the key Strings alone. compact/key is everything reachable from a {@link CompactPatriciaTrie} of the same keys,
+ * frozen/key from the {@link FrozenPatriciaTrie} the trie freezes into, shared/key from a
+ * {@link SharedPrefixPatriciaTrie} of the same keys.
+ */
+public class FootprintReport {
+
+	public static void main(String[] args) {
+
+		int[] sizes = { 1000, 100000, 1000000, 10000000 };
+		if ( args.length > 0 ) {
+			sizes = new int[args.length];
+			for ( int i = 0; i < args.length; i++ ) {
+				sizes[i] = Integer.parseInt( args[i] );
+			}
+		}
+
+		System.out.println( String.format( "%-14s %10s %12s %12s %12s %12s %12s", "dataset", "size", "trie/key",
+				"keys/key", "compact/key", "frozen/key", "shared/key" ) );
+		for ( KeySets.Dataset dataset : KeySets.Dataset.values() ) {
+			for ( int size : sizes ) {
+				String[] keys = KeySets.keys( dataset, size, KeySets.Order.RANDOM );
+				PatriciaTrie trie = new PatriciaTrie();
+				for ( String key : keys ) {
+					trie.insert( key, null );
+				}
+
+				long trieBytes = GraphLayout.parseInstance( trie ).totalSize();
+				long keyBytes = GraphLayout.parseInstance( (Object[]) keys ).totalSize() - VM.current().sizeOf( keys );
+				FrozenPatriciaTrie frozen = trie.freeze();
+				trie = null;
+				long frozenBytes = GraphLayout.parseInstance( frozen ).totalSize();
+				frozen = null;
+
+				CompactPatriciaTrie compact = new CompactPatriciaTrie( size );
+				for ( String key : keys ) {
+					compact.insert( key );
+				}
+				long compactBytes = GraphLayout.parseInstance( compact ).totalSize();
+				compact = null;
+
+				SharedPrefixPatriciaTrie shared = new SharedPrefixPatriciaTrie();
+				for ( String key : keys ) {
+					shared.insert( key, null );
+				}
+				long sharedBytes = GraphLayout.parseInstance( shared ).totalSize();
+				shared = null;
+
+				System.out.println( String.format( "%-14s %10d %12.1f %12.1f %12.1f %12.1f %12.1f", dataset, size,
+						(double) trieBytes / size, (double) keyBytes / size, (double) compactBytes / size,
+						(double) frozenBytes / size, (double) sharedBytes / size ) );
+			}
+		}
+	}
+}
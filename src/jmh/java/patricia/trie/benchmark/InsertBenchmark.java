@@ -0,0 +1,82 @@
+package patricia.trie.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import patricia.trie.Node;
+import patricia.trie.NodeView;
+import patricia.trie.PatriciaTrie;
+
+/**
+ * Cost of one insert into a trie growing up to size keys. Once every key has been inserted the trie is replaced by
+ * an empty one, so the score is the average over building a trie of the given size.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms8g", "-Xmx8g" })
+public class InsertBenchmark {
+
+	@Param({ "WORDS", "URLS", "UUIDS", "SHARED_PREFIX" })
+	public KeySets.Dataset dataset;
+
+	@Param({ "SORTED", "RANDOM" })
+	public KeySets.Order order;
+
+	@Param({ "1000", "100000", "1000000", "10000000" })
+	public int size;
+
+	private String[] keys;
+	private PatriciaTrie trie;
+	private NodeView view;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		keys = KeySets.keys( dataset, size, order );
+		view = new NodeView();
+	}
+
+	@Setup(Level.Iteration)
+	public void newTrie() {
+		trie = new PatriciaTrie();
+		next = 0;
+	}
+
+	@Benchmark
+	public boolean insert() {
+		return trie.insert( nextKey(), view );
+	}
+
+	/**
+	 * Same as insert() through the Node[] snapshot API.
+	 */
+	@Benchmark
+	public Node[] insertSnapshot() {
+		return trie.insert( nextKey() );
+	}
+
+	private String nextKey() {
+
+		if ( next == keys.length ) {
+			trie = new PatriciaTrie();
+			next = 0;
+		}
+
+		return keys[next++];
+	}
+}
@@ -0,0 +1,189 @@
+package patricia.trie.benchmark;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Deterministic key sets for the benchmarks. Every set holds distinct keys.
+ *
+ * WORDS reads the file given by the system property patricia.words (e.g. /usr/share/dict/words) when it is set and
+ * has enough words. Otherwise pronounceable words are generated from syllables.
+ */
+public final class KeySets {
+
+	public enum Dataset {
+		WORDS, URLS, UUIDS, SHARED_PREFIX
+	}
+
+	public enum Order {
+		SORTED, RANDOM
+	}
+
+	private static final String[] SYLLABLES = { "a", "al", "an", "ar", "be", "bi", "bo", "ca", "ce", "co", "cu",
+			"da", "de", "di", "do", "el", "en", "er", "es", "fa", "fi", "fo", "ga", "ge", "go", "ha", "he", "hi", "in",
+			"is", "ka", "ki", "la", "le", "li", "lo", "ma", "me", "mi", "mo", "na", "ne", "ni", "no", "or", "pa", "pe",
+			"pi", "po", "ra", "re", "ri", "ro", "sa", "se", "si", "so", "ta", "te", "ti", "to", "tu", "un", "va", "ve",
+			"vi", "wa", "we", "ya", "za" };
+
+	private static final String[] HOSTS = { "www.example.com", "api.example.com", "cdn.example.net",
+			"shop.example.org", "docs.example.io", "static.example.com" };
+
+	private static final String[] SEGMENTS = { "users", "items", "orders", "search", "images", "v1", "v2", "api",
+			"catalog", "products", "reviews", "tags", "accounts", "settings" };
+
+	private static final String SHARED_PREFIX = "/data/warehouse/tenant-0042/region-eu-west-1/partition=2024/"
+			+ "table=events/bucket=";
+
+	private static final long SEED = 0x5eed1eafL;
+
+	private KeySets() {
+
+	}
+
+	public static String[] keys(Dataset dataset, int size, Order order) {
+
+		String[] keys = generate( dataset, size, new Random( SEED ) );
+		if ( order == Order.SORTED ) {
+			Arrays.sort( keys );
+		}
+		else {
+			Collections.shuffle( Arrays.asList( keys ), new Random( SEED + 1 ) );
+		}
+
+		return keys;
+	}
+
+	/**
+	 * Keys of the same shape as the dataset which are not in keys(dataset, size, order).
+	 */
+	public static String[] missingKeys(Dataset dataset, int size, String[] present) {
+
+		Set<String> presentSet = new HashSet<String>( Arrays.asList( present ) );
+		Random random = new Random( SEED + 2 );
+		List<String> missing = new ArrayList<String>( size );
+		int attempts = 0;
+		while ( missing.size() < size && attempts++ < size * 20 ) {
+			String key = next( dataset, random, attempts ) + "~";
+			if ( !presentSet.contains( key ) ) {
+				missing.add( key );
+			}
+		}
+
+		return missing.toArray( new String[missing.size()] );
+	}
+
+	/**
+	 * Prefixes of the given keys, cut at a fraction of each key so that each one matches a handful of keys.
+	 */
+	public static String[] prefixes(String[] keys, int count, int length) {
+
+		Random random = new Random( SEED + 3 );
+		String[] prefixes = new String[count];
+		for ( int i = 0; i < count; i++ ) {
+			String key = keys[random.nextInt( keys.length )];
+			prefixes[i] = key.substring( 0, Math.min( length, key.length() ) );
+		}
+
+		return prefixes;
+	}
+
+	private static String[] generate(Dataset dataset, int size, Random random) {
+
+		if ( dataset == Dataset.WORDS ) {
+			String[] words = readWords( size );
+			if ( words != null ) {
+				return words;
+			}
+		}
+
+		Set<String> keys = new HashSet<String>( size * 2 );
+		int counter = 0;
+		while ( keys.size() < size ) {
+			keys.add( next( dataset, random, counter++ ) );
+		}
+
+		return keys.toArray( new String[keys.size()] );
+	}
+
+	private static String next(Dataset dataset, Random random, int counter) {
+
+		switch ( dataset ) {
+		case WORDS:
+			StringBuilder word = new StringBuilder();
+			int syllables = 1 + random.nextInt( 4 );
+			for ( int i = 0; i < syllables; i++ ) {
+				word.append( SYLLABLES[random.nextInt( SYLLABLES.length )] );
+			}
+			if ( counter > SYLLABLES.length * SYLLABLES.length * SYLLABLES.length ) {
+				// enough short words, make longer ones distinct
+				word.append( SYLLABLES[random.nextInt( SYLLABLES.length )] ).append( random.nextInt( 1000 ) );
+			}
+			return word.toString();
+		case URLS:
+			StringBuilder url = new StringBuilder( "https://" );
+			url.append( HOSTS[random.nextInt( HOSTS.length )] );
+			int depth = 1 + random.nextInt( 3 );
+			for ( int i = 0; i < depth; i++ ) {
+				url.append( '/' ).append( SEGMENTS[random.nextInt( SEGMENTS.length )] );
+			}
+			url.append( '/' ).append( Integer.toString( random.nextInt( Integer.MAX_VALUE ), 36 ) );
+			return url.toString();
+		case UUIDS:
+			return new UUID( random.nextLong(), random.nextLong() ).toString();
+		case SHARED_PREFIX:
+			return SHARED_PREFIX + ( random.nextInt( 64 ) ) + "/part-" + Long.toString( random.nextLong() & Long.MAX_VALUE, 36 );
+		default:
+			throw new IllegalArgumentException( "unknown dataset," + dataset );
+		}
+	}
+
+	private static String[] readWords(int size) {
+
+		String path = System.getProperty( "patricia.words" );
+		if ( path == null ) {
+			return null;
+		}
+
+		Set<String> words = new HashSet<String>( size * 2 );
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader( new InputStreamReader( new FileInputStream( path ), Charset.forName( "UTF-8" ) ) );
+			String line;
+			while ( ( ( line = reader.readLine() ) != null ) && ( words.size() < size ) ) {
+				if ( line.length() > 0 ) {
+					words.add( line );
+				}
+			}
+		}
+		catch ( IOException e ) {
+			throw new IllegalStateException( "could not read words from " + path, e );
+		}
+		finally {
+			if ( reader != null ) {
+				try {
+					reader.close();
+				}
+				catch ( IOException e ) {
+					// ignore
+				}
+			}
+		}
+
+		if ( words.size() < size ) {
+			return null;
+		}
+
+		return words.toArray( new String[words.size()] );
+	}
+}
@@ -0,0 +1,155 @@
+package patricia.trie.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import patricia.trie.FrozenPatriciaTrie;
+import patricia.trie.PatriciaTrie;
+
+/**
+ * Exact match search over a trie holding size keys, for keys which are there, as Strings or already encoded bytes,
+ * and keys which are not, and longest prefix match and fuzzy search within one edit of the keys which are not. The
+ * batch ones search 4096 keys at once or one after the other. The frozen ones search the same keys in the trie
+ * frozen into a FrozenPatriciaTrie.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms8g", "-Xmx8g" })
+public class SearchBenchmark {
+
+	private static final int BATCH_SIZE = 4096;
+
+	@Param({ "WORDS", "URLS", "UUIDS", "SHARED_PREFIX" })
+	public KeySets.Dataset dataset;
+
+	@Param({ "SORTED", "RANDOM" })
+	public KeySets.Order order;
+
+	@Param({ "1000", "100000", "1000000", "10000000" })
+	public int size;
+
+	private String[] keys;
+	private String[] missingKeys;
+	private byte[][] keyBytes;
+	private List<String> batch;
+	private PatriciaTrie trie;
+	private FrozenPatriciaTrie frozen;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+
+		keys = KeySets.keys( dataset, size, order );
+		missingKeys = KeySets.missingKeys( dataset, Math.min( size, 100000 ), keys );
+		trie = new PatriciaTrie();
+		for ( String key : keys ) {
+			trie.insert( key, null );
+		}
+		frozen = trie.freeze();
+
+		// look keys up in a different order than they were inserted
+		keys = KeySets.keys( dataset, size, KeySets.Order.RANDOM );
+		batch = Arrays.asList( Arrays.copyOf( keys, Math.min( keys.length, BATCH_SIZE ) ) );
+		keyBytes = new byte[keys.length][];
+		for ( int i = 0; i < keys.length; i++ ) {
+			keyBytes[i] = keys[i].getBytes( StandardCharsets.UTF_8 );
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Cursor {
+		int next;
+	}
+
+	@Benchmark
+	public boolean searchHit(Cursor cursor) {
+		return trie.search( keys[next( cursor, keys.length )] );
+	}
+
+	@Benchmark
+	public boolean searchHitBytes(Cursor cursor) {
+
+		byte[] key = keyBytes[next( cursor, keyBytes.length )];
+
+		return trie.search( key, 0, key.length );
+	}
+
+	@Benchmark
+	public boolean searchMiss(Cursor cursor) {
+		return trie.search( missingKeys[next( cursor, missingKeys.length )] );
+	}
+
+	@Benchmark
+	public boolean searchHitFrozen(Cursor cursor) {
+		return frozen.search( keys[next( cursor, keys.length )] );
+	}
+
+	@Benchmark
+	public boolean searchMissFrozen(Cursor cursor) {
+		return frozen.search( missingKeys[next( cursor, missingKeys.length )] );
+	}
+
+	@Benchmark
+	public BitSet searchAllBatch() {
+		return trie.searchAll( batch );
+	}
+
+	@Benchmark
+	public int searchLoopBatch() {
+
+		int found = 0;
+		for ( String key : batch ) {
+			if ( trie.search( key ) ) {
+				found++;
+			}
+		}
+
+		return found;
+	}
+
+	@Benchmark
+	public String longestPrefixOf(Cursor cursor) {
+		return trie.longestPrefixOf( missingKeys[next( cursor, missingKeys.length )] );
+	}
+
+	@Benchmark
+	public int searchFuzzy(Cursor cursor) {
+
+		int found = 0;
+		for ( Iterator<String> it = trie.searchFuzzy( missingKeys[next( cursor, missingKeys.length )], 1 ); it
+				.hasNext(); it.next() ) {
+			found++;
+		}
+
+		return found;
+	}
+
+	static int next(Cursor cursor, int length) {
+
+		int next = cursor.next++;
+		if ( cursor.next >= length ) {
+			cursor.next = 0;
+		}
+
+		return next % length;
+	}
+}
@@ -0,0 +1,79 @@
+package patricia.trie.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import patricia.trie.PatriciaTrie;
+
+/**
+ * Prefix search over a trie holding size keys, and a page of a range starting at the prefix. Prefixes are cut from
+ * random keys at prefixLength characters, so shorter prefixes match larger subtrees.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms8g", "-Xmx8g" })
+public class SearchPrefixBenchmark {
+
+	@Param({ "WORDS", "URLS", "UUIDS", "SHARED_PREFIX" })
+	public KeySets.Dataset dataset;
+
+	@Param({ "SORTED", "RANDOM" })
+	public KeySets.Order order;
+
+	@Param({ "1000", "100000", "1000000", "10000000" })
+	public int size;
+
+	@Param({ "4", "12" })
+	public int prefixLength;
+
+	private String[] prefixes;
+	private PatriciaTrie trie;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+
+		String[] keys = KeySets.keys( dataset, size, order );
+		prefixes = KeySets.prefixes( keys, 1024, prefixLength );
+		trie = new PatriciaTrie();
+		for ( String key : keys ) {
+			trie.insert( key, null );
+		}
+	}
+
+	@Benchmark
+	public List<String> searchPrefix(SearchBenchmark.Cursor cursor) {
+		return trie.searchPrefix( prefixes[SearchBenchmark.next( cursor, prefixes.length )] );
+	}
+
+	/**
+	 * First 10 matches only, as an autocomplete would ask for.
+	 */
+	@Benchmark
+	public List<String> searchPrefixLimit10(SearchBenchmark.Cursor cursor) {
+		return trie.searchPrefix( prefixes[SearchBenchmark.next( cursor, prefixes.length )], 10 );
+	}
+
+	/**
+	 * Page of 10 keys from the prefix on, as a paginated listing would read.
+	 */
+	@Benchmark
+	public List<String> tailSetPage10(SearchBenchmark.Cursor cursor) {
+		return trie.tailSet( prefixes[SearchBenchmark.next( cursor, prefixes.length )], true ).next( 10 );
+	}
+}
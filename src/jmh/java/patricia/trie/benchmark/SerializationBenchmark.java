@@ -0,0 +1,85 @@
+package patricia.trie.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import patricia.trie.PatriciaTrie;
+
+/**
+ * Time to write a trie of size keys with {@link PatriciaTrie#writeTo(java.nio.channels.WritableByteChannel)} and to
+ * restore it with {@link PatriciaTrie#readFrom(java.nio.channels.ReadableByteChannel)}, against inserting the keys
+ * again. Everything stays in memory so the scores exclude disk I/O.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms8g", "-Xmx8g" })
+public class SerializationBenchmark {
+
+	@Param({ "WORDS", "URLS", "UUIDS", "SHARED_PREFIX" })
+	public KeySets.Dataset dataset;
+
+	@Param({ "1000", "100000", "1000000" })
+	public int size;
+
+	private String[] keys;
+	private PatriciaTrie trie;
+	private byte[] serialized;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+
+		keys = KeySets.keys( dataset, size, KeySets.Order.RANDOM );
+		trie = new PatriciaTrie();
+		for ( String key : keys ) {
+			trie.insert( key, null );
+		}
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		trie.writeTo( Channels.newChannel( out ) );
+		serialized = out.toByteArray();
+	}
+
+	@Benchmark
+	public int writeTo() throws IOException {
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream( serialized.length );
+		trie.writeTo( Channels.newChannel( out ) );
+
+		return out.size();
+	}
+
+	@Benchmark
+	public PatriciaTrie readFrom() throws IOException {
+		return PatriciaTrie.readFrom( Channels.newChannel( new ByteArrayInputStream( serialized ) ) );
+	}
+
+	@Benchmark
+	public PatriciaTrie insertAll() {
+
+		PatriciaTrie restored = new PatriciaTrie();
+		for ( String key : keys ) {
+			restored.insert( key, null );
+		}
+
+		return restored;
+	}
+}
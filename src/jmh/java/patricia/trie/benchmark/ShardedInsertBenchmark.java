@@ -0,0 +1,83 @@
+package patricia.trie.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import patricia.trie.ConcurrentPatriciaTrie;
+import patricia.trie.ShardedPatriciaTrie;
+
+/**
+ * Inserts per second from several threads into one ConcurrentPatriciaTrie, whose lock serializes them, and into a
+ * ShardedPatriciaTrie with a lock per shard. Sharding skips the 3 leading bits, the same for all lowercase keys.
+ * Once every key has been inserted the tries are replaced by empty ones.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(value = 1, jvmArgsAppend = { "-Xms8g", "-Xmx8g" })
+public class ShardedInsertBenchmark {
+
+	@Param({ "WORDS", "URLS" })
+	public KeySets.Dataset dataset;
+
+	@Param({ "2", "4", "6" })
+	public int shardBits;
+
+	@Param({ "1000000" })
+	public int size;
+
+	private String[] keys;
+	private volatile ConcurrentPatriciaTrie trie;
+	private volatile ShardedPatriciaTrie sharded;
+	private final AtomicInteger next = new AtomicInteger();
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		keys = KeySets.keys( dataset, size, KeySets.Order.RANDOM );
+	}
+
+	@Setup(Level.Iteration)
+	public void newTries() {
+		trie = new ConcurrentPatriciaTrie();
+		sharded = new ShardedPatriciaTrie( shardBits, 3 );
+		next.set( 0 );
+	}
+
+	@Benchmark
+	public boolean insertSingle() {
+		return trie.insert( keys[nextIndex()], null );
+	}
+
+	@Benchmark
+	public boolean insertSharded() {
+		return sharded.insert( keys[nextIndex()], null );
+	}
+
+	private int nextIndex() {
+
+		int n = next.getAndIncrement() % keys.length;
+		if ( n == keys.length - 1 ) {
+			trie = new ConcurrentPatriciaTrie();
+			sharded = new ShardedPatriciaTrie( shardBits, 3 );
+		}
+
+		return n;
+	}
+}
@@ -0,0 +1,77 @@
+package patricia.trie.benchmark;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import patricia.trie.WeightedPatriciaTrie;
+
+/**
+ * The 10 keys of highest weight for a prefix, from the weighted trie or by sorting every key of the prefix by its
+ * weight, as an autocomplete would do without it. Weights are random.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms8g", "-Xmx8g" })
+public class TopKBenchmark {
+
+	@Param({ "WORDS", "URLS" })
+	public KeySets.Dataset dataset;
+
+	@Param({ "100000", "1000000" })
+	public int size;
+
+	@Param({ "2", "4" })
+	public int prefixLength;
+
+	private String[] prefixes;
+	private Map<String, Long> weights;
+	private WeightedPatriciaTrie trie;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+
+		String[] keys = KeySets.keys( dataset, size, KeySets.Order.RANDOM );
+		prefixes = KeySets.prefixes( keys, 1024, prefixLength );
+		weights = new HashMap<String, Long>();
+		trie = new WeightedPatriciaTrie();
+		Random random = new Random( 17 );
+		for ( String key : keys ) {
+			long weight = random.nextInt( 1000000 );
+			trie.insert( key, weight );
+			weights.put( key, weight );
+		}
+	}
+
+	@Benchmark
+	public List<String> topK10(SearchBenchmark.Cursor cursor) {
+		return trie.topK( prefixes[SearchBenchmark.next( cursor, prefixes.length )], 10 );
+	}
+
+	@Benchmark
+	public List<String> searchPrefixSorted10(SearchBenchmark.Cursor cursor) {
+
+		List<String> keys = trie.searchPrefix( prefixes[SearchBenchmark.next( cursor, prefixes.length )] );
+		keys.sort( ( a, b ) -> Long.compare( weights.get( b ), weights.get( a ) ) );
+
+		return keys.subList( 0, Math.min( 10, keys.size() ) );
+	}
+}
@@ -0,0 +1,74 @@
+package patricia.trie.benchmark;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import patricia.trie.PatriciaTrie;
+import patricia.trie.PersistentPatriciaTrie;
+
+/**
+ * Applying a batch of new keys to a trie holding size keys, as a new persistent version sharing the unchanged nodes
+ * or by building a whole new PatriciaTrie as a reload does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms8g", "-Xmx8g" })
+public class VersionBenchmark {
+
+	@Param({ "URLS", "UUIDS" })
+	public KeySets.Dataset dataset;
+
+	@Param({ "1000000" })
+	public int size;
+
+	@Param({ "1000" })
+	public int batchSize;
+
+	private String[] keys;
+	private List<String> batch;
+	private PersistentPatriciaTrie version;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+
+		keys = KeySets.keys( dataset, size, KeySets.Order.RANDOM );
+		batch = Arrays.asList( KeySets.missingKeys( dataset, batchSize, keys ) );
+		version = PersistentPatriciaTrie.empty().insertAll( Arrays.asList( keys ) );
+	}
+
+	@Benchmark
+	public PersistentPatriciaTrie insertBatchVersion() {
+		return version.insertAll( batch );
+	}
+
+	@Benchmark
+	public PatriciaTrie rebuildWithBatch() {
+
+		PatriciaTrie trie = new PatriciaTrie();
+		for ( String key : keys ) {
+			trie.insert( key, null );
+		}
+		for ( String key : batch ) {
+			trie.insert( key, null );
+		}
+
+		return trie;
+	}
+}
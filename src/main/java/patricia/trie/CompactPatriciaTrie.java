@@ -0,0 +1,341 @@
+package patricia.trie;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Patricia trie storing its nodes in parallel int arrays instead of {@link Node} objects. A node is an index into
+ * the arrays, and the encoded keys are stored back to back in one byte array, so a key takes about 20 bytes plus its
+ * encoded bytes and the garbage collector only sees a handful of arrays whatever the size of the trie.
+ *
+ * Inserts and searches work like {@link PatriciaTrie}, over indexes. Keys are only decoded into Strings when they
+ * are returned.
+ */
+public class CompactPatriciaTrie {
+
+	private static final int NONE = -1;
+	private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+	private int[] bitIndex;
+	private int[] left;
+	private int[] right;
+	private int[] parent;
+	// key of node i is keys[keyOffset[i]] to keys[keyOffset[i + 1]]
+	private int[] keyOffset;
+	private byte[] keys;
+	private int head = NONE;
+	private int size;
+
+	public CompactPatriciaTrie() {
+		this( 16 );
+	}
+
+	/**
+	 * @param capacity
+	 *            Number of keys to make room for up front. The arrays grow as needed.
+	 */
+	public CompactPatriciaTrie(int capacity) {
+
+		if ( capacity < 1 ) {
+			throw new IllegalArgumentException( "invalid argument specified. capacity," + capacity );
+		}
+
+		bitIndex = new int[capacity];
+		left = new int[capacity];
+		right = new int[capacity];
+		parent = new int[capacity];
+		keyOffset = new int[capacity + 1];
+		keys = new byte[capacity << 4];
+	}
+
+	/**
+	 * Inserts the key. A key encoding to zero bytes only, like "\0", can't be inserted.
+	 *
+	 * @param searchKey
+	 * @return true if the key has been inserted, false if it was already there or can't be inserted.
+	 */
+	public boolean insert(String searchKey) {
+
+		if ( isNullOrEmpty( searchKey ) ) {
+			return false;
+		}
+
+		byte[] keyBytes = KeyBits.encode( searchKey );
+		if ( !KeyBits.hasOneBit( keyBytes ) ) {
+			// no bit to tell it from the empty key, as in PatriciaTrie
+			return false;
+		}
+
+		if ( head == NONE ) {
+			int node = addNode( keyBytes );
+			bitIndex[node] = KeyBits.leftMostOneBit( keyBytes );
+			right[node] = node;
+			head = node;
+
+			return true;
+		}
+
+		int closest = findClosest( keyBytes );
+		int diffIndex = firstDiff( closest, keyBytes );
+		if ( diffIndex >= ( Math.max( keyLength( closest ), keyBytes.length ) << 3 ) ) {
+			// the bits are the same. Keys only differing in trailing zero bytes can't be told apart.
+			return false;
+		}
+
+		doInsert( keyBytes, diffIndex );
+
+		return true;
+	}
+
+	public boolean search(String searchKey) {
+
+		if ( isNullOrEmpty( searchKey ) || ( head == NONE ) ) {
+			return false;
+		}
+
+		byte[] keyBytes = KeyBits.encode( searchKey );
+		int node = findClosest( keyBytes );
+
+		return ( keyLength( node ) == keyBytes.length ) && ( firstDiff( node, keyBytes ) >= ( keyBytes.length << 3 ) );
+	}
+
+	public List<String> searchPrefix(String prefix) {
+		return searchPrefix( prefix, Integer.MAX_VALUE );
+	}
+
+	/**
+	 * Returns at most limit keys starting with the prefix, in bit order.
+	 *
+	 * @param prefix
+	 * @param limit
+	 * @return
+	 */
+	public List<String> searchPrefix(String prefix, int limit) {
+
+		if ( isNullOrEmpty( prefix ) ) {
+			throw new IllegalArgumentException( "invalid argument specified. prefix," + prefix );
+		}
+
+		List<String> results = new ArrayList<String>();
+		if ( head == NONE ) {
+			return results;
+		}
+
+		byte[] prefixBytes = KeyBits.encode( prefix );
+		int prefixBitLength = prefixBytes.length << 3;
+		if ( bitIndex[head] >= prefixBitLength ) {
+			// every key shares the prefix bits or none does
+			if ( startsWith( head, prefixBytes ) ) {
+				collect( head, TrieCursor.LEFT, TrieCursor.RIGHT, limit, results );
+			}
+
+			return results;
+		}
+
+		int node = head;
+		int next = getChild( node, prefixBytes );
+		while ( isDownward( node, next ) && ( bitIndex[next] < prefixBitLength ) ) {
+			node = next;
+			next = getChild( node, prefixBytes );
+		}
+
+		if ( ( next != NONE ) && startsWith( next, prefixBytes ) ) {
+			int side = KeyBits.bitAt( prefixBytes, bitIndex[node] );
+			collect( node, side, side, limit, results );
+		}
+
+		return results;
+	}
+
+	/**
+	 * Number of keys in the trie.
+	 *
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return head == NONE;
+	}
+
+	/**
+	 * Removes every key. The arrays are kept for the next keys.
+	 */
+	public void clear() {
+		head = NONE;
+		size = 0;
+	}
+
+	/**
+	 * Descends from head along the bits of the key until an upward pointer and returns the node it points to.
+	 */
+	private int findClosest(byte[] keyBytes) {
+
+		int node = head;
+		int next = getChild( node, keyBytes );
+		while ( isDownward( node, next ) ) {
+			node = next;
+			next = getChild( node, keyBytes );
+		}
+
+		return next == NONE ? node : next;
+	}
+
+	/**
+	 * Links a new node discriminating at diffIndex into the path of the key.
+	 */
+	private void doInsert(byte[] keyBytes, int diffIndex) {
+
+		int newNode = addNode( keyBytes );
+		bitIndex[newNode] = diffIndex;
+
+		if ( diffIndex < bitIndex[head] ) {
+			// all of the keys share the bits before the head bit index. new node comes above head.
+			setPointToItself( newNode, head, diffIndex, keyBytes );
+			parent[head] = newNode;
+			head = newNode;
+
+			return;
+		}
+
+		int node = head;
+		int next = getChild( node, keyBytes );
+		// a node at diffIndex has an empty pointer on the key side, the first head's left one
+		while ( isDownward( node, next ) && ( bitIndex[next] <= diffIndex ) ) {
+			node = next;
+			next = getChild( node, keyBytes );
+		}
+
+		parent[newNode] = node;
+		if ( next == NONE ) {
+			// empty left pointer of the first head. the new node is only reachable as an upward pointer from it.
+			setPointToItself( newNode, node, diffIndex, keyBytes );
+		}
+		else {
+			setPointToItself( newNode, next, diffIndex, keyBytes );
+
+			if ( isDownward( node, next ) ) {
+				// new node comes between node and next
+				parent[next] = newNode;
+			}
+		}
+
+		if ( KeyBits.bitAt( keyBytes, bitIndex[node] ) == 0 ) {
+			left[node] = newNode;
+		}
+		else {
+			right[node] = newNode;
+		}
+	}
+
+	/**
+	 * Sets the pointer of the node on the key side to itself and the other pointer to the given node.
+	 */
+	private void setPointToItself(int node, int other, int diffIndex, byte[] keyBytes) {
+
+		if ( KeyBits.bitAt( keyBytes, diffIndex ) == 0 ) {
+			left[node] = node;
+			right[node] = other;
+		}
+		else {
+			right[node] = node;
+			left[node] = other;
+		}
+	}
+
+	/**
+	 * Adds the keys found through the pointers of node from side first to side last, in bit order. The pointers
+	 * still to be visited are kept on a stack as node * 2 + side.
+	 */
+	private void collect(int node, int firstSide, int lastSide, int limit, List<String> results) {
+
+		int[] stack = new int[64];
+		int depth = 0;
+		for ( int side = lastSide; side >= firstSide; side-- ) {
+			stack[depth++] = ( node << 1 ) | side;
+		}
+
+		while ( ( depth > 0 ) && ( results.size() < limit ) ) {
+			int slot = stack[--depth];
+			int from = slot >>> 1;
+			int next = ( slot & 1 ) == TrieCursor.LEFT ? left[from] : right[from];
+			if ( next == NONE ) {
+				continue;
+			}
+
+			if ( !isDownward( from, next ) ) {
+				results.add( KeyBits.decode( keys, keyOffset[next], keyLength( next ) ) );
+				continue;
+			}
+
+			if ( depth + 2 > stack.length ) {
+				stack = Arrays.copyOf( stack, stack.length << 1 );
+			}
+			stack[depth++] = ( next << 1 ) | TrieCursor.RIGHT;
+			stack[depth++] = ( next << 1 ) | TrieCursor.LEFT;
+		}
+	}
+
+	private int addNode(byte[] keyBytes) {
+
+		if ( size == bitIndex.length ) {
+			int capacity = grow( size, size + 1 );
+			bitIndex = Arrays.copyOf( bitIndex, capacity );
+			left = Arrays.copyOf( left, capacity );
+			right = Arrays.copyOf( right, capacity );
+			parent = Arrays.copyOf( parent, capacity );
+			keyOffset = Arrays.copyOf( keyOffset, capacity + 1 );
+		}
+
+		int offset = keyOffset[size];
+		if ( (long) offset + keyBytes.length > keys.length ) {
+			if ( (long) offset + keyBytes.length > MAX_ARRAY_LENGTH ) {
+				throw new IllegalStateException( "no room left for keys. size," + size );
+			}
+			keys = Arrays.copyOf( keys, grow( keys.length, offset + keyBytes.length ) );
+		}
+		System.arraycopy( keyBytes, 0, keys, offset, keyBytes.length );
+
+		int node = size++;
+		keyOffset[size] = offset + keyBytes.length;
+		left[node] = NONE;
+		right[node] = NONE;
+		parent[node] = NONE;
+
+		return node;
+	}
+
+	private static int grow(int length, int minLength) {
+
+		long capacity = Math.max( (long) length << 1, minLength );
+
+		return (int) Math.min( capacity, MAX_ARRAY_LENGTH );
+	}
+
+	private int getChild(int node, byte[] keyBytes) {
+		return KeyBits.bitAt( keyBytes, bitIndex[node] ) == 0 ? left[node] : right[node];
+	}
+
+	private boolean isDownward(int node, int next) {
+		return ( next != NONE ) && ( bitIndex[node] < bitIndex[next] );
+	}
+
+	private int keyLength(int node) {
+		return keyOffset[node + 1] - keyOffset[node];
+	}
+
+	private int firstDiff(int node, byte[] keyBytes) {
+		return KeyBits.firstDiff( keys, keyOffset[node], keyLength( node ), keyBytes, 0, keyBytes.length );
+	}
+
+	private boolean startsWith(int node, byte[] prefixBytes) {
+		return KeyBits.startsWith( keys, keyOffset[node], keyLength( node ), prefixBytes );
+	}
+
+	private boolean isNullOrEmpty(String str) {
+		return ( str == null ) || str.isEmpty();
+	}
+}
@@ -0,0 +1,180 @@
+package patricia.trie;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Patricia trie which can be searched by any number of threads while other threads insert.
+ *
+ * Searches never block: they read head once and walk volatile child pointers. An insert builds the new node
+ * completely and links it in with a single pointer write, so a reader sees the trie either without or with the new
+ * key, never a half linked node. Only the nodes of this trie have volatile pointers, and only this trie publishes
+ * head and size, so that a trie used by one thread doesn't pay for the barriers. Inserts are serialized by a lock,
+ * since an insert also moves a parent pointer and updates the key counts on its path, which can't be done as one
+ * atomic write.
+ *
+ * Prefix iterators are weakly consistent: they return each key present when they started at most once and may or
+ * may not return keys inserted while they run. size(), countPrefix(), rank() and select() are exact only when no
+ * insert is running.
+ */
+public class ConcurrentPatriciaTrie extends PatriciaTrie {
+
+	// subclasses in the package append to their own state under it
+	final ReentrantLock writeLock = new ReentrantLock();
+	// written last under the lock, read first by searches
+	private volatile Node publishedHead;
+	private volatile int publishedSize;
+
+	public ConcurrentPatriciaTrie(String searchKey) {
+		super( searchKey );
+		publish();
+	}
+
+	public ConcurrentPatriciaTrie() {
+
+	}
+
+	/**
+	 * Trie over nodes linked elsewhere, by a reader.
+	 * 
+	 * @param head
+	 * @param size
+	 */
+	ConcurrentPatriciaTrie(Node head, int size) {
+		super( head, size );
+		publish();
+	}
+
+	@Override
+	Node getHead() {
+		return publishedHead;
+	}
+
+	@Override
+	public int size() {
+		return publishedSize;
+	}
+
+	@Override
+	Node newNode(int bitIndex, Node parent, Node left, Node right) {
+		return new ConcurrentNode( bitIndex, parent, left, right );
+	}
+
+	@Override
+	boolean insert(String searchKey, byte[] keyBytes, NodeView view) {
+
+		// held across the size check in the super method too
+		writeLock.lock();
+		try {
+			return super.insert( searchKey, keyBytes, view );
+		}
+		finally {
+			writeLock.unlock();
+		}
+	}
+
+	@Override
+	Node insertNode(String searchKey, byte[] keyBytes) {
+
+		writeLock.lock();
+		try {
+			Node node = super.insertNode( searchKey, keyBytes );
+			publish();
+
+			return node;
+		}
+		finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Walks the trie under the lock, so that no insert changes it meanwhile.
+	 */
+	@Override
+	public TrieMetrics enableMetrics() {
+
+		writeLock.lock();
+		try {
+			return super.enableMetrics();
+		}
+		finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Removes every key. Readers already walking the trie finish on the old nodes.
+	 */
+	@Override
+	public void clear() {
+
+		writeLock.lock();
+		try {
+			super.clear();
+			publish();
+		}
+		finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Makes the head and size of the trie, and every node linked so far, visible to searches starting after this.
+	 */
+	private void publish() {
+		publishedSize = super.size();
+		publishedHead = super.getHead();
+	}
+
+	/**
+	 * Node with volatile pointers, so that a node linked in by a writer is seen fully built by readers not holding
+	 * the lock.
+	 */
+	static final class ConcurrentNode extends Node {
+
+		private volatile Node parent;
+		private volatile Node left;
+		private volatile Node right;
+
+		ConcurrentNode(int bitIndex, Node parent, Node left, Node right) {
+			super( bitIndex, null );
+			this.parent = parent;
+			this.left = left;
+			this.right = right;
+		}
+
+		ConcurrentNode() {
+
+		}
+
+		@Override
+		public Node getParent() {
+			return parent;
+		}
+
+		@Override
+		public void setParent(Node parent) {
+			this.parent = parent;
+		}
+
+		@Override
+		public Node getLeft() {
+			return left;
+		}
+
+		@Override
+		public void setLeft(Node left) {
+			this.left = left;
+		}
+
+		@Override
+		public Node getRight() {
+			return right;
+		}
+
+		@Override
+		public void setRight(Node right) {
+			this.right = right;
+		}
+	}
+}
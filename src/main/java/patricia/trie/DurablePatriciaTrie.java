@@ -0,0 +1,398 @@
+package patricia.trie;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.log4j.Logger;
+
+/**
+ * ConcurrentPatriciaTrie kept in a directory, which survives a crash with the keys of every insert which has
+ * returned, or of every insert but the last syncEvery - 1 ones when syncEvery is above 1.
+ *
+ * Each inserted key is appended to a write-ahead log, wal-&lt;generation&gt;.log. The log is forced once syncEvery
+ * keys are waiting; inserting threads force it outside of the insert lock, and one force makes the keys of every
+ * thread waiting meanwhile durable, so concurrent inserts share their forces. {@link #checkpoint()}, also run every
+ * checkpointEvery keys, writes the whole trie in the format of {@link #writeTo(java.nio.channels.WritableByteChannel)}
+ * to snapshot-&lt;generation&gt;.trie, starts an empty log and removes the files of the generation before. Opening
+ * reads the latest snapshot in one pass and only inserts the keys logged after it.
+ *
+ * The trie has no deletes, so the log only holds inserts. clear() checkpoints the empty trie.
+ */
+public class DurablePatriciaTrie extends ConcurrentPatriciaTrie implements Closeable {
+
+	public static final int DEFAULT_SYNC_EVERY = 1;
+	public static final long DEFAULT_CHECKPOINT_EVERY = 1000000L;
+
+	private static final String SNAPSHOT_PREFIX = "snapshot-";
+	private static final String SNAPSHOT_SUFFIX = ".trie";
+	private static final String LOG_PREFIX = "wal-";
+	private static final String LOG_SUFFIX = ".log";
+	private static final String TEMPORARY_SUFFIX = ".tmp";
+	private static Logger log = Logger.getLogger( DurablePatriciaTrie.class );
+
+	private final Path directory;
+	private final int syncEvery;
+	private final long checkpointEvery;
+	// guarded by writeLock. null while the log is replayed, so that replayed keys are not logged again
+	private WriteAheadLog wal;
+	private long generation;
+	private long lastSequence;
+	private boolean closed;
+
+	private DurablePatriciaTrie(Path directory, PatriciaTrie snapshot, long generation, int syncEvery,
+			long checkpointEvery) {
+		super( snapshot.getHead(), snapshot.size() );
+		this.directory = directory;
+		this.generation = generation;
+		this.syncEvery = syncEvery;
+		this.checkpointEvery = checkpointEvery;
+	}
+
+	/**
+	 * Opens the trie kept in the directory, creating the directory if needed, and forces every insert.
+	 *
+	 * @param directory
+	 * @return
+	 * @throws IOException
+	 */
+	public static DurablePatriciaTrie open(Path directory) throws IOException {
+		return open( directory, DEFAULT_SYNC_EVERY, DEFAULT_CHECKPOINT_EVERY );
+	}
+
+	/**
+	 * Opens the trie kept in the directory, creating the directory if needed.
+	 *
+	 * @param directory
+	 * @param syncEvery
+	 *            Number of inserts forced together, 1 to force every insert before it returns.
+	 * @param checkpointEvery
+	 *            Number of logged keys after which a snapshot is written.
+	 * @return
+	 * @throws IOException
+	 */
+	public static DurablePatriciaTrie open(Path directory, int syncEvery, long checkpointEvery) throws IOException {
+
+		if ( directory == null ) {
+			throw new IllegalArgumentException( "invalid argument specified. directory," + directory );
+		}
+		if ( syncEvery < 1 ) {
+			throw new IllegalArgumentException( "invalid argument specified. syncEvery," + syncEvery );
+		}
+		if ( checkpointEvery < 1 ) {
+			throw new IllegalArgumentException( "invalid argument specified. checkpointEvery," + checkpointEvery );
+		}
+
+		Files.createDirectories( directory );
+		long generation = latestGeneration( directory );
+
+		PatriciaTrie snapshot = new PatriciaTrie();
+		Path snapshotFile = directory.resolve( SNAPSHOT_PREFIX + generation + SNAPSHOT_SUFFIX );
+		if ( Files.exists( snapshotFile ) ) {
+			try ( FileChannel channel = FileChannel.open( snapshotFile, StandardOpenOption.READ ) ) {
+				// nodes with volatile pointers, the ones inserts link new nodes into
+				snapshot = TrieCodec.read( channel, ConcurrentNode::new );
+			}
+		}
+
+		DurablePatriciaTrie trie = new DurablePatriciaTrie( directory, snapshot, generation, syncEvery,
+				checkpointEvery );
+		int snapshotSize = trie.size();
+		WriteAheadLog wal = WriteAheadLog.open( directory.resolve( LOG_PREFIX + generation + LOG_SUFFIX ), syncEvery,
+				keyBytes -> trie.insert( KeyBits.decode( keyBytes, 0, keyBytes.length ), keyBytes, null ) );
+		// the entry of a log just created, and the deletes of an unfinished checkpoint
+		forceDirectory( directory );
+
+		trie.writeLock.lock();
+		try {
+			trie.wal = wal;
+		}
+		finally {
+			trie.writeLock.unlock();
+		}
+		log.info( "opened trie. directory," + directory + " generation," + generation + " snapshot keys,"
+				+ snapshotSize + " replayed keys," + ( trie.size() - snapshotSize ) );
+
+		return trie;
+	}
+
+	@Override
+	boolean insert(String searchKey, byte[] keyBytes, NodeView view) {
+
+		boolean inserted;
+		WriteAheadLog current;
+		long sequence;
+		writeLock.lock();
+		try {
+			inserted = super.insert( searchKey, keyBytes, view );
+			current = wal;
+			sequence = lastSequence;
+		}
+		finally {
+			writeLock.unlock();
+		}
+
+		if ( inserted && ( current != null ) ) {
+			commit( current, sequence );
+		}
+
+		return inserted;
+	}
+
+	/**
+	 * Logs the key if it has been inserted. Forces the log after releasing the lock, unless it's called by
+	 * {@link #insert(String, byte[], NodeView)} which does it once its own lock is released too.
+	 */
+	@Override
+	Node insertNode(String searchKey, byte[] keyBytes) {
+
+		Node node;
+		WriteAheadLog current;
+		long sequence;
+		writeLock.lock();
+		try {
+			if ( closed ) {
+				throw new IllegalStateException( "trie is closed. directory," + directory );
+			}
+
+			int oldSize = size();
+			node = super.insertNode( searchKey, keyBytes );
+			if ( ( size() == oldSize ) || ( wal == null ) ) {
+				return node;
+			}
+
+			current = wal;
+			sequence = current.append( keyBytes );
+			lastSequence = sequence;
+			if ( writeLock.getHoldCount() > 1 ) {
+				return node;
+			}
+		}
+		catch ( IOException e ) {
+			throw new UncheckedIOException( e );
+		}
+		finally {
+			writeLock.unlock();
+		}
+
+		commit( current, sequence );
+
+		return node;
+	}
+
+	/**
+	 * Makes every key inserted so far durable, whatever syncEvery is.
+	 *
+	 * @throws IOException
+	 */
+	public void sync() throws IOException {
+
+		WriteAheadLog current;
+		writeLock.lock();
+		try {
+			current = wal;
+		}
+		finally {
+			writeLock.unlock();
+		}
+
+		if ( current != null ) {
+			current.sync();
+		}
+	}
+
+	/**
+	 * Writes a snapshot of the trie and starts an empty log. The snapshot is written under the insert lock, so
+	 * inserts wait for it while searches go on.
+	 *
+	 * @throws IOException
+	 */
+	public void checkpoint() throws IOException {
+
+		writeLock.lock();
+		try {
+			checkpoint( this );
+		}
+		finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Writes the keys of the given trie as the snapshot and starts an empty log. Called under the insert lock.
+	 *
+	 * @param snapshot
+	 *            This trie, or an empty one when clearing.
+	 * @throws IOException
+	 */
+	private void checkpoint(PatriciaTrie snapshot) throws IOException {
+
+		if ( closed ) {
+			throw new IllegalStateException( "trie is closed. directory," + directory );
+		}
+
+		long next = generation + 1;
+		Path temporary = directory.resolve( SNAPSHOT_PREFIX + next + SNAPSHOT_SUFFIX + TEMPORARY_SUFFIX );
+		try ( FileChannel channel = FileChannel.open( temporary, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE ) ) {
+			TrieCodec.write( snapshot, channel );
+			channel.force( true );
+		}
+		Files.move( temporary, directory.resolve( SNAPSHOT_PREFIX + next + SNAPSHOT_SUFFIX ),
+				StandardCopyOption.ATOMIC_MOVE );
+		forceDirectory( directory );
+
+		// from here on opening reads the new snapshot and the new log
+		WriteAheadLog old = wal;
+		wal = WriteAheadLog.open( directory.resolve( LOG_PREFIX + next + LOG_SUFFIX ), syncEvery, keyBytes -> {
+		} );
+		// the old generation is only deleted once the new one is in the directory for good, or a crash could
+		// keep the deletes and lose the rename and the new log
+		forceDirectory( directory );
+		lastSequence = 0;
+		generation = next;
+		if ( old != null ) {
+			old.close();
+		}
+		Files.deleteIfExists( directory.resolve( LOG_PREFIX + ( next - 1 ) + LOG_SUFFIX ) );
+		Files.deleteIfExists( directory.resolve( SNAPSHOT_PREFIX + ( next - 1 ) + SNAPSHOT_SUFFIX ) );
+		log.info( "checkpoint. directory," + directory + " generation," + next + " keys," + snapshot.size() );
+	}
+
+	/**
+	 * Removes every key. The empty snapshot is written first, so that a failed write leaves the keys both in memory
+	 * and on disk.
+	 */
+	@Override
+	public void clear() {
+
+		writeLock.lock();
+		try {
+			checkpoint( new PatriciaTrie() );
+			super.clear();
+		}
+		catch ( IOException e ) {
+			throw new UncheckedIOException( e );
+		}
+		finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Forces the log and closes it. The trie can still be searched, inserts throw IllegalStateException.
+	 */
+	@Override
+	public void close() throws IOException {
+
+		writeLock.lock();
+		try {
+			if ( !closed ) {
+				closed = true;
+				wal.close();
+			}
+		}
+		finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Directory the trie is kept in.
+	 *
+	 * @return
+	 */
+	public Path getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Forces the log if enough keys are waiting, then checkpoints if enough keys have been logged. A log replaced by
+	 * a checkpoint meanwhile has been forced when it was closed, so there's nothing left to do on it.
+	 */
+	private void commit(WriteAheadLog current, long sequence) {
+
+		try {
+			current.commit( sequence );
+			if ( sequence >= checkpointEvery ) {
+				writeLock.lock();
+				try {
+					if ( ( wal == current ) && !closed ) {
+						checkpoint();
+					}
+				}
+				finally {
+					writeLock.unlock();
+				}
+			}
+		}
+		catch ( IOException e ) {
+			throw new UncheckedIOException( e );
+		}
+	}
+
+	/**
+	 * Forces the entries of the directory, the files created, renamed or deleted in it.
+	 */
+	private static void forceDirectory(Path directory) throws IOException {
+
+		try ( FileChannel channel = FileChannel.open( directory, StandardOpenOption.READ ) ) {
+			channel.force( true );
+		}
+	}
+
+	/**
+	 * Generation of the latest snapshot, 0 if there is none. Deletes the files a checkpoint which didn't finish left
+	 * behind: its temporary snapshot, or the files of the generation before if the snapshot was already in place.
+	 */
+	private static long latestGeneration(Path directory) throws IOException {
+
+		long latest = 0;
+		try ( DirectoryStream<Path> files = Files.newDirectoryStream( directory ) ) {
+			for ( Path file : files ) {
+				String name = file.getFileName().toString();
+				if ( name.endsWith( TEMPORARY_SUFFIX ) ) {
+					Files.delete( file );
+				}
+				else {
+					latest = Math.max( latest, generation( name, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX ) );
+				}
+			}
+		}
+
+		try ( DirectoryStream<Path> files = Files.newDirectoryStream( directory ) ) {
+			for ( Path file : files ) {
+				String name = file.getFileName().toString();
+				if ( Math.max( generation( name, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX ),
+						generation( name, LOG_PREFIX, LOG_SUFFIX ) ) < latest ) {
+					Files.delete( file );
+				}
+			}
+		}
+
+		return latest;
+	}
+
+	/**
+	 * Generation in the file name, -1 if it's not a file of the kind.
+	 */
+	private static long generation(String name, String prefix, String suffix) {
+
+		if ( !name.startsWith( prefix ) || !name.endsWith( suffix ) ) {
+			return -1;
+		}
+
+		try {
+			return Long.parseLong( name.substring( prefix.length(), name.length() - suffix.length() ) );
+		}
+		catch ( NumberFormatException e ) {
+			return -1;
+		}
+	}
+}
@@ -0,0 +1,512 @@
+package patricia.trie;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Read only trie built by {@link PatriciaTrie#freeze()}, encoded in a few flat arrays instead of Node objects.
+ *
+ * The shape is the one of a crit-bit tree over the same keys, where a branch holds the bit index its keys differ at
+ * and a leaf holds a key. Nodes are numbered in level order and the shape is one bit per node, 1 for a branch and
+ * 0 for a leaf. The children of the branch at position p are at 2 * rank(p) + 1 and 2 * rank(p) + 2, rank(p) being
+ * the number of branches before p, counted with a table of block counts and a popcount. Bit indexes are packed in
+ * as many bits as the largest one needs, in level order of the branches. Keys are stored in bit order, front coded
+ * in buckets of 16: the first key of a bucket in full, the others as the number of bytes shared with the key before
+ * and the rest. The leaves, in level order, point to their key with a packed index.
+ *
+ * A search descends the bits like PatriciaTrie and compares the key of the leaf reached against the searched bytes
+ * while decoding its bucket, without allocating. The keys of a prefix are a run of consecutive keys, from the
+ * leftmost to the rightmost leaf of the subtree the prefix leads to, decoded one after the other.
+ */
+public final class FrozenPatriciaTrie implements Iterable<String> {
+
+	private static final int BUCKET_SIZE = 16;
+	private static final int WORDS_PER_BLOCK = 8;
+
+	private final int size;
+	// 1 for a branch, 0 for a leaf, in level order
+	private final long[] shape;
+	// branches in shape before each block of WORDS_PER_BLOCK words
+	private final int[] blockRanks;
+	private final PackedInts bitIndexes;
+	private final PackedInts keyIndexes;
+	private final byte[] keys;
+	private final int[] bucketOffsets;
+
+	private FrozenPatriciaTrie(int size, long[] shape, PackedInts bitIndexes, PackedInts keyIndexes, byte[] keys,
+			int[] bucketOffsets) {
+
+		this.size = size;
+		this.shape = shape;
+		this.bitIndexes = bitIndexes;
+		this.keyIndexes = keyIndexes;
+		this.keys = keys;
+		this.bucketOffsets = bucketOffsets;
+
+		blockRanks = new int[( shape.length + WORDS_PER_BLOCK - 1 ) / WORDS_PER_BLOCK + 1];
+		int rank = 0;
+		for ( int i = 0; i < shape.length; i++ ) {
+			if ( i % WORDS_PER_BLOCK == 0 ) {
+				blockRanks[i / WORDS_PER_BLOCK] = rank;
+			}
+			rank += Long.bitCount( shape[i] );
+		}
+	}
+
+	/**
+	 * Encodes the keys found from head, in bit order.
+	 */
+	static FrozenPatriciaTrie freeze(Node head) {
+
+		byte[][] sortedKeys = new byte[16][];
+		int n = 0;
+		TrieCursor cursor = new TrieCursor();
+		for ( boolean found = cursor.first( head ); found; found = cursor.next() ) {
+			if ( n == sortedKeys.length ) {
+				sortedKeys = Arrays.copyOf( sortedKeys, n << 1 );
+			}
+			sortedKeys[n++] = cursor.getNode().getKeyBytes();
+		}
+
+		if ( n == 0 ) {
+			return new FrozenPatriciaTrie( 0, new long[0], new PackedInts( 0, 0 ), new PackedInts( 0, 0 ), new byte[0],
+					new int[0] );
+		}
+
+		// branch i splits keys i and i + 1 at the bit they differ at. The branch with the smallest bit index of a
+		// run of keys is the root of their subtree, so the tree is the min Cartesian tree of the diffs.
+		int branches = n - 1;
+		int[] diffs = new int[branches];
+		int maxDiff = 0;
+		for ( int i = 0; i < branches; i++ ) {
+			diffs[i] = KeyBits.firstDiff( sortedKeys[i], sortedKeys[i + 1] );
+			maxDiff = Math.max( maxDiff, diffs[i] );
+		}
+
+		// a child is a branch index, or ~key index for a leaf
+		int[] left = new int[branches];
+		int[] right = new int[branches];
+		int[] stack = new int[branches];
+		int depth = 0;
+		for ( int i = 0; i < branches; i++ ) {
+			left[i] = ~i;
+			right[i] = ~( i + 1 );
+			int last = -1;
+			while ( ( depth > 0 ) && ( diffs[stack[depth - 1]] > diffs[i] ) ) {
+				last = stack[--depth];
+			}
+			if ( last != -1 ) {
+				left[i] = last;
+			}
+			if ( depth > 0 ) {
+				right[stack[depth - 1]] = i;
+			}
+			stack[depth++] = i;
+		}
+		// the branch with the smallest bit index of all, left at the bottom of the stack
+		int root = branches == 0 ? ~0 : stack[0];
+		stack = null;
+
+		// level order, each branch queues its two children
+		int nodes = 2 * n - 1;
+		long[] shape = new long[( nodes + 63 ) >>> 6];
+		PackedInts bitIndexes = new PackedInts( branches, bitsFor( maxDiff ) );
+		PackedInts keyIndexes = new PackedInts( n, bitsFor( n - 1 ) );
+		int[] queue = new int[nodes];
+		queue[0] = root;
+		int branch = 0;
+		int leaf = 0;
+		int tail = 1;
+		for ( int p = 0; p < nodes; p++ ) {
+			int child = queue[p];
+			if ( child >= 0 ) {
+				shape[p >>> 6] |= 1L << ( p & 63 );
+				bitIndexes.set( branch++, diffs[child] );
+				queue[tail++] = left[child];
+				queue[tail++] = right[child];
+			}
+			else {
+				keyIndexes.set( leaf++, ~child );
+			}
+		}
+
+		int[] bucketOffsets = new int[( n + BUCKET_SIZE - 1 ) / BUCKET_SIZE];
+		byte[] keys = frontCode( sortedKeys, n, bucketOffsets );
+
+		return new FrozenPatriciaTrie( n, shape, bitIndexes, keyIndexes, keys, bucketOffsets );
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public boolean search(String searchKey) {
+
+		if ( ( searchKey == null ) || searchKey.isEmpty() || ( size == 0 ) ) {
+			return false;
+		}
+
+		byte[] keyBytes = KeyBits.encode( searchKey );
+
+		return matches( keyIndex( descend( keyBytes, Integer.MAX_VALUE ) ), keyBytes, false );
+	}
+
+	/**
+	 * Keys starting with the prefix, in bit order.
+	 *
+	 * @param prefix
+	 * @return
+	 */
+	public List<String> searchPrefix(String prefix) {
+
+		List<String> results = new ArrayList<String>();
+		for ( Iterator<String> it = prefixIterator( prefix ); it.hasNext(); ) {
+			results.add( it.next() );
+		}
+
+		return results;
+	}
+
+	/**
+	 * Lazily iterates the keys starting with the prefix, in bit order.
+	 *
+	 * @param prefix
+	 * @return
+	 */
+	public Iterator<String> prefixIterator(String prefix) {
+
+		if ( ( prefix == null ) || prefix.isEmpty() ) {
+			throw new IllegalArgumentException( "invalid argument specified. prefix," + prefix );
+		}
+
+		long run = prefixRun( KeyBits.encode( prefix ) );
+
+		return new KeyIterator( (int) ( run >>> 32 ), (int) run );
+	}
+
+	/**
+	 * Number of keys starting with the prefix, found from the first and last leaf under the prefix.
+	 *
+	 * @param prefix
+	 * @return
+	 */
+	public int countPrefix(String prefix) {
+
+		if ( ( prefix == null ) || prefix.isEmpty() ) {
+			throw new IllegalArgumentException( "invalid argument specified. prefix," + prefix );
+		}
+
+		long run = prefixRun( KeyBits.encode( prefix ) );
+
+		return (int) run - (int) ( run >>> 32 );
+	}
+
+	/**
+	 * Keys in bit order.
+	 */
+	@Override
+	public Iterator<String> iterator() {
+		return new KeyIterator( 0, size );
+	}
+
+	/**
+	 * First key index and the index after the last one of the keys starting with the prefix, packed in a long.
+	 */
+	private long prefixRun(byte[] prefixBytes) {
+
+		if ( size == 0 ) {
+			return 0;
+		}
+
+		// every key under a branch shares the bits before its bit index
+		int node = descend( prefixBytes, prefixBytes.length << 3 );
+		int first = node;
+		while ( isBranch( first ) ) {
+			first = 2 * rank( first ) + 1;
+		}
+		int last = node;
+		while ( isBranch( last ) ) {
+			last = 2 * rank( last ) + 2;
+		}
+
+		int from = keyIndex( first );
+		int to = keyIndex( last ) + 1;
+		// descending skipped bits, but the keys share them, so the first key tells whether any of them matches. Only
+		// a key shorter than the prefix and matching it padded with zero bits comes before the matching keys, and
+		// there is at most one since keys only differing in trailing zero bytes can't be told apart.
+		if ( !matches( from, prefixBytes, true ) ) {
+			from++;
+			if ( ( from == to ) || !matches( from, prefixBytes, true ) ) {
+				return 0;
+			}
+		}
+
+		return ( (long) from << 32 ) | to;
+	}
+
+	/**
+	 * Follows the bits of the key from the root while the bit indexes are below bitLimit.
+	 */
+	private int descend(byte[] keyBytes, int bitLimit) {
+
+		int node = 0;
+		while ( isBranch( node ) ) {
+			int rank = rank( node );
+			int bitIndex = bitIndexes.get( rank );
+			if ( bitIndex >= bitLimit ) {
+				break;
+			}
+			node = 2 * rank + 1 + KeyBits.bitAt( keyBytes, bitIndex );
+		}
+
+		return node;
+	}
+
+	private boolean isBranch(int node) {
+		return ( shape[node >>> 6] & ( 1L << ( node & 63 ) ) ) != 0;
+	}
+
+	/**
+	 * Number of branches before the node.
+	 */
+	private int rank(int node) {
+
+		int word = node >>> 6;
+		int rank = blockRanks[word / WORDS_PER_BLOCK];
+		for ( int i = word - word % WORDS_PER_BLOCK; i < word; i++ ) {
+			rank += Long.bitCount( shape[i] );
+		}
+
+		return rank + Long.bitCount( shape[word] & ( ( 1L << ( node & 63 ) ) - 1 ) );
+	}
+
+	/**
+	 * Index in bit order of the key of a leaf.
+	 */
+	private int keyIndex(int leaf) {
+		return keyIndexes.get( leaf - rank( leaf ) );
+	}
+
+	/**
+	 * Compares the key at the index with the bytes while decoding its bucket, keeping the number of bytes each key
+	 * has in common with them: a key sharing no more bytes with the one before than it has in common with the bytes
+	 * keeps those bytes and goes on with its own, a key sharing more has the same common bytes as the one before.
+	 *
+	 * @return true if the key starts with the bytes, or is equal to them if prefix is false.
+	 */
+	private boolean matches(int index, byte[] bytes, boolean prefix) {
+
+		int position = bucketOffsets[index / BUCKET_SIZE];
+		int common = 0;
+		int length = 0;
+		for ( int i = index - index % BUCKET_SIZE; i <= index; i++ ) {
+			int shared = 0;
+			if ( i % BUCKET_SIZE != 0 ) {
+				long shift = varint( keys, position );
+				shared = (int) ( shift >>> 32 );
+				position = (int) shift;
+			}
+			long rest = varint( keys, position );
+			position = (int) rest;
+			int restLength = (int) ( rest >>> 32 );
+
+			if ( shared <= common ) {
+				common = shared;
+				int max = Math.min( restLength, bytes.length - shared );
+				while ( ( common - shared < max ) && ( keys[position + common - shared] == bytes[common] ) ) {
+					common++;
+				}
+			}
+			length = shared + restLength;
+			position += restLength;
+		}
+
+		return prefix ? common == bytes.length : ( common == length ) && ( length == bytes.length );
+	}
+
+	/**
+	 * Walks the keys from one index to another, decoding each one from the one before.
+	 */
+	private final class KeyIterator implements Iterator<String> {
+
+		private final int to;
+		private int index;
+		private int position;
+		private byte[] key = new byte[64];
+		private int length;
+
+		private KeyIterator(int from, int to) {
+
+			this.to = to;
+			if ( from < to ) {
+				index = from - from % BUCKET_SIZE;
+				position = bucketOffsets[index / BUCKET_SIZE];
+				while ( index < from ) {
+					decode();
+				}
+			}
+			else {
+				index = to;
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return index < to;
+		}
+
+		@Override
+		public String next() {
+
+			if ( index >= to ) {
+				throw new NoSuchElementException();
+			}
+
+			decode();
+
+			return KeyBits.decode( key, 0, length );
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException( "removal is not supported" );
+		}
+
+		private void decode() {
+
+			int shared = 0;
+			if ( index % BUCKET_SIZE != 0 ) {
+				long shift = varint( keys, position );
+				shared = (int) ( shift >>> 32 );
+				position = (int) shift;
+			}
+			long rest = varint( keys, position );
+			position = (int) rest;
+			int restLength = (int) ( rest >>> 32 );
+
+			length = shared + restLength;
+			if ( length > key.length ) {
+				key = Arrays.copyOf( key, Math.max( length, key.length << 1 ) );
+			}
+			System.arraycopy( keys, position, key, shared, restLength );
+			position += restLength;
+			index++;
+		}
+	}
+
+	private static byte[] frontCode(byte[][] sortedKeys, int n, int[] bucketOffsets) {
+
+		long capacity = 0;
+		for ( int i = 0; i < n; i++ ) {
+			capacity += sortedKeys[i].length + 10;
+		}
+		byte[] out = new byte[(int) Math.min( capacity, Integer.MAX_VALUE - 8 )];
+
+		int position = 0;
+		byte[] previous = null;
+		for ( int i = 0; i < n; i++ ) {
+			byte[] key = sortedKeys[i];
+			if ( out.length - position < key.length + 10 ) {
+				throw new IllegalStateException( "no room left for keys. size," + n );
+			}
+
+			int shared = 0;
+			if ( i % BUCKET_SIZE == 0 ) {
+				bucketOffsets[i / BUCKET_SIZE] = position;
+			}
+			else {
+				int max = Math.min( previous.length, key.length );
+				while ( ( shared < max ) && ( previous[shared] == key[shared] ) ) {
+					shared++;
+				}
+				position = putVarint( out, position, shared );
+			}
+			position = putVarint( out, position, key.length - shared );
+			System.arraycopy( key, shared, out, position, key.length - shared );
+			position += key.length - shared;
+			previous = key;
+		}
+
+		return Arrays.copyOf( out, position );
+	}
+
+	private static int putVarint(byte[] out, int position, int value) {
+
+		while ( ( value & ~0x7f ) != 0 ) {
+			out[position++] = (byte) ( ( value & 0x7f ) | 0x80 );
+			value >>>= 7;
+		}
+		out[position++] = (byte) value;
+
+		return position;
+	}
+
+	/**
+	 * Value of the varint at the position in the high int, position after it in the low int.
+	 */
+	private static long varint(byte[] in, int position) {
+
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = in[position++];
+			value |= ( b & 0x7f ) << shift;
+			shift += 7;
+		}
+		while ( b < 0 );
+
+		return ( (long) value << 32 ) | position;
+	}
+
+	private static int bitsFor(int max) {
+		return Math.max( 1, 32 - Integer.numberOfLeadingZeros( max ) );
+	}
+
+	/**
+	 * Non negative ints of a fixed number of bits, packed in longs.
+	 */
+	private static final class PackedInts {
+
+		private final long[] words;
+		private final int width;
+		private final long mask;
+
+		private PackedInts(int count, int width) {
+			this.width = width;
+			mask = ( 1L << width ) - 1;
+			words = new long[(int) ( ( (long) count * width + 63 ) >>> 6 ) + 1];
+		}
+
+		private int get(int index) {
+
+			long bit = (long) index * width;
+			int word = (int) ( bit >>> 6 );
+			int shift = (int) ( bit & 63 );
+			long value = words[word] >>> shift;
+			if ( shift + width > 64 ) {
+				value |= words[word + 1] << ( 64 - shift );
+			}
+
+			return (int) ( value & mask );
+		}
+
+		private void set(int index, int value) {
+
+			long bit = (long) index * width;
+			int word = (int) ( bit >>> 6 );
+			int shift = (int) ( bit & 63 );
+			words[word] |= ( value & mask ) << shift;
+			if ( shift + width > 64 ) {
+				words[word + 1] |= ( value & mask ) >>> ( 64 - shift );
+			}
+		}
+	}
+}
@@ -0,0 +1,254 @@
+package patricia.trie;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates the keys within an edit distance of a query, in bit order, walking the trie once.
+ *
+ * Keys under a downward node share the bits before its bit index, so they share the chars encoded in those bytes,
+ * which are read from the key of the node. Going down, the Levenshtein rows of the query against these shared
+ * chars are added once for the whole subtree, and the subtree is skipped as soon as no value of the last row is
+ * within the distance, since rows never get smaller. A key found through an upward pointer gets its remaining rows.
+ *
+ * The bits of a node past the last shared char also tell the first bits of the next char of every key under it. A
+ * query char with other bits can't match it, which gives a lower bound of the next row, often enough to skip the
+ * subtree one or more levels before its next char is shared.
+ *
+ * Distances count chars of the keys, not bytes. Rows are kept per char of the current path, so the rows shared by a
+ * node are still there when the walk comes back to its other pointer.
+ */
+final class FuzzyIterator implements Iterator<String> {
+
+	private final char[] query;
+	// UTF-8 encoding of each char of the query in the high bytes of an int
+	private final int[] queryBits;
+	private final int maxEdits;
+	// rows[i][j] is the distance between the first i chars of the path and the first j chars of the query
+	private int[][] rows;
+	private final int[] bound;
+	// bytes encoding the chars returned by the last call of sharedChars
+	private int sharedBytes;
+	// pointers still to be visited, with the number of chars shared by the keys under their node
+	private Node[] nodes = new Node[64];
+	private int[] sides = new int[64];
+	private int[] chars = new int[64];
+	private int depth;
+	private String next;
+	private int visited;
+
+	FuzzyIterator(Node root, String query, int maxEdits) {
+
+		this.query = query.toCharArray();
+		this.maxEdits = maxEdits;
+		queryBits = new int[this.query.length];
+		for ( int j = 0; j < queryBits.length; j++ ) {
+			queryBits[j] = encode( this.query[j] );
+		}
+		bound = new int[this.query.length + 1];
+		rows = new int[16][];
+		rows[0] = new int[this.query.length + 1];
+		for ( int j = 0; j <= this.query.length; j++ ) {
+			rows[0][j] = j;
+		}
+
+		if ( root != null ) {
+			visited++;
+			int shared = sharedChars( root.getKey(), root.getBitIndex() >>> 3 );
+			if ( extend( root.getKey(), 0, shared ) && canMatchNext( root.getKey(), shared, root.getBitIndex() ) ) {
+				push( root, TrieCursor.RIGHT, shared );
+				push( root, TrieCursor.LEFT, shared );
+			}
+		}
+		advance();
+	}
+
+	@Override
+	public boolean hasNext() {
+		return next != null;
+	}
+
+	@Override
+	public String next() {
+
+		if ( next == null ) {
+			throw new NoSuchElementException();
+		}
+
+		String key = next;
+		advance();
+
+		return key;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException( "removal is not supported" );
+	}
+
+	/**
+	 * Number of nodes reached so far.
+	 *
+	 * @return
+	 */
+	int getVisited() {
+		return visited;
+	}
+
+	private void advance() {
+
+		next = null;
+		while ( ( next == null ) && ( depth > 0 ) ) {
+			depth--;
+			Node node = nodes[depth];
+			int from = chars[depth];
+			Node child = TrieCursor.getChild( node, sides[depth] );
+			if ( child == null ) {
+				continue;
+			}
+
+			visited++;
+			String key = child.getKey();
+			if ( TrieCursor.isDownward( node, child ) ) {
+				int shared = sharedChars( key, child.getBitIndex() >>> 3 );
+				if ( extend( key, from, shared ) && canMatchNext( key, shared, child.getBitIndex() ) ) {
+					push( child, TrieCursor.RIGHT, shared );
+					push( child, TrieCursor.LEFT, shared );
+				}
+			}
+			else if ( extend( key, from, key.length() ) && ( rows[key.length()][query.length] <= maxEdits ) ) {
+				next = key;
+			}
+		}
+	}
+
+	/**
+	 * Computes the rows for the chars of the key from index from to index to. Returns false as soon as a row has no
+	 * value within the distance.
+	 */
+	private boolean extend(String key, int from, int to) {
+
+		if ( to >= rows.length ) {
+			rows = Arrays.copyOf( rows, Math.max( rows.length << 1, to + 1 ) );
+		}
+
+		for ( int i = from + 1; i <= to; i++ ) {
+			int[] previous = rows[i - 1];
+			int[] row = rows[i];
+			if ( row == null ) {
+				row = new int[query.length + 1];
+				rows[i] = row;
+			}
+
+			char c = key.charAt( i - 1 );
+			row[0] = i;
+			int min = i;
+			for ( int j = 1; j <= query.length; j++ ) {
+				int cost = query[j - 1] == c ? 0 : 1;
+				row[j] = Math.min( Math.min( row[j - 1], previous[j] ) + 1, previous[j - 1] + cost );
+				min = Math.min( min, row[j] );
+			}
+
+			if ( min > maxEdits ) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Checks the lower bound of the row for the char of the key after the shared ones, whose bits are known up to
+	 * the bit index of the node. Keys ending after the shared chars are only possible if all these bits are 0.
+	 */
+	private boolean canMatchNext(String key, int shared, int bitIndex) {
+
+		int known = bitIndex - ( sharedBytes << 3 );
+		if ( ( known == 0 ) || ( shared == key.length() ) || Character.isSurrogate( key.charAt( shared ) ) ) {
+			return true;
+		}
+
+		int mask = -1 << ( 32 - known );
+		int bits = encode( key.charAt( shared ) ) & mask;
+		if ( bits == 0 ) {
+			return true;
+		}
+
+		int[] previous = rows[shared];
+		bound[0] = shared + 1;
+		int min = bound[0];
+		for ( int j = 1; j <= query.length; j++ ) {
+			int cost = ( ( queryBits[j - 1] & mask ) == bits ) || Character.isSurrogate( query[j - 1] ) ? 0 : 1;
+			bound[j] = Math.min( Math.min( bound[j - 1], previous[j] ) + 1, previous[j - 1] + cost );
+			min = Math.min( min, bound[j] );
+		}
+
+		return min <= maxEdits;
+	}
+
+	private void push(Node node, int side, int shared) {
+
+		if ( depth == nodes.length ) {
+			nodes = Arrays.copyOf( nodes, depth << 1 );
+			sides = Arrays.copyOf( sides, depth << 1 );
+			chars = Arrays.copyOf( chars, depth << 1 );
+		}
+
+		nodes[depth] = node;
+		sides[depth] = side;
+		chars[depth++] = shared;
+	}
+
+	/**
+	 * Number of chars of the key encoded within its first bytes.
+	 */
+	private int sharedChars(String key, int bytes) {
+
+		int length = 0;
+		int i = 0;
+		while ( i < key.length() ) {
+			char c = key.charAt( i );
+			int count = 1;
+			int encoded;
+			if ( c < 0x80 ) {
+				encoded = 1;
+			}
+			else if ( c < 0x800 ) {
+				encoded = 2;
+			}
+			else if ( Character.isHighSurrogate( c ) && ( i + 1 < key.length() )
+					&& Character.isLowSurrogate( key.charAt( i + 1 ) ) ) {
+				encoded = 4;
+				count = 2;
+			}
+			else {
+				encoded = Character.isSurrogate( c ) ? 1 : 3;
+			}
+
+			if ( length + encoded > bytes ) {
+				break;
+			}
+			length += encoded;
+			i += count;
+		}
+		sharedBytes = length;
+
+		return i;
+	}
+
+	/**
+	 * UTF-8 encoding of a char which is not a surrogate, in the high bytes.
+	 */
+	private static int encode(char c) {
+
+		if ( c < 0x80 ) {
+			return c << 24;
+		}
+		if ( c < 0x800 ) {
+			return ( 0xc0 | ( c >>> 6 ) ) << 24 | ( 0x80 | ( c & 0x3f ) ) << 16;
+		}
+
+		return ( 0xe0 | ( c >>> 12 ) ) << 24 | ( 0x80 | ( ( c >>> 6 ) & 0x3f ) ) << 16 | ( 0x80 | ( c & 0x3f ) ) << 8;
+	}
+}
@@ -0,0 +1,199 @@
+package patricia.trie;
+
+/**
+ * Patricia trie of 128 bit keys given as two longs, e.g. IPv6 addresses or UUIDs. Keys are compared as unsigned 128
+ * bit values, high first, bit 0 being the most significant bit of high. Reading a bit is a shift and the first
+ * differing bit of two keys is the number of leading zeros of the xor of their first differing halves. Keys are
+ * never boxed.
+ *
+ * Inserts and searches work like {@link PatriciaTrie}.
+ */
+public class Int128PatriciaTrie {
+
+	private static final int WIDTH = 128;
+
+	private Int128Node head;
+	private int size;
+
+	public Int128PatriciaTrie() {
+
+	}
+
+	/**
+	 * Inserts the key.
+	 *
+	 * @param high
+	 *            Most significant 64 bits of the key.
+	 * @param low
+	 *            Least significant 64 bits of the key.
+	 * @return true if the key has been inserted, false if it was already there.
+	 */
+	public boolean insert(long high, long low) {
+
+		if ( head == null ) {
+			head = new Int128Node( high, low, firstDiff( high, low, 0L, 0L ) );
+			head.right = head;
+			size = 1;
+
+			return true;
+		}
+
+		Int128Node closest = findClosest( high, low );
+		int diffIndex = firstDiff( closest.high, closest.low, high, low );
+		if ( diffIndex >= WIDTH ) {
+			return false;
+		}
+
+		doInsert( high, low, diffIndex );
+		size++;
+
+		return true;
+	}
+
+	public boolean search(long high, long low) {
+
+		if ( head == null ) {
+			return false;
+		}
+
+		Int128Node closest = findClosest( high, low );
+
+		return ( closest.high == high ) && ( closest.low == low );
+	}
+
+	/**
+	 * Number of keys in the trie.
+	 *
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return head == null;
+	}
+
+	public void clear() {
+		head = null;
+		size = 0;
+	}
+
+	/**
+	 * Descends from head along the bits of the key until an upward pointer and returns the node it points to.
+	 */
+	private Int128Node findClosest(long high, long low) {
+
+		Int128Node node = head;
+		Int128Node next = getChild( node, high, low );
+		while ( ( next != null ) && ( node.bitIndex < next.bitIndex ) ) {
+			node = next;
+			next = getChild( node, high, low );
+		}
+
+		return next == null ? node : next;
+	}
+
+	/**
+	 * Links a new node discriminating at diffIndex into the path of the key.
+	 */
+	private void doInsert(long high, long low, int diffIndex) {
+
+		Int128Node newNode = new Int128Node( high, low, diffIndex );
+
+		if ( diffIndex < head.bitIndex ) {
+			// all of the keys share the bits before the head bit index. new node comes above head.
+			setPointToItself( newNode, head, diffIndex );
+			head.parent = newNode;
+			head = newNode;
+
+			return;
+		}
+
+		Int128Node node = head;
+		Int128Node next = getChild( node, high, low );
+		// a node at diffIndex has an empty pointer on the key side, the first head's left one
+		while ( ( next != null ) && ( node.bitIndex < next.bitIndex ) && ( next.bitIndex <= diffIndex ) ) {
+			node = next;
+			next = getChild( node, high, low );
+		}
+
+		newNode.parent = node;
+		if ( next == null ) {
+			// empty left pointer of the first head. the new node is only reachable as an upward pointer from it.
+			setPointToItself( newNode, node, diffIndex );
+		}
+		else {
+			setPointToItself( newNode, next, diffIndex );
+
+			if ( node.bitIndex < next.bitIndex ) {
+				// new node comes between node and next
+				next.parent = newNode;
+			}
+		}
+
+		if ( bitAt( high, low, node.bitIndex ) == 0 ) {
+			node.left = newNode;
+		}
+		else {
+			node.right = newNode;
+		}
+	}
+
+	private static void setPointToItself(Int128Node node, Int128Node other, int diffIndex) {
+
+		if ( bitAt( node.high, node.low, diffIndex ) == 0 ) {
+			node.left = node;
+			node.right = other;
+		}
+		else {
+			node.right = node;
+			node.left = other;
+		}
+	}
+
+	private static Int128Node getChild(Int128Node node, long high, long low) {
+		return bitAt( high, low, node.bitIndex ) == 0 ? node.left : node.right;
+	}
+
+	/**
+	 * Returns 0 or 1. Any bit beyond the key is 0.
+	 */
+	static int bitAt(long high, long low, int bitIndex) {
+
+		if ( bitIndex < 64 ) {
+			return (int) ( high >>> ( 63 - bitIndex ) ) & 1;
+		}
+
+		return bitIndex < WIDTH ? (int) ( low >>> ( WIDTH - 1 - bitIndex ) ) & 1 : 0;
+	}
+
+	/**
+	 * First bit index at which the keys differ, or 128 if they are the same.
+	 */
+	static int firstDiff(long high, long low, long otherHigh, long otherLow) {
+
+		long diff = high ^ otherHigh;
+		if ( diff != 0 ) {
+			return Long.numberOfLeadingZeros( diff );
+		}
+
+		return 64 + Long.numberOfLeadingZeros( low ^ otherLow );
+	}
+
+	private static final class Int128Node {
+
+		private final long high;
+		private final long low;
+		private final int bitIndex;
+		private Int128Node parent;
+		private Int128Node left;
+		private Int128Node right;
+
+		Int128Node(long high, long low, int bitIndex) {
+			this.high = high;
+			this.low = low;
+			this.bitIndex = bitIndex;
+		}
+	}
+}
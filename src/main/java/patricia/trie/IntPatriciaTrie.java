@@ -0,0 +1,174 @@
+package patricia.trie;
+
+/**
+ * Patricia trie of int keys, e.g. IPv4 addresses. Keys are compared as unsigned 32 bit values, bit 0 being the most
+ * significant one, so reading a bit is a shift and the first differing bit of two keys is the number of leading
+ * zeros of their xor. Keys are never boxed.
+ *
+ * Inserts and searches work like {@link PatriciaTrie}.
+ */
+public class IntPatriciaTrie {
+
+	private static final int WIDTH = 32;
+
+	private IntNode head;
+	private int size;
+
+	public IntPatriciaTrie() {
+
+	}
+
+	/**
+	 * Inserts the key.
+	 *
+	 * @param key
+	 * @return true if the key has been inserted, false if it was already there.
+	 */
+	public boolean insert(int key) {
+
+		if ( head == null ) {
+			head = new IntNode( key, Integer.numberOfLeadingZeros( key ) );
+			head.right = head;
+			size = 1;
+
+			return true;
+		}
+
+		int diffIndex = firstDiff( findClosest( key ).key, key );
+		if ( diffIndex >= WIDTH ) {
+			return false;
+		}
+
+		doInsert( key, diffIndex );
+		size++;
+
+		return true;
+	}
+
+	public boolean search(int key) {
+		return ( head != null ) && ( findClosest( key ).key == key );
+	}
+
+	/**
+	 * Number of keys in the trie.
+	 *
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return head == null;
+	}
+
+	public void clear() {
+		head = null;
+		size = 0;
+	}
+
+	/**
+	 * Descends from head along the bits of the key until an upward pointer and returns the node it points to.
+	 */
+	private IntNode findClosest(int key) {
+
+		IntNode node = head;
+		IntNode next = getChild( node, key );
+		while ( ( next != null ) && ( node.bitIndex < next.bitIndex ) ) {
+			node = next;
+			next = getChild( node, key );
+		}
+
+		return next == null ? node : next;
+	}
+
+	/**
+	 * Links a new node discriminating at diffIndex into the path of the key.
+	 */
+	private void doInsert(int key, int diffIndex) {
+
+		IntNode newNode = new IntNode( key, diffIndex );
+
+		if ( diffIndex < head.bitIndex ) {
+			// all of the keys share the bits before the head bit index. new node comes above head.
+			setPointToItself( newNode, head, diffIndex );
+			head.parent = newNode;
+			head = newNode;
+
+			return;
+		}
+
+		IntNode node = head;
+		IntNode next = getChild( node, key );
+		// a node at diffIndex has an empty pointer on the key side, the first head's left one
+		while ( ( next != null ) && ( node.bitIndex < next.bitIndex ) && ( next.bitIndex <= diffIndex ) ) {
+			node = next;
+			next = getChild( node, key );
+		}
+
+		newNode.parent = node;
+		if ( next == null ) {
+			// empty left pointer of the first head. the new node is only reachable as an upward pointer from it.
+			setPointToItself( newNode, node, diffIndex );
+		}
+		else {
+			setPointToItself( newNode, next, diffIndex );
+
+			if ( node.bitIndex < next.bitIndex ) {
+				// new node comes between node and next
+				next.parent = newNode;
+			}
+		}
+
+		if ( bitAt( key, node.bitIndex ) == 0 ) {
+			node.left = newNode;
+		}
+		else {
+			node.right = newNode;
+		}
+	}
+
+	private static void setPointToItself(IntNode node, IntNode other, int diffIndex) {
+
+		if ( bitAt( node.key, diffIndex ) == 0 ) {
+			node.left = node;
+			node.right = other;
+		}
+		else {
+			node.right = node;
+			node.left = other;
+		}
+	}
+
+	private static IntNode getChild(IntNode node, int key) {
+		return bitAt( key, node.bitIndex ) == 0 ? node.left : node.right;
+	}
+
+	/**
+	 * Returns 0 or 1. Any bit beyond the key is 0.
+	 */
+	static int bitAt(int key, int bitIndex) {
+		return bitIndex < WIDTH ? ( key >>> ( WIDTH - 1 - bitIndex ) ) & 1 : 0;
+	}
+
+	/**
+	 * First bit index at which the keys differ, or 32 if they are the same.
+	 */
+	static int firstDiff(int key, int other) {
+		return Integer.numberOfLeadingZeros( key ^ other );
+	}
+
+	private static final class IntNode {
+
+		private final int key;
+		private final int bitIndex;
+		private IntNode parent;
+		private IntNode left;
+		private IntNode right;
+
+		IntNode(int key, int bitIndex) {
+			this.key = key;
+			this.bitIndex = bitIndex;
+		}
+	}
+}
@@ -0,0 +1,395 @@
+package patricia.trie;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads key bits straight from the encoded key bytes. Bit 0 is the most significant bit of the first byte. Keys are
+ * treated as if they were padded with zero bits on the right so that keys of different length can be compared.
+ * Keys are encoded in UTF-8 whatever the platform, so bit order is the same on every host. None of the methods but
+ * the encoding and decoding ones allocate.
+ */
+final class KeyBits {
+
+	private KeyBits() {
+
+	}
+
+	/**
+	 * Encodes the given key the same way for every node and every search key.
+	 *
+	 * @param str
+	 * @return
+	 */
+	static byte[] encode(String str) {
+		return str.getBytes( StandardCharsets.UTF_8 );
+	}
+
+	/**
+	 * Same as {@link #encode(String)} without turning the chars into a String first. Unpaired surrogates are encoded
+	 * as '?' like String does.
+	 *
+	 * @param chars
+	 * @return
+	 */
+	static byte[] encode(CharSequence chars) {
+
+		if ( chars instanceof String ) {
+			return encode( (String) chars );
+		}
+
+		int length = 0;
+		for ( int i = 0; i < chars.length(); i++ ) {
+			char c = chars.charAt( i );
+			if ( c < 0x80 ) {
+				length++;
+			}
+			else if ( c < 0x800 ) {
+				length += 2;
+			}
+			else if ( isSurrogatePair( chars, i ) ) {
+				length += 4;
+				i++;
+			}
+			else {
+				length += Character.isSurrogate( c ) ? 1 : 3;
+			}
+		}
+
+		byte[] bytes = new byte[length];
+		int index = 0;
+		for ( int i = 0; i < chars.length(); i++ ) {
+			char c = chars.charAt( i );
+			if ( c < 0x80 ) {
+				bytes[index++] = (byte) c;
+			}
+			else if ( c < 0x800 ) {
+				bytes[index++] = (byte) ( 0xc0 | ( c >>> 6 ) );
+				bytes[index++] = (byte) ( 0x80 | ( c & 0x3f ) );
+			}
+			else if ( isSurrogatePair( chars, i ) ) {
+				int codePoint = Character.toCodePoint( c, chars.charAt( ++i ) );
+				bytes[index++] = (byte) ( 0xf0 | ( codePoint >>> 18 ) );
+				bytes[index++] = (byte) ( 0x80 | ( ( codePoint >>> 12 ) & 0x3f ) );
+				bytes[index++] = (byte) ( 0x80 | ( ( codePoint >>> 6 ) & 0x3f ) );
+				bytes[index++] = (byte) ( 0x80 | ( codePoint & 0x3f ) );
+			}
+			else if ( Character.isSurrogate( c ) ) {
+				bytes[index++] = '?';
+			}
+			else {
+				bytes[index++] = (byte) ( 0xe0 | ( c >>> 12 ) );
+				bytes[index++] = (byte) ( 0x80 | ( ( c >>> 6 ) & 0x3f ) );
+				bytes[index++] = (byte) ( 0x80 | ( c & 0x3f ) );
+			}
+		}
+
+		return bytes;
+	}
+
+	/**
+	 * Decodes a key encoded by {@link #encode(String)}.
+	 *
+	 * @param bytes
+	 * @param offset
+	 * @param length
+	 * @return
+	 */
+	static String decode(byte[] bytes, int offset, int length) {
+		return new String( bytes, offset, length, StandardCharsets.UTF_8 );
+	}
+
+	/**
+	 * Returns 0 or 1. Any bit beyond the end of the key is 0.
+	 *
+	 * @param key
+	 * @param bitIndex
+	 * @return
+	 */
+	static int bitAt(byte[] key, int bitIndex) {
+		return bitAt( key, 0, key.length, bitIndex );
+	}
+
+	/**
+	 * Same as {@link #bitAt(byte[], int)} for the key stored in bytes from offset, length bytes long.
+	 *
+	 * @param bytes
+	 * @param offset
+	 * @param length
+	 * @param bitIndex
+	 * @return
+	 */
+	static int bitAt(byte[] bytes, int offset, int length, int bitIndex) {
+
+		if ( ( bitIndex >= 0 ) && ( bitIndex < ( length << 3 ) ) ) {
+			return ( bytes[offset + ( bitIndex >>> 3 )] >>> ( 7 - ( bitIndex & 7 ) ) ) & 1;
+		}
+
+		return 0;
+	}
+
+	/**
+	 * Same as {@link #bitAt(byte[], int)} for the key stored in a buffer from offset, length bytes long. Reads the
+	 * buffer with an absolute get.
+	 *
+	 * @param buffer
+	 * @param offset
+	 * @param length
+	 * @param bitIndex
+	 * @return
+	 */
+	static int bitAt(ByteBuffer buffer, int offset, int length, int bitIndex) {
+
+		if ( ( bitIndex >= 0 ) && ( bitIndex < ( length << 3 ) ) ) {
+			return ( buffer.get( offset + ( bitIndex >>> 3 ) ) >>> ( 7 - ( bitIndex & 7 ) ) ) & 1;
+		}
+
+		return 0;
+	}
+
+	/**
+	 * Returns the first bit index at which the two keys differ. If they don't differ, the length in bits of the
+	 * longer key is returned.
+	 *
+	 * @param nodeKey
+	 * @param searchKey
+	 * @return
+	 */
+	static int firstDiff(byte[] nodeKey, byte[] searchKey) {
+		return firstDiff( nodeKey, 0, nodeKey.length, searchKey, 0, searchKey.length );
+	}
+
+	/**
+	 * Same as {@link #firstDiff(byte[], byte[])} for keys stored in larger arrays from an offset.
+	 *
+	 * @param nodeBytes
+	 * @param nodeOffset
+	 * @param nodeLength
+	 * @param searchBytes
+	 * @param searchOffset
+	 * @param searchLength
+	 * @return
+	 */
+	static int firstDiff(byte[] nodeBytes, int nodeOffset, int nodeLength, byte[] searchBytes, int searchOffset,
+			int searchLength) {
+
+		int length = Math.max( nodeLength, searchLength );
+		int i = 0;
+		for ( ; i + 8 <= length; i += 8 ) {
+			long diff = wordAt( nodeBytes, nodeOffset, nodeLength, i )
+					^ wordAt( searchBytes, searchOffset, searchLength, i );
+			if ( diff != 0 ) {
+				return ( i << 3 ) + Long.numberOfLeadingZeros( diff );
+			}
+		}
+
+		for ( ; i < length; i++ ) {
+			int diff = ( byteAt( nodeBytes, nodeOffset, nodeLength, i ) ^ byteAt( searchBytes, searchOffset,
+					searchLength, i ) ) & 0xff;
+			if ( diff != 0 ) {
+				return ( i << 3 ) + Integer.numberOfLeadingZeros( diff ) - 24;
+			}
+		}
+
+		return length << 3;
+	}
+
+	/**
+	 * Same as {@link #firstDiff(byte[], byte[])} for a node key stored in a buffer from offset, length bytes long.
+	 * Reads the buffer with absolute gets, so buffers can be shared between threads.
+	 *
+	 * @param nodeBuffer
+	 * @param nodeOffset
+	 * @param nodeLength
+	 * @param searchKey
+	 * @return
+	 */
+	static int firstDiff(ByteBuffer nodeBuffer, int nodeOffset, int nodeLength, byte[] searchKey) {
+
+		int length = Math.max( nodeLength, searchKey.length );
+		int i = 0;
+		for ( ; i + 8 <= length; i += 8 ) {
+			long word = 0;
+			if ( i + 8 <= nodeLength ) {
+				word = nodeBuffer.getLong( nodeOffset + i );
+			}
+			else {
+				for ( int j = 0; j < 8; j++ ) {
+					word = ( word << 8 ) | ( ( i + j < nodeLength ? nodeBuffer.get( nodeOffset + i + j ) : 0 ) & 0xffL );
+				}
+			}
+
+			long diff = word ^ wordAt( searchKey, 0, searchKey.length, i );
+			if ( diff != 0 ) {
+				return ( i << 3 ) + Long.numberOfLeadingZeros( diff );
+			}
+		}
+
+		for ( ; i < length; i++ ) {
+			int b = i < nodeLength ? nodeBuffer.get( nodeOffset + i ) : 0;
+			int diff = ( b ^ byteAt( searchKey, 0, searchKey.length, i ) ) & 0xff;
+			if ( diff != 0 ) {
+				return ( i << 3 ) + Integer.numberOfLeadingZeros( diff ) - 24;
+			}
+		}
+
+		return length << 3;
+	}
+
+	/**
+	 * Returns true if the key stored in the buffer from offset, length bytes long, has the same bytes as the given
+	 * key. Reads byte by byte, so the byte order of the buffer doesn't matter.
+	 *
+	 * @param buffer
+	 * @param offset
+	 * @param length
+	 * @param key
+	 * @return
+	 */
+	static boolean equals(ByteBuffer buffer, int offset, int length, byte[] key) {
+
+		if ( length != key.length ) {
+			return false;
+		}
+
+		for ( int i = 0; i < length; i++ ) {
+			if ( buffer.get( offset + i ) != key[i] ) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Compares keys in bit order, which is the unsigned lexicographic order of the encoded bytes. Keys only
+	 * differing in trailing zero bytes are the same.
+	 *
+	 * @param key
+	 * @param other
+	 * @return
+	 */
+	static int compare(byte[] key, byte[] other) {
+
+		int diffIndex = firstDiff( key, other );
+		if ( diffIndex >= ( Math.max( key.length, other.length ) << 3 ) ) {
+			return 0;
+		}
+
+		return bitAt( key, diffIndex ) - bitAt( other, diffIndex );
+	}
+
+	/**
+	 * Returns true if the key starts with all of the bytes of the prefix.
+	 *
+	 * @param key
+	 * @param prefix
+	 * @return
+	 */
+	static boolean startsWith(byte[] key, byte[] prefix) {
+		return startsWith( key, 0, key.length, prefix );
+	}
+
+	/**
+	 * Same as {@link #startsWith(byte[], byte[])} for the key stored in bytes from offset, length bytes long.
+	 *
+	 * @param bytes
+	 * @param offset
+	 * @param length
+	 * @param prefix
+	 * @return
+	 */
+	static boolean startsWith(byte[] bytes, int offset, int length, byte[] prefix) {
+
+		if ( length < prefix.length ) {
+			return false;
+		}
+
+		for ( int i = 0; i < prefix.length; i++ ) {
+			if ( bytes[offset + i] != prefix[i] ) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Same as {@link #startsWith(byte[], byte[])} for the key stored in a buffer from offset, length bytes long.
+	 *
+	 * @param buffer
+	 * @param offset
+	 * @param length
+	 * @param prefix
+	 * @return
+	 */
+	static boolean startsWith(ByteBuffer buffer, int offset, int length, byte[] prefix) {
+
+		if ( length < prefix.length ) {
+			return false;
+		}
+
+		for ( int i = 0; i < prefix.length; i++ ) {
+			if ( buffer.get( offset + i ) != prefix[i] ) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Returns the index of the left most one bit, or the length of the key in bits if the key has no one bits.
+	 *
+	 * @param key
+	 * @return
+	 */
+	static int leftMostOneBit(byte[] key) {
+
+		for ( int i = 0; i < key.length; i++ ) {
+			int b = key[i] & 0xff;
+			if ( b != 0 ) {
+				return ( i << 3 ) + Integer.numberOfLeadingZeros( b ) - 24;
+			}
+		}
+
+		return key.length << 3;
+	}
+
+	/**
+	 * Returns true if the key has a one bit. A key of zero bytes has the same bits as the empty key, so it can't be
+	 * told apart from it and is not a valid key.
+	 *
+	 * @param key
+	 * @return
+	 */
+	static boolean hasOneBit(byte[] key) {
+		return leftMostOneBit( key ) < ( key.length << 3 );
+	}
+
+	private static boolean isSurrogatePair(CharSequence chars, int index) {
+		return Character.isHighSurrogate( chars.charAt( index ) ) && ( index + 1 < chars.length() )
+				&& Character.isLowSurrogate( chars.charAt( index + 1 ) );
+	}
+
+	private static int byteAt(byte[] bytes, int offset, int length, int index) {
+		return index < length ? bytes[offset + index] : 0;
+	}
+
+	private static long wordAt(byte[] bytes, int offset, int length, int index) {
+
+		long word = 0;
+		if ( index + 8 <= length ) {
+			for ( int i = 0; i < 8; i++ ) {
+				word = ( word << 8 ) | ( bytes[offset + index + i] & 0xffL );
+			}
+		}
+		else {
+			for ( int i = 0; i < 8; i++ ) {
+				word = ( word << 8 ) | ( byteAt( bytes, offset, length, index + i ) & 0xffL );
+			}
+		}
+
+		return word;
+	}
+}
@@ -0,0 +1,174 @@
+package patricia.trie;
+
+/**
+ * Patricia trie of long keys, e.g. numeric identifiers. Keys are compared as unsigned 64 bit values, bit 0 being the
+ * most significant one, so reading a bit is a shift and the first differing bit of two keys is the number of leading
+ * zeros of their xor. Keys are never boxed.
+ *
+ * Inserts and searches work like {@link PatriciaTrie}.
+ */
+public class LongPatriciaTrie {
+
+	private static final int WIDTH = 64;
+
+	private LongNode head;
+	private int size;
+
+	public LongPatriciaTrie() {
+
+	}
+
+	/**
+	 * Inserts the key.
+	 *
+	 * @param key
+	 * @return true if the key has been inserted, false if it was already there.
+	 */
+	public boolean insert(long key) {
+
+		if ( head == null ) {
+			head = new LongNode( key, Long.numberOfLeadingZeros( key ) );
+			head.right = head;
+			size = 1;
+
+			return true;
+		}
+
+		int diffIndex = firstDiff( findClosest( key ).key, key );
+		if ( diffIndex >= WIDTH ) {
+			return false;
+		}
+
+		doInsert( key, diffIndex );
+		size++;
+
+		return true;
+	}
+
+	public boolean search(long key) {
+		return ( head != null ) && ( findClosest( key ).key == key );
+	}
+
+	/**
+	 * Number of keys in the trie.
+	 *
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return head == null;
+	}
+
+	public void clear() {
+		head = null;
+		size = 0;
+	}
+
+	/**
+	 * Descends from head along the bits of the key until an upward pointer and returns the node it points to.
+	 */
+	private LongNode findClosest(long key) {
+
+		LongNode node = head;
+		LongNode next = getChild( node, key );
+		while ( ( next != null ) && ( node.bitIndex < next.bitIndex ) ) {
+			node = next;
+			next = getChild( node, key );
+		}
+
+		return next == null ? node : next;
+	}
+
+	/**
+	 * Links a new node discriminating at diffIndex into the path of the key.
+	 */
+	private void doInsert(long key, int diffIndex) {
+
+		LongNode newNode = new LongNode( key, diffIndex );
+
+		if ( diffIndex < head.bitIndex ) {
+			// all of the keys share the bits before the head bit index. new node comes above head.
+			setPointToItself( newNode, head, diffIndex );
+			head.parent = newNode;
+			head = newNode;
+
+			return;
+		}
+
+		LongNode node = head;
+		LongNode next = getChild( node, key );
+		// a node at diffIndex has an empty pointer on the key side, the first head's left one
+		while ( ( next != null ) && ( node.bitIndex < next.bitIndex ) && ( next.bitIndex <= diffIndex ) ) {
+			node = next;
+			next = getChild( node, key );
+		}
+
+		newNode.parent = node;
+		if ( next == null ) {
+			// empty left pointer of the first head. the new node is only reachable as an upward pointer from it.
+			setPointToItself( newNode, node, diffIndex );
+		}
+		else {
+			setPointToItself( newNode, next, diffIndex );
+
+			if ( node.bitIndex < next.bitIndex ) {
+				// new node comes between node and next
+				next.parent = newNode;
+			}
+		}
+
+		if ( bitAt( key, node.bitIndex ) == 0 ) {
+			node.left = newNode;
+		}
+		else {
+			node.right = newNode;
+		}
+	}
+
+	private static void setPointToItself(LongNode node, LongNode other, int diffIndex) {
+
+		if ( bitAt( node.key, diffIndex ) == 0 ) {
+			node.left = node;
+			node.right = other;
+		}
+		else {
+			node.right = node;
+			node.left = other;
+		}
+	}
+
+	private static LongNode getChild(LongNode node, long key) {
+		return bitAt( key, node.bitIndex ) == 0 ? node.left : node.right;
+	}
+
+	/**
+	 * Returns 0 or 1. Any bit beyond the key is 0.
+	 */
+	static int bitAt(long key, int bitIndex) {
+		return bitIndex < WIDTH ? (int) ( ( key >>> ( WIDTH - 1 - bitIndex ) ) & 1 ) : 0;
+	}
+
+	/**
+	 * First bit index at which the keys differ, or 64 if they are the same.
+	 */
+	static int firstDiff(long key, long other) {
+		return Long.numberOfLeadingZeros( key ^ other );
+	}
+
+	private static final class LongNode {
+
+		private final long key;
+		private final int bitIndex;
+		private LongNode parent;
+		private LongNode left;
+		private LongNode right;
+
+		LongNode(long key, int bitIndex) {
+			this.key = key;
+			this.bitIndex = bitIndex;
+		}
+	}
+}
@@ -1,34 +1,27 @@
 package patricia.trie;
 
-public class Node {
+import java.nio.ByteBuffer;
+
+/**
+ * Node of a trie. The parent, left and right pointers are kept by subclasses: {@link PlainNode} in plain fields,
+ * ConcurrentPatriciaTrie nodes in volatile ones, so that a node only has the fields of its kind.
+ */
+public abstract class Node {
 
 	private int bitIndex;
-	private Node parent;
-	private Node left;
-	private Node right;
 	private String key;
-
-	public Node(int bitIndex, Node parent, Node left, Node right, String key) {
-		this.bitIndex = bitIndex;
-		this.parent = parent;
-		this.left = left;
-		this.right = right;
-		this.key = key;
-	}
-
-	public Node(int bitIndex, Node parent, String key) {
-		this.parent = parent;
-		this.bitIndex = bitIndex;
-		this.key = key;
-	}
+	private byte[] keyBytes;
+	private int count;
+	// only kept up to date while metrics are enabled, see TrieMetrics
+	private int height;
 
 	public Node(int bitIndex, String key) {
 		this.bitIndex = bitIndex;
-		this.key = key;
+		setKey( key );
 	}
 
 	public Node(String key) {
-		this.key = key;
+		setKey( key );
 	}
 
 	public Node() {
@@ -43,49 +36,183 @@ public class Node {
 		this.bitIndex = bitIndex;
 	}
 
-	public Node getParent() {
-		return parent;
+	public abstract Node getParent();
+
+	public abstract void setParent(Node parent);
+
+	public abstract Node getLeft();
+
+	public abstract void setLeft(Node left);
+
+	public abstract Node getRight();
+
+	public abstract void setRight(Node right);
+
+	public String getKey() {
+		return key;
 	}
 
-	public void setParent(Node parent) {
-		this.parent = parent;
+	public void setKey(String key) {
+		this.key = key;
+		this.keyBytes = key == null ? null : KeyBits.encode( key );
 	}
 
-	public Node getLeft() {
-		return left;
+	/**
+	 * Sets the key together with its already encoded bytes, which must be {@link KeyBits#encode(String)} of it.
+	 *
+	 * @param key
+	 * @param keyBytes
+	 */
+	void setKey(String key, byte[] keyBytes) {
+		this.key = key;
+		this.keyBytes = keyBytes;
 	}
 
-	public void setLeft(Node left) {
-		this.left = left;
+	/**
+	 * Encoded form of the key which bits are read from. Must not be modified.
+	 *
+	 * @return
+	 */
+	byte[] getKeyBytes() {
+		return keyBytes;
 	}
 
-	public Node getRight() {
-		return right;
+	/**
+	 * Length of the encoded key. The methods reading the key from here on don't need the encoded key as one array,
+	 * so that a subclass keeping it in pieces can read them in place.
+	 *
+	 * @return
+	 */
+	int getKeyLength() {
+		return keyBytes.length;
 	}
 
-	public void setRight(Node right) {
-		this.right = right;
+	/**
+	 * Bit of the encoded key, 0 past its end.
+	 *
+	 * @param bitIndex
+	 * @return
+	 */
+	int keyBitAt(int bitIndex) {
+		return KeyBits.bitAt( keyBytes, bitIndex );
 	}
 
-	public String getKey() {
-		return key;
+	/**
+	 * Same as {@link KeyBits#firstDiff(byte[], int, int, byte[], int, int)} between the encoded key and the key
+	 * stored in bytes from offset, length bytes long.
+	 *
+	 * @param bytes
+	 * @param offset
+	 * @param length
+	 * @return
+	 */
+	int firstDiff(byte[] bytes, int offset, int length) {
+		return KeyBits.firstDiff( keyBytes, 0, keyBytes.length, bytes, offset, length );
 	}
 
-	public void setKey(String key) {
-		this.key = key;
+	/**
+	 * Returns true if the encoded key is the key stored in bytes from offset, length bytes long.
+	 *
+	 * @param bytes
+	 * @param offset
+	 * @param length
+	 * @return
+	 */
+	boolean keyEquals(byte[] bytes, int offset, int length) {
+		return ( length == keyBytes.length ) && KeyBits.startsWith( bytes, offset, length, keyBytes );
+	}
+
+	/**
+	 * Same as {@link #keyEquals(byte[], int, int)} for a key stored in the buffer, read with absolute gets.
+	 *
+	 * @param buffer
+	 * @param offset
+	 * @param length
+	 * @return
+	 */
+	boolean keyEquals(ByteBuffer buffer, int offset, int length) {
+		return KeyBits.equals( buffer, offset, length, keyBytes );
+	}
+
+	/**
+	 * Returns true if the encoded key starts with the prefix bytes.
+	 *
+	 * @param prefixBytes
+	 * @return
+	 */
+	boolean startsWith(byte[] prefixBytes) {
+		return KeyBits.startsWith( keyBytes, prefixBytes );
+	}
+
+	/**
+	 * Same as {@link KeyBits#compare(byte[], byte[])} between the encoded key and the bytes.
+	 *
+	 * @param bytes
+	 * @return
+	 */
+	final int compareKey(byte[] bytes) {
+
+		int diffIndex = firstDiff( bytes, 0, bytes.length );
+		if ( diffIndex >= ( Math.max( getKeyLength(), bytes.length ) << 3 ) ) {
+			return 0;
+		}
+
+		return keyBitAt( diffIndex ) - KeyBits.bitAt( bytes, diffIndex );
+	}
+
+	/**
+	 * Returns true if the key is the searched one, given both as a String and as its encoded bytes.
+	 *
+	 * @param searchKey
+	 * @param searchBytes
+	 * @return
+	 */
+	boolean hasKey(String searchKey, byte[] searchBytes) {
+		return key.equals( searchKey );
+	}
+
+	/**
+	 * Number of keys found through the left and right pointers of this node.
+	 *
+	 * @return
+	 */
+	int getCount() {
+		return count;
+	}
+
+	void setCount(int count) {
+		this.count = count;
+	}
+
+	/**
+	 * Number of nodes on the longest downward path starting at this node, this node included. 0 for a node only
+	 * found through an upward pointer.
+	 *
+	 * @return
+	 */
+	int getHeight() {
+		return height;
+	}
+
+	void setHeight(int height) {
+		this.height = height;
 	}
 
 	public void copy(Node node) {
 
 		bitIndex = node.getBitIndex();
 		key = node.getKey();
-		parent = node.getParent();
-		left = node.getLeft();
-		right = node.getRight();
+		keyBytes = node.getKeyBytes();
+		count = node.getCount();
+		height = node.getHeight();
+		setParent( node.getParent() );
+		setLeft( node.getLeft() );
+		setRight( node.getRight() );
 	}
 
 	/**
-	 * Contains parent,current,left and right nodes.
+	 * Contains parent,current,left and right nodes. The nodes are copies, so this is meant for debugging. Use
+	 * {@link NodeView} to read them without copying.
 	 * 
 	 * @param node
 	 * @return
@@ -93,24 +220,27 @@ public class Node {
 	public Node[] getNodes() {
 
 		Node[] nodes = new Node[4];
+		Node parent = getParent();
+		Node left = getLeft();
+		Node right = getRight();
 		if ( parent != null ) {
-			nodes[0] = new Node( parent.getBitIndex(), parent.getKey() );
+			nodes[0] = new PlainNode( parent.getBitIndex(), parent.getKey() );
 		}
 		else {
 			nodes[0] = null;
 		}
 
-		nodes[1] = new Node( bitIndex, key );
+		nodes[1] = new PlainNode( bitIndex, getKey() );
 
 		if ( left != null ) {
-			nodes[2] = new Node( left.getBitIndex(), left.getKey() );
+			nodes[2] = new PlainNode( left.getBitIndex(), left.getKey() );
 		}
 		else {
 			nodes[2] = null;
 		}
 
 		if ( right != null ) {
-			nodes[3] = new Node( right.getBitIndex(), right.getKey() );
+			nodes[3] = new PlainNode( right.getBitIndex(), right.getKey() );
 		}
 		else {
 			nodes[3] = null;
@@ -125,7 +255,7 @@ public class Node {
 		if ( obj instanceof Node ) {
 			Node n = (Node) obj;
 
-			if ( ( bitIndex == n.getBitIndex() ) && ( key.equals( n.getKey() ) ) ) {
+			if ( ( bitIndex == n.getBitIndex() ) && ( getKey().equals( n.getKey() ) ) ) {
 				return true;
 			}
 
@@ -137,6 +267,6 @@ public class Node {
 
 	@Override
 	public String toString() {
-		return "{bitIndex=" + bitIndex + ", key=" + key + "}";
+		return "{bitIndex=" + bitIndex + ", key=" + getKey() + "}";
 	}
 }
@@ -0,0 +1,84 @@
+package patricia.trie;
+
+/**
+ * Reusable view over a node in the trie. Exposes the bit indexes and keys of the parent, current, left and right
+ * nodes without copying them. The view reads the live node, so it reflects later modifications of the trie.
+ *
+ * A missing node is reported as bit index -1 and key null.
+ */
+public class NodeView {
+
+	private Node node;
+
+	public NodeView() {
+
+	}
+
+	void set(Node node) {
+		this.node = node;
+	}
+
+	public void clear() {
+		node = null;
+	}
+
+	public boolean isEmpty() {
+		return node == null;
+	}
+
+	public int getBitIndex() {
+		return getBitIndex( node );
+	}
+
+	public String getKey() {
+		return getKey( node );
+	}
+
+	public int getParentBitIndex() {
+		return node == null ? -1 : getBitIndex( node.getParent() );
+	}
+
+	public String getParentKey() {
+		return node == null ? null : getKey( node.getParent() );
+	}
+
+	public int getLeftBitIndex() {
+		return node == null ? -1 : getBitIndex( node.getLeft() );
+	}
+
+	public String getLeftKey() {
+		return node == null ? null : getKey( node.getLeft() );
+	}
+
+	public int getRightBitIndex() {
+		return node == null ? -1 : getBitIndex( node.getRight() );
+	}
+
+	public String getRightKey() {
+		return node == null ? null : getKey( node.getRight() );
+	}
+
+	/**
+	 * Snapshot of parent,current,left and right nodes as returned by {@link PatriciaTrie#insert(String)}. Meant for
+	 * debugging since it copies the nodes.
+	 *
+	 * @return
+	 */
+	public Node[] getNodes() {
+		return node == null ? null : node.getNodes();
+	}
+
+	private int getBitIndex(Node n) {
+		return n == null ? -1 : n.getBitIndex();
+	}
+
+	private String getKey(Node n) {
+		return n == null ? null : n.getKey();
+	}
+
+	@Override
+	public String toString() {
+		return "{parent=" + getParentKey() + ", bitIndex=" + getBitIndex() + ", key=" + getKey() + ", left="
+				+ getLeftKey() + ", right=" + getRightKey() + "}";
+	}
+}
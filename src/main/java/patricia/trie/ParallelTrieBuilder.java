@@ -0,0 +1,339 @@
+package patricia.trie;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntConsumer;
+
+/**
+ * Builds the trie of keys sorted in bit order on a {@link ForkJoinPool}, the same trie as inserting them one by one
+ * in that order.
+ *
+ * In that trie the node of each key discriminates at the bit where the key differs from the previous one, and a
+ * node is under another one exactly when its bit index is greater and no key between them differs earlier: the
+ * nodes form a tree ordered by key position with the smallest bit index on top. Each run of keys builds that tree
+ * on its own, and two neighbouring runs are stitched by merging the right edge of the first with the left edge of
+ * the second by bit index. Only node indexes are moved while building, the nodes are linked at the end.
+ */
+final class ParallelTrieBuilder {
+
+	static final int CHUNK = 1 << 13;
+
+	private final ForkJoinPool pool;
+	private final int chunk;
+
+	private Node[] nodes;
+	private int[] bits;
+	private int[] left;
+	private int[] right;
+	private int[] parent;
+	private int[] first;
+	private int[] last;
+	private int size;
+
+	ParallelTrieBuilder(ForkJoinPool pool, int chunk) {
+		this.pool = pool;
+		this.chunk = chunk;
+	}
+
+	/**
+	 * Number of keys in the built trie.
+	 *
+	 * @return
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the head of the trie of the keys, or null if there is no valid key.
+	 *
+	 * @param sortedKeys
+	 * @return
+	 * @throws IllegalArgumentException
+	 *             if a key is smaller than the one before it.
+	 */
+	Node build(final String[] sortedKeys) {
+
+		nodes = new Node[sortedKeys.length];
+		bits = new int[sortedKeys.length];
+
+		forEach( sortedKeys.length, i -> {
+			if ( !isNullOrEmpty( sortedKeys[i] ) ) {
+				Node node = new PlainNode( sortedKeys[i] );
+				if ( KeyBits.hasOneBit( node.getKeyBytes() ) ) {
+					nodes[i] = node;
+				}
+			}
+		} );
+
+		final AtomicBoolean skipped = new AtomicBoolean();
+		forEach( sortedKeys.length, i -> {
+			bits[i] = diffWithPrevious( i );
+			if ( bits[i] < 0 ) {
+				skipped.set( true );
+			}
+		} );
+
+		if ( skipped.get() ) {
+			compact();
+		}
+
+		size = nodes.length;
+		if ( size == 0 ) {
+			return null;
+		}
+
+		left = new int[size];
+		right = new int[size];
+		parent = new int[size];
+		first = new int[size];
+		last = new int[size];
+
+		int root = pool.invoke( new BuildTask( 0, size ) );
+		parent[root] = -1;
+
+		forEach( size, i -> link( i ) );
+
+		return nodes[root];
+	}
+
+	/**
+	 * Bit index of the node of the key at i, or -1 if the key is skipped.
+	 */
+	private int diffWithPrevious(int i) {
+
+		if ( nodes[i] == null ) {
+			return -1;
+		}
+
+		byte[] keyBytes = nodes[i].getKeyBytes();
+		int previous = i - 1;
+		while ( ( previous >= 0 ) && ( nodes[previous] == null ) ) {
+			previous--;
+		}
+
+		if ( previous < 0 ) {
+			return KeyBits.leftMostOneBit( keyBytes );
+		}
+
+		byte[] previousBytes = nodes[previous].getKeyBytes();
+		int diffIndex = KeyBits.firstDiff( previousBytes, keyBytes );
+		if ( diffIndex >= ( Math.max( previousBytes.length, keyBytes.length ) << 3 ) ) {
+			// same bits as the previous key
+			return -1;
+		}
+
+		if ( KeyBits.bitAt( keyBytes, diffIndex ) == 0 ) {
+			throw new IllegalArgumentException( "keys are not sorted in bit order. key," + nodes[i].getKey() );
+		}
+
+		return diffIndex;
+	}
+
+	/**
+	 * Drops the skipped keys. A key after a skipped one differs from the key before at the same bit, so the bit
+	 * indexes stay.
+	 */
+	private void compact() {
+
+		int count = 0;
+		for ( int i = 0; i < nodes.length; i++ ) {
+			if ( bits[i] >= 0 ) {
+				nodes[count] = nodes[i];
+				bits[count++] = bits[i];
+			}
+		}
+
+		Node[] keptNodes = new Node[count];
+		int[] keptBits = new int[count];
+		System.arraycopy( nodes, 0, keptNodes, 0, count );
+		System.arraycopy( bits, 0, keptBits, 0, count );
+		nodes = keptNodes;
+		bits = keptBits;
+	}
+
+	/**
+	 * Builds the tree of the keys from start to end one key after another. A key goes up the right edge of the tree
+	 * until a node with a smaller bit index and takes the nodes it passed as its left subtree.
+	 */
+	private int buildRun(int start, int end) {
+
+		int[] edge = new int[64];
+		int depth = 0;
+		for ( int i = start; i < end; i++ ) {
+			int below = -1;
+			while ( ( depth > 0 ) && ( bits[edge[depth - 1]] > bits[i] ) ) {
+				below = edge[--depth];
+				last[below] = i - 1;
+			}
+
+			left[i] = below;
+			right[i] = -1;
+			first[i] = below < 0 ? i : first[below];
+			if ( below >= 0 ) {
+				parent[below] = i;
+			}
+
+			if ( depth > 0 ) {
+				right[edge[depth - 1]] = i;
+				parent[i] = edge[depth - 1];
+			}
+			else {
+				parent[i] = -1;
+			}
+
+			if ( depth == edge.length ) {
+				edge = Arrays.copyOf( edge, depth << 1 );
+			}
+			edge[depth++] = i;
+		}
+
+		int root = edge[0];
+		while ( depth > 0 ) {
+			last[edge[--depth]] = end - 1;
+		}
+
+		return root;
+	}
+
+	/**
+	 * Merges the tree with root a, holding the keys right before the ones of the tree with root b, with that tree.
+	 * Walks down the right edge of a and the left edge of b, taking the node with the smaller bit index each time.
+	 */
+	private int merge(int a, int b) {
+
+		int root = -1;
+		int attach = -1;
+		boolean attachLeft = false;
+		while ( true ) {
+			int next;
+			if ( a < 0 ) {
+				next = b;
+			}
+			else if ( b < 0 ) {
+				next = a;
+			}
+			else {
+				next = bits[a] < bits[b] ? a : b;
+			}
+
+			if ( attach < 0 ) {
+				root = next;
+			}
+			else {
+				if ( attachLeft ) {
+					left[attach] = next;
+				}
+				else {
+					right[attach] = next;
+				}
+
+				if ( next >= 0 ) {
+					parent[next] = attach;
+				}
+			}
+
+			if ( ( a < 0 ) || ( b < 0 ) ) {
+				return root;
+			}
+
+			if ( next == a ) {
+				// the keys of b go under the right pointer of a
+				last[a] = last[b];
+				attach = a;
+				attachLeft = false;
+				a = right[a];
+			}
+			else {
+				first[b] = first[a];
+				attach = b;
+				attachLeft = true;
+				b = left[b];
+			}
+		}
+	}
+
+	/**
+	 * Links the node at i. A missing left child is the upward pointer to the previous key, a missing right child
+	 * the pointer to the node itself.
+	 */
+	private void link(int i) {
+
+		Node node = nodes[i];
+		node.setBitIndex( bits[i] );
+		node.setLeft( left[i] >= 0 ? nodes[left[i]] : ( i > 0 ? nodes[i - 1] : null ) );
+		node.setRight( right[i] >= 0 ? nodes[right[i]] : node );
+		node.setParent( parent[i] >= 0 ? nodes[parent[i]] : null );
+		// the keys of the tree under the node, and the previous key through the upward pointer of the first one
+		node.setCount( last[i] - first[i] + 1 + ( first[i] > 0 ? 1 : 0 ) );
+	}
+
+	private void forEach(int length, IntConsumer action) {
+		pool.invoke( new ForEachTask( 0, length, action ) );
+	}
+
+	private static boolean isNullOrEmpty(String str) {
+		return ( str == null ) || str.isEmpty();
+	}
+
+	private final class BuildTask extends RecursiveTask<Integer> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int start;
+		private final int end;
+
+		BuildTask(int start, int end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected Integer compute() {
+
+			if ( end - start <= chunk ) {
+				return buildRun( start, end );
+			}
+
+			int middle = ( start + end ) >>> 1;
+			BuildTask head = new BuildTask( start, middle );
+			head.fork();
+			int tail = new BuildTask( middle, end ).compute();
+
+			return merge( head.join(), tail );
+		}
+	}
+
+	private final class ForEachTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int start;
+		private final int end;
+		private final IntConsumer action;
+
+		ForEachTask(int start, int end, IntConsumer action) {
+			this.start = start;
+			this.end = end;
+			this.action = action;
+		}
+
+		@Override
+		protected void compute() {
+
+			if ( end - start <= chunk ) {
+				for ( int i = start; i < end; i++ ) {
+					action.accept( i );
+				}
+
+				return;
+			}
+
+			int middle = ( start + end ) >>> 1;
+			invokeAll( new ForEachTask( start, middle, action ), new ForEachTask( middle, end, action ) );
+		}
+	}
+}
@@ -1,434 +1,1740 @@
 package patricia.trie;
 
-import java.util.LinkedList;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.apache.log4j.Logger;
 
 public class PatriciaTrie {
 
+	// plain, ConcurrentPatriciaTrie publishes them to readers not holding its lock. Searches read head through
+	// getHead(), only inserts read the field.
 	private Node head;
+	private int size;
+	// null unless enabled, so that a trie without metrics only reads this field
+	private volatile TrieMetrics metrics;
 	private static Logger log = Logger.getLogger( PatriciaTrie.class );
 
 	public PatriciaTrie(String searchKey) {
-		initializeHead( searchKey );
+
+		byte[] keyBytes = KeyBits.encode( searchKey );
+		if ( KeyBits.hasOneBit( keyBytes ) ) {
+			initializeHead( searchKey, keyBytes );
+		}
+	}
+
+	public PatriciaTrie() {
+
+	}
+
+	/**
+	 * Trie over nodes linked elsewhere, by a builder or a reader.
+	 * 
+	 * @param head
+	 * @param size
+	 */
+	PatriciaTrie(Node head, int size) {
+		this.head = head;
+		this.size = size;
+	}
+
+	/**
+	 * Inserts the key and returns a snapshot of the parent, current, left and right nodes of the node holding the
+	 * key. Building the snapshot allocates, so use {@link #insert(String, NodeView)} when the result is not needed
+	 * as Node objects.
+	 * 
+	 * @param searchKey
+	 * @return
+	 */
+	public Node[] insert(String searchKey) {
+
+		NodeView view = new NodeView();
+		if ( !insert( searchKey, view ) && view.isEmpty() ) {
+			return null;
+		}
+
+		return view.getNodes();
+	}
+
+	/**
+	 * Inserts the key without allocating anything but the new node. If view is not null, it is pointed at the node
+	 * holding the key, whether the key has just been inserted or was already there. A key encoding to zero bytes
+	 * only, like "\0", has the bits of the empty key and can't be inserted.
+	 * 
+	 * @param searchKey
+	 * @param view
+	 *            Reusable view to be pointed at the node holding the key. May be null.
+	 * @return true if the key has been inserted, false if it was already there or can't be inserted.
+	 */
+	public boolean insert(String searchKey, NodeView view) {
+
+		if ( isNullOrEmpty( searchKey ) ) {
+			if ( view != null ) {
+				view.clear();
+			}
+
+			return false;
+		}
+
+		return insert( searchKey, KeyBits.encode( searchKey ), view );
+	}
+
+	/**
+	 * Same as {@link #insert(String, NodeView)} for a key given as chars, e.g. a slice of a larger text.
+	 * 
+	 * @param searchKey
+	 * @param view
+	 *            Reusable view to be pointed at the node holding the key. May be null.
+	 * @return true if the key has been inserted, false if it was already there or can't be inserted.
+	 */
+	public boolean insert(CharSequence searchKey, NodeView view) {
+		return insert( searchKey == null ? null : searchKey.toString(), view );
+	}
+
+	/**
+	 * Inserts the UTF-8 encoded key stored in key from offset, length bytes long. The bytes are copied.
+	 * 
+	 * @param key
+	 * @param offset
+	 * @param length
+	 * @return true if the key has been inserted, false if it was already there or can't be inserted.
+	 */
+	public boolean insert(byte[] key, int offset, int length) {
+
+		if ( ( key == null ) || ( length == 0 ) ) {
+			return false;
+		}
+
+		checkRange( offset, length, key.length );
+		byte[] keyBytes = Arrays.copyOfRange( key, offset, offset + length );
+
+		return insert( KeyBits.decode( keyBytes, 0, length ), keyBytes, null );
+	}
+
+	/**
+	 * Inserts the UTF-8 encoded key stored in the buffer from offset, length bytes long. The bytes are copied with
+	 * absolute gets, so the position and limit of the buffer are left as they are.
+	 * 
+	 * @param key
+	 * @param offset
+	 * @param length
+	 * @return true if the key has been inserted, false if it was already there or can't be inserted.
+	 */
+	public boolean insert(ByteBuffer key, int offset, int length) {
+
+		if ( ( key == null ) || ( length == 0 ) ) {
+			return false;
+		}
+
+		checkRange( offset, length, key.limit() );
+		byte[] keyBytes = new byte[length];
+		for ( int i = 0; i < length; i++ ) {
+			keyBytes[i] = key.get( offset + i );
+		}
+
+		return insert( KeyBits.decode( keyBytes, 0, length ), keyBytes, null );
+	}
+
+	/**
+	 * Inserts the key given both as a String and as its encoded bytes, which must not be empty.
+	 * 
+	 * @param searchKey
+	 * @param keyBytes
+	 * @param view
+	 * @return
+	 */
+	boolean insert(String searchKey, byte[] keyBytes, NodeView view) {
+
+		if ( view != null ) {
+			view.clear();
+		}
+
+		int oldSize = size;
+		setView( view, insertNode( searchKey, keyBytes ) );
+
+		return size != oldSize;
+	}
+
+	/**
+	 * Returns the node holding the key, inserting it if it's not there yet. Returns null if the key can't be
+	 * inserted.
+	 * 
+	 * @param searchKey
+	 * @return
+	 */
+	Node insertNode(String searchKey) {
+
+		if ( isNullOrEmpty( searchKey ) ) {
+			return null;
+		}
+
+		return insertNode( searchKey, KeyBits.encode( searchKey ) );
+	}
+
+	/**
+	 * Same as {@link #insertNode(String)} with the key already encoded.
+	 * 
+	 * @param searchKey
+	 * @param keyBytes
+	 * @return
+	 */
+	Node insertNode(String searchKey, byte[] keyBytes) {
+
+		return insertNode( searchKey, keyBytes, null );
+	}
+
+	/**
+	 * Same as {@link #insertNode(String, byte[])} without walking down again when closest is not null: the key is
+	 * linked next to closest, the node {@link #findClosest(byte[])} returned for it. The trie must not have changed
+	 * since.
+	 * 
+	 * @param searchKey
+	 * @param keyBytes
+	 * @param closest
+	 * @return
+	 */
+	Node insertNode(String searchKey, byte[] keyBytes, Node closest) {
+
+		TrieMetrics current = metrics;
+		int oldSize = size;
+		Node node = addKey( searchKey, keyBytes, closest, current );
+
+		if ( ( current != null ) && ( size != oldSize ) ) {
+			current.inserted( node, head );
+		}
+
+		return node;
+	}
+
+	/**
+	 * Returns the node holding the key or the node closest to it, found in one walk down from head, so that the key
+	 * can be inserted later by {@link #insertNode(String, byte[], Node)} without walking down again. Returns null if
+	 * the trie is empty.
+	 * 
+	 * @param keyBytes
+	 * @return
+	 */
+	Node findClosest(byte[] keyBytes) {
+
+		Node root = getHead();
+
+		return root == null ? null : findClosest( root, keyBytes, null );
+	}
+
+	private Node addKey(String searchKey, byte[] keyBytes, Node closest, TrieMetrics current) {
+
+		if ( !KeyBits.hasOneBit( keyBytes ) ) {
+			// no bit to tell it from the empty key
+			return null;
+		}
+
+		if ( initializeHead( searchKey, keyBytes ) ) {
+			if ( current != null ) {
+				current.recordInsert( 0 );
+			}
+
+			return head;
+		}
+
+		if ( closest == null ) {
+			closest = findClosest( head, keyBytes, current );
+		}
+		int diffIndex = closest.firstDiff( keyBytes, 0, keyBytes.length );
+
+		if ( diffIndex >= ( Math.max( closest.getKeyLength(), keyBytes.length ) << 3 ) ) {
+			// the bits are the same. Keys only differing in trailing zero bytes can't be told apart.
+			return closest.getKeyLength() == keyBytes.length ? closest : null;
+		}
+
+		Node node = doInsert( searchKey, keyBytes, diffIndex );
+		size++;
+
+		return node;
+	}
+
+	/**
+	 * Builds a trie from keys sorted in bit order (unsigned byte order of the encoded keys, which is String order for
+	 * ASCII keys) in one pass. Each key only goes up the right edge of the trie built so far, as far as the bit where
+	 * it differs from the previous key, so building costs O(n) bit comparisons. The trie is the same as inserting the
+	 * keys one by one in that order. Invalid keys and keys already there are skipped like {@link #insert(String)}
+	 * does.
+	 * 
+	 * @param sortedKeys
+	 * @return
+	 * @throws IllegalArgumentException
+	 *             if a key is smaller than the one before it.
+	 */
+	public static PatriciaTrie bulkLoad(Iterator<String> sortedKeys) {
+
+		PatriciaTrie trie = new PatriciaTrie();
+		trie.load( sortedKeys );
+
+		return trie;
+	}
+
+	/**
+	 * Same as {@link #bulkLoad(Iterator)} over the keys of the stream.
+	 * 
+	 * @param sortedKeys
+	 * @return
+	 */
+	public static PatriciaTrie bulkLoad(Stream<String> sortedKeys) {
+		return bulkLoad( sortedKeys.iterator() );
+	}
+
+	/**
+	 * Same as {@link #bulkLoad(Iterator)}, building on the common {@link ForkJoinPool}.
+	 * 
+	 * @param sortedKeys
+	 * @return
+	 */
+	public static PatriciaTrie parallelBulkLoad(List<String> sortedKeys) {
+		return parallelBulkLoad( sortedKeys, ForkJoinPool.commonPool() );
+	}
+
+	/**
+	 * Same as {@link #bulkLoad(Iterator)}, building runs of keys in parallel on the pool and stitching their tries
+	 * together by bit index. The result is the same trie as the serial one.
+	 * 
+	 * @param sortedKeys
+	 * @param pool
+	 * @return
+	 * @throws IllegalArgumentException
+	 *             if a key is smaller than the one before it.
+	 */
+	public static PatriciaTrie parallelBulkLoad(List<String> sortedKeys, ForkJoinPool pool) {
+		return parallelBulkLoad( sortedKeys, pool, ParallelTrieBuilder.CHUNK );
+	}
+
+	static PatriciaTrie parallelBulkLoad(List<String> sortedKeys, ForkJoinPool pool, int chunk) {
+
+		ParallelTrieBuilder builder = new ParallelTrieBuilder( pool, chunk );
+		Node root = builder.build( sortedKeys.toArray( new String[sortedKeys.size()] ) );
+
+		return new PatriciaTrie( root, builder.size() );
+	}
+
+	/**
+	 * Writes the keys and the structure of the trie to the channel, so that {@link #readFrom(ReadableByteChannel)}
+	 * can link the same nodes again without inserting the keys. Keys are front coded in bit order. The trie must
+	 * not change while it is written. The channel is not closed.
+	 * 
+	 * @param channel
+	 * @throws IOException
+	 */
+	public void writeTo(WritableByteChannel channel) throws IOException {
+		TrieCodec.write( this, channel );
+	}
+
+	/**
+	 * Reads a trie written by {@link #writeTo(WritableByteChannel)} in one pass. Reads ahead in large blocks, so the
+	 * channel may be read past the end of the trie. The channel is not closed.
+	 * 
+	 * @param channel
+	 * @return
+	 * @throws IOException
+	 *             if the channel ends early or doesn't hold a trie.
+	 */
+	public static PatriciaTrie readFrom(ReadableByteChannel channel) throws IOException {
+		return TrieCodec.read( channel );
+	}
+
+	/**
+	 * Copies the keys into a read only {@link FrozenPatriciaTrie}, a few flat arrays taking a fraction of the memory
+	 * of the nodes. Later inserts into this trie don't change it.
+	 *
+	 * @return
+	 */
+	public final FrozenPatriciaTrie freeze() {
+		return FrozenPatriciaTrie.freeze( getHead() );
+	}
+
+	private void load(Iterator<String> sortedKeys) {
+
+		// right edge of the trie from head down, bit indexes growing. The last key is found through the right pointer
+		// of its last node.
+		Node[] edge = new Node[64];
+		int depth = 0;
+		Node root = null;
+		byte[] previous = null;
+		int loaded = 0;
+
+		while ( sortedKeys.hasNext() ) {
+			String searchKey = sortedKeys.next();
+			if ( isNullOrEmpty( searchKey ) ) {
+				continue;
+			}
+
+			byte[] keyBytes = KeyBits.encode( searchKey );
+			if ( !KeyBits.hasOneBit( keyBytes ) ) {
+				continue;
+			}
+
+			Node newNode = initializeNode( null, null, null, 0, searchKey, keyBytes );
+			newNode.setRight( newNode );
+
+			if ( root == null ) {
+				newNode.setBitIndex( KeyBits.leftMostOneBit( keyBytes ) );
+				root = newNode;
+			}
+			else {
+				int diffIndex = KeyBits.firstDiff( previous, keyBytes );
+				if ( diffIndex >= ( Math.max( previous.length, keyBytes.length ) << 3 ) ) {
+					// same bits as the previous key
+					continue;
+				}
+
+				if ( KeyBits.bitAt( keyBytes, diffIndex ) == 0 ) {
+					throw new IllegalArgumentException( "keys are not sorted in bit order. key," + searchKey );
+				}
+
+				newNode.setBitIndex( diffIndex );
+
+				// nodes below the new one are complete, no key comes under them anymore
+				Node below = null;
+				while ( ( depth > 0 ) && ( edge[depth - 1].getBitIndex() > diffIndex ) ) {
+					below = edge[--depth];
+					below.setCount( countUnder( below, below.getLeft() ) + countUnder( below, below.getRight() ) );
+				}
+
+				if ( depth == 0 ) {
+					// new node comes above head
+					newNode.setLeft( below );
+					root = newNode;
+				}
+				else {
+					Node parent = edge[depth - 1];
+					newNode.setLeft( parent.getRight() );
+					newNode.setParent( parent );
+					parent.setRight( newNode );
+				}
+
+				if ( below != null ) {
+					below.setParent( newNode );
+				}
+			}
+
+			if ( depth == edge.length ) {
+				edge = Arrays.copyOf( edge, depth << 1 );
+			}
+			edge[depth++] = newNode;
+			previous = keyBytes;
+			loaded++;
+		}
+
+		while ( depth > 0 ) {
+			Node node = edge[--depth];
+			node.setCount( countUnder( node, node.getLeft() ) + countUnder( node, node.getRight() ) );
+		}
+
+		head = root;
+		size = loaded;
+	}
+
+	private boolean initializeHead(String searchKey, byte[] keyBytes) {
+		if ( head == null ) {
+			Node node = initializeNode( null, null, null, KeyBits.leftMostOneBit( keyBytes ), searchKey, keyBytes );
+			node.setRight( node );
+			node.setCount( 1 );
+			head = node;
+			size = 1;
+
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Number of keys in the trie.
+	 * 
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return getHead() == null;
+	}
+
+	/**
+	 * Removes all of the keys.
+	 */
+	public void clear() {
+
+		head = null;
+		size = 0;
+
+		TrieMetrics current = metrics;
+		if ( current != null ) {
+			current.clear();
+		}
+	}
+
+	/**
+	 * Starts keeping metrics of the shape of the trie and of the work done by inserts and searches. Walks the whole
+	 * trie once to compute its shape, later inserts keep it up to date.
+	 * 
+	 * @return the metrics, the ones already kept if they were enabled.
+	 */
+	public TrieMetrics enableMetrics() {
+
+		TrieMetrics current = metrics;
+		if ( current == null ) {
+			current = new TrieMetrics( this );
+			current.rebuild( head );
+			metrics = current;
+		}
+
+		return current;
+	}
+
+	/**
+	 * Stops keeping metrics. Metrics already handed out stop changing.
+	 */
+	public void disableMetrics() {
+		metrics = null;
+	}
+
+	/**
+	 * Metrics kept since {@link #enableMetrics()}, or null if they are not enabled.
+	 * 
+	 * @return
+	 */
+	public TrieMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Head which searches start from.
+	 * 
+	 * @return
+	 */
+	Node getHead() {
+		return head;
+	}
+
+	private void setView(NodeView view, Node node) {
+
+		if ( view != null ) {
+			view.set( node );
+		}
+	}
+
+	/**
+	 * Follows the bits of the key until an upward pointer and returns the node it points to. If an empty pointer is
+	 * found instead, the node having the empty pointer is returned. The bits tested are recorded as an insert in
+	 * insertMetrics if it is not null.
+	 * 
+	 * @param keyBytes
+	 * @param insertMetrics
+	 * @return
+	 */
+	private Node findClosest(Node root, byte[] keyBytes, TrieMetrics insertMetrics) {
+
+		int bitTests = 1;
+		Node node = root;
+		Node next = getChild( node, keyBytes );
+		while ( ( next != null ) && ( node.getBitIndex() < next.getBitIndex() ) ) {
+			bitTests++;
+			node = next;
+			next = getChild( node, keyBytes );
+		}
+
+		if ( insertMetrics != null ) {
+			insertMetrics.recordInsert( bitTests );
+		}
+
+		return next == null ? node : next;
+	}
+
+	private Node getChild(Node node, byte[] keyBytes) {
+		return KeyBits.bitAt( keyBytes, node.getBitIndex() ) == 0 ? node.getLeft() : node.getRight();
+	}
+
+	private static Node getChild(Node node, byte[] bytes, int offset, int length) {
+		return KeyBits.bitAt( bytes, offset, length, node.getBitIndex() ) == 0 ? node.getLeft() : node.getRight();
+	}
+
+	private static Node getChild(Node node, ByteBuffer buffer, int offset, int length) {
+		return KeyBits.bitAt( buffer, offset, length, node.getBitIndex() ) == 0 ? node.getLeft() : node.getRight();
+	}
+
+	private void setChild(Node node, Node child, byte[] keyBytes) {
+
+		if ( KeyBits.bitAt( keyBytes, node.getBitIndex() ) == 0 ) {
+			node.setLeft( child );
+		}
+		else {
+			node.setRight( child );
+		}
+	}
+
+	/**
+	 * Links a new node discriminating at diffIndex into the path of the key.
+	 * 
+	 * @param searchKey
+	 * @param keyBytes
+	 * @param diffIndex
+	 * @return
+	 */
+	private Node doInsert(String searchKey, byte[] keyBytes, int diffIndex) {
+
+		Node newNode = initializeNode( null, null, null, diffIndex, searchKey, keyBytes );
+
+		if ( diffIndex < head.getBitIndex() ) {
+			// all of the keys share the bits before the head bit index. new node comes above head.
+			setPointToItself( newNode, head, diffIndex, keyBytes );
+			newNode.setCount( head.getCount() + 1 );
+			head.setParent( newNode );
+			// publish the complete node
+			head = newNode;
+
+			return newNode;
+		}
+
+		// every node on the way down gets the new key under it
+		Node node = head;
+		node.setCount( node.getCount() + 1 );
+		Node next = getChild( node, keyBytes );
+		// a node at diffIndex has an empty pointer on the key side, the first head's left one
+		while ( ( next != null ) && ( node.getBitIndex() < next.getBitIndex() ) && ( next.getBitIndex() <= diffIndex ) ) {
+			node = next;
+			node.setCount( node.getCount() + 1 );
+			next = getChild( node, keyBytes );
+		}
+
+		newNode.setCount( countUnder( node, next ) + 1 );
+		newNode.setParent( node );
+
+		if ( next == null ) {
+			// empty left pointer of the first head. the new node is only reachable as an upward pointer from it.
+			setPointToItself( newNode, node, diffIndex, keyBytes );
+		}
+		else {
+			setPointToItself( newNode, next, diffIndex, keyBytes );
+
+			if ( node.getBitIndex() < next.getBitIndex() ) {
+				// new node comes between node and next
+				next.setParent( newNode );
+			}
+		}
+
+		// the new node is complete before this write makes it reachable from head
+		setChild( node, newNode, keyBytes );
+
+		return newNode;
+	}
+
+	/**
+	 * Number of keys found through the pointer from node to next.
+	 * 
+	 * @param node
+	 * @param next
+	 * @return
+	 */
+	static int countUnder(Node node, Node next) {
+
+		if ( next == null ) {
+			return 0;
+		}
+
+		return node.getBitIndex() < next.getBitIndex() ? next.getCount() : 1;
+	}
+
+	private Node initializeNode(Node parent, Node left, Node right, int bitIndex, String searchKey, byte[] keyBytes) {
+
+		Node node = newNode( bitIndex, parent, left, right );
+		node.setKey( searchKey, keyBytes );
+
+		return node;
+	}
+
+	/**
+	 * Creates every node inserted in this trie, so that a subclass can keep more per node.
+	 * 
+	 * @param bitIndex
+	 * @param parent
+	 * @param left
+	 * @param right
+	 * @return
+	 */
+	Node newNode(int bitIndex, Node parent, Node left, Node right) {
+		return new PlainNode( bitIndex, parent, left, right, null );
+	}
+
+	/**
+	 * Sets the pointer of the node on the key side to itself and the other pointer to the given node if the bit of
+	 * its key is the opposite.
+	 * 
+	 * @param node
+	 * @param other
+	 * @param diffIndex
+	 * @param keyBytes
+	 */
+	private void setPointToItself(Node node, Node other, int diffIndex, byte[] keyBytes) {
+
+		if ( KeyBits.bitAt( keyBytes, diffIndex ) == 0 ) {
+			node.setLeft( node );
+
+			if ( other.keyBitAt( diffIndex ) == 1 ) {
+				node.setRight( other );
+			}
+		}
+		else {
+			node.setRight( node );
+
+			if ( other.keyBitAt( diffIndex ) == 0 ) {
+				node.setLeft( other );
+			}
+		}
+	}
+
+	public final int getLeftMostOneBit(String str) {
+		return KeyBits.leftMostOneBit( KeyBits.encode( str ) );
+	}
+
+	/**
+	 * Binary expression of the given string as '0' and '1' characters. Only meant for debugging, the trie itself
+	 * reads bits through {@link KeyBits}.
+	 * 
+	 * @param str
+	 */
+	public final String toBytes(String str) {
+
+		byte[] bytes = KeyBits.encode( str );
+		StringBuilder binary = new StringBuilder();
+		for ( byte b : bytes ) {
+			int val = b;
+			for ( int i = 0; i < 8; i++ ) {
+				binary.append( ( val & 128 ) == 0 ? 0 : 1 );
+				val <<= 1;
+			}
+		}
+
+		return binary.toString();
+	}
+
+	public final char getBitAt(int bitIndex, String str) {
+		return KeyBits.bitAt( KeyBits.encode( str ), bitIndex ) == 0 ? '0' : '1';
+	}
+
+	/**
+	 * returning -1 means both of the parameters are the same. the parameter, from is inclusive.
+	 * 
+	 * @param nodeKey
+	 *            Key within each node.
+	 * @param searchKey
+	 *            Key to be searched.
+	 * @param from
+	 *            Index to start.
+	 * @return
+	 */
+	public final int getDiffAtFrom(String nodeKey, String searchKey, int from) {
+		return KeyBits.firstDiff( KeyBits.encode( nodeKey ), KeyBits.encode( searchKey ) );
+	}
+
+	public final char[] getGapsAsZeroBits(int gap) {
+
+		char[] gaps = new char[gap];
+		for ( int i = 0; i < gaps.length; i++ ) {
+			gaps[i] = '0';
+		}
+
+		return gaps;
+	}
+
+	public final char[] prependGaps(char[] original, char[] gaps) {
+
+		char[] res = new char[original.length + gaps.length];
+		int index = 0;
+
+		for ( index = 0; index < original.length; index++ ) {
+			res[index] = original[index];
+		}
+		for ( int i = 0; i < gaps.length; i++ ) {
+			res[index++] = gaps[i];
+		}
+
+		return res;
+	}
+
+	public final boolean search(String searchKey) {
+		return search( searchKey, null );
+	}
+
+	/**
+	 * Searches the key without allocating anything but its encoded bytes. If view is not null and the key is found,
+	 * it is pointed at the node holding the key.
+	 * 
+	 * @param searchKey
+	 * @param view
+	 *            Reusable view to be pointed at the node holding the key. May be null.
+	 * @return
+	 */
+	public final boolean search(String searchKey, NodeView view) {
+
+		if ( view != null ) {
+			view.clear();
+		}
+
+		Node node = findNode( searchKey, metrics );
+		setView( view, node );
+
+		return node != null;
+	}
+
+	/**
+	 * Same as {@link #search(String)} for a key given as chars. Only the encoded bytes are allocated, never a
+	 * String.
+	 * 
+	 * @param searchKey
+	 * @return
+	 */
+	public final boolean search(CharSequence searchKey) {
+
+		if ( searchKey instanceof String ) {
+			return search( (String) searchKey );
+		}
+
+		if ( ( searchKey == null ) || ( searchKey.length() == 0 ) ) {
+			return false;
+		}
+
+		byte[] keyBytes = KeyBits.encode( searchKey );
+
+		return search( keyBytes, 0, keyBytes.length );
+	}
+
+	/**
+	 * Searches the UTF-8 encoded key stored in key from offset, length bytes long. The bits are read in place,
+	 * nothing is allocated.
+	 * 
+	 * @param key
+	 * @param offset
+	 * @param length
+	 * @return
+	 */
+	public final boolean search(byte[] key, int offset, int length) {
+
+		Node root = getHead();
+		if ( ( key == null ) || ( length == 0 ) ) {
+			return false;
+		}
+
+		checkRange( offset, length, key.length );
+		if ( root == null ) {
+			return false;
+		}
+
+		Node node = doSearch( root, key, offset, length, metrics );
+
+		return ( node != null ) && ( node.getKeyLength() == length )
+				&& ( node.firstDiff( key, offset, length ) >= ( length << 3 ) );
+	}
+
+	/**
+	 * Searches the UTF-8 encoded key stored in the buffer from offset, length bytes long, heap or direct. The bits
+	 * are read in place with absolute gets, so the position and limit of the buffer are left as they are and nothing
+	 * is allocated.
+	 * 
+	 * @param key
+	 * @param offset
+	 * @param length
+	 * @return
+	 */
+	public final boolean search(ByteBuffer key, int offset, int length) {
+
+		Node root = getHead();
+		if ( ( key == null ) || ( length == 0 ) ) {
+			return false;
+		}
+
+		checkRange( offset, length, key.limit() );
+		if ( key.hasArray() ) {
+			return search( key.array(), key.arrayOffset() + offset, length );
+		}
+
+		if ( root == null ) {
+			return false;
+		}
+
+		int bitTests = 1;
+		Node node = root;
+		Node next = getChild( node, key, offset, length );
+		while ( TrieCursor.isDownward( node, next ) ) {
+			bitTests++;
+			node = next;
+			next = getChild( node, key, offset, length );
+		}
+
+		TrieMetrics current = metrics;
+		if ( current != null ) {
+			current.recordSearch( bitTests );
+		}
+
+		return ( next != null ) && next.keyEquals( key, offset, length );
+	}
+
+	/**
+	 * Searches a batch of keys in one walk from head. The keys are split at each node by their bit at its bit index
+	 * and each group goes on down its side, so a node shared by several keys is visited once for the batch instead
+	 * of once per key.
+	 * 
+	 * @param searchKeys
+	 * @return bit i is set if the i-th key of the collection, in iteration order, is in the trie.
+	 */
+	public final BitSet searchAll(Collection<String> searchKeys) {
+
+		BitSet found = new BitSet( searchKeys.size() );
+		Node root = getHead();
+		if ( root == null ) {
+			return found;
+		}
+
+		// the Strings too, a key is found the way search(String) finds it
+		String[] keys = new String[searchKeys.size()];
+		byte[][] keyBytes = new byte[keys.length][];
+		int[] group = new int[keyBytes.length];
+		int count = 0;
+		int index = 0;
+		for ( String searchKey : searchKeys ) {
+			if ( !isNullOrEmpty( searchKey ) ) {
+				keys[index] = searchKey;
+				keyBytes[index] = KeyBits.encode( searchKey );
+				group[count++] = index;
+			}
+			index++;
+		}
+
+		// groups still to walk down: the node and the range of group holding the keys which reached it
+		Node[] nodes = new Node[64];
+		int[] ranges = new int[128];
+		int depth = 0;
+		if ( count > 0 ) {
+			nodes[depth++] = root;
+			ranges[1] = count;
+		}
+
+		while ( depth > 0 ) {
+			Node node = nodes[--depth];
+			int from = ranges[depth << 1];
+			int to = ranges[( depth << 1 ) + 1];
+
+			// keys with a 0 bit first, then keys with a 1 bit
+			int bitIndex = node.getBitIndex();
+			int split = from;
+			for ( int i = from; i < to; i++ ) {
+				if ( KeyBits.bitAt( keyBytes[group[i]], bitIndex ) == 0 ) {
+					int swap = group[split];
+					group[split++] = group[i];
+					group[i] = swap;
+				}
+			}
+
+			if ( depth + 2 > nodes.length ) {
+				nodes = Arrays.copyOf( nodes, nodes.length << 1 );
+				ranges = Arrays.copyOf( ranges, ranges.length << 1 );
+			}
+			depth = walkDown( node, node.getLeft(), from, split, nodes, ranges, depth, keys, keyBytes, group, found );
+			depth = walkDown( node, node.getRight(), split, to, nodes, ranges, depth, keys, keyBytes, group, found );
+		}
+
+		return found;
+	}
+
+	/**
+	 * Returns true if every key of the collection is in the trie. Searches them in one walk like
+	 * {@link #searchAll(Collection)}.
+	 * 
+	 * @param searchKeys
+	 * @return
+	 */
+	public final boolean containsAll(Collection<String> searchKeys) {
+		return searchAll( searchKeys ).cardinality() == searchKeys.size();
+	}
+
+	/**
+	 * Sends the keys of group from index from to index to through the pointer from node to next. A downward pointer
+	 * pushes the group, an upward one ends the search of its keys. Returns the new depth of the group stack.
+	 */
+	private static int walkDown(Node node, Node next, int from, int to, Node[] nodes, int[] ranges, int depth,
+			String[] keys, byte[][] keyBytes, int[] group, BitSet found) {
+
+		if ( ( from == to ) || ( next == null ) ) {
+			return depth;
+		}
+
+		if ( TrieCursor.isDownward( node, next ) ) {
+			nodes[depth] = next;
+			ranges[depth << 1] = from;
+			ranges[( depth << 1 ) + 1] = to;
+
+			return depth + 1;
+		}
+
+		for ( int i = from; i < to; i++ ) {
+			if ( next.hasKey( keys[group[i]], keyBytes[group[i]] ) ) {
+				found.set( group[i] );
+			}
+		}
+
+		return depth;
+	}
+
+	/**
+	 * Returns the node holding the key, or null if the key is not there.
+	 * 
+	 * @param searchKey
+	 * @return
+	 */
+	Node findNode(String searchKey) {
+		return findNode( searchKey, null );
+	}
+
+	/**
+	 * Same as {@link #findNode(String)}, recording the search in searchMetrics if it is not null.
+	 */
+	private Node findNode(String searchKey, TrieMetrics searchMetrics) {
+
+		Node root = getHead();
+		if ( isNullOrEmpty( searchKey ) || ( root == null ) ) {
+			return null;
+		}
+
+		byte[] keyBytes = KeyBits.encode( searchKey );
+		Node node = doSearch( root, keyBytes, 0, keyBytes.length, searchMetrics );
+
+		if ( ( node == null ) || !node.hasKey( searchKey, keyBytes ) ) {
+			return null;
+		}
+
+		return node;
+	}
+
+	/**
+	 * Returns the node found through an upward pointer following the bits of the key stored in bytes from offset,
+	 * length bytes long, or null if an empty pointer is found. The bits tested are recorded as a search in
+	 * searchMetrics if it is not null.
+	 */
+	private Node doSearch(Node root, byte[] bytes, int offset, int length, TrieMetrics searchMetrics) {
+
+		int bitTests = 1;
+		Node node = root;
+		Node next = getChild( node, bytes, offset, length );
+		while ( ( next != null ) && ( node.getBitIndex() < next.getBitIndex() ) ) {
+			bitTests++;
+			node = next;
+			next = getChild( node, bytes, offset, length );
+		}
+
+		if ( searchMetrics != null ) {
+			searchMetrics.recordSearch( bitTests );
+		}
+
+		return next;
+	}
+
+	public final List<String> searchPrefix(String prefix) {
+		return searchPrefix( prefix, Integer.MAX_VALUE );
+	}
+
+	/**
+	 * Returns at most limit keys starting with the prefix, in bit order. Stops walking the trie once limit keys are
+	 * found.
+	 * 
+	 * @param prefix
+	 * @param limit
+	 * @return
+	 */
+	public final List<String> searchPrefix(String prefix, int limit) {
+
+		if ( isNullOrEmpty( prefix ) ) {
+			throw new IllegalArgumentException( "invalid argument specified. prefix," + prefix );
+		}
+
+		return searchPrefix( KeyBits.encode( prefix ), limit );
+	}
+
+	/**
+	 * Same as {@link #searchPrefix(String)} for a prefix given as chars.
+	 * 
+	 * @param prefix
+	 * @return
+	 */
+	public final List<String> searchPrefix(CharSequence prefix) {
+
+		if ( ( prefix == null ) || ( prefix.length() == 0 ) ) {
+			throw new IllegalArgumentException( "invalid argument specified. prefix," + prefix );
+		}
+
+		return searchPrefix( KeyBits.encode( prefix ), Integer.MAX_VALUE );
 	}
 
-	public PatriciaTrie() {
+	/**
+	 * Same as {@link #searchPrefix(String)} for the UTF-8 encoded prefix stored in prefix from offset, length bytes
+	 * long.
+	 * 
+	 * @param prefix
+	 * @param offset
+	 * @param length
+	 * @return
+	 */
+	public final List<String> searchPrefix(byte[] prefix, int offset, int length) {
+
+		if ( ( prefix == null ) || ( length == 0 ) ) {
+			throw new IllegalArgumentException( "invalid argument specified. prefix length," + length );
+		}
 
+		checkRange( offset, length, prefix.length );
+
+		return searchPrefix( Arrays.copyOfRange( prefix, offset, offset + length ), Integer.MAX_VALUE );
 	}
 
-	public Node[] insert(String searchKey) {
+	/**
+	 * Same as {@link #searchPrefix(String)} for the UTF-8 encoded prefix stored in the buffer from offset, length
+	 * bytes long. The position and limit of the buffer are left as they are.
+	 * 
+	 * @param prefix
+	 * @param offset
+	 * @param length
+	 * @return
+	 */
+	public final List<String> searchPrefix(ByteBuffer prefix, int offset, int length) {
 
-		if ( isNullOrEmpty( searchKey ) ) {
-			return null;
+		if ( ( prefix == null ) || ( length == 0 ) ) {
+			throw new IllegalArgumentException( "invalid argument specified. prefix length," + length );
 		}
 
-		if ( initializeHead( searchKey ) ) {
-			return head.getNodes();
+		checkRange( offset, length, prefix.limit() );
+		byte[] prefixBytes = new byte[length];
+		for ( int i = 0; i < length; i++ ) {
+			prefixBytes[i] = prefix.get( offset + i );
 		}
 
-		Node[] nodes = new Node[4];
-		doInsert( head, searchKey, nodes );
-
-		return nodes;
+		return searchPrefix( prefixBytes, Integer.MAX_VALUE );
 	}
 
-	private boolean initializeHead(String searchKey) {
-		if ( head == null ) {
-			head = new Node( getLeftMostOneBit( searchKey ), null, null, null, searchKey );
-			head.setRight( head );
+	private List<String> searchPrefix(byte[] prefixBytes, int limit) {
 
-			return true;
+		PrefixIterator it = newPrefixIterator( prefixBytes );
+		List<String> results = new ArrayList<String>();
+		while ( it.hasNext() && ( results.size() < limit ) ) {
+			results.add( it.next() );
 		}
 
-		return false;
+		TrieMetrics current = metrics;
+		if ( current != null ) {
+			current.recordSearchPrefix( it.bitTests, results.size() );
+		}
+
+		if ( results.isEmpty() && log.isDebugEnabled() ) {
+			log.debug( "could not find strings starting with the prefix,"
+					+ KeyBits.decode( prefixBytes, 0, prefixBytes.length ) );
+		}
+
+		return results;
 	}
 
-	private void doInsert(Node node, String searchKey, Node[] nodes) {
+	/**
+	 * Lazily iterates the keys starting with the prefix, in bit order. Each step costs a few pointer moves, so the
+	 * cost follows the number of keys consumed rather than the size of the subtree. The trie must not be modified
+	 * while iterating.
+	 * 
+	 * @param prefix
+	 * @return
+	 */
+	public final Iterator<String> prefixIterator(String prefix) {
 
-		if ( node != null ) {
-			// search left
-			char bit = getBitAt( node.getBitIndex(), searchKey );
-			if ( bit == '0' ) {
-
-				if ( node.getLeft() == null ) {
-					Node n = createNewNode( node, searchKey );
-					n.setParent( node );
-					node.setLeft( n );
-
-					nodes[0] = n.getNodes()[0];
-					nodes[1] = n.getNodes()[1];
-					nodes[2] = n.getNodes()[2];
-					nodes[3] = n.getNodes()[3];
-				}
-				else if ( node.getBitIndex() >= node.getLeft().getBitIndex()
-						|| ( node.getLeft().getBitIndex() > getDiffAtFrom( node.getLeft().getKey(), searchKey,
-								toBytes( searchKey ).length() - 1 ) ) ) {
-					// find upward pointer
-					Node newNode = createNewNode( node.getLeft(), searchKey );
-
-					if ( node.getBitIndex() > newNode.getBitIndex() ) {
-						// new node comes above node
-						newNode.setParent( node.getParent() );
-						node.setParent( newNode );
-						updateLeftOrRightPointerOnCurrentNode( newNode, node.getLeft(), searchKey );
-					}
-					else if ( node.getBitIndex() < newNode.getBitIndex() ) {
-						// new node comes below node
-						newNode.setParent( node );
-						node.setLeft( newNode );
-					}
-
-					nodes[0] = newNode.getNodes()[0];
-					nodes[1] = newNode.getNodes()[1];
-					nodes[2] = newNode.getNodes()[2];
-					nodes[3] = newNode.getNodes()[3];
-				}
-				else {
-					doInsert( node.getLeft(), searchKey, nodes );
-				}
-			}
-			// search right
-			else if ( bit == '1' ) {
-
-				if ( node.getRight() == null ) {
-					Node n = createNewNode( node, searchKey );
-					n.setParent( node );
-					node.setRight( n );
-
-					nodes[0] = n.getNodes()[0];
-					nodes[1] = n.getNodes()[1];
-					nodes[2] = n.getNodes()[2];
-					nodes[3] = n.getNodes()[3];
-				}
-				else if ( node.getBitIndex() >= node.getRight().getBitIndex()
-						|| ( node.getRight().getBitIndex() > getDiffAtFrom( node.getRight().getKey(), searchKey,
-								toBytes( searchKey ).length() - 1 ) ) ) {
-					// find upward pointer
-					Node newNode = createNewNode( node.getRight(), searchKey );
-
-					if ( node.getBitIndex() > newNode.getBitIndex() ) {
-						// new node comes above node
-						newNode.setParent( node.getParent() );
-						node.setParent( newNode );
-						updateLeftOrRightPointerOnCurrentNode( newNode, node.getRight(), searchKey );
-					}
-					else if ( node.getBitIndex() < newNode.getBitIndex() ) {
-						// new node comes below node
-						node.setRight( newNode );
-						newNode.setParent( node );
-					}
-
-					nodes[0] = newNode.getNodes()[0];
-					nodes[1] = newNode.getNodes()[1];
-					nodes[2] = newNode.getNodes()[2];
-					nodes[3] = newNode.getNodes()[3];
-				}
-				else {
-					doInsert( node.getRight(), searchKey, nodes );
-				}
-			}
+		if ( isNullOrEmpty( prefix ) ) {
+			throw new IllegalArgumentException( "invalid argument specified. prefix," + prefix );
 		}
+
+		return prefixIterator( KeyBits.encode( prefix ) );
+	}
+
+	Iterator<String> prefixIterator(byte[] prefixBytes) {
+		return newPrefixIterator( prefixBytes );
 	}
 
-	private Node initializeNode(Node parent, Node left, Node right, int bitIndex, String searchKey) {
+	private PrefixIterator newPrefixIterator(byte[] prefixBytes) {
+
+		PrefixIterator it = new PrefixIterator( prefixBytes );
+		Node root = getHead();
+		if ( !findPrefix( root, it ) ) {
+			it.cursor.reset();
+		}
+		it.start( root );
 
-		return new Node( bitIndex, parent, left, right, searchKey );
+		return it;
 	}
 
-	private void updateLeftOrRightPointerOnCurrentNode(Node newNode, Node node, String searchKey) {
+	/**
+	 * Number of keys starting with the prefix. Only follows the prefix bits, so it doesn't depend on how many keys
+	 * match.
+	 * 
+	 * @param prefix
+	 * @return
+	 */
+	public final int countPrefix(String prefix) {
+
+		Node root = getHead();
+		if ( isNullOrEmpty( prefix ) ) {
+			throw new IllegalArgumentException( "invalid argument specified. prefix," + prefix );
+		}
+
+		if ( root == null ) {
+			return 0;
+		}
+
+		byte[] prefixBytes = KeyBits.encode( prefix );
+		int prefixBitLength = prefixBytes.length << 3;
+		if ( root.getBitIndex() >= prefixBitLength ) {
+			return root.startsWith( prefixBytes ) ? root.getCount() : 0;
+		}
 
-		if ( getBitAt( node.getBitIndex(), searchKey ) == '0' ) {
-			newNode.setLeft( node );
+		Node node = root;
+		Node next = getChild( node, prefixBytes );
+		while ( TrieCursor.isDownward( node, next ) && ( next.getBitIndex() < prefixBitLength ) ) {
+			node = next;
+			next = getChild( node, prefixBytes );
 		}
-		else if ( getBitAt( node.getBitIndex(), searchKey ) == '1' ) {
-			newNode.setRight( node );
+
+		if ( ( next == null ) || !next.startsWith( prefixBytes ) ) {
+			return 0;
 		}
+
+		return countUnder( node, next );
 	}
 
 	/**
-	 * parent,left and right may need to update after this method call.
-	 * This method doesn't set the pointers except self pointer since they are set differently depending on different
-	 * conditions.
+	 * Number of keys smaller than the key in bit order. The key doesn't need to be in the trie.
 	 * 
-	 * @param node
-	 * @param searchKey
+	 * @param key
 	 * @return
 	 */
-	private Node createNewNode(Node node, String searchKey) {
+	public final int rank(String key) {
 
-		int diffIndex = getDiffAtFrom( node.getKey(), searchKey, toBytes( searchKey ).length() - 1 );
-		Node n = initializeNode( null, null, null, diffIndex, searchKey );
-		setPointToItself( n, node, diffIndex, searchKey );
+		if ( isNullOrEmpty( key ) ) {
+			throw new IllegalArgumentException( "invalid argument specified. key," + key );
+		}
 
-		return n;
+		return rank( KeyBits.encode( key ), false );
 	}
 
-	private void setPointToItself(Node node, Node parent, int diffIndex, String searchKey) {
-
-		if ( getBitAt( diffIndex, searchKey ) == '0' ) {
-			node.setLeft( node );
+	/**
+	 * Number of keys smaller than (or equal to if inclusive) the key.
+	 * 
+	 * @param keyBytes
+	 * @param inclusive
+	 * @return
+	 */
+	int rank(byte[] keyBytes, boolean inclusive) {
 
-			if ( getBitAt( diffIndex, parent.getKey() ) == '1' ) {
-				node.setRight( parent );
-			}
+		Node root = getHead();
+		if ( root == null ) {
+			return 0;
 		}
-		else {
-			node.setRight( node );
 
-			if ( getBitAt( diffIndex, parent.getKey() ) == '0' ) {
-				node.setLeft( parent );
-			}
+		Node closest = findClosest( root, keyBytes, null );
+		int diffIndex = closest.firstDiff( keyBytes, 0, keyBytes.length );
+		boolean found = diffIndex >= ( Math.max( closest.getKeyLength(), keyBytes.length ) << 3 );
+		if ( found ) {
+			diffIndex = Integer.MAX_VALUE;
+		}
+		else if ( diffIndex < root.getBitIndex() ) {
+			return KeyBits.bitAt( keyBytes, diffIndex ) == 0 ? 0 : size();
 		}
-	}
 
-	public final int getLeftMostOneBit(String str) {
+		// add the keys on the left each time the path goes right
+		int rank = 0;
+		Node node = root;
+		Node next;
+		while ( true ) {
+			if ( KeyBits.bitAt( keyBytes, node.getBitIndex() ) == 0 ) {
+				next = node.getLeft();
+			}
+			else {
+				rank += countUnder( node, node.getLeft() );
+				next = node.getRight();
+			}
 
-		char[] binary = toBytes( str ).toCharArray();
-		int index = 0;
-		for ( char c : binary ) {
-			if ( c == '1' ) {
+			if ( !TrieCursor.isDownward( node, next ) || ( next.getBitIndex() >= diffIndex ) ) {
 				break;
 			}
 
-			index++;
+			node = next;
+		}
+
+		if ( found ) {
+			return inclusive ? rank + 1 : rank;
 		}
 
-		return index;
+		// every key under next is smaller than the key if its bit is 1
+		return KeyBits.bitAt( keyBytes, diffIndex ) == 1 ? rank + countUnder( node, next ) : rank;
 	}
 
 	/**
-	 * TODO need to be reviewed later.
+	 * Returns the key at the given position in bit order, starting from 0.
 	 * 
-	 * @param str
+	 * @param index
+	 * @return
 	 */
-	public final String toBytes(String str) {
+	public final String select(int index) {
 
-		byte[] bytes = str.getBytes();
-		StringBuilder binary = new StringBuilder();
-		for ( byte b : bytes ) {
-			int val = b;
-			for ( int i = 0; i < 8; i++ ) {
-				binary.append( ( val & 128 ) == 0 ? 0 : 1 );
-				val <<= 1;
+		Node root = getHead();
+		if ( ( index < 0 ) || ( index >= size() ) ) {
+			throw new IndexOutOfBoundsException( "index," + index + " size," + size() );
+		}
+
+		Node node = root;
+		while ( true ) {
+			int left = countUnder( node, node.getLeft() );
+			Node next;
+			if ( index < left ) {
+				next = node.getLeft();
+			}
+			else {
+				index -= left;
+				next = node.getRight();
+			}
+
+			if ( !TrieCursor.isDownward( node, next ) ) {
+				return next.getKey();
 			}
+
+			node = next;
 		}
+	}
 
-		return binary.toString();
+	/**
+	 * Smallest key greater than or equal to the key, or null if there is none. The key doesn't need to be in the
+	 * trie.
+	 * 
+	 * @param key
+	 * @return
+	 */
+	public final String ceiling(String key) {
+		return neighbour( key, true, true );
 	}
 
-	public final char getBitAt(int bitIndex, String str) {
+	/**
+	 * Largest key less than or equal to the key, or null if there is none.
+	 * 
+	 * @param key
+	 * @return
+	 */
+	public final String floor(String key) {
+		return neighbour( key, false, true );
+	}
+
+	/**
+	 * Smallest key greater than the key, or null if there is none.
+	 * 
+	 * @param key
+	 * @return
+	 */
+	public final String next(String key) {
+		return neighbour( key, true, false );
+	}
 
-		String binary = toBytes( str );
+	/**
+	 * Largest key less than the key, or null if there is none.
+	 * 
+	 * @param key
+	 * @return
+	 */
+	public final String previous(String key) {
+		return neighbour( key, false, false );
+	}
 
-		//log.debug( "str: " + str + " binary expression: " + binary );
+	private String neighbour(String key, boolean greater, boolean inclusive) {
 
-		if ( ( bitIndex >= 0 ) && ( bitIndex < binary.length() ) ) {
-			return binary.toCharArray()[bitIndex];
+		if ( isNullOrEmpty( key ) ) {
+			throw new IllegalArgumentException( "invalid argument specified. key," + key );
 		}
 
-		//log.warn( "bitIndex," + bitIndex + " is out of range, " + binary.length()
-		//		+ ". about to prepend zeros and return the corresponding bit," + bitIndex );
+		TrieCursor cursor = new TrieCursor();
+		byte[] keyBytes = KeyBits.encode( key );
+		Node root = getHead();
+		boolean found = greater ? cursor.ceiling( root, keyBytes, inclusive ) : cursor.floor( root, keyBytes, inclusive );
 
-		return prependGaps( binary.toCharArray(), getGapsAsZeroBits( bitIndex - binary.toCharArray().length ) )[bitIndex - 1];
+		return found ? cursor.getNode().getKey() : null;
 	}
 
 	/**
-	 * returning -1 means both of the parameters are the same. the parameter, from is inclusive.
+	 * Keys from fromKey inclusive to toKey exclusive, in bit order.
 	 * 
-	 * @param nodeKey
-	 *            Key within each node.
-	 * @param searchKey
-	 *            Key to be searched.
-	 * @param from
-	 *            Index to start.
+	 * @param fromKey
+	 * @param toKey
 	 * @return
 	 */
-	public final int getDiffAtFrom(String nodeKey, String searchKey, int from) {
+	public final RangeCursor range(String fromKey, String toKey) {
+		return range( fromKey, true, toKey, false );
+	}
 
-		char[] nodeKeyArray = toBytes( nodeKey ).toCharArray();
-		char[] searchKeyArray = toBytes( searchKey ).toCharArray();
+	/**
+	 * Keys between the bounds in bit order. A null bound leaves the range open on that side. Descends to the lower
+	 * bound once, then steps from key to key.
+	 * 
+	 * @param fromKey
+	 * @param fromInclusive
+	 * @param toKey
+	 * @param toInclusive
+	 * @return
+	 */
+	public final RangeCursor range(String fromKey, boolean fromInclusive, String toKey, boolean toInclusive) {
 
-		if ( searchKeyArray.length > nodeKeyArray.length ) {
-			nodeKeyArray = prependGaps( nodeKeyArray, getGapsAsZeroBits( searchKeyArray.length - nodeKeyArray.length ) );
+		if ( "".equals( fromKey ) ) {
+			throw new IllegalArgumentException( "invalid argument specified. fromKey," + fromKey );
 		}
-		else if ( searchKeyArray.length < nodeKeyArray.length ) {
-			searchKeyArray = prependGaps( searchKeyArray, getGapsAsZeroBits( nodeKeyArray.length
-					- searchKeyArray.length ) );
+		if ( "".equals( toKey ) ) {
+			throw new IllegalArgumentException( "invalid argument specified. toKey," + toKey );
 		}
 
-		int length = Math.min( nodeKeyArray.length, searchKeyArray.length );
-		int index = 0;
-		int start = 0;
-		for ( int i = start; i < length; i++ ) {
-			if ( nodeKeyArray[i] != searchKeyArray[i] ) {
-				break;
-			}
-
-			index++;
+		TrieCursor cursor = new TrieCursor();
+		if ( fromKey == null ) {
+			cursor.first( getHead() );
+		}
+		else {
+			cursor.ceiling( getHead(), KeyBits.encode( fromKey ), fromInclusive );
 		}
 
-		return index;
+		return new RangeCursor( this, cursor, toKey == null ? null : KeyBits.encode( toKey ), toInclusive );
 	}
 
-	public final char[] getGapsAsZeroBits(int gap) {
+	/**
+	 * Keys less than (or equal to if inclusive) toKey, in bit order.
+	 * 
+	 * @param toKey
+	 * @param inclusive
+	 * @return
+	 */
+	public final RangeCursor headSet(String toKey, boolean inclusive) {
 
-		char[] gaps = new char[gap];
-		for ( int i = 0; i < gaps.length; i++ ) {
-			gaps[i] = '0';
+		if ( toKey == null ) {
+			throw new IllegalArgumentException( "invalid argument specified. toKey," + toKey );
 		}
 
-		return gaps;
+		return range( null, true, toKey, inclusive );
 	}
 
-	public final char[] prependGaps(char[] original, char[] gaps) {
-
-		char[] res = new char[original.length + gaps.length];
-		int index = 0;
+	/**
+	 * Keys greater than (or equal to if inclusive) fromKey, in bit order.
+	 * 
+	 * @param fromKey
+	 * @param inclusive
+	 * @return
+	 */
+	public final RangeCursor tailSet(String fromKey, boolean inclusive) {
 
-		for ( index = 0; index < original.length; index++ ) {
-			res[index] = original[index];
-		}
-		for ( int i = 0; i < gaps.length; i++ ) {
-			res[index++] = gaps[i];
+		if ( fromKey == null ) {
+			throw new IllegalArgumentException( "invalid argument specified. fromKey," + fromKey );
 		}
 
-		return res;
+		return range( fromKey, inclusive, null, false );
 	}
 
-	public final boolean search(String searchKey) {
+	/**
+	 * Cursor going on from where the cursor of the token stood, with the same upper bound, without descending from
+	 * head again.
+	 * 
+	 * @param token
+	 * @return
+	 * @throws IllegalArgumentException
+	 *             if the token was taken from a cursor of another trie.
+	 */
+	public final RangeCursor resume(RangeCursor.Token token) {
 
-		if ( isNullOrEmpty( searchKey ) ) {
-			return false;
+		if ( token == null ) {
+			throw new IllegalArgumentException( "invalid argument specified. token," + token );
 		}
 
-		Node[] nodes = new Node[4];
-		doSearch( head, searchKey, nodes );
+		return token.resume( this );
+	}
 
-		if ( nodes[1] == null ) {
-			return false;
-		}
+	/**
+	 * Returns the longest key that is a prefix of the given key, the key itself included, or null if there is none.
+	 *
+	 * @param key
+	 * @return
+	 */
+	public final String longestPrefixOf(String key) {
 
-		// should not happen. If it does, that means that Patricia.insert() has some bug.
-		if ( !nodes[1].getKey().equals( searchKey ) ) {
-			return false;
+		if ( isNullOrEmpty( key ) ) {
+			throw new IllegalArgumentException( "invalid argument specified. key," + key );
 		}
 
-		return true;
+		Node node = findPrefixes( getHead(), KeyBits.encode( key ), null );
+
+		return node == null ? null : node.getKey();
 	}
 
-	private void doSearch(Node node, String searchKey, Node[] nodes) {
+	/**
+	 * Returns the keys that are prefixes of the given key, the key itself included, shortest first.
+	 *
+	 * @param key
+	 * @return
+	 */
+	public final List<String> allPrefixesOf(String key) {
 
-		if ( node != null ) {
-			if ( getBitAt( node.getBitIndex(), searchKey ) == '0' ) {
+		if ( isNullOrEmpty( key ) ) {
+			throw new IllegalArgumentException( "invalid argument specified. key," + key );
+		}
 
-				if ( node.getBitIndex() >= node.getLeft().getBitIndex() ) {
-					if ( node.getLeft().getKey().equals( searchKey ) ) {
-						nodes[0] = node.getLeft().getNodes()[0];
-						nodes[1] = node.getLeft().getNodes()[1];
-						nodes[2] = node.getLeft().getNodes()[2];
-						nodes[3] = node.getLeft().getNodes()[3];
-					}
+		List<String> results = new ArrayList<String>();
+		findPrefixes( getHead(), KeyBits.encode( key ), results );
 
-					return;
-				}
+		return results;
+	}
 
-				doSearch( node.getLeft(), searchKey, nodes );
-			}
-			else if ( getBitAt( node.getBitIndex(), searchKey ) == '1' ) {
+	/**
+	 * Follows the bits of the key from head once, like a search, and returns the node holding its longest prefix.
+	 * The prefixes are added to results, if not null, shortest first.
+	 *
+	 * A prefix n bytes long has only zero bits from bit 8n on, so it is the first key under the pointer followed
+	 * into the first node on the path with a bit index of 8n or more. That first key is only looked up for the
+	 * pointers crossing a byte boundary of the key.
+	 */
+	private Node findPrefixes(Node root, byte[] keyBytes, List<String> results) {
 
-				if ( node.getBitIndex() >= node.getRight().getBitIndex() ) {
-					if ( node.getRight().getKey().equals( searchKey ) ) {
-						nodes[0] = node.getRight().getNodes()[0];
-						nodes[1] = node.getRight().getNodes()[1];
-						nodes[2] = node.getRight().getNodes()[2];
-						nodes[3] = node.getRight().getNodes()[3];
-					}
+		if ( root == null ) {
+			return null;
+		}
 
-					return;
+		int keyBitLength = keyBytes.length << 3;
+		TrieCursor cursor = new TrieCursor();
+		Node longest = null;
+		// head is entered through a pointer above bit 0
+		int from = -1;
+		Node node = null;
+		Node next = root;
+		while ( ( node == null ) || TrieCursor.isDownward( node, next ) ) {
+			int to = Math.min( next.getBitIndex(), keyBitLength );
+			if ( ( to & ~7 ) > Math.max( from, 0 ) ) {
+				boolean found = node == null ? cursor.first( root ) : cursor.enterFirst( node,
+						KeyBits.bitAt( keyBytes, node.getBitIndex() ) );
+				if ( found && isPrefix( cursor.getNode(), keyBytes, from, to ) ) {
+					longest = addPrefix( cursor.getNode(), results );
 				}
+			}
 
-				doSearch( node.getRight(), searchKey, nodes );
+			from = next.getBitIndex();
+			if ( from >= keyBitLength ) {
+				// no prefix ends after this bit
+				return longest;
 			}
+
+			node = next;
+			next = getChild( node, keyBytes );
+		}
+
+		if ( ( next != null ) && isPrefix( next, keyBytes, from, keyBitLength ) ) {
+			longest = addPrefix( next, results );
 		}
+
+		return longest;
 	}
 
-	public final List<String> searchPrefix(String prefix) {
+	/**
+	 * Returns true if the key of the node is a prefix of the key and its last bit is after from and no later than
+	 * to, so that each prefix is only found on one pointer.
+	 */
+	private static boolean isPrefix(Node node, byte[] keyBytes, int from, int to) {
 
-		if ( isNullOrEmpty( prefix ) ) {
-			throw new IllegalArgumentException( "invalid argument specified. prefix," + prefix );
+		int length = node.getKeyLength();
+		int bitLength = length << 3;
+
+		return ( bitLength > from ) && ( bitLength <= to ) && node.keyEquals( keyBytes, 0, length );
+	}
+
+	private static Node addPrefix(Node node, List<String> results) {
+
+		if ( results != null ) {
+			results.add( node.getKey() );
 		}
 
-		Node res = new Node();
-		// res holds where to search prefix if it
-		doSearch( head, prefix, res );
+		return node;
+	}
 
-		List<String> results = new LinkedList<String>();
+	/**
+	 * Stream over {@link #prefixIterator(String)}. Use limit() on it to stop after N keys.
+	 * 
+	 * @param prefix
+	 * @return
+	 */
+	public final Stream<String> streamPrefix(String prefix) {
+		return StreamSupport.stream(
+				Spliterators.spliteratorUnknownSize( prefixIterator( prefix ), Spliterator.ORDERED | Spliterator.DISTINCT
+						| Spliterator.NONNULL ), false );
+	}
 
-		if ( res.getKey() == null ) {
-			log.warn( "could not find strings starting with the prefix," + prefix );
+	/**
+	 * Lazily iterates the keys within maxEdits insertions, deletions or substitutions of chars from the query, in bit
+	 * order. The trie is walked once with a Levenshtein row per char of the current path, and a subtree is skipped as
+	 * soon as no key under it can be close enough, so only the nodes near the query are visited. The trie must not
+	 * be modified while iterating.
+	 *
+	 * @param query
+	 * @param maxEdits
+	 * @return
+	 */
+	public final Iterator<String> searchFuzzy(String query, int maxEdits) {
 
-			return results;
+		if ( query == null ) {
+			throw new IllegalArgumentException( "invalid argument specified. query," + query );
+		}
+		if ( maxEdits < 0 ) {
+			throw new IllegalArgumentException( "invalid argument specified. maxEdits," + maxEdits );
 		}
 
-		doSearchPrefix( res, prefix, results );
-
-		return results;
+		return new FuzzyIterator( getHead(), query, maxEdits );
 	}
 
-	private void doSearchPrefix(Node node, String prefix, List<String> results) {
+	/**
+	 * Points the cursors of the iterator at the first and last keys starting with its prefix, and sets the number of
+	 * bits tested on the way. Every key under a node shares the bits before its bit index, so only the bits of one
+	 * key are compared with the prefix, once.
+	 * 
+	 * @param root
+	 * @param it
+	 * @return false if no key starts with the prefix.
+	 */
+	private boolean findPrefix(Node root, PrefixIterator it) {
 
-		if ( node != null ) {
+		if ( root == null ) {
+			return false;
+		}
 
-			if ( ( node.getLeft() != null ) && ( node.getBitIndex() < node.getLeft().getBitIndex() ) ) {
-				doSearchPrefix( node.getLeft(), prefix, results );
+		byte[] prefixBytes = it.prefixBytes;
+		TrieCursor first = it.cursor;
+		TrieCursor last = it.last;
+		int prefixBitLength = prefixBytes.length << 3;
+		if ( root.getBitIndex() >= prefixBitLength ) {
+			// every key shares the prefix bits or none does
+			if ( !root.startsWith( prefixBytes ) ) {
+				return false;
 			}
 
-			if ( node.getKey().startsWith( prefix ) ) {
-				results.add( node.getKey() );
-			}
+			return first.first( root ) && last.last( root );
+		}
 
-			if ( ( node.getRight() != null ) && ( node.getBitIndex() < node.getRight().getBitIndex() ) ) {
-				doSearchPrefix( node.getRight(), prefix, results );
-			}
+		int bitTests = 1;
+		Node node = root;
+		Node next = getChild( node, prefixBytes );
+		while ( TrieCursor.isDownward( node, next ) && ( next.getBitIndex() < prefixBitLength ) ) {
+			bitTests++;
+			node = next;
+			next = getChild( node, prefixBytes );
+		}
+		it.bitTests = bitTests;
+
+		if ( ( next == null ) || !next.startsWith( prefixBytes ) ) {
+			return false;
 		}
+
+		int side = KeyBits.bitAt( prefixBytes, node.getBitIndex() );
+
+		return first.enterFirst( node, side ) && last.enterLast( node, side );
 	}
 
-	private void doSearch(Node node, String prefix, Node res) {
+	private static final class PrefixIterator implements Iterator<String> {
 
-		if ( node != null ) {
-			if ( getBitAt( node.getBitIndex(), prefix ) == '0' ) {
+		private final TrieCursor cursor = new TrieCursor();
+		private final TrieCursor last = new TrieCursor();
+		private final byte[] prefixBytes;
+		// bits tested finding the first and last keys, for the metrics
+		private int bitTests;
+		private Node root;
+		private Node current;
+		private Node lastNode;
 
-				if ( node.getLeft() != null && ( node.getLeft().getKey().startsWith( prefix ) ) ) {
+		private PrefixIterator(byte[] prefixBytes) {
+			this.prefixBytes = prefixBytes;
+		}
 
-					if ( res.getKey() == null ) {
-						res.copy( node.getLeft() );
+		private void start(Node root) {
 
-						return;
-					}
-				}
+			this.root = root;
+			lastNode = last.getNode();
+			current = settle();
+		}
 
-				if ( node.getBitIndex() >= node.getLeft().getBitIndex() ) {
-					return;
-				}
+		@Override
+		public boolean hasNext() {
+			return cursor.isOnKey();
+		}
 
-				doSearch( node.getLeft(), prefix, res );
+		@Override
+		public String next() {
+
+			if ( !cursor.isOnKey() ) {
+				throw new NoSuchElementException();
 			}
-			else if ( getBitAt( node.getBitIndex(), prefix ) == '1' ) {
 
-				if ( node.getRight().getKey().startsWith( prefix ) ) {
-					if ( res.getKey() == null ) {
-						res.copy( node.getRight() );
-					}
-				}
+			Node node = current;
+			if ( node == lastNode ) {
+				cursor.reset();
+			}
+			else if ( cursor.getNode() == node ) {
+				cursor.next();
+			}
+			else {
+				// a concurrent insert has moved the key under a new node, find the next one again
+				cursor.ceiling( root, node.getKeyBytes(), false );
+			}
+			current = settle();
+
+			return node.getKey();
+		}
+
+		/**
+		 * Returns the key the cursor stands on, skipping keys before the prefix. The first and last keys are found
+		 * from pointers a concurrent insert may put a node on, testing a bit of the prefix, so a key found next to
+		 * them may not start with it.
+		 */
+		private Node settle() {
 
-				if ( node.getBitIndex() >= node.getRight().getBitIndex() ) {
-					return;
+			Node node = cursor.getNode();
+			while ( ( node != null ) && !node.startsWith( prefixBytes ) ) {
+				if ( node.compareKey( prefixBytes ) > 0 ) {
+					cursor.reset();
+
+					return null;
 				}
 
-				doSearch( node.getRight(), prefix, res );
+				cursor.next();
+				node = cursor.getNode();
 			}
+
+			return node;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException( "removal is not supported" );
+		}
+	}
+
+	private static void checkRange(int offset, int length, int size) {
+
+		if ( ( offset < 0 ) || ( length < 0 ) || ( offset > size - length ) ) {
+			throw new IndexOutOfBoundsException( "offset," + offset + " length," + length + " size," + size );
 		}
 	}
 
@@ -446,7 +1752,7 @@ public class PatriciaTrie {
 	}
 
 	public void printInOrder() {
-		doPrintInOrder( head );
+		doPrintInOrder( getHead() );
 	}
 
 	private void doPrintInOrder(Node node) {
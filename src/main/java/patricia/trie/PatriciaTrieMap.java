@@ -0,0 +1,1173 @@
+package patricia.trie;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.function.Function;
+
+/**
+ * PatriciaTrie with a value attached to each key. Keys are ordered by their bits, which is the unsigned
+ * lexicographic order of their encoded bytes, so navigation never compares Strings.
+ *
+ * Keys can't be null or empty. Keys only differing in trailing zero bytes can't be told apart, so putting the
+ * second one of them throws IllegalArgumentException. Removal is not supported by the trie, so remove(), poll and
+ * the remove() of iterators throw UnsupportedOperationException.
+ *
+ * @param <V>
+ */
+public class PatriciaTrieMap<V> extends AbstractMap<String, V> implements NavigableMap<String, V> {
+
+	private static final Comparator<String> BIT_ORDER = new Comparator<String>() {
+
+		@Override
+		public int compare(String o1, String o2) {
+			return KeyBits.compare( KeyBits.encode( o1 ), KeyBits.encode( o2 ) );
+		}
+	};
+
+	private final PatriciaTrie trie = new ValueTrie();
+	private int modCount;
+	private transient EntrySet entrySet;
+	private transient KeySet keySet;
+	private transient NavigableMap<String, V> descendingMap;
+
+	public PatriciaTrieMap() {
+
+	}
+
+	public PatriciaTrieMap(Map<String, ? extends V> map) {
+		putAll( map );
+	}
+
+	@Override
+	public int size() {
+		return trie.size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return trie.isEmpty();
+	}
+
+	@Override
+	public void clear() {
+		trie.clear();
+		modCount++;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return getNode( key ) != null;
+	}
+
+	@Override
+	public V get(Object key) {
+		return valueOf( getNode( key ) );
+	}
+
+	@Override
+	public V put(String key, V value) {
+
+		Node node = putNode( key );
+		V old = valueOf( node );
+		setValueOf( node, value );
+
+		return old;
+	}
+
+	@Override
+	public V putIfAbsent(String key, V value) {
+
+		Node node = putNode( key );
+		V old = valueOf( node );
+		if ( old == null ) {
+			setValueOf( node, value );
+		}
+
+		return old;
+	}
+
+	@Override
+	public V computeIfAbsent(String key, Function<? super String, ? extends V> mappingFunction) {
+
+		if ( mappingFunction == null ) {
+			throw new NullPointerException( "mappingFunction" );
+		}
+
+		if ( key == null ) {
+			throw new NullPointerException( "key" );
+		}
+
+		// one walk down. The key only goes in where it ends once there is a value for it, so that a null result or an
+		// exception leaves no key.
+		byte[] keyBytes = KeyBits.encode( key );
+		Node closest = trie.findClosest( keyBytes );
+		Node node = ( closest != null ) && closest.hasKey( key, keyBytes ) ? closest : null;
+		V value = valueOf( node );
+		if ( value != null ) {
+			return value;
+		}
+
+		value = mappingFunction.apply( key );
+		if ( value != null ) {
+			setValueOf( node == null ? putNode( key, keyBytes, closest ) : node, value );
+		}
+
+		return value;
+	}
+
+	@Override
+	public V remove(Object key) {
+		throw new UnsupportedOperationException( "removal is not supported" );
+	}
+
+	private Node getNode(Object key) {
+
+		if ( key == null ) {
+			throw new NullPointerException( "key" );
+		}
+
+		return trie.findNode( (String) key );
+	}
+
+	/**
+	 * Returns the node holding the key, inserting it in the same traversal if it is not there yet.
+	 */
+	private Node putNode(String key) {
+
+		if ( key == null ) {
+			throw new NullPointerException( "key" );
+		}
+
+		return putNode( key, KeyBits.encode( key ), null );
+	}
+
+	/**
+	 * Same as {@link #putNode(String)} with the key already encoded, linking it next to closest if it is not null.
+	 */
+	private Node putNode(String key, byte[] keyBytes, Node closest) {
+
+		int oldSize = trie.size();
+		Node node = trie.insertNode( key, keyBytes, closest );
+		if ( node == null ) {
+			throw new IllegalArgumentException( "invalid key specified. key," + key );
+		}
+
+		if ( trie.size() != oldSize ) {
+			modCount++;
+		}
+
+		return node;
+	}
+
+	@SuppressWarnings("unchecked")
+	private V valueOf(Node node) {
+		return node == null ? null : (V) ( (ValueNode) node ).getValue();
+	}
+
+	private void setValueOf(Node node, V value) {
+		( (ValueNode) node ).setValue( value );
+	}
+
+	/**
+	 * Order of the keys. Compares the encoded bytes, so prefer the navigation methods over it.
+	 */
+	@Override
+	public Comparator<? super String> comparator() {
+		return BIT_ORDER;
+	}
+
+	@Override
+	public Set<Entry<String, V>> entrySet() {
+
+		if ( entrySet == null ) {
+			entrySet = new EntrySet();
+		}
+
+		return entrySet;
+	}
+
+	@Override
+	public Set<String> keySet() {
+		return navigableKeySet();
+	}
+
+	@Override
+	public NavigableSet<String> navigableKeySet() {
+
+		if ( keySet == null ) {
+			keySet = new KeySet( this );
+		}
+
+		return keySet;
+	}
+
+	@Override
+	public NavigableSet<String> descendingKeySet() {
+		return descendingMap().navigableKeySet();
+	}
+
+	@Override
+	public NavigableMap<String, V> descendingMap() {
+
+		if ( descendingMap == null ) {
+			descendingMap = new SubMap( null, true, null, true, true );
+		}
+
+		return descendingMap;
+	}
+
+	// navigation
+
+	@Override
+	public String firstKey() {
+		return keyOrThrow( firstEntry() );
+	}
+
+	@Override
+	public String lastKey() {
+		return keyOrThrow( lastEntry() );
+	}
+
+	@Override
+	public Entry<String, V> firstEntry() {
+
+		TrieCursor cursor = new TrieCursor();
+		cursor.first( trie.getHead() );
+
+		return exportEntry( cursor );
+	}
+
+	@Override
+	public Entry<String, V> lastEntry() {
+
+		TrieCursor cursor = new TrieCursor();
+		cursor.last( trie.getHead() );
+
+		return exportEntry( cursor );
+	}
+
+	@Override
+	public Entry<String, V> ceilingEntry(String key) {
+		return exportEntry( ceiling( key, true ) );
+	}
+
+	@Override
+	public Entry<String, V> higherEntry(String key) {
+		return exportEntry( ceiling( key, false ) );
+	}
+
+	@Override
+	public Entry<String, V> floorEntry(String key) {
+		return exportEntry( floor( key, true ) );
+	}
+
+	@Override
+	public Entry<String, V> lowerEntry(String key) {
+		return exportEntry( floor( key, false ) );
+	}
+
+	@Override
+	public String ceilingKey(String key) {
+		return keyOf( ceiling( key, true ) );
+	}
+
+	@Override
+	public String higherKey(String key) {
+		return keyOf( ceiling( key, false ) );
+	}
+
+	@Override
+	public String floorKey(String key) {
+		return keyOf( floor( key, true ) );
+	}
+
+	@Override
+	public String lowerKey(String key) {
+		return keyOf( floor( key, false ) );
+	}
+
+	@Override
+	public Entry<String, V> pollFirstEntry() {
+		throw new UnsupportedOperationException( "removal is not supported" );
+	}
+
+	@Override
+	public Entry<String, V> pollLastEntry() {
+		throw new UnsupportedOperationException( "removal is not supported" );
+	}
+
+	@Override
+	public NavigableMap<String, V> subMap(String fromKey, boolean fromInclusive, String toKey, boolean toInclusive) {
+		return new SubMap( checkKey( fromKey ), fromInclusive, checkKey( toKey ), toInclusive, false );
+	}
+
+	@Override
+	public NavigableMap<String, V> headMap(String toKey, boolean inclusive) {
+		return new SubMap( null, true, checkKey( toKey ), inclusive, false );
+	}
+
+	@Override
+	public NavigableMap<String, V> tailMap(String fromKey, boolean inclusive) {
+		return new SubMap( checkKey( fromKey ), inclusive, null, true, false );
+	}
+
+	@Override
+	public SortedMap<String, V> subMap(String fromKey, String toKey) {
+		return subMap( fromKey, true, toKey, false );
+	}
+
+	@Override
+	public SortedMap<String, V> headMap(String toKey) {
+		return headMap( toKey, false );
+	}
+
+	@Override
+	public SortedMap<String, V> tailMap(String fromKey) {
+		return tailMap( fromKey, true );
+	}
+
+	private TrieCursor ceiling(String key, boolean inclusive) {
+		return ceiling( KeyBits.encode( checkKey( key ) ), inclusive );
+	}
+
+	private TrieCursor ceiling(byte[] keyBytes, boolean inclusive) {
+
+		TrieCursor cursor = new TrieCursor();
+		cursor.ceiling( trie.getHead(), keyBytes, inclusive );
+
+		return cursor;
+	}
+
+	private TrieCursor floor(String key, boolean inclusive) {
+		return floor( KeyBits.encode( checkKey( key ) ), inclusive );
+	}
+
+	private TrieCursor floor(byte[] keyBytes, boolean inclusive) {
+
+		TrieCursor cursor = new TrieCursor();
+		cursor.floor( trie.getHead(), keyBytes, inclusive );
+
+		return cursor;
+	}
+
+	private static String checkKey(String key) {
+
+		if ( key == null ) {
+			throw new NullPointerException( "key" );
+		}
+
+		return key;
+	}
+
+	private static String keyOf(TrieCursor cursor) {
+		return cursor.isOnKey() ? cursor.getNode().getKey() : null;
+	}
+
+	private static String keyOrThrow(Entry<String, ?> entry) {
+
+		if ( entry == null ) {
+			throw new NoSuchElementException();
+		}
+
+		return entry.getKey();
+	}
+
+	private Entry<String, V> exportEntry(TrieCursor cursor) {
+
+		if ( !cursor.isOnKey() ) {
+			return null;
+		}
+
+		Node node = cursor.getNode();
+
+		return new SimpleImmutableEntry<String, V>( node.getKey(), valueOf( node ) );
+	}
+
+	/**
+	 * Live entry writing its value through to the node.
+	 */
+	private final class TrieEntry implements Entry<String, V> {
+
+		private final Node node;
+
+		TrieEntry(Node node) {
+			this.node = node;
+		}
+
+		@Override
+		public String getKey() {
+			return node.getKey();
+		}
+
+		@Override
+		public V getValue() {
+			return valueOf( node );
+		}
+
+		@Override
+		public V setValue(V value) {
+
+			V old = valueOf( node );
+			setValueOf( node, value );
+
+			return old;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+
+			if ( !( obj instanceof Entry ) ) {
+				return false;
+			}
+
+			Entry<?, ?> e = (Entry<?, ?>) obj;
+
+			return getKey().equals( e.getKey() ) && ( getValue() == null ? e.getValue() == null : getValue().equals(
+					e.getValue() ) );
+		}
+
+		@Override
+		public int hashCode() {
+			return getKey().hashCode() ^ ( getValue() == null ? 0 : getValue().hashCode() );
+		}
+
+		@Override
+		public String toString() {
+			return getKey() + "=" + getValue();
+		}
+	}
+
+	/**
+	 * Iterates the keys between the bounds, in either direction. A null bound means unbounded.
+	 */
+	private abstract class TrieIterator<T> implements Iterator<T> {
+
+		private final TrieCursor cursor;
+		private final byte[] fence;
+		private final boolean fenceInclusive;
+		private final boolean descending;
+		private final int expectedModCount;
+		private Node next;
+
+		TrieIterator(TrieCursor cursor, byte[] fence, boolean fenceInclusive, boolean descending) {
+			this.cursor = cursor;
+			this.fence = fence;
+			this.fenceInclusive = fenceInclusive;
+			this.descending = descending;
+			this.expectedModCount = modCount;
+			this.next = fenced( cursor );
+		}
+
+		private Node fenced(TrieCursor cursor) {
+
+			if ( !cursor.isOnKey() ) {
+				return null;
+			}
+
+			Node node = cursor.getNode();
+			if ( fence != null ) {
+				int cmp = node.compareKey( fence );
+				if ( descending ) {
+					cmp = -cmp;
+				}
+
+				if ( cmp > 0 || ( cmp == 0 && !fenceInclusive ) ) {
+					return null;
+				}
+			}
+
+			return node;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		Node nextNode() {
+
+			if ( next == null ) {
+				throw new NoSuchElementException();
+			}
+
+			if ( modCount != expectedModCount ) {
+				throw new ConcurrentModificationException();
+			}
+
+			Node node = next;
+			if ( descending ) {
+				cursor.previous();
+			}
+			else {
+				cursor.next();
+			}
+			next = fenced( cursor );
+
+			return node;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException( "removal is not supported" );
+		}
+	}
+
+	private final class EntryIterator extends TrieIterator<Entry<String, V>> {
+
+		EntryIterator(TrieCursor cursor, byte[] fence, boolean fenceInclusive, boolean descending) {
+			super( cursor, fence, fenceInclusive, descending );
+		}
+
+		@Override
+		public Entry<String, V> next() {
+			return new TrieEntry( nextNode() );
+		}
+	}
+
+	private final class KeyIterator extends TrieIterator<String> {
+
+		KeyIterator(TrieCursor cursor, byte[] fence, boolean fenceInclusive, boolean descending) {
+			super( cursor, fence, fenceInclusive, descending );
+		}
+
+		@Override
+		public String next() {
+			return nextNode().getKey();
+		}
+	}
+
+	private final class EntrySet extends AbstractSet<Entry<String, V>> {
+
+		@Override
+		public Iterator<Entry<String, V>> iterator() {
+
+			TrieCursor cursor = new TrieCursor();
+			cursor.first( trie.getHead() );
+
+			return new EntryIterator( cursor, null, true, false );
+		}
+
+		@Override
+		public boolean contains(Object o) {
+
+			if ( !( o instanceof Entry ) ) {
+				return false;
+			}
+
+			Entry<?, ?> e = (Entry<?, ?>) o;
+			if ( !( e.getKey() instanceof String ) ) {
+				return false;
+			}
+
+			Node node = trie.findNode( (String) e.getKey() );
+			V value = valueOf( node );
+
+			return node != null && ( value == null ? e.getValue() == null : value.equals( e.getValue() ) );
+		}
+
+		@Override
+		public int size() {
+			return PatriciaTrieMap.this.size();
+		}
+
+		@Override
+		public void clear() {
+			PatriciaTrieMap.this.clear();
+		}
+	}
+
+	Iterator<String> keyIterator() {
+
+		TrieCursor cursor = new TrieCursor();
+		cursor.first( trie.getHead() );
+
+		return new KeyIterator( cursor, null, true, false );
+	}
+
+	Iterator<String> descendingKeyIterator() {
+
+		TrieCursor cursor = new TrieCursor();
+		cursor.last( trie.getHead() );
+
+		return new KeyIterator( cursor, null, true, true );
+	}
+
+	/**
+	 * NavigableSet over the keys of a NavigableMap, delegating everything to the map.
+	 */
+	static final class KeySet extends AbstractSet<String> implements NavigableSet<String> {
+
+		private final NavigableMap<String, ?> map;
+
+		KeySet(NavigableMap<String, ?> map) {
+			this.map = map;
+		}
+
+		@Override
+		public Iterator<String> iterator() {
+
+			if ( map instanceof PatriciaTrieMap ) {
+				return ( (PatriciaTrieMap<?>) map ).keyIterator();
+			}
+
+			return ( (PatriciaTrieMap<?>.SubMap) map ).keyIterator();
+		}
+
+		@Override
+		public Iterator<String> descendingIterator() {
+
+			if ( map instanceof PatriciaTrieMap ) {
+				return ( (PatriciaTrieMap<?>) map ).descendingKeyIterator();
+			}
+
+			return ( (PatriciaTrieMap<?>.SubMap) map ).descendingKeyIterator();
+		}
+
+		@Override
+		public int size() {
+			return map.size();
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return map.isEmpty();
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return map.containsKey( o );
+		}
+
+		@Override
+		public void clear() {
+			map.clear();
+		}
+
+		@Override
+		public String lower(String e) {
+			return map.lowerKey( e );
+		}
+
+		@Override
+		public String floor(String e) {
+			return map.floorKey( e );
+		}
+
+		@Override
+		public String ceiling(String e) {
+			return map.ceilingKey( e );
+		}
+
+		@Override
+		public String higher(String e) {
+			return map.higherKey( e );
+		}
+
+		@Override
+		public String first() {
+			return map.firstKey();
+		}
+
+		@Override
+		public String last() {
+			return map.lastKey();
+		}
+
+		@Override
+		public Comparator<? super String> comparator() {
+			return map.comparator();
+		}
+
+		@Override
+		public String pollFirst() {
+			throw new UnsupportedOperationException( "removal is not supported" );
+		}
+
+		@Override
+		public String pollLast() {
+			throw new UnsupportedOperationException( "removal is not supported" );
+		}
+
+		@Override
+		public boolean remove(Object o) {
+			throw new UnsupportedOperationException( "removal is not supported" );
+		}
+
+		@Override
+		public NavigableSet<String> descendingSet() {
+			return new KeySet( map.descendingMap() );
+		}
+
+		@Override
+		public NavigableSet<String> subSet(String fromElement, boolean fromInclusive, String toElement, boolean toInclusive) {
+			return new KeySet( map.subMap( fromElement, fromInclusive, toElement, toInclusive ) );
+		}
+
+		@Override
+		public NavigableSet<String> headSet(String toElement, boolean inclusive) {
+			return new KeySet( map.headMap( toElement, inclusive ) );
+		}
+
+		@Override
+		public NavigableSet<String> tailSet(String fromElement, boolean inclusive) {
+			return new KeySet( map.tailMap( fromElement, inclusive ) );
+		}
+
+		@Override
+		public SortedSet<String> subSet(String fromElement, String toElement) {
+			return subSet( fromElement, true, toElement, false );
+		}
+
+		@Override
+		public SortedSet<String> headSet(String toElement) {
+			return headSet( toElement, false );
+		}
+
+		@Override
+		public SortedSet<String> tailSet(String fromElement) {
+			return tailSet( fromElement, true );
+		}
+	}
+
+	/**
+	 * View over the keys between two bounds, in ascending or descending order. Bounds are given in ascending order
+	 * and a null bound means unbounded. Methods taking a direction, like firstKey or headMap, follow the order of
+	 * the view.
+	 */
+	final class SubMap extends AbstractMap<String, V> implements NavigableMap<String, V> {
+
+		private final String lo;
+		private final boolean loInclusive;
+		private final String hi;
+		private final boolean hiInclusive;
+		private final byte[] loBytes;
+		private final byte[] hiBytes;
+		private final boolean descending;
+		private transient Set<Entry<String, V>> entrySet;
+
+		SubMap(String lo, boolean loInclusive, String hi, boolean hiInclusive, boolean descending) {
+
+			this.loBytes = lo == null ? null : KeyBits.encode( lo );
+			this.hiBytes = hi == null ? null : KeyBits.encode( hi );
+			if ( loBytes != null && hiBytes != null && KeyBits.compare( loBytes, hiBytes ) > 0 ) {
+				throw new IllegalArgumentException( "fromKey > toKey" );
+			}
+
+			this.lo = lo;
+			this.loInclusive = loInclusive;
+			this.hi = hi;
+			this.hiInclusive = hiInclusive;
+			this.descending = descending;
+		}
+
+		private boolean tooLow(byte[] keyBytes) {
+			return loBytes != null && belowLo( KeyBits.compare( keyBytes, loBytes ) );
+		}
+
+		private boolean tooHigh(byte[] keyBytes) {
+			return hiBytes != null && aboveHi( KeyBits.compare( keyBytes, hiBytes ) );
+		}
+
+		private boolean belowLo(int cmp) {
+			return cmp < 0 || ( cmp == 0 && !loInclusive );
+		}
+
+		private boolean aboveHi(int cmp) {
+			return cmp > 0 || ( cmp == 0 && !hiInclusive );
+		}
+
+		private boolean inRange(byte[] keyBytes) {
+			return !tooLow( keyBytes ) && !tooHigh( keyBytes );
+		}
+
+		/**
+		 * Same as {@link #inRange(byte[])} for the key of the node, compared in place.
+		 */
+		private boolean inRange(Node node) {
+			return ( loBytes == null || !belowLo( node.compareKey( loBytes ) ) )
+					&& ( hiBytes == null || !aboveHi( node.compareKey( hiBytes ) ) );
+		}
+
+		private boolean inClosedRange(byte[] keyBytes) {
+			return ( loBytes == null || KeyBits.compare( keyBytes, loBytes ) >= 0 )
+					&& ( hiBytes == null || KeyBits.compare( keyBytes, hiBytes ) <= 0 );
+		}
+
+		private boolean inRange(byte[] keyBytes, boolean inclusive) {
+			return inclusive ? inRange( keyBytes ) : inClosedRange( keyBytes );
+		}
+
+		private Node inRange(TrieCursor cursor) {
+
+			if ( !cursor.isOnKey() ) {
+				return null;
+			}
+
+			Node node = cursor.getNode();
+
+			return inRange( node ) ? node : null;
+		}
+
+		// absolute (ascending) navigation, restricted to the bounds
+
+		private TrieCursor absLowest() {
+
+			TrieCursor cursor = new TrieCursor();
+			if ( loBytes == null ) {
+				cursor.first( trie.getHead() );
+			}
+			else {
+				cursor.ceiling( trie.getHead(), loBytes, loInclusive );
+			}
+
+			return cursor;
+		}
+
+		private TrieCursor absHighest() {
+
+			TrieCursor cursor = new TrieCursor();
+			if ( hiBytes == null ) {
+				cursor.last( trie.getHead() );
+			}
+			else {
+				cursor.floor( trie.getHead(), hiBytes, hiInclusive );
+			}
+
+			return cursor;
+		}
+
+		private Node absCeiling(byte[] keyBytes, boolean inclusive) {
+
+			if ( tooLow( keyBytes ) ) {
+				return inRange( absLowest() );
+			}
+
+			return inRange( PatriciaTrieMap.this.ceiling( keyBytes, inclusive ) );
+		}
+
+		private Node absFloor(byte[] keyBytes, boolean inclusive) {
+
+			if ( tooHigh( keyBytes ) ) {
+				return inRange( absHighest() );
+			}
+
+			return inRange( PatriciaTrieMap.this.floor( keyBytes, inclusive ) );
+		}
+
+		private Node ceilingNode(String key, boolean inclusive) {
+
+			byte[] keyBytes = KeyBits.encode( checkKey( key ) );
+
+			return descending ? absFloor( keyBytes, inclusive ) : absCeiling( keyBytes, inclusive );
+		}
+
+		private Node floorNode(String key, boolean inclusive) {
+
+			byte[] keyBytes = KeyBits.encode( checkKey( key ) );
+
+			return descending ? absCeiling( keyBytes, inclusive ) : absFloor( keyBytes, inclusive );
+		}
+
+		private Node firstNode() {
+			return inRange( descending ? absHighest() : absLowest() );
+		}
+
+		private Node lastNode() {
+			return inRange( descending ? absLowest() : absHighest() );
+		}
+
+		private Entry<String, V> export(Node node) {
+			return node == null ? null : new SimpleImmutableEntry<String, V>( node.getKey(), valueOf( node ) );
+		}
+
+		private String keyOf(Node node) {
+			return node == null ? null : node.getKey();
+		}
+
+		Iterator<String> keyIterator() {
+			return descending ? new KeyIterator( absHighest(), loBytes, loInclusive, true ) : new KeyIterator(
+					absLowest(), hiBytes, hiInclusive, false );
+		}
+
+		Iterator<String> descendingKeyIterator() {
+			return descending ? new KeyIterator( absLowest(), hiBytes, hiInclusive, false ) : new KeyIterator(
+					absHighest(), loBytes, loInclusive, true );
+		}
+
+		@Override
+		public Set<Entry<String, V>> entrySet() {
+
+			if ( entrySet == null ) {
+				entrySet = new AbstractSet<Entry<String, V>>() {
+
+					@Override
+					public Iterator<Entry<String, V>> iterator() {
+						return descending ? new EntryIterator( absHighest(), loBytes, loInclusive, true )
+								: new EntryIterator( absLowest(), hiBytes, hiInclusive, false );
+					}
+
+					@Override
+					public int size() {
+						return SubMap.this.size();
+					}
+				};
+			}
+
+			return entrySet;
+		}
+
+		@Override
+		public int size() {
+
+			// keys up to hi minus keys below lo, from the subtree counts
+			int upper = hiBytes == null ? trie.size() : trie.rank( hiBytes, hiInclusive );
+			int lower = loBytes == null ? 0 : trie.rank( loBytes, !loInclusive );
+
+			return Math.max( 0, upper - lower );
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return firstNode() == null;
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+
+			Node node = getNode( key );
+
+			return node != null && inRange( node );
+		}
+
+		@Override
+		public V get(Object key) {
+
+			Node node = getNode( key );
+
+			return node != null && inRange( node ) ? valueOf( node ) : null;
+		}
+
+		@Override
+		public V put(String key, V value) {
+
+			if ( !inRange( KeyBits.encode( checkKey( key ) ) ) ) {
+				throw new IllegalArgumentException( "key out of range" );
+			}
+
+			return PatriciaTrieMap.this.put( key, value );
+		}
+
+		@Override
+		public V remove(Object key) {
+			throw new UnsupportedOperationException( "removal is not supported" );
+		}
+
+		@Override
+		public Comparator<? super String> comparator() {
+			return descending ? BIT_ORDER.reversed() : BIT_ORDER;
+		}
+
+		@Override
+		public String firstKey() {
+
+			Node node = firstNode();
+			if ( node == null ) {
+				throw new NoSuchElementException();
+			}
+
+			return node.getKey();
+		}
+
+		@Override
+		public String lastKey() {
+
+			Node node = lastNode();
+			if ( node == null ) {
+				throw new NoSuchElementException();
+			}
+
+			return node.getKey();
+		}
+
+		@Override
+		public Entry<String, V> firstEntry() {
+			return export( firstNode() );
+		}
+
+		@Override
+		public Entry<String, V> lastEntry() {
+			return export( lastNode() );
+		}
+
+		@Override
+		public Entry<String, V> ceilingEntry(String key) {
+			return export( ceilingNode( key, true ) );
+		}
+
+		@Override
+		public Entry<String, V> higherEntry(String key) {
+			return export( ceilingNode( key, false ) );
+		}
+
+		@Override
+		public Entry<String, V> floorEntry(String key) {
+			return export( floorNode( key, true ) );
+		}
+
+		@Override
+		public Entry<String, V> lowerEntry(String key) {
+			return export( floorNode( key, false ) );
+		}
+
+		@Override
+		public String ceilingKey(String key) {
+			return keyOf( ceilingNode( key, true ) );
+		}
+
+		@Override
+		public String higherKey(String key) {
+			return keyOf( ceilingNode( key, false ) );
+		}
+
+		@Override
+		public String floorKey(String key) {
+			return keyOf( floorNode( key, true ) );
+		}
+
+		@Override
+		public String lowerKey(String key) {
+			return keyOf( floorNode( key, false ) );
+		}
+
+		@Override
+		public Entry<String, V> pollFirstEntry() {
+			throw new UnsupportedOperationException( "removal is not supported" );
+		}
+
+		@Override
+		public Entry<String, V> pollLastEntry() {
+			throw new UnsupportedOperationException( "removal is not supported" );
+		}
+
+		@Override
+		public NavigableSet<String> navigableKeySet() {
+			return new KeySet( this );
+		}
+
+		@Override
+		public Set<String> keySet() {
+			return navigableKeySet();
+		}
+
+		@Override
+		public NavigableSet<String> descendingKeySet() {
+			return descendingMap().navigableKeySet();
+		}
+
+		@Override
+		public NavigableMap<String, V> descendingMap() {
+			return new SubMap( lo, loInclusive, hi, hiInclusive, !descending );
+		}
+
+		@Override
+		public NavigableMap<String, V> subMap(String fromKey, boolean fromInclusive, String toKey, boolean toInclusive) {
+
+			if ( descending ) {
+				return bounded( toKey, toInclusive, fromKey, fromInclusive );
+			}
+
+			return bounded( fromKey, fromInclusive, toKey, toInclusive );
+		}
+
+		@Override
+		public NavigableMap<String, V> headMap(String toKey, boolean inclusive) {
+			return descending ? bounded( toKey, inclusive, hi, hiInclusive ) : bounded( lo, loInclusive, toKey,
+					inclusive );
+		}
+
+		@Override
+		public NavigableMap<String, V> tailMap(String fromKey, boolean inclusive) {
+			return descending ? bounded( lo, loInclusive, fromKey, inclusive ) : bounded( fromKey, inclusive, hi,
+					hiInclusive );
+		}
+
+		@Override
+		public SortedMap<String, V> subMap(String fromKey, String toKey) {
+			return subMap( fromKey, true, toKey, false );
+		}
+
+		@Override
+		public SortedMap<String, V> headMap(String toKey) {
+			return headMap( toKey, false );
+		}
+
+		@Override
+		public SortedMap<String, V> tailMap(String fromKey) {
+			return tailMap( fromKey, true );
+		}
+
+		/**
+		 * New view with the given ascending bounds, which must lie within the bounds of this view.
+		 */
+		private NavigableMap<String, V> bounded(String newLo, boolean newLoInclusive, String newHi,
+				boolean newHiInclusive) {
+
+			if ( newLo != lo && !inRange( KeyBits.encode( checkKey( newLo ) ), newLoInclusive ) ) {
+				throw new IllegalArgumentException( "fromKey out of range" );
+			}
+
+			if ( newHi != hi && !inRange( KeyBits.encode( checkKey( newHi ) ), newHiInclusive ) ) {
+				throw new IllegalArgumentException( "toKey out of range" );
+			}
+
+			return new SubMap( newLo, newLoInclusive, newHi, newHiInclusive, descending );
+		}
+	}
+
+	/**
+	 * Trie of nodes carrying the value of their key, so that the nodes of other tries don't have a value field.
+	 */
+	private static final class ValueTrie extends PatriciaTrie {
+
+		@Override
+		Node newNode(int bitIndex, Node parent, Node left, Node right) {
+			return new ValueNode( bitIndex, parent, left, right );
+		}
+	}
+
+	static final class ValueNode extends PlainNode {
+
+		private Object value;
+
+		ValueNode(int bitIndex, Node parent, Node left, Node right) {
+			super( bitIndex, parent, left, right, null );
+		}
+
+		Object getValue() {
+			return value;
+		}
+
+		void setValue(Object value) {
+			this.value = value;
+		}
+
+		@Override
+		public void copy(Node node) {
+
+			super.copy( node );
+			if ( node instanceof ValueNode ) {
+				value = ( (ValueNode) node ).getValue();
+			}
+		}
+	}
+}
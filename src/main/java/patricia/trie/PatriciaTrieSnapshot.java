@@ -0,0 +1,355 @@
+package patricia.trie;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read only trie answering searches straight from a memory mapped snapshot file written by
+ * {@link #write(PatriciaTrie, Path)}. Nothing is deserialized: opening maps the file, and searches read node
+ * records and key bytes from the mapping, so the data stays off the heap and processes mapping the same file share
+ * it through the page cache. A snapshot can be searched by any number of threads.
+ *
+ * The file is big endian:
+ * <ul>
+ * <li>header: magic, version, node count and key region length as ints,</li>
+ * <li>one record per node, head first: bit index, left and right node indexes (-1 for none) and the offset of the
+ * key in the key region as ints,</li>
+ * <li>the encoded keys back to back, in node order, so a key ends where the key of the next node starts.</li>
+ * </ul>
+ * A file can't be larger than 2GB, the size of one mapping.
+ */
+public class PatriciaTrieSnapshot implements Closeable {
+
+	static final int MAGIC = 0x50545331;
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 16;
+	static final int RECORD_SIZE = 16;
+
+	private static final int NONE = -1;
+
+	private final FileChannel channel;
+	private final MappedByteBuffer buffer;
+	private final int size;
+	private final int keysStart;
+	private final int keysLength;
+
+	private PatriciaTrieSnapshot(FileChannel channel, MappedByteBuffer buffer) throws IOException {
+
+		this.channel = channel;
+		this.buffer = buffer;
+
+		if ( ( buffer.capacity() < HEADER_SIZE ) || ( buffer.getInt( 0 ) != MAGIC ) ) {
+			throw new IOException( "not a trie snapshot" );
+		}
+
+		if ( buffer.getInt( 4 ) != VERSION ) {
+			throw new IOException( "unsupported snapshot version," + buffer.getInt( 4 ) );
+		}
+
+		size = buffer.getInt( 8 );
+		keysLength = buffer.getInt( 12 );
+		keysStart = HEADER_SIZE + size * RECORD_SIZE;
+		if ( ( size < 0 ) || ( keysLength < 0 ) || ( (long) keysStart + keysLength != buffer.capacity() ) ) {
+			throw new IOException( "truncated trie snapshot" );
+		}
+	}
+
+	/**
+	 * Maps the snapshot file.
+	 *
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 *             if the file can't be read or is not a snapshot.
+	 */
+	public static PatriciaTrieSnapshot open(Path file) throws IOException {
+
+		FileChannel channel = FileChannel.open( file, StandardOpenOption.READ );
+		try {
+			if ( channel.size() > Integer.MAX_VALUE ) {
+				throw new IOException( "snapshot larger than 2GB," + channel.size() );
+			}
+
+			return new PatriciaTrieSnapshot( channel, channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() ) );
+		}
+		catch ( IOException | RuntimeException e ) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Writes the keys and the structure of the trie to the file, replacing it. The trie must not change while it is
+	 * written.
+	 *
+	 * @param trie
+	 * @param file
+	 * @throws IOException
+	 */
+	public static void write(PatriciaTrie trie, Path file) throws IOException {
+
+		// head first, then each node before the nodes under it. A node only found through an upward pointer, like
+		// the one on the empty left pointer of head, comes when that pointer is visited.
+		List<Node> nodes = new ArrayList<Node>();
+		Map<Node, Integer> indexes = new IdentityHashMap<Node, Integer>();
+		long keysLength = 0;
+		Node head = trie.getHead();
+		if ( head != null ) {
+			Node[] stack = new Node[64];
+			int depth = 0;
+			stack[depth++] = head;
+			indexes.put( head, 0 );
+			nodes.add( head );
+			while ( depth > 0 ) {
+				Node node = stack[--depth];
+				keysLength += node.getKeyBytes().length;
+
+				if ( depth + 2 > stack.length ) {
+					stack = Arrays.copyOf( stack, stack.length << 1 );
+				}
+				for ( Node child : new Node[] { node.getLeft(), node.getRight() } ) {
+					if ( ( child != null ) && !indexes.containsKey( child ) ) {
+						indexes.put( child, nodes.size() );
+						nodes.add( child );
+						stack[depth++] = child;
+					}
+				}
+			}
+		}
+
+		if ( HEADER_SIZE + (long) nodes.size() * RECORD_SIZE + keysLength > Integer.MAX_VALUE ) {
+			throw new IllegalArgumentException( "trie too large for a snapshot. size," + nodes.size() );
+		}
+
+		try ( FileChannel channel = FileChannel.open( file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING ) ) {
+			ByteBuffer out = ByteBuffer.allocateDirect( 1 << 16 );
+			out.putInt( MAGIC ).putInt( VERSION ).putInt( nodes.size() ).putInt( (int) keysLength );
+
+			int keyOffset = 0;
+			for ( Node node : nodes ) {
+				if ( out.remaining() < RECORD_SIZE ) {
+					flush( channel, out );
+				}
+
+				out.putInt( node.getBitIndex() );
+				out.putInt( indexOf( indexes, node.getLeft() ) );
+				out.putInt( indexOf( indexes, node.getRight() ) );
+				out.putInt( keyOffset );
+				keyOffset += node.getKeyBytes().length;
+			}
+
+			for ( Node node : nodes ) {
+				byte[] keyBytes = node.getKeyBytes();
+				int written = 0;
+				while ( written < keyBytes.length ) {
+					if ( !out.hasRemaining() ) {
+						flush( channel, out );
+					}
+
+					int length = Math.min( out.remaining(), keyBytes.length - written );
+					out.put( keyBytes, written, length );
+					written += length;
+				}
+			}
+
+			flush( channel, out );
+		}
+	}
+
+	private static int indexOf(Map<Node, Integer> indexes, Node node) {
+		return node == null ? NONE : indexes.get( node );
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer out) throws IOException {
+
+		out.flip();
+		while ( out.hasRemaining() ) {
+			channel.write( out );
+		}
+		out.clear();
+	}
+
+	/**
+	 * Number of keys in the snapshot.
+	 *
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public boolean search(String searchKey) {
+
+		if ( isNullOrEmpty( searchKey ) || ( size == 0 ) ) {
+			return false;
+		}
+
+		byte[] keyBytes = KeyBits.encode( searchKey );
+		int node = 0;
+		int next = getChild( node, keyBytes );
+		while ( isDownward( node, next ) ) {
+			node = next;
+			next = getChild( node, keyBytes );
+		}
+
+		if ( next == NONE ) {
+			return false;
+		}
+
+		if ( keyLength( next ) != keyBytes.length ) {
+			return false;
+		}
+
+		return KeyBits.firstDiff( buffer, keyStart( next ), keyBytes.length, keyBytes ) >= ( keyBytes.length << 3 );
+	}
+
+	public List<String> searchPrefix(String prefix) {
+		return searchPrefix( prefix, Integer.MAX_VALUE );
+	}
+
+	/**
+	 * Returns at most limit keys starting with the prefix, in bit order.
+	 *
+	 * @param prefix
+	 * @param limit
+	 * @return
+	 */
+	public List<String> searchPrefix(String prefix, int limit) {
+
+		if ( isNullOrEmpty( prefix ) ) {
+			throw new IllegalArgumentException( "invalid argument specified. prefix," + prefix );
+		}
+
+		List<String> results = new ArrayList<String>();
+		if ( size == 0 ) {
+			return results;
+		}
+
+		byte[] prefixBytes = KeyBits.encode( prefix );
+		int prefixBitLength = prefixBytes.length << 3;
+		if ( bitIndex( 0 ) >= prefixBitLength ) {
+			// every key shares the prefix bits or none does
+			if ( startsWith( 0, prefixBytes ) ) {
+				collect( 0, TrieCursor.LEFT, TrieCursor.RIGHT, limit, results );
+			}
+
+			return results;
+		}
+
+		int node = 0;
+		int next = getChild( node, prefixBytes );
+		while ( isDownward( node, next ) && ( bitIndex( next ) < prefixBitLength ) ) {
+			node = next;
+			next = getChild( node, prefixBytes );
+		}
+
+		if ( ( next != NONE ) && startsWith( next, prefixBytes ) ) {
+			int side = KeyBits.bitAt( prefixBytes, bitIndex( node ) );
+			collect( node, side, side, limit, results );
+		}
+
+		return results;
+	}
+
+	/**
+	 * Closes the file. The mapping itself is released when the snapshot is garbage collected.
+	 */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * Adds the keys found through the pointers of node from side first to side last, in bit order.
+	 */
+	private void collect(int node, int firstSide, int lastSide, int limit, List<String> results) {
+
+		int[] stack = new int[64];
+		int depth = 0;
+		for ( int side = lastSide; side >= firstSide; side-- ) {
+			stack[depth++] = ( node << 1 ) | side;
+		}
+
+		while ( ( depth > 0 ) && ( results.size() < limit ) ) {
+			int slot = stack[--depth];
+			int from = slot >>> 1;
+			int next = child( from, slot & 1 );
+			if ( next == NONE ) {
+				continue;
+			}
+
+			if ( !isDownward( from, next ) ) {
+				results.add( readKey( next ) );
+				continue;
+			}
+
+			if ( depth + 2 > stack.length ) {
+				stack = Arrays.copyOf( stack, stack.length << 1 );
+			}
+			stack[depth++] = ( next << 1 ) | TrieCursor.RIGHT;
+			stack[depth++] = ( next << 1 ) | TrieCursor.LEFT;
+		}
+	}
+
+	private String readKey(int node) {
+
+		byte[] keyBytes = new byte[keyLength( node )];
+		int start = keyStart( node );
+		for ( int i = 0; i < keyBytes.length; i++ ) {
+			keyBytes[i] = buffer.get( start + i );
+		}
+
+		return KeyBits.decode( keyBytes, 0, keyBytes.length );
+	}
+
+	private int bitIndex(int node) {
+		return buffer.getInt( HEADER_SIZE + node * RECORD_SIZE );
+	}
+
+	private int child(int node, int side) {
+		return buffer.getInt( HEADER_SIZE + node * RECORD_SIZE + 4 + ( side << 2 ) );
+	}
+
+	private int getChild(int node, byte[] keyBytes) {
+		return child( node, KeyBits.bitAt( keyBytes, bitIndex( node ) ) );
+	}
+
+	private boolean isDownward(int node, int next) {
+		return ( next != NONE ) && ( bitIndex( node ) < bitIndex( next ) );
+	}
+
+	private int keyOffset(int node) {
+		return node == size ? keysLength : buffer.getInt( HEADER_SIZE + node * RECORD_SIZE + 12 );
+	}
+
+	private int keyStart(int node) {
+		return keysStart + keyOffset( node );
+	}
+
+	private int keyLength(int node) {
+		return keyOffset( node + 1 ) - keyOffset( node );
+	}
+
+	private boolean startsWith(int node, byte[] prefixBytes) {
+		return KeyBits.startsWith( buffer, keyStart( node ), keyLength( node ), prefixBytes );
+	}
+
+	private boolean isNullOrEmpty(String str) {
+		return ( str == null ) || str.isEmpty();
+	}
+}
@@ -0,0 +1,274 @@
+package patricia.trie;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable version of a trie. Inserting returns a new version which copies the nodes on the path of the key only and
+ * shares every other node with this one, so a version costs O(depth) new nodes per key and stays valid as long as
+ * it is referenced, whatever is inserted in later versions. See {@link VersionedPatriciaTrie} to publish versions to
+ * readers.
+ *
+ * Nodes of {@link PatriciaTrie} can't be shared between versions, since the parent pointers and the upward pointers
+ * from under a node would have to be copied with it. Here keys are in leaves and a branch node only holds the bit
+ * index where the keys under it differ and its two children, so a node never points up. Bits and order are the same
+ * as in PatriciaTrie.
+ */
+public final class PersistentPatriciaTrie implements Iterable<String> {
+
+	private static final PersistentPatriciaTrie EMPTY = new PersistentPatriciaTrie( null );
+
+	private final Entry root;
+
+	private PersistentPatriciaTrie(Entry root) {
+		this.root = root;
+	}
+
+	/**
+	 * Version without keys.
+	 *
+	 * @return
+	 */
+	public static PersistentPatriciaTrie empty() {
+		return EMPTY;
+	}
+
+	public int size() {
+		return root == null ? 0 : root.size();
+	}
+
+	public boolean isEmpty() {
+		return root == null;
+	}
+
+	/**
+	 * Returns the version with the key, which is this version if the key is already there or can't be inserted.
+	 *
+	 * @param searchKey
+	 * @return
+	 */
+	public PersistentPatriciaTrie insert(String searchKey) {
+
+		if ( ( searchKey == null ) || searchKey.isEmpty() ) {
+			return this;
+		}
+
+		Entry newRoot = insert( root, new Leaf( searchKey, KeyBits.encode( searchKey ) ) );
+
+		return newRoot == root ? this : new PersistentPatriciaTrie( newRoot );
+	}
+
+	/**
+	 * Returns the version with all of the keys, without the intermediate versions.
+	 *
+	 * @param searchKeys
+	 * @return
+	 */
+	public PersistentPatriciaTrie insertAll(Iterable<String> searchKeys) {
+
+		Entry newRoot = root;
+		for ( String searchKey : searchKeys ) {
+			if ( ( searchKey != null ) && !searchKey.isEmpty() ) {
+				newRoot = insert( newRoot, new Leaf( searchKey, KeyBits.encode( searchKey ) ) );
+			}
+		}
+
+		return newRoot == root ? this : new PersistentPatriciaTrie( newRoot );
+	}
+
+	public boolean search(String searchKey) {
+
+		if ( ( searchKey == null ) || searchKey.isEmpty() || ( root == null ) ) {
+			return false;
+		}
+
+		byte[] keyBytes = KeyBits.encode( searchKey );
+
+		return Arrays.equals( closest( root, keyBytes ).keyBytes, keyBytes );
+	}
+
+	/**
+	 * Keys starting with the prefix, in bit order.
+	 *
+	 * @param prefix
+	 * @return
+	 */
+	public List<String> searchPrefix(String prefix) {
+
+		if ( ( prefix == null ) || prefix.isEmpty() ) {
+			throw new IllegalArgumentException( "invalid argument specified. prefix," + prefix );
+		}
+
+		List<String> results = new ArrayList<String>();
+		if ( root == null ) {
+			return results;
+		}
+
+		// every key under a branch shares the bits before its bit index
+		byte[] prefixBytes = KeyBits.encode( prefix );
+		int prefixBitLength = prefixBytes.length << 3;
+		Entry entry = root;
+		while ( ( entry instanceof Branch ) && ( ( (Branch) entry ).bitIndex < prefixBitLength ) ) {
+			entry = ( (Branch) entry ).child( prefixBytes );
+		}
+
+		if ( KeyBits.startsWith( closest( entry, prefixBytes ).keyBytes, prefixBytes ) ) {
+			for ( Iterator<String> it = new KeyIterator( entry ); it.hasNext(); ) {
+				results.add( it.next() );
+			}
+		}
+
+		return results;
+	}
+
+	/**
+	 * Keys in bit order.
+	 */
+	@Override
+	public Iterator<String> iterator() {
+		return new KeyIterator( root );
+	}
+
+	/**
+	 * Copies the nodes on the path of the leaf, down to the bit where it differs from the keys already there.
+	 */
+	private static Entry insert(Entry root, Leaf leaf) {
+
+		if ( root == null ) {
+			return leaf;
+		}
+
+		byte[] keyBytes = leaf.keyBytes;
+		byte[] closest = closest( root, keyBytes ).keyBytes;
+		int diffIndex = KeyBits.firstDiff( closest, keyBytes );
+		if ( diffIndex >= ( Math.max( closest.length, keyBytes.length ) << 3 ) ) {
+			// already there, or only differs in trailing zero bytes
+			return root;
+		}
+
+		Branch[] path = new Branch[16];
+		int depth = 0;
+		Entry entry = root;
+		while ( ( entry instanceof Branch ) && ( ( (Branch) entry ).bitIndex < diffIndex ) ) {
+			if ( depth == path.length ) {
+				path = Arrays.copyOf( path, depth << 1 );
+			}
+			path[depth++] = (Branch) entry;
+			entry = ( (Branch) entry ).child( keyBytes );
+		}
+
+		Entry copy = KeyBits.bitAt( keyBytes, diffIndex ) == 0 ? new Branch( diffIndex, leaf, entry )
+				: new Branch( diffIndex, entry, leaf );
+		while ( depth > 0 ) {
+			Branch branch = path[--depth];
+			copy = KeyBits.bitAt( keyBytes, branch.bitIndex ) == 0 ? new Branch( branch.bitIndex, copy, branch.right )
+					: new Branch( branch.bitIndex, branch.left, copy );
+		}
+
+		return copy;
+	}
+
+	/**
+	 * Leaf found by following the bits of the key from the entry.
+	 */
+	private static Leaf closest(Entry entry, byte[] keyBytes) {
+
+		while ( entry instanceof Branch ) {
+			entry = ( (Branch) entry ).child( keyBytes );
+		}
+
+		return (Leaf) entry;
+	}
+
+	private abstract static class Entry {
+
+		abstract int size();
+	}
+
+	private static final class Leaf extends Entry {
+
+		private final String key;
+		private final byte[] keyBytes;
+
+		private Leaf(String key, byte[] keyBytes) {
+			this.key = key;
+			this.keyBytes = keyBytes;
+		}
+
+		@Override
+		int size() {
+			return 1;
+		}
+	}
+
+	private static final class Branch extends Entry {
+
+		private final int bitIndex;
+		private final Entry left;
+		private final Entry right;
+		private final int size;
+
+		private Branch(int bitIndex, Entry left, Entry right) {
+			this.bitIndex = bitIndex;
+			this.left = left;
+			this.right = right;
+			size = left.size() + right.size();
+		}
+
+		@Override
+		int size() {
+			return size;
+		}
+
+		private Entry child(byte[] keyBytes) {
+			return KeyBits.bitAt( keyBytes, bitIndex ) == 0 ? left : right;
+		}
+	}
+
+	/**
+	 * Walks the leaves under an entry from left to right with a stack of the right children still to visit.
+	 */
+	private static final class KeyIterator implements Iterator<String> {
+
+		private Entry[] stack = new Entry[16];
+		private int depth;
+
+		private KeyIterator(Entry entry) {
+			if ( entry != null ) {
+				stack[depth++] = entry;
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return depth > 0;
+		}
+
+		@Override
+		public String next() {
+
+			if ( depth == 0 ) {
+				throw new NoSuchElementException();
+			}
+
+			Entry entry = stack[--depth];
+			while ( entry instanceof Branch ) {
+				if ( depth == stack.length ) {
+					stack = Arrays.copyOf( stack, depth << 1 );
+				}
+				stack[depth++] = ( (Branch) entry ).right;
+				entry = ( (Branch) entry ).left;
+			}
+
+			return ( (Leaf) entry ).key;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException( "removal is not supported" );
+		}
+	}
+}
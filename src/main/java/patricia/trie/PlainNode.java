@@ -0,0 +1,60 @@
+package patricia.trie;
+
+/**
+ * Node keeping its pointers in plain fields, the node of every trie not searched while it's written.
+ */
+class PlainNode extends Node {
+
+	private Node parent;
+	private Node left;
+	private Node right;
+
+	PlainNode(int bitIndex, Node parent, Node left, Node right, String key) {
+		super( bitIndex, key );
+		this.parent = parent;
+		this.left = left;
+		this.right = right;
+	}
+
+	PlainNode(int bitIndex, String key) {
+		super( bitIndex, key );
+	}
+
+	PlainNode(String key) {
+		super( key );
+	}
+
+	PlainNode() {
+
+	}
+
+	@Override
+	public Node getParent() {
+		return parent;
+	}
+
+	@Override
+	public void setParent(Node parent) {
+		this.parent = parent;
+	}
+
+	@Override
+	public Node getLeft() {
+		return left;
+	}
+
+	@Override
+	public void setLeft(Node left) {
+		this.left = left;
+	}
+
+	@Override
+	public Node getRight() {
+		return right;
+	}
+
+	@Override
+	public void setRight(Node right) {
+		this.right = right;
+	}
+}
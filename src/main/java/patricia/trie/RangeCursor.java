@@ -0,0 +1,166 @@
+package patricia.trie;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Walks the keys of a {@link PatriciaTrie} from a lower bound to an upper bound in bit order, for
+ * {@link PatriciaTrie#range(String, boolean, String, boolean)} and the head and tail sets.
+ *
+ * The cursor descends to the lower bound once, then steps along the child and parent pointers, each step costing a
+ * few pointer moves and a comparison with the upper bound. {@link #token()} records where the cursor stands, so that
+ * the next page of a listing can be read with {@link PatriciaTrie#resume(Token)} without descending from head again.
+ *
+ * Keys inserted while walking may or may not be returned, the others are returned once, in order.
+ */
+public final class RangeCursor implements Iterator<String> {
+
+	private final PatriciaTrie trie;
+	private final TrieCursor cursor;
+	private final byte[] toBytes;
+	private final boolean toInclusive;
+	private Node current;
+
+	RangeCursor(PatriciaTrie trie, TrieCursor cursor, byte[] toBytes, boolean toInclusive) {
+
+		this.trie = trie;
+		this.cursor = cursor;
+		this.toBytes = toBytes;
+		this.toInclusive = toInclusive;
+		current = settle();
+	}
+
+	@Override
+	public boolean hasNext() {
+		return current != null;
+	}
+
+	@Override
+	public String next() {
+
+		if ( current == null ) {
+			throw new NoSuchElementException();
+		}
+
+		Node node = current;
+		if ( cursor.getNode() == node ) {
+			cursor.next();
+		}
+		else {
+			// a concurrent insert has moved the key under a new node, find the next one again
+			cursor.ceiling( trie.getHead(), node.getKeyBytes(), false );
+		}
+		current = settle();
+
+		return node.getKey();
+	}
+
+	/**
+	 * Returns the next count keys at most, one page of a listing.
+	 *
+	 * @param count
+	 * @return
+	 */
+	public List<String> next(int count) {
+
+		if ( count < 0 ) {
+			throw new IllegalArgumentException( "invalid argument specified. count," + count );
+		}
+
+		List<String> keys = new ArrayList<String>( Math.min( count, 1024 ) );
+		while ( ( keys.size() < count ) && ( current != null ) ) {
+			keys.add( next() );
+		}
+
+		return keys;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException( "removal is not supported" );
+	}
+
+	/**
+	 * Position of the cursor, before the key next() would return. The cursor may go on, the token doesn't move.
+	 *
+	 * @return
+	 */
+	public Token token() {
+
+		TrieCursor position = new TrieCursor();
+		position.copy( cursor );
+
+		return new Token( trie, position, current, toBytes, toInclusive );
+	}
+
+	/**
+	 * Returns the key the cursor stands on, or null past the upper bound.
+	 */
+	private Node settle() {
+
+		Node node = cursor.getNode();
+		if ( ( node != null ) && ( toBytes != null ) ) {
+			int cmp = node.compareKey( toBytes );
+			if ( ( cmp > 0 ) || ( ( cmp == 0 ) && !toInclusive ) ) {
+				cursor.reset();
+
+				return null;
+			}
+		}
+
+		return node;
+	}
+
+	/**
+	 * Where a {@link RangeCursor} stood, to go on from there with {@link PatriciaTrie#resume(Token)}. Holds the
+	 * node of the next key, so it is only valid for the trie it was taken from.
+	 */
+	public static final class Token {
+
+		private final PatriciaTrie trie;
+		private final TrieCursor cursor;
+		private final Node node;
+		private final byte[] toBytes;
+		private final boolean toInclusive;
+
+		private Token(PatriciaTrie trie, TrieCursor cursor, Node node, byte[] toBytes, boolean toInclusive) {
+			this.trie = trie;
+			this.cursor = cursor;
+			this.node = node;
+			this.toBytes = toBytes;
+			this.toInclusive = toInclusive;
+		}
+
+		/**
+		 * Key the resumed cursor returns first, or null if the range was over.
+		 *
+		 * @return
+		 */
+		public String getKey() {
+			return node == null ? null : node.getKey();
+		}
+
+		/**
+		 * Cursor going on from the token. If a concurrent insert has put a new node where the cursor stood, the key
+		 * is found again from head.
+		 */
+		RangeCursor resume(PatriciaTrie trie) {
+
+			if ( trie != this.trie ) {
+				throw new IllegalArgumentException( "invalid argument specified. token of another trie" );
+			}
+
+			TrieCursor position = new TrieCursor();
+			if ( node != null ) {
+				position.copy( cursor );
+				if ( position.getNode() != node ) {
+					position.ceiling( trie.getHead(), node.getKeyBytes(), true );
+				}
+			}
+
+			return new RangeCursor( trie, position, toBytes, toInclusive );
+		}
+	}
+}
@@ -0,0 +1,354 @@
+package patricia.trie;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Keys split by shardBits of their bits, starting at bit fromBit, between 2^shardBits independent
+ * {@link ConcurrentPatriciaTrie} shards. Each shard has its own head and its own insert lock, so inserts of keys in
+ * different shards don't wait for each other, and a key is searched in its shard only.
+ *
+ * With fromBit 0 a shard is the range of keys starting with its bits, the same decision head makes, so the shards
+ * hold consecutive ranges and are iterated one after the other. The leading bits of text hardly vary though: every
+ * lowercase ASCII key starts with 011. Sharding on the bits after them, e.g. fromBit 3, spreads such keys, and the
+ * keys of the shards are then merged in bit order while iterating.
+ *
+ * A prefix is only searched in the shards it can reach: the shards whose bits agree with the bits the prefix
+ * covers, a single one once the prefix covers all of the shard bits.
+ *
+ * Iterators are weakly consistent like those of ConcurrentPatriciaTrie. size() and countPrefix() are exact only when
+ * no insert is running.
+ */
+public class ShardedPatriciaTrie implements Iterable<String> {
+
+	public static final int MAX_SHARD_BITS = 16;
+
+	private final ConcurrentPatriciaTrie[] shards;
+	private final int shardBits;
+	private final int fromBit;
+
+	/**
+	 * Trie split by the leading shardBits bits of the keys.
+	 *
+	 * @param shardBits
+	 */
+	public ShardedPatriciaTrie(int shardBits) {
+		this( shardBits, 0 );
+	}
+
+	/**
+	 * Trie split by the shardBits bits of the keys starting at bit fromBit.
+	 *
+	 * @param shardBits
+	 * @param fromBit
+	 */
+	public ShardedPatriciaTrie(int shardBits, int fromBit) {
+
+		if ( ( shardBits < 1 ) || ( shardBits > MAX_SHARD_BITS ) ) {
+			throw new IllegalArgumentException( "invalid argument specified. shardBits," + shardBits );
+		}
+		if ( fromBit < 0 ) {
+			throw new IllegalArgumentException( "invalid argument specified. fromBit," + fromBit );
+		}
+
+		this.shardBits = shardBits;
+		this.fromBit = fromBit;
+		shards = new ConcurrentPatriciaTrie[1 << shardBits];
+		for ( int i = 0; i < shards.length; i++ ) {
+			shards[i] = new ConcurrentPatriciaTrie();
+		}
+	}
+
+	/**
+	 * Inserts the key into its shard, see {@link PatriciaTrie#insert(String, NodeView)}.
+	 *
+	 * @param searchKey
+	 * @param view
+	 *            Reusable view to be pointed at the node holding the key. May be null.
+	 * @return true if the key has been inserted, false if it was already there or can't be inserted.
+	 */
+	public boolean insert(String searchKey, NodeView view) {
+
+		if ( ( searchKey == null ) || searchKey.isEmpty() ) {
+			if ( view != null ) {
+				view.clear();
+			}
+
+			return false;
+		}
+
+		byte[] keyBytes = KeyBits.encode( searchKey );
+
+		return shards[shardOf( keyBytes )].insert( searchKey, keyBytes, view );
+	}
+
+	public boolean search(String searchKey) {
+
+		if ( ( searchKey == null ) || searchKey.isEmpty() ) {
+			return false;
+		}
+
+		byte[] keyBytes = KeyBits.encode( searchKey );
+
+		return shards[shardOf( keyBytes )].search( keyBytes, 0, keyBytes.length );
+	}
+
+	/**
+	 * Keys starting with the prefix, in bit order.
+	 *
+	 * @param prefix
+	 * @return
+	 */
+	public List<String> searchPrefix(String prefix) {
+
+		List<String> results = new ArrayList<String>();
+		for ( Iterator<String> it = prefixIterator( prefix ); it.hasNext(); ) {
+			results.add( it.next() );
+		}
+
+		return results;
+	}
+
+	/**
+	 * Lazily iterates the keys starting with the prefix, in bit order, from the shards the prefix can reach.
+	 *
+	 * @param prefix
+	 * @return
+	 */
+	public Iterator<String> prefixIterator(String prefix) {
+
+		if ( ( prefix == null ) || prefix.isEmpty() ) {
+			throw new IllegalArgumentException( "invalid argument specified. prefix," + prefix );
+		}
+
+		byte[] prefixBytes = KeyBits.encode( prefix );
+		List<Iterator<String>> iterators = new ArrayList<Iterator<String>>();
+		for ( int shard : reachableShards( prefixBytes ) ) {
+			iterators.add( shards[shard].prefixIterator( prefixBytes ) );
+		}
+
+		return new ShardIterator( iterators, fromBit == 0 );
+	}
+
+	/**
+	 * Number of keys starting with the prefix.
+	 *
+	 * @param prefix
+	 * @return
+	 */
+	public int countPrefix(String prefix) {
+
+		if ( ( prefix == null ) || prefix.isEmpty() ) {
+			throw new IllegalArgumentException( "invalid argument specified. prefix," + prefix );
+		}
+
+		int count = 0;
+		for ( int shard : reachableShards( KeyBits.encode( prefix ) ) ) {
+			count += shards[shard].countPrefix( prefix );
+		}
+
+		return count;
+	}
+
+	/**
+	 * Keys of every shard, in bit order.
+	 */
+	@Override
+	public Iterator<String> iterator() {
+
+		List<Iterator<String>> iterators = new ArrayList<Iterator<String>>( shards.length );
+		for ( ConcurrentPatriciaTrie shard : shards ) {
+			iterators.add( shard.range( null, null ) );
+		}
+
+		return new ShardIterator( iterators, fromBit == 0 );
+	}
+
+	public int size() {
+
+		int size = 0;
+		for ( ConcurrentPatriciaTrie shard : shards ) {
+			size += shard.size();
+		}
+
+		return size;
+	}
+
+	public boolean isEmpty() {
+
+		for ( ConcurrentPatriciaTrie shard : shards ) {
+			if ( !shard.isEmpty() ) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Removes all of the keys, one shard after the other.
+	 */
+	public void clear() {
+		for ( ConcurrentPatriciaTrie shard : shards ) {
+			shard.clear();
+		}
+	}
+
+	public int getShardCount() {
+		return shards.length;
+	}
+
+	/**
+	 * Number of keys in each shard, to check how evenly the keys are spread.
+	 *
+	 * @return
+	 */
+	public int[] getShardSizes() {
+
+		int[] sizes = new int[shards.length];
+		for ( int i = 0; i < shards.length; i++ ) {
+			sizes[i] = shards[i].size();
+		}
+
+		return sizes;
+	}
+
+	/**
+	 * Shard of the key, its shard bits read as a number. Bits after the end of the key are 0, as in the trie.
+	 */
+	int shardOf(byte[] keyBytes) {
+
+		int shard = 0;
+		for ( int i = 0; i < shardBits; i++ ) {
+			shard = ( shard << 1 ) | KeyBits.bitAt( keyBytes, fromBit + i );
+		}
+
+		return shard;
+	}
+
+	/**
+	 * Shards holding keys which may start with the prefix, in order: the shard bits covered by the prefix are fixed,
+	 * the others may be anything.
+	 */
+	int[] reachableShards(byte[] prefixBytes) {
+
+		int prefixBitLength = prefixBytes.length << 3;
+		int mask = 0;
+		int value = 0;
+		for ( int i = 0; i < shardBits; i++ ) {
+			mask <<= 1;
+			value <<= 1;
+			if ( fromBit + i < prefixBitLength ) {
+				mask |= 1;
+				value |= KeyBits.bitAt( prefixBytes, fromBit + i );
+			}
+		}
+
+		int[] reachable = new int[1 << Integer.bitCount( ~mask & ( shards.length - 1 ) )];
+		int count = 0;
+		for ( int shard = 0; shard < shards.length; shard++ ) {
+			if ( ( shard & mask ) == value ) {
+				reachable[count++] = shard;
+			}
+		}
+
+		return reachable;
+	}
+
+	/**
+	 * Keys of the shard iterators in bit order: one iterator after the other when the shards hold consecutive
+	 * ranges, otherwise merged by taking the smallest next key of the shards each time.
+	 */
+	private static final class ShardIterator implements Iterator<String> {
+
+		private final List<Iterator<String>> iterators;
+		private final boolean consecutive;
+		private final PriorityQueue<Pending> pending;
+		private int index;
+
+		private ShardIterator(List<Iterator<String>> iterators, boolean consecutive) {
+
+			this.iterators = iterators;
+			this.consecutive = consecutive;
+			if ( consecutive ) {
+				pending = null;
+			}
+			else {
+				pending = new PriorityQueue<Pending>( Math.max( 1, iterators.size() ) );
+				for ( Iterator<String> it : iterators ) {
+					if ( it.hasNext() ) {
+						pending.add( new Pending( it ) );
+					}
+				}
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+
+			if ( !consecutive ) {
+				return !pending.isEmpty();
+			}
+
+			while ( ( index < iterators.size() ) && !iterators.get( index ).hasNext() ) {
+				index++;
+			}
+
+			return index < iterators.size();
+		}
+
+		@Override
+		public String next() {
+
+			if ( !hasNext() ) {
+				throw new NoSuchElementException();
+			}
+
+			if ( consecutive ) {
+				return iterators.get( index ).next();
+			}
+
+			Pending smallest = pending.poll();
+			String key = smallest.key;
+			if ( smallest.it.hasNext() ) {
+				smallest.advance();
+				pending.add( smallest );
+			}
+
+			return key;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException( "removal is not supported" );
+		}
+	}
+
+	/**
+	 * Next key of one shard iterator, ordered by its bits.
+	 */
+	private static final class Pending implements Comparable<Pending> {
+
+		private final Iterator<String> it;
+		private String key;
+		private byte[] keyBytes;
+
+		private Pending(Iterator<String> it) {
+			this.it = it;
+			advance();
+		}
+
+		private void advance() {
+			key = it.next();
+			keyBytes = KeyBits.encode( key );
+		}
+
+		@Override
+		public int compareTo(Pending other) {
+			return KeyBits.compare( keyBytes, other.keyBytes );
+		}
+	}
+}
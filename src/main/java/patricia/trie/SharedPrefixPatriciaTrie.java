@@ -0,0 +1,280 @@
+package patricia.trie;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * PatriciaTrie whose nodes don't keep their whole key. Every key under a node shares the bits before its bit index,
+ * so the key of a node has the same bytes as the key of its parent up to the byte holding the bit index of the
+ * parent. A node only keeps the bytes after them, appended to large shared pages, and reads the bytes before them
+ * from its ancestors. The head keeps its whole key.
+ *
+ * search(String) compares the searched bytes with those pieces in place, so it allocates nothing but the encoded
+ * key, like inserting does. Keys are rebuilt from the pieces when they are returned, by searchPrefix() and the
+ * iterators, which costs a walk up to the head per key. Keys are rebuilt from their UTF-8 bytes, so an unpaired
+ * surrogate comes back as '?', and a key is found by any String encoding to the same bytes.
+ *
+ * Not thread safe.
+ */
+public class SharedPrefixPatriciaTrie extends PatriciaTrie {
+
+	private static final int PAGE_SIZE = 1 << 16;
+	// pieces larger than this get an array of their own rather than wasting the end of a page
+	private static final int MAX_SHARED_PIECE = PAGE_SIZE >>> 4;
+
+	private byte[] page = new byte[PAGE_SIZE];
+	private int pagePosition;
+	private long storedBytes;
+
+	public SharedPrefixPatriciaTrie(String searchKey) {
+		insert( searchKey, null );
+	}
+
+	public SharedPrefixPatriciaTrie() {
+
+	}
+
+	/**
+	 * Number of key bytes kept by the nodes, against the sum of the encoded lengths of the keys for whole keys.
+	 *
+	 * @return
+	 */
+	public long getStoredKeyBytes() {
+		return storedBytes;
+	}
+
+	@Override
+	public void clear() {
+
+		super.clear();
+		page = new byte[PAGE_SIZE];
+		pagePosition = 0;
+		storedBytes = 0;
+	}
+
+	@Override
+	Node newNode(int bitIndex, Node parent, Node left, Node right) {
+		return new SuffixNode( bitIndex, parent, left, right );
+	}
+
+	/**
+	 * Stores the piece of a new key once the node is linked, since the parent is only known then.
+	 */
+	@Override
+	Node insertNode(String searchKey, byte[] keyBytes) {
+
+		int oldSize = size();
+		Node node = super.insertNode( searchKey, keyBytes );
+		if ( size() != oldSize ) {
+			store( (SuffixNode) node, keyBytes );
+		}
+
+		return node;
+	}
+
+	private void store(SuffixNode node, byte[] keyBytes) {
+
+		Node parent = node.getParent();
+		int from = parent == null ? 0 : Math.min( parent.getBitIndex() >>> 3, keyBytes.length );
+		int pieceLength = keyBytes.length - from;
+
+		if ( pieceLength > MAX_SHARED_PIECE ) {
+			node.setPiece( Arrays.copyOfRange( keyBytes, from, keyBytes.length ), 0, from, keyBytes.length );
+		}
+		else {
+			if ( PAGE_SIZE - pagePosition < pieceLength ) {
+				page = new byte[PAGE_SIZE];
+				pagePosition = 0;
+			}
+			System.arraycopy( keyBytes, from, page, pagePosition, pieceLength );
+			node.setPiece( page, pagePosition, from, keyBytes.length );
+			pagePosition += pieceLength;
+		}
+		storedBytes += pieceLength;
+	}
+
+	/**
+	 * Node keeping the bytes of its key from byte from on. The bytes before from are read from the first ancestor
+	 * keeping them: the parent may have changed since, but only for a node between them, whose bit index is larger.
+	 */
+	static final class SuffixNode extends PlainNode {
+
+		// encoded key while the node is being linked, before its piece is stored
+		private byte[] pending;
+		private byte[] page;
+		private int offset;
+		private int from;
+		private int length;
+
+		SuffixNode(int bitIndex, Node parent, Node left, Node right) {
+			super( bitIndex, parent, left, right, null );
+		}
+
+		@Override
+		void setKey(String key, byte[] keyBytes) {
+			pending = keyBytes;
+		}
+
+		private void setPiece(byte[] page, int offset, int from, int length) {
+
+			this.page = page;
+			this.offset = offset;
+			this.from = from;
+			this.length = length;
+			pending = null;
+		}
+
+		@Override
+		public String getKey() {
+
+			byte[] keyBytes = getKeyBytes();
+
+			return keyBytes == null ? null : KeyBits.decode( keyBytes, 0, keyBytes.length );
+		}
+
+		/**
+		 * Rebuilds the key from the pieces of the node and its ancestors.
+		 */
+		@Override
+		byte[] getKeyBytes() {
+
+			if ( pending != null ) {
+				return pending;
+			}
+			if ( page == null ) {
+				return null;
+			}
+
+			byte[] keyBytes = new byte[length];
+			int end = length;
+			for ( SuffixNode node = this; end > 0; node = (SuffixNode) node.getParent() ) {
+				int pieceFrom = node.pieceFrom();
+				if ( pieceFrom < end ) {
+					// bytes past the end of an ancestor key are 0, as the array already has them
+					for ( int i = pieceFrom; i < Math.min( end, node.getKeyLength() ); i++ ) {
+						keyBytes[i] = node.pieceByte( i );
+					}
+					end = pieceFrom;
+				}
+			}
+
+			return keyBytes;
+		}
+
+		@Override
+		int getKeyLength() {
+			return pending != null ? pending.length : length;
+		}
+
+		@Override
+		int keyBitAt(int bitIndex) {
+
+			int index = bitIndex >>> 3;
+			for ( SuffixNode node = this; ( bitIndex >= 0 ) && ( index < node.getKeyLength() ); node = (SuffixNode) node
+					.getParent() ) {
+				if ( index >= node.pieceFrom() ) {
+					return ( node.pieceByte( index ) >>> ( 7 - ( bitIndex & 7 ) ) ) & 1;
+				}
+			}
+
+			return 0;
+		}
+
+		@Override
+		int firstDiff(byte[] bytes, int bytesOffset, int bytesLength) {
+			return firstDiff( bytes, bytesOffset, bytesLength, Math.max( getKeyLength(), bytesLength ) );
+		}
+
+		/**
+		 * Compares each piece with the same bytes of the searched key, from this node up, as far as byte end. A
+		 * difference in a piece read higher up comes earlier in the key. Returns end * 8 if there is none.
+		 */
+		private int firstDiff(byte[] bytes, int bytesOffset, int bytesLength, int end) {
+
+			int pieceEnd = end;
+			int diffIndex = -1;
+			int diff = 0;
+			for ( SuffixNode node = this; pieceEnd > 0; node = (SuffixNode) node.getParent() ) {
+				int pieceFrom = node.pieceFrom();
+				if ( pieceFrom >= pieceEnd ) {
+					continue;
+				}
+
+				int nodeLength = node.getKeyLength();
+				for ( int i = pieceFrom; i < pieceEnd; i++ ) {
+					int nodeByte = i < nodeLength ? node.pieceByte( i ) : 0;
+					int searchByte = i < bytesLength ? bytes[bytesOffset + i] : 0;
+					if ( nodeByte != searchByte ) {
+						diffIndex = i;
+						diff = ( nodeByte ^ searchByte ) & 0xff;
+						break;
+					}
+				}
+				pieceEnd = pieceFrom;
+			}
+
+			if ( diffIndex < 0 ) {
+				return end << 3;
+			}
+
+			return ( diffIndex << 3 ) + Integer.numberOfLeadingZeros( diff ) - 24;
+		}
+
+		@Override
+		boolean keyEquals(byte[] bytes, int bytesOffset, int bytesLength) {
+			return ( getKeyLength() == bytesLength )
+					&& ( firstDiff( bytes, bytesOffset, bytesLength, bytesLength ) == ( bytesLength << 3 ) );
+		}
+
+		@Override
+		boolean keyEquals(ByteBuffer buffer, int bufferOffset, int bufferLength) {
+
+			if ( getKeyLength() != bufferLength ) {
+				return false;
+			}
+
+			int end = bufferLength;
+			for ( SuffixNode node = this; end > 0; node = (SuffixNode) node.getParent() ) {
+				int pieceFrom = node.pieceFrom();
+				if ( pieceFrom >= end ) {
+					continue;
+				}
+
+				int nodeLength = node.getKeyLength();
+				for ( int i = pieceFrom; i < end; i++ ) {
+					int nodeByte = i < nodeLength ? node.pieceByte( i ) : 0;
+					if ( nodeByte != buffer.get( bufferOffset + i ) ) {
+						return false;
+					}
+				}
+				end = pieceFrom;
+			}
+
+			return true;
+		}
+
+		@Override
+		boolean startsWith(byte[] prefixBytes) {
+
+			int length = prefixBytes.length;
+
+			return ( getKeyLength() >= length ) && ( firstDiff( prefixBytes, 0, length, length ) == ( length << 3 ) );
+		}
+
+		/**
+		 * First byte of the key kept by the node, 0 for a node being linked which still has its whole key.
+		 */
+		private int pieceFrom() {
+			return pending != null ? 0 : from;
+		}
+
+		private byte pieceByte(int index) {
+			return pending != null ? pending[index] : page[offset + index - from];
+		}
+
+		@Override
+		boolean hasKey(String searchKey, byte[] searchBytes) {
+			return keyEquals( searchBytes, 0, searchBytes.length );
+		}
+	}
+}
@@ -0,0 +1,299 @@
+package patricia.trie;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Binary form of a {@link PatriciaTrie} holding its structure, so that reading it back links the nodes as they were
+ * without comparing a single key bit.
+ *
+ * After a header (magic and version as ints, then the number of keys and the index of head plus one as varints)
+ * come the nodes in key order, each one as
+ * <ul>
+ * <li>its key, front coded against the key before: the length of the shared prefix and the length of the rest as
+ * varints, then the rest of the encoded bytes,</li>
+ * <li>its bit index, and the indexes plus one of its parent, left and right nodes (0 for none) as varints.</li>
+ * </ul>
+ * Key counts are not written, they follow from the child pointers.
+ */
+final class TrieCodec {
+
+	static final int MAGIC = 0x50545343;
+	static final int VERSION = 1;
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private TrieCodec() {
+
+	}
+
+	static void write(PatriciaTrie trie, WritableByteChannel channel) throws IOException {
+
+		Node head = trie.getHead();
+		Node[] nodes = new Node[trie.size()];
+		Map<Node, Integer> indexes = new IdentityHashMap<Node, Integer>( nodes.length );
+		TrieCursor cursor = new TrieCursor();
+		for ( boolean found = cursor.first( head ); found; found = cursor.next() ) {
+			indexes.put( cursor.getNode(), indexes.size() );
+			nodes[indexes.size() - 1] = cursor.getNode();
+		}
+
+		Output out = new Output( channel );
+		out.ensure( 8 );
+		out.buffer.putInt( MAGIC ).putInt( VERSION );
+		out.putVarint( nodes.length );
+		out.putVarint( reference( indexes, head ) );
+
+		byte[] previous = new byte[0];
+		for ( Node node : nodes ) {
+			byte[] keyBytes = node.getKeyBytes();
+			int shared = 0;
+			int max = Math.min( previous.length, keyBytes.length );
+			while ( ( shared < max ) && ( previous[shared] == keyBytes[shared] ) ) {
+				shared++;
+			}
+
+			out.putVarint( shared );
+			out.putVarint( keyBytes.length - shared );
+			out.put( keyBytes, shared, keyBytes.length - shared );
+			out.putVarint( node.getBitIndex() );
+			out.putVarint( reference( indexes, node.getParent() ) );
+			out.putVarint( reference( indexes, node.getLeft() ) );
+			out.putVarint( reference( indexes, node.getRight() ) );
+			previous = keyBytes;
+		}
+
+		out.flush();
+	}
+
+	static PatriciaTrie read(ReadableByteChannel channel) throws IOException {
+		return read( channel, PlainNode::new );
+	}
+
+	/**
+	 * Same as {@link #read(ReadableByteChannel)} linking nodes of the trie which the nodes are read for, e.g.
+	 * ConcurrentPatriciaTrie nodes.
+	 * 
+	 * @param channel
+	 * @param newNode
+	 * @return
+	 * @throws IOException
+	 */
+	static PatriciaTrie read(ReadableByteChannel channel, Supplier<Node> newNode) throws IOException {
+
+		Input in = new Input( channel );
+		in.ensure( 8 );
+		if ( in.buffer.getInt() != MAGIC ) {
+			throw new IOException( "not a serialized trie" );
+		}
+
+		int version = in.buffer.getInt();
+		if ( version != VERSION ) {
+			throw new IOException( "unsupported trie version," + version );
+		}
+
+		int size = in.getVarint();
+		Node[] nodes = new Node[size];
+		for ( int i = 0; i < size; i++ ) {
+			nodes[i] = newNode.get();
+		}
+		Node head = node( nodes, in.getVarint() );
+
+		byte[] previous = new byte[0];
+		for ( Node node : nodes ) {
+			int shared = in.getVarint();
+			int rest = in.getVarint();
+			if ( shared > previous.length ) {
+				throw new IOException( "corrupt key at node," + node );
+			}
+
+			byte[] keyBytes = new byte[shared + rest];
+			System.arraycopy( previous, 0, keyBytes, 0, shared );
+			in.get( keyBytes, shared, rest );
+			node.setKey( KeyBits.decode( keyBytes, 0, keyBytes.length ), keyBytes );
+			node.setBitIndex( in.getVarint() );
+			node.setParent( node( nodes, in.getVarint() ) );
+			node.setLeft( node( nodes, in.getVarint() ) );
+			node.setRight( node( nodes, in.getVarint() ) );
+			previous = keyBytes;
+		}
+
+		countKeys( head, nodes );
+
+		return new PatriciaTrie( head, size );
+	}
+
+	/**
+	 * Sets the key counts. Walks the downward pointers from head, then counts the keys under each node after the
+	 * nodes under it, backwards.
+	 */
+	private static void countKeys(Node head, Node[] nodes) throws IOException {
+
+		if ( head == null ) {
+			return;
+		}
+
+		Node[] order = new Node[nodes.length];
+		int visited = 0;
+		Node[] stack = new Node[64];
+		int depth = 0;
+		stack[depth++] = head;
+		while ( depth > 0 ) {
+			Node node = stack[--depth];
+			if ( visited == order.length ) {
+				throw new IOException( "corrupt trie structure" );
+			}
+			order[visited++] = node;
+
+			if ( depth + 2 > stack.length ) {
+				stack = Arrays.copyOf( stack, stack.length << 1 );
+			}
+			if ( TrieCursor.isDownward( node, node.getLeft() ) ) {
+				stack[depth++] = node.getLeft();
+			}
+			if ( TrieCursor.isDownward( node, node.getRight() ) ) {
+				stack[depth++] = node.getRight();
+			}
+		}
+
+		// a node inserted on the empty left pointer of head is only found through upward pointers. Its count is
+		// never read, it keeps the 1 it got on insert.
+		for ( Node node : nodes ) {
+			node.setCount( 1 );
+		}
+
+		for ( int i = visited - 1; i >= 0; i-- ) {
+			Node node = order[i];
+			node.setCount( PatriciaTrie.countUnder( node, node.getLeft() )
+					+ PatriciaTrie.countUnder( node, node.getRight() ) );
+		}
+	}
+
+	private static int reference(Map<Node, Integer> indexes, Node node) {
+		return node == null ? 0 : indexes.get( node ) + 1;
+	}
+
+	private static Node node(Node[] nodes, int reference) throws IOException {
+
+		if ( reference > nodes.length ) {
+			throw new IOException( "node index out of range," + ( reference - 1 ) );
+		}
+
+		return reference == 0 ? null : nodes[reference - 1];
+	}
+
+	private static final class Output {
+
+		private final WritableByteChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect( BUFFER_SIZE );
+
+		Output(WritableByteChannel channel) {
+			this.channel = channel;
+		}
+
+		void ensure(int length) throws IOException {
+			if ( buffer.remaining() < length ) {
+				flush();
+			}
+		}
+
+		void putVarint(int value) throws IOException {
+
+			ensure( 5 );
+			while ( ( value & ~0x7f ) != 0 ) {
+				buffer.put( (byte) ( ( value & 0x7f ) | 0x80 ) );
+				value >>>= 7;
+			}
+			buffer.put( (byte) value );
+		}
+
+		void put(byte[] bytes, int offset, int length) throws IOException {
+
+			while ( length > 0 ) {
+				if ( !buffer.hasRemaining() ) {
+					flush();
+				}
+
+				int chunk = Math.min( buffer.remaining(), length );
+				buffer.put( bytes, offset, chunk );
+				offset += chunk;
+				length -= chunk;
+			}
+		}
+
+		void flush() throws IOException {
+
+			buffer.flip();
+			while ( buffer.hasRemaining() ) {
+				channel.write( buffer );
+			}
+			buffer.clear();
+		}
+	}
+
+	private static final class Input {
+
+		private final ReadableByteChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect( BUFFER_SIZE );
+
+		Input(ReadableByteChannel channel) {
+			this.channel = channel;
+			buffer.flip();
+		}
+
+		/**
+		 * Reads until at least length bytes are buffered.
+		 */
+		void ensure(int length) throws IOException {
+
+			if ( buffer.remaining() >= length ) {
+				return;
+			}
+
+			buffer.compact();
+			while ( buffer.position() < length ) {
+				if ( channel.read( buffer ) < 0 ) {
+					throw new EOFException( "truncated trie" );
+				}
+			}
+			buffer.flip();
+		}
+
+		int getVarint() throws IOException {
+
+			int value = 0;
+			for ( int shift = 0; shift < 35; shift += 7 ) {
+				ensure( 1 );
+				int b = buffer.get();
+				value |= ( b & 0x7f ) << shift;
+				if ( b >= 0 ) {
+					if ( value < 0 ) {
+						break;
+					}
+
+					return value;
+				}
+			}
+
+			throw new IOException( "corrupt varint" );
+		}
+
+		void get(byte[] bytes, int offset, int length) throws IOException {
+
+			while ( length > 0 ) {
+				ensure( 1 );
+				int chunk = Math.min( buffer.remaining(), length );
+				buffer.get( bytes, offset, chunk );
+				offset += chunk;
+				length -= chunk;
+			}
+		}
+	}
+}
@@ -0,0 +1,377 @@
+package patricia.trie;
+
+/**
+ * Walks the keys of a trie in bit order without recursion.
+ *
+ * Every key is found once through an upward pointer, the pointer from a node to a node with the same or a smaller
+ * bit index. The cursor stands on such a pointer, kept as the node owning it and its side, and moves to the next
+ * or the previous one through the child and parent pointers.
+ */
+final class TrieCursor {
+
+	static final int LEFT = 0;
+	static final int RIGHT = 1;
+
+	private Node node;
+	private int side;
+
+	TrieCursor() {
+
+	}
+
+	/**
+	 * Node holding the key the cursor stands on, or null if the cursor is not on a key.
+	 *
+	 * A concurrent insert may have put a new node on the pointer since the cursor moved there. The keys under the
+	 * pointer still come right after the ones before it, so the cursor moves to the first of them rather than
+	 * returning a node which is not found through this pointer.
+	 *
+	 * @return
+	 */
+	Node getNode() {
+
+		if ( node == null ) {
+			return null;
+		}
+
+		Node next = getChild( node, side );
+		if ( isDownward( node, next ) ) {
+			descendFirst();
+			next = getChild( node, side );
+		}
+
+		return next;
+	}
+
+	boolean isOnKey() {
+		return node != null;
+	}
+
+	void reset() {
+		node = null;
+	}
+
+	void copy(TrieCursor cursor) {
+		node = cursor.node;
+		side = cursor.side;
+	}
+
+	boolean first(Node head) {
+
+		if ( head == null ) {
+			return unset();
+		}
+
+		node = head;
+		side = LEFT;
+
+		return descendFirst();
+	}
+
+	boolean last(Node head) {
+
+		if ( head == null ) {
+			return unset();
+		}
+
+		node = head;
+		side = RIGHT;
+
+		return descendLast();
+	}
+
+	boolean next() {
+
+		if ( node == null ) {
+			return false;
+		}
+
+		if ( side == LEFT ) {
+			side = RIGHT;
+
+			return descendFirst();
+		}
+
+		return ascendNext();
+	}
+
+	boolean previous() {
+
+		if ( node == null ) {
+			return false;
+		}
+
+		if ( side == RIGHT ) {
+			side = LEFT;
+
+			return descendLast();
+		}
+
+		return ascendPrevious();
+	}
+
+	/**
+	 * Moves to the first key under the given pointer of the node.
+	 *
+	 * @param node
+	 * @param side
+	 * @return
+	 */
+	boolean enterFirst(Node node, int side) {
+
+		this.node = node;
+		this.side = side;
+
+		return descendFirst();
+	}
+
+	/**
+	 * Moves to the last key under the given pointer of the node.
+	 *
+	 * @param node
+	 * @param side
+	 * @return
+	 */
+	boolean enterLast(Node node, int side) {
+
+		this.node = node;
+		this.side = side;
+
+		return descendLast();
+	}
+
+	/**
+	 * Returns true if both cursors stand on the same key.
+	 *
+	 * @param cursor
+	 * @return
+	 */
+	boolean isAt(TrieCursor cursor) {
+		return ( node != null ) && ( node == cursor.node ) && ( side == cursor.side );
+	}
+
+	/**
+	 * Moves to the smallest key greater than or equal to (or greater than if not inclusive) the key.
+	 *
+	 * @param head
+	 * @param keyBytes
+	 * @param inclusive
+	 * @return
+	 */
+	boolean ceiling(Node head, byte[] keyBytes, boolean inclusive) {
+
+		int bit = seek( head, keyBytes );
+		if ( bit < 0 ) {
+			return bit == -1 ? unset() : first( head );
+		}
+
+		if ( bit == 2 ) {
+			// the key itself
+			return inclusive ? true : next();
+		}
+
+		if ( bit == 3 ) {
+			// empty pointer
+			return next();
+		}
+
+		// every key under the pointer is greater than the key if its bit is 0, smaller otherwise
+		return bit == 0 ? descendFirst() : next();
+	}
+
+	/**
+	 * Moves to the largest key less than or equal to (or less than if not inclusive) the key.
+	 *
+	 * @param head
+	 * @param keyBytes
+	 * @param inclusive
+	 * @return
+	 */
+	boolean floor(Node head, byte[] keyBytes, boolean inclusive) {
+
+		int bit = seek( head, keyBytes );
+		if ( bit < 0 ) {
+			return bit == -1 ? last( head ) : unset();
+		}
+
+		if ( bit == 2 ) {
+			return inclusive ? true : previous();
+		}
+
+		if ( bit == 3 ) {
+			return previous();
+		}
+
+		return bit == 1 ? descendLast() : previous();
+	}
+
+	/**
+	 * Points the cursor at the pointer where the key is or would be inserted. Returns
+	 * <ul>
+	 * <li>2 if the key is there,</li>
+	 * <li>3 if the pointer is empty,</li>
+	 * <li>0 or 1, the bit of the key where it differs from the keys under the pointer,</li>
+	 * <li>-1 if the trie is empty or the key is greater than every key before the head bit index,</li>
+	 * <li>-2 if the key is smaller than every key before the head bit index.</li>
+	 * </ul>
+	 */
+	private int seek(Node head, byte[] keyBytes) {
+
+		if ( head == null ) {
+			return -1;
+		}
+
+		node = head;
+		side = KeyBits.bitAt( keyBytes, head.getBitIndex() );
+		Node next = getChild( node, side );
+		while ( isDownward( node, next ) ) {
+			node = next;
+			side = KeyBits.bitAt( keyBytes, node.getBitIndex() );
+			next = getChild( node, side );
+		}
+
+		if ( next == null ) {
+			// the empty left pointer of the first head. The keys around it share the bits of its key before its bit
+			// index, which the key may not: then it is placed by its first difference with them like any other key.
+			if ( node.firstDiff( keyBytes, 0, keyBytes.length ) >= node.getBitIndex() ) {
+				return 3;
+			}
+
+			next = node;
+		}
+
+		int diffIndex = next.firstDiff( keyBytes, 0, keyBytes.length );
+		if ( diffIndex >= ( Math.max( next.getKeyLength(), keyBytes.length ) << 3 ) ) {
+			return 2;
+		}
+
+		int bit = KeyBits.bitAt( keyBytes, diffIndex );
+		if ( diffIndex < head.getBitIndex() ) {
+			return bit == 0 ? -2 : -1;
+		}
+
+		node = head;
+		side = KeyBits.bitAt( keyBytes, head.getBitIndex() );
+		next = getChild( node, side );
+		while ( isDownward( node, next ) && ( next.getBitIndex() < diffIndex ) ) {
+			node = next;
+			side = KeyBits.bitAt( keyBytes, node.getBitIndex() );
+			next = getChild( node, side );
+		}
+
+		return bit;
+	}
+
+	/**
+	 * Moves to the first key under the current pointer.
+	 */
+	private boolean descendFirst() {
+
+		Node next = getChild( node, side );
+		while ( next == null || isDownward( node, next ) ) {
+			if ( next == null ) {
+				if ( side == RIGHT ) {
+					return ascendNext();
+				}
+
+				side = RIGHT;
+			}
+			else {
+				node = next;
+				side = LEFT;
+			}
+
+			next = getChild( node, side );
+		}
+
+		return true;
+	}
+
+	/**
+	 * Moves to the last key under the current pointer.
+	 */
+	private boolean descendLast() {
+
+		Node next = getChild( node, side );
+		while ( next == null || isDownward( node, next ) ) {
+			if ( next == null ) {
+				if ( side == LEFT ) {
+					return ascendPrevious();
+				}
+
+				side = LEFT;
+			}
+			else {
+				node = next;
+				side = RIGHT;
+			}
+
+			next = getChild( node, side );
+		}
+
+		return true;
+	}
+
+	private boolean ascendNext() {
+
+		Node child = node;
+		Node parent = child.getParent();
+		while ( parent != null ) {
+			if ( isLeftOf( parent, child ) ) {
+				node = parent;
+				side = RIGHT;
+
+				return descendFirst();
+			}
+
+			child = parent;
+			parent = child.getParent();
+		}
+
+		return unset();
+	}
+
+	private boolean ascendPrevious() {
+
+		Node child = node;
+		Node parent = child.getParent();
+		while ( parent != null ) {
+			if ( !isLeftOf( parent, child ) ) {
+				node = parent;
+				side = LEFT;
+
+				return descendLast();
+			}
+
+			child = parent;
+			parent = child.getParent();
+		}
+
+		return unset();
+	}
+
+	/**
+	 * Returns true if the child is under the left pointer of its parent. Read from the bits of the key rather than
+	 * the pointers, which a concurrent insert may have just moved to a new node between them.
+	 */
+	private static boolean isLeftOf(Node parent, Node child) {
+		return child.keyBitAt( parent.getBitIndex() ) == 0;
+	}
+
+	private boolean unset() {
+		node = null;
+
+		return false;
+	}
+
+	static Node getChild(Node node, int side) {
+		return side == LEFT ? node.getLeft() : node.getRight();
+	}
+
+	/**
+	 * Returns true if next is a child under node rather than a node found through an upward pointer.
+	 */
+	static boolean isDownward(Node node, Node next) {
+		return ( next != null ) && ( node.getBitIndex() < next.getBitIndex() );
+	}
+}
@@ -0,0 +1,311 @@
+package patricia.trie;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Shape of a {@link PatriciaTrie} and counters of the work done by its operations, enabled with
+ * {@link PatriciaTrie#enableMetrics()}. A trie without metrics only checks a null field per operation.
+ *
+ * The depth of a key is the number of bits tested by a search of it, the number of nodes on its path from head. The
+ * depths and the bit index histogram are computed once when metrics are enabled, then kept up to date by each
+ * insert in a walk up from the new node. Operation counters are striped {@link LongAdder}s, so searching threads
+ * don't contend on them. They count the bits tested on the way down and the nodes visited, that is the nodes tested
+ * plus the node found through the last pointer for insert and search, plus the keys returned for searchPrefix.
+ *
+ * {@link #register(String)} exposes the metrics as an MBean.
+ */
+public class TrieMetrics implements TrieMetricsMBean {
+
+	/**
+	 * Bit indexes are counted per byte of the key they fall in. The last bucket counts every later byte.
+	 */
+	public static final int HISTOGRAM_SIZE = 64;
+
+	private final PatriciaTrie trie;
+
+	// written by inserts only, which are serialized
+	private volatile long depthSum;
+	private volatile int maxDepth;
+	private final AtomicLongArray bitIndexes = new AtomicLongArray( HISTOGRAM_SIZE );
+
+	private final LongAdder inserts = new LongAdder();
+	private final LongAdder insertNodes = new LongAdder();
+	private final LongAdder insertBits = new LongAdder();
+	private final LongAdder searches = new LongAdder();
+	private final LongAdder searchNodes = new LongAdder();
+	private final LongAdder searchBits = new LongAdder();
+	private final LongAdder prefixSearches = new LongAdder();
+	private final LongAdder prefixNodes = new LongAdder();
+	private final LongAdder prefixBits = new LongAdder();
+	private final LongAdder prefixMisses = new LongAdder();
+
+	private ObjectName name;
+
+	TrieMetrics(PatriciaTrie trie) {
+		this.trie = trie;
+	}
+
+	/**
+	 * Registers the metrics in the platform MBean server as patricia.trie:type=TrieMetrics,name=name.
+	 *
+	 * @param name
+	 * @return
+	 * @throws JMException
+	 *             if the name is taken or invalid.
+	 */
+	public synchronized ObjectName register(String name) throws JMException {
+
+		if ( this.name != null ) {
+			throw new IllegalStateException( "already registered as," + this.name );
+		}
+
+		ObjectName objectName = new ObjectName( "patricia.trie:type=TrieMetrics,name=" + ObjectName.quote( name ) );
+		ManagementFactory.getPlatformMBeanServer().registerMBean( this, objectName );
+		this.name = objectName;
+
+		return objectName;
+	}
+
+	public synchronized void unregister() throws JMException {
+
+		if ( name != null ) {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean( name );
+			name = null;
+		}
+	}
+
+	@Override
+	public int getKeyCount() {
+		return trie.size();
+	}
+
+	@Override
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	@Override
+	public double getAverageDepth() {
+
+		int size = trie.size();
+
+		return size == 0 ? 0 : (double) depthSum / size;
+	}
+
+	@Override
+	public long[] getBitIndexHistogram() {
+
+		long[] histogram = new long[HISTOGRAM_SIZE];
+		for ( int i = 0; i < histogram.length; i++ ) {
+			histogram[i] = bitIndexes.get( i );
+		}
+
+		return histogram;
+	}
+
+	@Override
+	public long getInsertCount() {
+		return inserts.sum();
+	}
+
+	@Override
+	public long getInsertNodesVisited() {
+		return insertNodes.sum();
+	}
+
+	@Override
+	public long getInsertBitTests() {
+		return insertBits.sum();
+	}
+
+	@Override
+	public long getSearchCount() {
+		return searches.sum();
+	}
+
+	@Override
+	public long getSearchNodesVisited() {
+		return searchNodes.sum();
+	}
+
+	@Override
+	public long getSearchBitTests() {
+		return searchBits.sum();
+	}
+
+	@Override
+	public long getSearchPrefixCount() {
+		return prefixSearches.sum();
+	}
+
+	@Override
+	public long getSearchPrefixNodesVisited() {
+		return prefixNodes.sum();
+	}
+
+	@Override
+	public long getSearchPrefixBitTests() {
+		return prefixBits.sum();
+	}
+
+	/**
+	 * Number of searchPrefix calls which found no key.
+	 */
+	@Override
+	public long getSearchPrefixMissCount() {
+		return prefixMisses.sum();
+	}
+
+	/**
+	 * Sets the operation counters back to 0. The shape of the trie is kept.
+	 */
+	@Override
+	public void resetCounters() {
+		for ( LongAdder adder : Arrays.asList( inserts, insertNodes, insertBits, searches, searchNodes, searchBits,
+				prefixSearches, prefixNodes, prefixBits, prefixMisses ) ) {
+			adder.reset();
+		}
+	}
+
+	void recordInsert(int bitTests) {
+		inserts.increment();
+		insertBits.add( bitTests );
+		insertNodes.add( bitTests + 1 );
+	}
+
+	void recordSearch(int bitTests) {
+		searches.increment();
+		searchBits.add( bitTests );
+		searchNodes.add( bitTests + 1 );
+	}
+
+	void recordSearchPrefix(int bitTests, int found) {
+
+		prefixSearches.increment();
+		prefixBits.add( bitTests );
+		prefixNodes.add( bitTests + found );
+		if ( found == 0 ) {
+			prefixMisses.increment();
+		}
+	}
+
+	/**
+	 * Updates the shape for a node just linked in. Every key found through the pointer the node was put on is now one
+	 * node deeper, and the heights can only grow from the node up to head.
+	 *
+	 * @param node
+	 * @param head
+	 */
+	void inserted(Node node, Node head) {
+
+		Node parent = node.getParent();
+		int depth = 0;
+		for ( Node ancestor = parent; ancestor != null; ancestor = ancestor.getParent() ) {
+			depth++;
+		}
+
+		bitIndexes.incrementAndGet( bucket( node.getBitIndex() ) );
+		if ( ( parent != null ) && !TrieCursor.isDownward( parent, node ) ) {
+			// on the empty left pointer of the first head, found through that pointer only
+			node.setHeight( 0 );
+			depthSum += depth;
+		}
+		else {
+			depthSum += depth + node.getCount();
+			node.setHeight( height( node ) );
+			for ( Node ancestor = parent; ancestor != null; ancestor = ancestor.getParent() ) {
+				int height = height( ancestor );
+				if ( height == ancestor.getHeight() ) {
+					break;
+				}
+				ancestor.setHeight( height );
+			}
+		}
+
+		maxDepth = head.getHeight();
+	}
+
+	/**
+	 * Computes the shape of the trie from scratch, setting the height of every node.
+	 *
+	 * @param head
+	 */
+	void rebuild(Node head) {
+
+		clear();
+		if ( head == null ) {
+			return;
+		}
+
+		// downward nodes from head with their depth, each before the nodes under it
+		Node[] order = new Node[trie.size()];
+		int[] depths = new int[order.length];
+		int visited = 0;
+		Node[] stack = new Node[64];
+		int[] stackDepths = new int[64];
+		int top = 0;
+		stack[top] = head;
+		stackDepths[top++] = 1;
+		long sum = 0;
+		while ( top > 0 ) {
+			Node node = stack[--top];
+			int depth = stackDepths[top];
+			order[visited] = node;
+			depths[visited++] = depth;
+
+			if ( top + 2 > stack.length ) {
+				stack = Arrays.copyOf( stack, stack.length << 1 );
+				stackDepths = Arrays.copyOf( stackDepths, stackDepths.length << 1 );
+			}
+			for ( Node child : new Node[] { node.getLeft(), node.getRight() } ) {
+				if ( TrieCursor.isDownward( node, child ) ) {
+					stack[top] = child;
+					stackDepths[top++] = depth + 1;
+				}
+				else if ( child != null ) {
+					// each key is found through one upward pointer
+					bitIndexes.incrementAndGet( bucket( child.getBitIndex() ) );
+					sum += depth;
+					child.setHeight( 0 );
+				}
+			}
+		}
+
+		for ( int i = visited - 1; i >= 0; i-- ) {
+			order[i].setHeight( height( order[i] ) );
+		}
+
+		depthSum = sum;
+		maxDepth = head.getHeight();
+	}
+
+	/**
+	 * Forgets the shape, for an empty trie.
+	 */
+	void clear() {
+
+		depthSum = 0;
+		maxDepth = 0;
+		for ( int i = 0; i < HISTOGRAM_SIZE; i++ ) {
+			bitIndexes.set( i, 0 );
+		}
+	}
+
+	private static int height(Node node) {
+		return 1 + Math.max( heightUnder( node, node.getLeft() ), heightUnder( node, node.getRight() ) );
+	}
+
+	private static int heightUnder(Node node, Node next) {
+		return TrieCursor.isDownward( node, next ) ? next.getHeight() : 0;
+	}
+
+	private static int bucket(int bitIndex) {
+		return Math.min( bitIndex >>> 3, HISTOGRAM_SIZE - 1 );
+	}
+}
@@ -0,0 +1,37 @@
+package patricia.trie;
+
+/**
+ * JMX view of {@link TrieMetrics}.
+ */
+public interface TrieMetricsMBean {
+
+	int getKeyCount();
+
+	int getMaxDepth();
+
+	double getAverageDepth();
+
+	long[] getBitIndexHistogram();
+
+	long getInsertCount();
+
+	long getInsertNodesVisited();
+
+	long getInsertBitTests();
+
+	long getSearchCount();
+
+	long getSearchNodesVisited();
+
+	long getSearchBitTests();
+
+	long getSearchPrefixCount();
+
+	long getSearchPrefixNodesVisited();
+
+	long getSearchPrefixBitTests();
+
+	long getSearchPrefixMissCount();
+
+	void resetCounters();
+}
@@ -0,0 +1,87 @@
+package patricia.trie;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/**
+ * Current {@link PersistentPatriciaTrie} version, published to readers with one atomic reference swap. A reader takes
+ * the version with {@link #current()} and keeps reading it, never seeing a half applied batch however many versions
+ * are published meanwhile. A version nobody references anymore is collected like any other object.
+ *
+ * Writers don't block each other. Each one builds its version from the current one and publishes it if the current
+ * one hasn't changed meanwhile, otherwise it builds it again from the new current one.
+ */
+public class VersionedPatriciaTrie {
+
+	private final AtomicReference<PersistentPatriciaTrie> current;
+
+	public VersionedPatriciaTrie() {
+		this( PersistentPatriciaTrie.empty() );
+	}
+
+	public VersionedPatriciaTrie(PersistentPatriciaTrie version) {
+
+		if ( version == null ) {
+			throw new IllegalArgumentException( "invalid argument specified. version," + version );
+		}
+
+		current = new AtomicReference<PersistentPatriciaTrie>( version );
+	}
+
+	/**
+	 * Version handle for readers.
+	 *
+	 * @return
+	 */
+	public PersistentPatriciaTrie current() {
+		return current.get();
+	}
+
+	/**
+	 * Publishes the version built by the change from the current one. The change may run more than once if other
+	 * writers publish meanwhile, so it must not have side effects.
+	 *
+	 * @param change
+	 * @return the published version.
+	 */
+	public PersistentPatriciaTrie update(UnaryOperator<PersistentPatriciaTrie> change) {
+
+		while ( true ) {
+			PersistentPatriciaTrie version = current.get();
+			PersistentPatriciaTrie next = change.apply( version );
+			if ( next == null ) {
+				throw new IllegalArgumentException( "invalid argument specified. version," + next );
+			}
+
+			if ( current.compareAndSet( version, next ) ) {
+				return next;
+			}
+		}
+	}
+
+	/**
+	 * Publishes the version with all of the keys at once.
+	 *
+	 * @param searchKeys
+	 * @return the published version.
+	 */
+	public PersistentPatriciaTrie insertAll(Iterable<String> searchKeys) {
+		return update( version -> version.insertAll( searchKeys ) );
+	}
+
+	/**
+	 * Publishes next if expected is still the current version.
+	 *
+	 * @param expected
+	 * @param next
+	 * @return false if another version has been published since expected.
+	 */
+	public boolean publish(PersistentPatriciaTrie expected, PersistentPatriciaTrie next) {
+
+		if ( next == null ) {
+			throw new IllegalArgumentException( "invalid argument specified. next," + next );
+		}
+
+		return current.compareAndSet( expected, next );
+	}
+}
@@ -0,0 +1,243 @@
+package patricia.trie;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * PatriciaTrie with a weight per key, answering the keys of a prefix with the highest weights without visiting the
+ * others.
+ *
+ * Each node also keeps the highest weight of the keys under it. A key is found through the upward pointer of the
+ * last node on its path, which is under the node of the key, so a weight change only touches the nodes from that
+ * last node up to head, following the parent pointers and stopping at the first node whose maximum doesn't change.
+ * Keys inserted without a weight get 0.
+ *
+ * Not thread safe.
+ */
+public class WeightedPatriciaTrie extends PatriciaTrie {
+
+	public WeightedPatriciaTrie(String searchKey) {
+		super( searchKey );
+	}
+
+	public WeightedPatriciaTrie() {
+
+	}
+
+	/**
+	 * Inserts the key with the weight, or sets the weight of the key if it's already there.
+	 *
+	 * @param searchKey
+	 * @param weight
+	 * @return true if the key has been inserted, false if it was already there or can't be inserted.
+	 */
+	public boolean insert(String searchKey, long weight) {
+
+		if ( ( searchKey == null ) || searchKey.isEmpty() ) {
+			return false;
+		}
+
+		byte[] keyBytes = KeyBits.encode( searchKey );
+		int oldSize = size();
+		Node node = super.insertNode( searchKey, keyBytes );
+		if ( node == null ) {
+			return false;
+		}
+
+		( (WeightedNode) node ).weight = weight;
+		updateMaxWeights( keyBytes );
+
+		return size() != oldSize;
+	}
+
+	/**
+	 * Weight of the key, 0 if the key is not there, same as a key inserted without a weight.
+	 *
+	 * @param searchKey
+	 * @return
+	 */
+	public long getWeight(String searchKey) {
+
+		Node node = findNode( searchKey );
+
+		return node == null ? 0 : ( (WeightedNode) node ).weight;
+	}
+
+	/**
+	 * Returns at most k keys starting with the prefix, highest weight first. Keys of the same weight come in no
+	 * particular order.
+	 *
+	 * Pointers are taken from a priority queue ordered by the highest weight under them, starting from the pointer
+	 * holding the keys of the prefix. A key comes out of the queue only once every pointer left has no higher weight,
+	 * so about k times the depth of the trie pointers are visited, however many keys match.
+	 *
+	 * @param prefix
+	 * @param k
+	 * @return
+	 */
+	public List<String> topK(String prefix, int k) {
+
+		if ( ( prefix == null ) || prefix.isEmpty() ) {
+			throw new IllegalArgumentException( "invalid argument specified. prefix," + prefix );
+		}
+		if ( k < 0 ) {
+			throw new IllegalArgumentException( "invalid argument specified. k," + k );
+		}
+
+		List<String> results = new ArrayList<String>( Math.min( k, 1024 ) );
+		Node root = getHead();
+		if ( ( root == null ) || ( k == 0 ) ) {
+			return results;
+		}
+
+		PriorityQueue<Pointer> queue = new PriorityQueue<Pointer>();
+		byte[] prefixBytes = KeyBits.encode( prefix );
+		int prefixBitLength = prefixBytes.length << 3;
+		if ( root.getBitIndex() >= prefixBitLength ) {
+			// every key shares the prefix bits or none does
+			if ( !root.startsWith( prefixBytes ) ) {
+				return results;
+			}
+
+			offer( queue, root, TrieCursor.LEFT );
+			offer( queue, root, TrieCursor.RIGHT );
+		}
+		else {
+			Node node = root;
+			int side = KeyBits.bitAt( prefixBytes, node.getBitIndex() );
+			Node next = TrieCursor.getChild( node, side );
+			while ( TrieCursor.isDownward( node, next ) && ( next.getBitIndex() < prefixBitLength ) ) {
+				node = next;
+				side = KeyBits.bitAt( prefixBytes, node.getBitIndex() );
+				next = TrieCursor.getChild( node, side );
+			}
+
+			if ( ( next == null ) || !next.startsWith( prefixBytes ) ) {
+				return results;
+			}
+
+			offer( queue, node, side );
+		}
+
+		while ( ( results.size() < k ) && !queue.isEmpty() ) {
+			Pointer pointer = queue.poll();
+			Node next = TrieCursor.getChild( pointer.node, pointer.side );
+			if ( TrieCursor.isDownward( pointer.node, next ) ) {
+				offer( queue, next, TrieCursor.LEFT );
+				offer( queue, next, TrieCursor.RIGHT );
+			}
+			else {
+				results.add( next.getKey() );
+			}
+		}
+
+		return results;
+	}
+
+	@Override
+	Node newNode(int bitIndex, Node parent, Node left, Node right) {
+		return new WeightedNode( bitIndex, parent, left, right );
+	}
+
+	@Override
+	Node insertNode(String searchKey, byte[] keyBytes) {
+
+		int oldSize = size();
+		Node node = super.insertNode( searchKey, keyBytes );
+		if ( size() != oldSize ) {
+			updateMaxWeights( keyBytes );
+		}
+
+		return node;
+	}
+
+	/**
+	 * Highest weight under the pointer from node to next.
+	 *
+	 * @param node
+	 * @param next
+	 * @return
+	 */
+	static long maxWeightUnder(Node node, Node next) {
+
+		if ( next == null ) {
+			return Long.MIN_VALUE;
+		}
+
+		return TrieCursor.isDownward( node, next ) ? ( (WeightedNode) next ).maxWeight : ( (WeightedNode) next ).weight;
+	}
+
+	/**
+	 * Sets the highest weight of the last node on the path of the key again, then of its ancestors while it
+	 * changes.
+	 */
+	private void updateMaxWeights(byte[] keyBytes) {
+
+		Node node = getHead();
+		Node next = TrieCursor.getChild( node, KeyBits.bitAt( keyBytes, node.getBitIndex() ) );
+		while ( TrieCursor.isDownward( node, next ) ) {
+			node = next;
+			next = TrieCursor.getChild( node, KeyBits.bitAt( keyBytes, node.getBitIndex() ) );
+		}
+
+		( (WeightedNode) node ).maxWeight = maxWeight( node );
+		for ( Node ancestor = node.getParent(); ancestor != null; ancestor = ancestor.getParent() ) {
+			long maxWeight = maxWeight( ancestor );
+			if ( maxWeight == ( (WeightedNode) ancestor ).maxWeight ) {
+				break;
+			}
+			( (WeightedNode) ancestor ).maxWeight = maxWeight;
+		}
+	}
+
+	private static long maxWeight(Node node) {
+		return Math.max( maxWeightUnder( node, node.getLeft() ), maxWeightUnder( node, node.getRight() ) );
+	}
+
+	private static void offer(PriorityQueue<Pointer> queue, Node node, int side) {
+
+		Node next = TrieCursor.getChild( node, side );
+		if ( next != null ) {
+			queue.add( new Pointer( node, side, maxWeightUnder( node, next ) ) );
+		}
+	}
+
+	static final class WeightedNode extends PlainNode {
+
+		private long weight;
+		// highest weight of the keys under the node, kept for downward nodes only
+		private long maxWeight;
+
+		WeightedNode(int bitIndex, Node parent, Node left, Node right) {
+			super( bitIndex, parent, left, right, null );
+		}
+
+		long getWeight() {
+			return weight;
+		}
+
+		long getMaxWeight() {
+			return maxWeight;
+		}
+	}
+
+	private static final class Pointer implements Comparable<Pointer> {
+
+		private final Node node;
+		private final int side;
+		private final long maxWeight;
+
+		private Pointer(Node node, int side, long maxWeight) {
+			this.node = node;
+			this.side = side;
+			this.maxWeight = maxWeight;
+		}
+
+		@Override
+		public int compareTo(Pointer pointer) {
+			// highest weight first
+			return Long.compare( pointer.maxWeight, maxWeight );
+		}
+	}
+}
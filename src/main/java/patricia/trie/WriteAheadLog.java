@@ -0,0 +1,277 @@
+package patricia.trie;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Append only log of inserted keys for {@link DurablePatriciaTrie}.
+ *
+ * The file is big endian: magic and version as ints, then one record per key, its length and the CRC32 of its
+ * bytes as ints followed by the encoded key. A crash may leave a last record partly written. Opening the log stops
+ * at the first record which is cut or doesn't match its CRC and truncates the file there.
+ *
+ * Appends go to a buffer, written to the file when full. {@link #sync(long)} writes the buffer and forces the file,
+ * once for every record appended so far: threads waiting for their records meanwhile find them forced when they get
+ * the sync lock, so one force commits a whole group.
+ */
+final class WriteAheadLog implements Closeable {
+
+	static final int MAGIC = 0x5054574c;
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 8;
+	static final int RECORD_HEADER_SIZE = 8;
+
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static Logger log = Logger.getLogger( WriteAheadLog.class );
+
+	private final FileChannel channel;
+	private final int syncEvery;
+	// guarded by this
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect( BUFFER_SIZE );
+	private final CRC32 crc = new CRC32();
+	private long appended;
+	private volatile long synced;
+	private final ReentrantLock syncLock = new ReentrantLock();
+
+	private WriteAheadLog(FileChannel channel, int syncEvery) {
+		this.channel = channel;
+		this.syncEvery = syncEvery;
+	}
+
+	/**
+	 * Opens the log, creating it if it doesn't exist, and passes the encoded key of each complete record to the
+	 * consumer in order. Records are forced in groups of syncEvery.
+	 *
+	 * @param file
+	 * @param syncEvery
+	 * @param records
+	 * @return
+	 * @throws IOException
+	 *             if the file can't be read or is not a log.
+	 */
+	static WriteAheadLog open(Path file, int syncEvery, Consumer<byte[]> records) throws IOException {
+
+		FileChannel channel = FileChannel.open( file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE );
+		try {
+			long end = replay( channel, records );
+			if ( end < channel.size() ) {
+				log.warn( "truncating the log after its last complete record. file," + file + " position," + end );
+				channel.truncate( end );
+			}
+
+			if ( end == 0 ) {
+				// new file, or cut before the end of its header
+				ByteBuffer header = ByteBuffer.allocate( HEADER_SIZE ).putInt( MAGIC ).putInt( VERSION );
+				header.flip();
+				while ( header.hasRemaining() ) {
+					channel.write( header, header.position() );
+				}
+				end = HEADER_SIZE;
+			}
+
+			channel.force( true );
+			channel.position( end );
+
+			return new WriteAheadLog( channel, syncEvery );
+		}
+		catch ( IOException | RuntimeException e ) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Appends the encoded key. It is durable once {@link #sync(long)} has been called with the returned sequence
+	 * number or a later one.
+	 *
+	 * @param keyBytes
+	 * @return sequence number of the record.
+	 * @throws IOException
+	 */
+	synchronized long append(byte[] keyBytes) throws IOException {
+
+		if ( buffer.remaining() < RECORD_HEADER_SIZE + keyBytes.length ) {
+			flush();
+		}
+
+		crc.reset();
+		crc.update( keyBytes, 0, keyBytes.length );
+		if ( buffer.remaining() < RECORD_HEADER_SIZE + keyBytes.length ) {
+			// larger than the buffer, written straight away
+			ByteBuffer record = ByteBuffer.allocate( RECORD_HEADER_SIZE + keyBytes.length );
+			record.putInt( keyBytes.length ).putInt( (int) crc.getValue() ).put( keyBytes );
+			record.flip();
+			write( record );
+		}
+		else {
+			buffer.putInt( keyBytes.length ).putInt( (int) crc.getValue() ).put( keyBytes );
+		}
+
+		return ++appended;
+	}
+
+	/**
+	 * Forces the record of the sequence number if syncEvery records or more are waiting, the ones before it too.
+	 *
+	 * @param sequence
+	 * @throws IOException
+	 */
+	void commit(long sequence) throws IOException {
+
+		if ( sequence - synced >= syncEvery ) {
+			sync( sequence );
+		}
+	}
+
+	/**
+	 * Makes the records up to the sequence number durable. Returns at once if a force by another thread already
+	 * covered them.
+	 *
+	 * @param sequence
+	 * @throws IOException
+	 */
+	void sync(long sequence) throws IOException {
+
+		if ( synced >= sequence ) {
+			return;
+		}
+
+		syncLock.lock();
+		try {
+			if ( synced >= sequence ) {
+				return;
+			}
+
+			long target;
+			synchronized ( this ) {
+				flush();
+				target = appended;
+			}
+			channel.force( false );
+			synced = target;
+		}
+		finally {
+			syncLock.unlock();
+		}
+	}
+
+	/**
+	 * Makes every record appended so far durable.
+	 *
+	 * @throws IOException
+	 */
+	void sync() throws IOException {
+
+		long sequence;
+		synchronized ( this ) {
+			sequence = appended;
+		}
+		sync( sequence );
+	}
+
+	@Override
+	public void close() throws IOException {
+
+		if ( channel.isOpen() ) {
+			try {
+				sync();
+			}
+			finally {
+				channel.close();
+			}
+		}
+	}
+
+	private void flush() throws IOException {
+
+		buffer.flip();
+		write( buffer );
+		buffer.clear();
+	}
+
+	private void write(ByteBuffer bytes) throws IOException {
+		while ( bytes.hasRemaining() ) {
+			channel.write( bytes );
+		}
+	}
+
+	/**
+	 * Reads the records from the start of the file. Returns the position after the last complete record, 0 if the
+	 * header itself is cut.
+	 */
+	private static long replay(FileChannel channel, Consumer<byte[]> records) throws IOException {
+
+		long size = channel.size();
+		if ( size < HEADER_SIZE ) {
+			return 0;
+		}
+
+		ByteBuffer in = ByteBuffer.allocate( BUFFER_SIZE );
+		channel.position( 0 );
+		fill( channel, in, HEADER_SIZE );
+		if ( in.getInt() != MAGIC ) {
+			throw new IOException( "not a trie log" );
+		}
+		if ( in.getInt() != VERSION ) {
+			throw new IOException( "unsupported log version," + in.getInt( 4 ) );
+		}
+
+		CRC32 crc = new CRC32();
+		long position = HEADER_SIZE;
+		while ( position + RECORD_HEADER_SIZE <= size ) {
+			fill( channel, in, RECORD_HEADER_SIZE );
+			int length = in.getInt();
+			int checksum = in.getInt();
+			if ( ( length <= 0 ) || ( position + RECORD_HEADER_SIZE + length > size ) ) {
+				break;
+			}
+
+			byte[] keyBytes = new byte[length];
+			for ( int read = 0; read < length; ) {
+				int count = Math.min( length - read, BUFFER_SIZE );
+				fill( channel, in, count );
+				in.get( keyBytes, read, count );
+				read += count;
+			}
+
+			crc.reset();
+			crc.update( keyBytes, 0, length );
+			if ( (int) crc.getValue() != checksum ) {
+				break;
+			}
+
+			records.accept( keyBytes );
+			position += RECORD_HEADER_SIZE + length;
+		}
+
+		return position;
+	}
+
+	/**
+	 * Reads until the buffer holds at least count bytes, ready to be read.
+	 */
+	private static void fill(FileChannel channel, ByteBuffer in, int count) throws IOException {
+
+		if ( in.position() != 0 || in.limit() != in.capacity() ) {
+			// left over bytes from the last fill
+			in.compact();
+		}
+
+		while ( in.position() < count ) {
+			if ( channel.read( in ) < 0 ) {
+				break;
+			}
+		}
+		in.flip();
+	}
+}
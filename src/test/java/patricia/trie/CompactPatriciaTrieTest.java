@@ -0,0 +1,130 @@
+package patricia.trie;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class CompactPatriciaTrieTest {
+
+	private CompactPatriciaTrie trie;
+
+	@Before
+	public void setUp() throws Exception {
+		trie = new CompactPatriciaTrie( 1 );
+	}
+
+	@Test
+	public void testInsertAndSearch() {
+
+		assertTrue( trie.insert( "Hello" ) );
+		assertTrue( trie.insert( "Help" ) );
+		assertTrue( trie.insert( "A" ) );
+		assertFalse( "expecting insert()==false for a duplicate", trie.insert( "Help" ) );
+		assertFalse( trie.insert( "" ) );
+		assertFalse( trie.insert( null ) );
+
+		assertEquals( 3, trie.size() );
+		assertTrue( trie.search( "Hello" ) );
+		assertTrue( trie.search( "A" ) );
+		assertFalse( trie.search( "Hel" ) );
+		assertFalse( trie.search( "Hello World" ) );
+	}
+
+	@Test
+	public void testInsertZeroBytesKey() {
+
+		// rejected like PatriciaTrie does, whether it comes first or later
+		PatriciaTrie patricia = new PatriciaTrie();
+		assertEquals( patricia.insert( "\0", null ), trie.insert( "\0" ) );
+		assertFalse( trie.insert( "\0\0" ) );
+		assertTrue( trie.isEmpty() );
+
+		assertTrue( trie.insert( "a" ) );
+		assertFalse( trie.insert( "\0" ) );
+		assertFalse( trie.search( "\0" ) );
+		assertTrue( trie.insert( "\0a" ) );
+		assertEquals( 2, trie.size() );
+	}
+
+	@Test
+	public void testInsertBelowFirstHead() {
+
+		String[] keys = { "\u0005", "\r", "\u0004", "\u0001" };
+		for ( String key : keys ) {
+			assertTrue( key, trie.insert( key ) );
+		}
+
+		for ( String key : keys ) {
+			assertTrue( key, trie.search( key ) );
+		}
+		assertFalse( trie.search( "\u0003" ) );
+	}
+
+	@Test
+	public void testSearchPrefix() {
+
+		String[] keys = { "S", "A", "ABC", "B", "0", "Hello World", "Hello", "Help", "a", "apple", " " };
+		for ( String key : keys ) {
+			trie.insert( key );
+		}
+
+		List<String> expected = new ArrayList<String>();
+		expected.add( "Hello" );
+		expected.add( "Hello World" );
+		expected.add( "Help" );
+		assertEquals( expected, trie.searchPrefix( "Hel" ) );
+		assertEquals( expected.subList( 0, 2 ), trie.searchPrefix( "Hel", 2 ) );
+		assertTrue( trie.searchPrefix( "z" ).isEmpty() );
+		assertEquals( keys.length, trie.searchPrefix( " " ).size() + trie.searchPrefix( "0" ).size()
+				+ trie.searchPrefix( "A" ).size() + trie.searchPrefix( "B" ).size() + trie.searchPrefix( "H" ).size()
+				+ trie.searchPrefix( "S" ).size() + trie.searchPrefix( "a" ).size() );
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSearchPrefixEmpty() {
+		trie.searchPrefix( "" );
+	}
+
+	@Test
+	public void testClear() {
+
+		trie.insert( "A" );
+		trie.clear();
+		assertTrue( trie.isEmpty() );
+		assertFalse( trie.search( "A" ) );
+		assertTrue( trie.insert( "B" ) );
+		assertEquals( 1, trie.size() );
+	}
+
+	@Test
+	public void testAgainstPatriciaTrie() {
+
+		Random random = new Random( 13 );
+		for ( int round = 0; round < 100; round++ ) {
+			trie.clear();
+			PatriciaTrie expected = new PatriciaTrie();
+			TreeSet<String> keys = new TreeSet<String>();
+			for ( int i = 0; i < 300; i++ ) {
+				String key = PatriciaTrieTest.randomKey( random );
+				assertEquals( key, expected.insert( key, null ), trie.insert( key ) );
+				keys.add( key );
+			}
+
+			assertEquals( expected.size(), trie.size() );
+			for ( int i = 0; i < 300; i++ ) {
+				String key = PatriciaTrieTest.randomKey( random );
+				assertEquals( key, expected.search( key ), trie.search( key ) );
+
+				String prefix = key.substring( 0, 1 + random.nextInt( key.length() ) );
+				assertEquals( prefix, new ArrayList<String>( keys.subSet( prefix, prefix + Character.MAX_VALUE ) ),
+						trie.searchPrefix( prefix ) );
+			}
+		}
+	}
+}
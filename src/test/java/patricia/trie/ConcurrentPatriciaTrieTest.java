@@ -0,0 +1,153 @@
+package patricia.trie;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class ConcurrentPatriciaTrieTest {
+
+	private static final int WRITERS = 4;
+	private static final int READERS = 4;
+	private static final int KEYS_PER_WRITER = 5000;
+
+	@Test
+	public void testConcurrentInsertAndSearch() throws Exception {
+
+		final ConcurrentPatriciaTrie trie = new ConcurrentPatriciaTrie();
+		final List<List<String>> keys = new ArrayList<List<String>>();
+		Random random = new Random( 11 );
+		for ( int w = 0; w < WRITERS; w++ ) {
+			List<String> writerKeys = new ArrayList<String>();
+			for ( int i = 0; i < KEYS_PER_WRITER; i++ ) {
+				writerKeys.add( "w" + w + "-" + Integer.toString( random.nextInt( Integer.MAX_VALUE ), 36 ) + "-" + i );
+			}
+			keys.add( writerKeys );
+		}
+
+		final CountDownLatch start = new CountDownLatch( 1 );
+		final AtomicBoolean writing = new AtomicBoolean( true );
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		List<Thread> writers = new ArrayList<Thread>();
+		List<Thread> readers = new ArrayList<Thread>();
+
+		for ( int w = 0; w < WRITERS; w++ ) {
+			final List<String> writerKeys = keys.get( w );
+			writers.add( new Thread( () -> {
+				try {
+					start.await();
+					for ( String key : writerKeys ) {
+						assertTrue( key, trie.insert( key, null ) );
+						// a key is found as soon as its insert returns
+						assertTrue( key, trie.search( key ) );
+					}
+				}
+				catch ( Throwable e ) {
+					failure.compareAndSet( null, e );
+				}
+			} ) );
+		}
+
+		for ( int r = 0; r < READERS; r++ ) {
+			final String prefix = "w" + ( r % WRITERS );
+			readers.add( new Thread( () -> {
+				try {
+					start.await();
+					while ( writing.get() ) {
+						// keys found by a prefix walk are in order and distinct even while inserts run
+						String previous = null;
+						for ( Iterator<String> it = trie.prefixIterator( prefix ); it.hasNext(); ) {
+							String key = it.next();
+							assertTrue( key, key.startsWith( prefix ) );
+							if ( previous != null ) {
+								assertTrue( previous + " " + key, previous.compareTo( key ) < 0 );
+							}
+							previous = key;
+						}
+						assertFalse( trie.search( "missing" ) );
+					}
+				}
+				catch ( Throwable e ) {
+					failure.compareAndSet( null, e );
+				}
+			} ) );
+		}
+
+		for ( Thread t : writers ) {
+			t.start();
+		}
+		for ( Thread t : readers ) {
+			t.start();
+		}
+		start.countDown();
+		for ( Thread t : writers ) {
+			t.join();
+		}
+		writing.set( false );
+		for ( Thread t : readers ) {
+			t.join();
+		}
+
+		if ( failure.get() != null ) {
+			throw new AssertionError( failure.get() );
+		}
+
+		List<String> all = new ArrayList<String>();
+		for ( List<String> writerKeys : keys ) {
+			all.addAll( writerKeys );
+		}
+		Collections.sort( all );
+
+		assertEquals( all.size(), trie.size() );
+		assertEquals( all, trie.searchPrefix( "w" ) );
+		for ( String key : all ) {
+			assertTrue( key, trie.search( key ) );
+		}
+	}
+
+	@Test
+	public void testInsertDuplicate() {
+
+		ConcurrentPatriciaTrie trie = new ConcurrentPatriciaTrie( "Hello" );
+		assertFalse( trie.insert( "Hello", null ) );
+		assertTrue( trie.insert( "Help", null ) );
+		assertEquals( 2, trie.size() );
+
+		trie.clear();
+		assertTrue( trie.isEmpty() );
+		assertFalse( trie.search( "Hello" ) );
+	}
+
+	@Test
+	public void testNodesHaveVolatilePointers() {
+
+		ConcurrentPatriciaTrie trie = new ConcurrentPatriciaTrie( "Hello" );
+		for ( String key : new String[] { "Help", "A", "Hell", "中文" } ) {
+			trie.insert( key, null );
+		}
+
+		TrieCursor cursor = new TrieCursor();
+		for ( boolean on = cursor.first( trie.getHead() ); on; on = cursor.next() ) {
+			assertTrue( cursor.getNode().toString(), cursor.getNode() instanceof ConcurrentPatriciaTrie.ConcurrentNode );
+		}
+		assertEquals( 5, trie.size() );
+
+		// a trie used by one thread keeps plain nodes
+		PatriciaTrie plain = new PatriciaTrie( "Hello" );
+		assertFalse( plain.getHead() instanceof ConcurrentPatriciaTrie.ConcurrentNode );
+
+		// the pointers are only declared by the node kinds, so no node has both plain and volatile ones
+		for ( Field field : Node.class.getDeclaredFields() ) {
+			assertFalse( field.getName(), Node.class.isAssignableFrom( field.getType() ) );
+		}
+	}
+}
@@ -0,0 +1,281 @@
+package patricia.trie;
+
+import static org.junit.Assert.*;
+import static patricia.trie.PatriciaTrieTest.toList;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DurablePatriciaTrieTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testReopenAfterClose() throws Exception {
+
+		Path directory = folder.getRoot().toPath();
+		try ( DurablePatriciaTrie trie = DurablePatriciaTrie.open( directory ) ) {
+			assertTrue( trie.insert( "Hello", null ) );
+			assertTrue( trie.insert( "Help", null ) );
+			assertFalse( trie.insert( "Hello", null ) );
+			assertTrue( trie.insert( "中文".getBytes( "UTF-8" ), 0, 6 ) );
+		}
+
+		try ( DurablePatriciaTrie trie = DurablePatriciaTrie.open( directory ) ) {
+			assertEquals( 3, trie.size() );
+			assertEquals( Arrays.asList( "Hello", "Help", "中文" ), toList( trie.range( null, null ) ) );
+			assertTrue( trie.insert( "A", null ) );
+		}
+
+		try ( DurablePatriciaTrie trie = DurablePatriciaTrie.open( directory ) ) {
+			assertEquals( 4, trie.size() );
+			assertTrue( trie.search( "A" ) );
+		}
+	}
+
+	@Test
+	public void testReopenWithoutClose() throws Exception {
+
+		Path directory = folder.getRoot().toPath();
+		// a crash: the files are left as they are, the keys of every returned insert have been forced
+		DurablePatriciaTrie crashed = DurablePatriciaTrie.open( directory );
+		for ( int i = 0; i < 100; i++ ) {
+			crashed.insert( "key" + i, null );
+		}
+
+		try ( DurablePatriciaTrie trie = DurablePatriciaTrie.open( directory ) ) {
+			assertEquals( 100, trie.size() );
+			for ( int i = 0; i < 100; i++ ) {
+				assertTrue( trie.search( "key" + i ) );
+			}
+		}
+	}
+
+	@Test
+	public void testTornTailIgnored() throws Exception {
+
+		Path directory = folder.getRoot().toPath();
+		try ( DurablePatriciaTrie trie = DurablePatriciaTrie.open( directory ) ) {
+			trie.insert( "Hello", null );
+			trie.insert( "Help", null );
+		}
+
+		Path wal = directory.resolve( "wal-0.log" );
+		long size = Files.size( wal );
+		try ( FileChannel channel = FileChannel.open( wal, StandardOpenOption.WRITE, StandardOpenOption.APPEND ) ) {
+			// a record cut in the middle of its key
+			ByteBuffer record = ByteBuffer.allocate( 12 ).putInt( 100 ).putInt( 0 ).put( "Hal".getBytes( "UTF-8" ) );
+			record.flip();
+			channel.write( record );
+		}
+
+		try ( DurablePatriciaTrie trie = DurablePatriciaTrie.open( directory ) ) {
+			assertEquals( 2, trie.size() );
+			assertEquals( size, Files.size( wal ) );
+			trie.insert( "Hall", null );
+		}
+
+		try ( FileChannel channel = FileChannel.open( wal, StandardOpenOption.WRITE ) ) {
+			// a complete record which doesn't match its CRC
+			ByteBuffer garbage = ByteBuffer.allocate( 1 ).put( (byte) 'X' );
+			garbage.flip();
+			channel.write( garbage, Files.size( wal ) - 1 );
+		}
+
+		try ( DurablePatriciaTrie trie = DurablePatriciaTrie.open( directory ) ) {
+			assertEquals( Arrays.asList( "Hello", "Help" ), toList( trie.range( null, null ) ) );
+		}
+	}
+
+	@Test
+	public void testCheckpoint() throws Exception {
+
+		Path directory = folder.getRoot().toPath();
+		DurablePatriciaTrie crashed = DurablePatriciaTrie.open( directory, 1, 50 );
+		for ( int i = 0; i < 120; i++ ) {
+			crashed.insert( "key" + i, null );
+		}
+
+		// 2 checkpoints, then 20 keys in the log
+		assertEquals( Arrays.asList( "snapshot-2.trie", "wal-2.log" ), fileNames( directory ) );
+
+		try ( DurablePatriciaTrie trie = DurablePatriciaTrie.open( directory, 1, 50 ) ) {
+			assertEquals( 120, trie.size() );
+			for ( int i = 0; i < 120; i++ ) {
+				assertTrue( trie.search( "key" + i ) );
+			}
+			// inserts link new nodes into the ones read from the snapshot
+			TrieCursor cursor = new TrieCursor();
+			for ( boolean on = cursor.first( trie.getHead() ); on; on = cursor.next() ) {
+				assertTrue( cursor.getNode() instanceof ConcurrentPatriciaTrie.ConcurrentNode );
+			}
+
+			trie.clear();
+			trie.insert( "A", null );
+		}
+
+		try ( DurablePatriciaTrie trie = DurablePatriciaTrie.open( directory, 1, 50 ) ) {
+			assertEquals( Arrays.asList( "A" ), toList( trie.range( null, null ) ) );
+		}
+	}
+
+	@Test
+	public void testFailedClearKeepsKeys() throws Exception {
+
+		Path directory = folder.getRoot().toPath();
+		DurablePatriciaTrie trie = DurablePatriciaTrie.open( directory );
+		trie.insert( "Hello", null );
+		trie.insert( "Help", null );
+
+		// a directory where the empty snapshot goes makes writing it fail
+		Path blocked = directory.resolve( "snapshot-1.trie.tmp" );
+		Files.createDirectory( blocked );
+		Files.write( blocked.resolve( "file" ), new byte[] { 1 } );
+		try {
+			trie.clear();
+			fail( "expecting UncheckedIOException" );
+		}
+		catch ( UncheckedIOException e ) {
+			// expected
+		}
+		assertEquals( Arrays.asList( "Hello", "Help" ), toList( trie.range( null, null ) ) );
+
+		trie.close();
+		try {
+			trie.clear();
+			fail( "expecting IllegalStateException" );
+		}
+		catch ( IllegalStateException e ) {
+			// expected
+		}
+		assertEquals( 2, trie.size() );
+
+		Files.delete( blocked.resolve( "file" ) );
+		Files.delete( blocked );
+		try ( DurablePatriciaTrie reopened = DurablePatriciaTrie.open( directory ) ) {
+			assertEquals( Arrays.asList( "Hello", "Help" ), toList( reopened.range( null, null ) ) );
+		}
+	}
+
+	@Test
+	public void testUnfinishedCheckpoint() throws Exception {
+
+		Path directory = folder.getRoot().toPath();
+		try ( DurablePatriciaTrie trie = DurablePatriciaTrie.open( directory ) ) {
+			trie.insert( "Hello", null );
+			trie.checkpoint();
+			trie.insert( "Help", null );
+		}
+
+		Files.write( directory.resolve( "snapshot-2.trie.tmp" ), new byte[] { 1, 2, 3 } );
+		Files.write( directory.resolve( "wal-0.log" ), new byte[] { 1, 2, 3 } );
+
+		try ( DurablePatriciaTrie trie = DurablePatriciaTrie.open( directory ) ) {
+			assertEquals( Arrays.asList( "Hello", "Help" ), toList( trie.range( null, null ) ) );
+		}
+		assertEquals( Arrays.asList( "snapshot-1.trie", "wal-1.log" ), fileNames( directory ) );
+	}
+
+	@Test
+	public void testConcurrentInserts() throws Exception {
+
+		Path directory = folder.getRoot().toPath();
+		final DurablePatriciaTrie trie = DurablePatriciaTrie.open( directory, 1, 3000 );
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for ( int t = 0; t < 4; t++ ) {
+			final int writer = t;
+			threads.add( new Thread( () -> {
+				try {
+					for ( int i = 0; i < 1000; i++ ) {
+						assertTrue( trie.insert( "w" + writer + "-" + i, null ) );
+					}
+				}
+				catch ( Throwable e ) {
+					failure.compareAndSet( null, e );
+				}
+			} ) );
+		}
+
+		for ( Thread t : threads ) {
+			t.start();
+		}
+		for ( Thread t : threads ) {
+			t.join();
+		}
+
+		if ( failure.get() != null ) {
+			throw new AssertionError( failure.get() );
+		}
+
+		try ( DurablePatriciaTrie reopened = DurablePatriciaTrie.open( directory, 1, 3000 ) ) {
+			assertEquals( 4000, reopened.size() );
+		}
+		trie.close();
+	}
+
+	@Test
+	public void testSyncEvery() throws Exception {
+
+		Path directory = folder.getRoot().toPath();
+		DurablePatriciaTrie trie = DurablePatriciaTrie.open( directory, 1000, 1000000 );
+		for ( int i = 0; i < 10; i++ ) {
+			trie.insert( "key" + i, null );
+		}
+		trie.sync();
+
+		try ( DurablePatriciaTrie reopened = DurablePatriciaTrie.open( directory ) ) {
+			assertEquals( 10, reopened.size() );
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testInsertAfterClose() throws Exception {
+
+		DurablePatriciaTrie trie = DurablePatriciaTrie.open( folder.getRoot().toPath() );
+		trie.close();
+		trie.insert( "Hello", null );
+	}
+
+	@Test(expected = IOException.class)
+	public void testNotALog() throws Exception {
+
+		File wal = folder.newFile( "wal-0.log" );
+		Files.write( wal.toPath(), "not a log at all".getBytes( "UTF-8" ) );
+		DurablePatriciaTrie.open( folder.getRoot().toPath() );
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidSyncEvery() throws Exception {
+		DurablePatriciaTrie.open( folder.getRoot().toPath(), 0, 1 );
+	}
+
+	private static List<String> fileNames(Path directory) throws IOException {
+
+		List<String> names = new ArrayList<String>();
+		try ( DirectoryStream<Path> files = Files.newDirectoryStream( directory ) ) {
+			for ( Path file : files ) {
+				names.add( file.getFileName().toString() );
+			}
+		}
+		names.sort( null );
+
+		return names;
+	}
+}
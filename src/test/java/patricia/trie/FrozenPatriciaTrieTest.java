@@ -0,0 +1,149 @@
+package patricia.trie;
+
+import static org.junit.Assert.*;
+import static patricia.trie.PatriciaTrieTest.toList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class FrozenPatriciaTrieTest {
+
+	@Test
+	public void testSearch() {
+
+		PatriciaTrie trie = new PatriciaTrie();
+		for ( String key : Arrays.asList( "Hello", "Help", "Hell", "A", "中文", "Helping" ) ) {
+			trie.insert( key, null );
+		}
+
+		FrozenPatriciaTrie frozen = trie.freeze();
+		assertEquals( 6, frozen.size() );
+		assertTrue( frozen.search( "Hell" ) );
+		assertTrue( frozen.search( "中文" ) );
+		assertFalse( frozen.search( "Hel" ) );
+		assertFalse( frozen.search( "Helpi" ) );
+		assertFalse( frozen.search( "B" ) );
+		assertFalse( frozen.search( "" ) );
+		assertFalse( frozen.search( null ) );
+		assertEquals( Arrays.asList( "Hell", "Hello", "Help", "Helping" ), frozen.searchPrefix( "Hel" ) );
+		assertEquals( Arrays.asList( "Help", "Helping" ), frozen.searchPrefix( "Help" ) );
+		assertTrue( frozen.searchPrefix( "Hex" ).isEmpty() );
+		assertEquals( 2, frozen.countPrefix( "Hell" ) );
+		assertEquals( 0, frozen.countPrefix( "Z" ) );
+		assertEquals( Arrays.asList( "A", "Hell", "Hello", "Help", "Helping", "中文" ), toList( frozen ) );
+
+		// later inserts don't change it
+		trie.insert( "Helm", null );
+		assertFalse( frozen.search( "Helm" ) );
+	}
+
+	@Test
+	public void testEmptyAndSingleKey() {
+
+		FrozenPatriciaTrie empty = new PatriciaTrie().freeze();
+		assertTrue( empty.isEmpty() );
+		assertFalse( empty.search( "A" ) );
+		assertTrue( empty.searchPrefix( "A" ).isEmpty() );
+		assertFalse( empty.iterator().hasNext() );
+
+		FrozenPatriciaTrie one = new PatriciaTrie( "Hello" ).freeze();
+		assertEquals( 1, one.size() );
+		assertTrue( one.search( "Hello" ) );
+		assertFalse( one.search( "Hell" ) );
+		assertEquals( Arrays.asList( "Hello" ), one.searchPrefix( "He" ) );
+		assertTrue( one.searchPrefix( "Hello!" ).isEmpty() );
+	}
+
+	@Test
+	public void testSameAsPatriciaTrie() {
+
+		Random random = new Random( 31 );
+		for ( int round = 0; round < 10; round++ ) {
+			PatriciaTrie trie = new PatriciaTrie();
+			List<String> keys = new ArrayList<String>();
+			for ( int i = 0; i < 3000; i++ ) {
+				// keys with a shared prefix too, and control chars sorting before it
+				String key = round % 2 == 0 ? PatriciaTrieTest.randomKey( random )
+						: "http://example.com/" + (char) ( random.nextInt( 3 ) ) + random.nextInt( 1000 );
+				if ( trie.insert( key, null ) ) {
+					keys.add( key );
+				}
+			}
+
+			FrozenPatriciaTrie frozen = trie.freeze();
+			assertEquals( trie.size(), frozen.size() );
+			assertEquals( toList( trie.range( null, null ) ), toList( frozen ) );
+			for ( String key : keys ) {
+				assertTrue( key, frozen.search( key ) );
+				String prefix = key.substring( 0, 1 + random.nextInt( key.length() ) );
+				assertEquals( prefix, trie.searchPrefix( prefix ), frozen.searchPrefix( prefix ) );
+				assertEquals( prefix, trie.countPrefix( prefix ), frozen.countPrefix( prefix ) );
+			}
+			for ( int i = 0; i < 1000; i++ ) {
+				String key = PatriciaTrieTest.randomKey( random );
+				assertEquals( key, trie.search( key ), frozen.search( key ) );
+			}
+		}
+	}
+
+	@Test
+	public void testPrefixPaddedWithZeros() {
+
+		PatriciaTrie trie = new PatriciaTrie();
+		for ( String key : Arrays.asList( "a", "a\u0000b", "a\u0000c", "ab" ) ) {
+			trie.insert( key, null );
+		}
+
+		FrozenPatriciaTrie frozen = trie.freeze();
+		assertEquals( trie.searchPrefix( "a\u0000" ), frozen.searchPrefix( "a\u0000" ) );
+		assertEquals( Arrays.asList( "a\u0000b", "a\u0000c" ), frozen.searchPrefix( "a\u0000" ) );
+	}
+
+	@Test
+	public void testSortedInput() {
+
+		List<String> keys = new ArrayList<String>();
+		for ( int i = 0; i < 5000; i++ ) {
+			keys.add( String.format( "key%06d", i ) );
+		}
+		Collections.sort( keys );
+
+		FrozenPatriciaTrie frozen = PatriciaTrie.bulkLoad( keys.iterator() ).freeze();
+		assertEquals( keys, toList( frozen ) );
+		assertEquals( 1000, frozen.countPrefix( "key001" ) );
+		assertEquals( keys.subList( 1230, 1240 ), frozen.searchPrefix( "key00123" ) );
+	}
+
+	@Test(timeout = 20000)
+	public void testPrefixMissOnLargeTrie() {
+
+		// every key starts with "abcd", so descending for a missing prefix stops at the root
+		List<String> keys = new ArrayList<String>();
+		for ( int i = 0; i < 200000; i++ ) {
+			keys.add( String.format( "abcd%07d", i ) );
+		}
+
+		PatriciaTrie trie = PatriciaTrie.bulkLoad( keys.iterator() );
+		FrozenPatriciaTrie frozen = trie.freeze();
+		for ( int i = 0; i < 1000; i++ ) {
+			assertEquals( 0, frozen.countPrefix( "zzz" ) );
+			assertTrue( frozen.searchPrefix( "abce" ).isEmpty() );
+			assertFalse( frozen.prefixIterator( "abcd\u0000" ).hasNext() );
+		}
+
+		for ( String prefix : Arrays.asList( "a", "abcd", "abcd00", "abcd0012345", "abcd00123456", "abcc" ) ) {
+			assertEquals( prefix, trie.countPrefix( prefix ), frozen.countPrefix( prefix ) );
+			assertEquals( prefix, trie.searchPrefix( prefix ), frozen.searchPrefix( prefix ) );
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSearchPrefixEmptyPrefix() {
+		new PatriciaTrie().freeze().searchPrefix( "" );
+	}
+}
@@ -0,0 +1,64 @@
+package patricia.trie;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class Int128PatriciaTrieTest {
+
+	private Int128PatriciaTrie trie;
+
+	@Before
+	public void setUp() throws Exception {
+		trie = new Int128PatriciaTrie();
+	}
+
+	@Test
+	public void testInsertAndSearch() {
+
+		long[][] keys = { { 0L, 0L }, { 0L, 1L }, { 1L, 0L }, { -1L, -1L }, { 0x20010db800000000L, 1L },
+				{ 0x20010db800000000L, 2L }, { Long.MIN_VALUE, 0L } };
+		for ( long[] key : keys ) {
+			assertFalse( trie.search( key[0], key[1] ) );
+			assertTrue( trie.insert( key[0], key[1] ) );
+		}
+
+		for ( long[] key : keys ) {
+			assertTrue( trie.search( key[0], key[1] ) );
+			assertFalse( "expecting insert()==false for a duplicate", trie.insert( key[0], key[1] ) );
+		}
+
+		assertEquals( keys.length, trie.size() );
+		assertFalse( trie.search( 0L, 2L ) );
+		assertFalse( trie.search( 1L, 1L ) );
+	}
+
+	@Test
+	public void testAgainstHashSet() {
+
+		Random random = new Random( 31 );
+		for ( int round = 0; round < 50; round++ ) {
+			trie.clear();
+			Set<UUID> expected = new HashSet<UUID>();
+			long highMask = random.nextBoolean() ? -1L : 0x3L;
+			for ( int i = 0; i < 1000; i++ ) {
+				UUID key = new UUID( random.nextLong() & highMask, random.nextLong() & 0xffL );
+				assertEquals( expected.add( key ), trie.insert( key.getMostSignificantBits(),
+						key.getLeastSignificantBits() ) );
+			}
+
+			assertEquals( expected.size(), trie.size() );
+			for ( int i = 0; i < 1000; i++ ) {
+				UUID key = new UUID( random.nextLong() & highMask, random.nextLong() & 0xffL );
+				assertEquals( expected.contains( key ), trie.search( key.getMostSignificantBits(),
+						key.getLeastSignificantBits() ) );
+			}
+		}
+	}
+}
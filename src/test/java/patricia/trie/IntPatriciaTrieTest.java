@@ -0,0 +1,65 @@
+package patricia.trie;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class IntPatriciaTrieTest {
+
+	private IntPatriciaTrie trie;
+
+	@Before
+	public void setUp() throws Exception {
+		trie = new IntPatriciaTrie();
+	}
+
+	@Test
+	public void testInsertAndSearch() {
+
+		int[] keys = { 0, 1, -1, Integer.MIN_VALUE, Integer.MAX_VALUE, 0xc0a80001, 0xc0a80002, 0x0a000001 };
+		for ( int key : keys ) {
+			assertFalse( trie.search( key ) );
+			assertTrue( trie.insert( key ) );
+		}
+
+		for ( int key : keys ) {
+			assertTrue( trie.search( key ) );
+			assertFalse( "expecting insert()==false for a duplicate", trie.insert( key ) );
+		}
+
+		assertEquals( keys.length, trie.size() );
+		assertFalse( trie.search( 2 ) );
+		assertFalse( trie.search( 0xc0a80003 ) );
+
+		trie.clear();
+		assertTrue( trie.isEmpty() );
+		assertFalse( trie.search( 0 ) );
+	}
+
+	@Test
+	public void testAgainstHashSet() {
+
+		Random random = new Random( 23 );
+		for ( int round = 0; round < 50; round++ ) {
+			trie.clear();
+			Set<Integer> expected = new HashSet<Integer>();
+			// few high bits set so that keys share long prefixes
+			int mask = random.nextBoolean() ? -1 : 0xff;
+			for ( int i = 0; i < 1000; i++ ) {
+				int key = random.nextInt() & mask;
+				assertEquals( expected.add( key ), trie.insert( key ) );
+			}
+
+			assertEquals( expected.size(), trie.size() );
+			for ( int i = 0; i < 1000; i++ ) {
+				int key = random.nextInt() & mask;
+				assertEquals( expected.contains( key ), trie.search( key ) );
+			}
+		}
+	}
+}
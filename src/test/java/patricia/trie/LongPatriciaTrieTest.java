@@ -0,0 +1,60 @@
+package patricia.trie;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class LongPatriciaTrieTest {
+
+	private LongPatriciaTrie trie;
+
+	@Before
+	public void setUp() throws Exception {
+		trie = new LongPatriciaTrie();
+	}
+
+	@Test
+	public void testInsertAndSearch() {
+
+		long[] keys = { 0L, 1L, -1L, Long.MIN_VALUE, Long.MAX_VALUE, 1L << 32, ( 1L << 32 ) + 1 };
+		for ( long key : keys ) {
+			assertFalse( trie.search( key ) );
+			assertTrue( trie.insert( key ) );
+		}
+
+		for ( long key : keys ) {
+			assertTrue( trie.search( key ) );
+			assertFalse( "expecting insert()==false for a duplicate", trie.insert( key ) );
+		}
+
+		assertEquals( keys.length, trie.size() );
+		assertFalse( trie.search( 2L ) );
+		assertFalse( trie.search( 1L << 33 ) );
+	}
+
+	@Test
+	public void testAgainstHashSet() {
+
+		Random random = new Random( 29 );
+		for ( int round = 0; round < 50; round++ ) {
+			trie.clear();
+			Set<Long> expected = new HashSet<Long>();
+			long mask = random.nextBoolean() ? -1L : 0xfffL;
+			for ( int i = 0; i < 1000; i++ ) {
+				long key = random.nextLong() & mask;
+				assertEquals( expected.add( key ), trie.insert( key ) );
+			}
+
+			assertEquals( expected.size(), trie.size() );
+			for ( int i = 0; i < 1000; i++ ) {
+				long key = random.nextLong() & mask;
+				assertEquals( expected.contains( key ), trie.search( key ) );
+			}
+		}
+	}
+}
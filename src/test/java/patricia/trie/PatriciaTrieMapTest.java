@@ -0,0 +1,267 @@
+package patricia.trie;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class PatriciaTrieMapTest {
+
+	private PatriciaTrieMap<Integer> map;
+
+	@Before
+	public void setUp() throws Exception {
+		map = new PatriciaTrieMap<Integer>();
+	}
+
+	@Test
+	public void testPutAndGet() {
+
+		assertNull( "expecting put()==null for a new key", map.put( "Hello", 1 ) );
+		assertNull( "expecting put()==null for a new key", map.put( "hello", 2 ) );
+		assertEquals( "expecting the previous value", Integer.valueOf( 1 ), map.put( "Hello", 3 ) );
+
+		assertEquals( Integer.valueOf( 3 ), map.get( "Hello" ) );
+		assertEquals( Integer.valueOf( 2 ), map.get( "hello" ) );
+		assertNull( map.get( "Help" ) );
+		assertTrue( map.containsKey( "hello" ) );
+		assertFalse( map.containsKey( "hell" ) );
+		assertEquals( 2, map.size() );
+	}
+
+	@Test
+	public void testPutIfAbsentAndComputeIfAbsent() {
+
+		assertNull( map.putIfAbsent( "A", 1 ) );
+		assertEquals( Integer.valueOf( 1 ), map.putIfAbsent( "A", 2 ) );
+		assertEquals( Integer.valueOf( 1 ), map.get( "A" ) );
+
+		assertEquals( Integer.valueOf( 5 ), map.computeIfAbsent( "Apple", k -> k.length() ) );
+		assertEquals( Integer.valueOf( 5 ), map.computeIfAbsent( "Apple", k -> 42 ) );
+		assertEquals( 2, map.size() );
+	}
+
+	@Test
+	public void testComputeIfAbsentWithoutValue() {
+
+		map.put( "A", 1 );
+		assertNull( map.computeIfAbsent( "B", k -> null ) );
+		assertFalse( map.containsKey( "B" ) );
+		assertEquals( 1, map.size() );
+
+		try {
+			map.computeIfAbsent( "C", k -> {
+				throw new IllegalStateException( "no value for " + k );
+			} );
+			fail( "expecting IllegalStateException" );
+		}
+		catch ( IllegalStateException e ) {
+			// expected
+		}
+		assertFalse( map.containsKey( "C" ) );
+		assertEquals( 1, map.size() );
+		assertEquals( new ArrayList<String>( Arrays.asList( "A" ) ), new ArrayList<String>( map.keySet() ) );
+
+		// a key mapped to null gets the computed value
+		map.put( "D", null );
+		assertEquals( Integer.valueOf( 4 ), map.computeIfAbsent( "D", k -> 4 ) );
+		assertEquals( 2, map.size() );
+	}
+
+	@Test
+	public void testComputeIfAbsentRandomKeys() {
+
+		// keys linked where the walk looking them up ended
+		Random random = new Random( 13 );
+		TreeMap<String, Integer> expected = new TreeMap<String, Integer>();
+		for ( int i = 0; i < 3000; i++ ) {
+			String key = randomKey( random );
+			Integer value = i % 3 == 0 ? null : i;
+			assertEquals( key, expected.computeIfAbsent( key, k -> value ), map.computeIfAbsent( key, k -> value ) );
+		}
+
+		assertEquals( expected.size(), map.size() );
+		assertEquals( new ArrayList<String>( expected.keySet() ), new ArrayList<String>( map.keySet() ) );
+		assertEquals( expected, map );
+
+		try {
+			map.computeIfAbsent( "\u0000", k -> 1 );
+			fail( "expecting IllegalArgumentException" );
+		}
+		catch ( IllegalArgumentException e ) {
+			// expected
+		}
+		assertEquals( expected.size(), map.size() );
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testPutEmptyKey() {
+		map.put( "", 1 );
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testPutNullKey() {
+		map.put( null, 1 );
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testRemove() {
+		map.put( "A", 1 );
+		map.remove( "A" );
+	}
+
+	@Test
+	public void testEmptyNavigation() {
+
+		assertNull( map.firstEntry() );
+		assertNull( map.ceilingKey( "A" ) );
+		assertNull( map.floorKey( "A" ) );
+		assertFalse( map.entrySet().iterator().hasNext() );
+
+		try {
+			map.firstKey();
+			fail( "expecting NoSuchElementException" );
+		}
+		catch ( NoSuchElementException e ) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testOrder() {
+
+		String[] keys = { "S", "A", "ABC", "B", "0", "Hello World", "Hello", "a", "apple", " " };
+		TreeMap<String, Integer> expected = new TreeMap<String, Integer>();
+		for ( int i = 0; i < keys.length; i++ ) {
+			map.put( keys[i], i );
+			expected.put( keys[i], i );
+		}
+
+		assertEquals( new ArrayList<String>( expected.keySet() ), new ArrayList<String>( map.keySet() ) );
+		assertEquals( new ArrayList<String>( expected.descendingKeySet() ),
+				new ArrayList<String>( map.descendingKeySet() ) );
+		assertEquals( expected, map );
+		assertEquals( " ", map.firstKey() );
+		assertEquals( "apple", map.lastKey() );
+		assertEquals( "Hello", map.ceilingKey( "Hel" ) );
+		assertEquals( "Hello World", map.higherKey( "Hello" ) );
+		assertEquals( "B", map.floorKey( "Bz" ) );
+		assertEquals( "ABC", map.lowerKey( "B" ) );
+		assertEquals( expected.subMap( "A", "Hello" ), map.subMap( "A", "Hello" ) );
+	}
+
+	@Test
+	public void testKeysDifferingBeforeHeadBitIndex() {
+
+		// all of the keys start with '/', so the head bit index is past the first byte
+		TreeMap<String, Integer> expected = new TreeMap<String, Integer>();
+		for ( String key : new String[] { "/", "/a", "/b" } ) {
+			map.put( key, key.length() );
+			expected.put( key, key.length() );
+		}
+
+		for ( String key : new String[] { "A", " ", "\u0001", "/\u0001", "/c" } ) {
+			assertEquals( key, expected.ceilingKey( key ), map.ceilingKey( key ) );
+			assertEquals( key, expected.higherKey( key ), map.higherKey( key ) );
+			assertEquals( key, expected.floorKey( key ), map.floorKey( key ) );
+			assertEquals( key, expected.lowerKey( key ), map.lowerKey( key ) );
+			checkSameMap( expected.tailMap( key, true ), map.tailMap( key, true ) );
+			checkSameMap( expected.headMap( key, false ), map.headMap( key, false ) );
+		}
+	}
+
+	@Test
+	public void testEntrySetValue() {
+
+		map.put( "A", 1 );
+		map.put( "B", 2 );
+		for ( Map.Entry<String, Integer> e : map.entrySet() ) {
+			e.setValue( e.getValue() * 10 );
+		}
+
+		assertEquals( Integer.valueOf( 10 ), map.get( "A" ) );
+		assertEquals( Integer.valueOf( 20 ), map.get( "B" ) );
+	}
+
+	@Test
+	public void testNavigationAgainstTreeMap() {
+
+		Random random = new Random( 7 );
+		for ( int round = 0; round < 50; round++ ) {
+			map.clear();
+			TreeMap<String, Integer> expected = new TreeMap<String, Integer>();
+			for ( int i = 0; i < 200; i++ ) {
+				String key = randomKey( random );
+				assertEquals( expected.put( key, i ), map.put( key, i ) );
+			}
+
+			assertEquals( expected.size(), map.size() );
+			assertEquals( new ArrayList<String>( expected.keySet() ), new ArrayList<String>( map.keySet() ) );
+
+			for ( int i = 0; i < 100; i++ ) {
+				String key = randomKey( random );
+				assertEquals( key, expected.ceilingKey( key ), map.ceilingKey( key ) );
+				assertEquals( key, expected.higherKey( key ), map.higherKey( key ) );
+				assertEquals( key, expected.floorKey( key ), map.floorKey( key ) );
+				assertEquals( key, expected.lowerKey( key ), map.lowerKey( key ) );
+				assertEquals( key, expected.get( key ), map.get( key ) );
+			}
+
+			for ( int i = 0; i < 20; i++ ) {
+				String from = randomKey( random );
+				String to = randomKey( random );
+				if ( from.compareTo( to ) > 0 ) {
+					String tmp = from;
+					from = to;
+					to = tmp;
+				}
+
+				checkSameMap( expected.subMap( from, true, to, false ), map.subMap( from, true, to, false ) );
+				checkSameMap( expected.subMap( from, false, to, true ), map.subMap( from, false, to, true ) );
+				checkSameMap( expected.headMap( to, true ), map.headMap( to, true ) );
+				checkSameMap( expected.tailMap( from, false ), map.tailMap( from, false ) );
+				checkSameMap( expected.descendingMap().subMap( to, true, from, true ), map.descendingMap().subMap(
+						to, true, from, true ) );
+				checkSameMap( expected.tailMap( from, true ).headMap( to, false ), map.tailMap( from, true )
+						.headMap( to, false ) );
+			}
+		}
+	}
+
+	private void checkSameMap(NavigableMap<String, Integer> expected, NavigableMap<String, Integer> res) {
+
+		assertEquals( new ArrayList<String>( expected.keySet() ), new ArrayList<String>( res.keySet() ) );
+		assertEquals( new ArrayList<String>( expected.descendingKeySet() ),
+				new ArrayList<String>( res.descendingKeySet() ) );
+		assertEquals( expected.size(), res.size() );
+		assertEquals( expected.firstEntry(), res.firstEntry() );
+		assertEquals( expected.lastEntry(), res.lastEntry() );
+
+		List<Integer> values = new ArrayList<Integer>();
+		for ( Iterator<Integer> it = res.values().iterator(); it.hasNext(); ) {
+			values.add( it.next() );
+		}
+		assertEquals( new ArrayList<Integer>( expected.values() ), values );
+	}
+
+	private String randomKey(Random random) {
+
+		int length = 1 + random.nextInt( 5 );
+		char[] chars = new char[length];
+		for ( int i = 0; i < length; i++ ) {
+			chars[i] = (char) ( '0' + random.nextInt( 75 ) );
+		}
+
+		return new String( chars );
+	}
+}
@@ -0,0 +1,94 @@
+package patricia.trie;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PatriciaTrieSnapshotTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testSearch() throws IOException {
+
+		PatriciaTrie trie = new PatriciaTrie();
+		for ( String key : new String[] { "S", "A", "ABC", "B", "0", "Hello World", "Hello", "Help", "a", " " } ) {
+			trie.insert( key, null );
+		}
+
+		try ( PatriciaTrieSnapshot snapshot = writeAndOpen( trie ) ) {
+			assertEquals( 10, snapshot.size() );
+			assertTrue( snapshot.search( "Hello" ) );
+			assertTrue( snapshot.search( " " ) );
+			assertFalse( snapshot.search( "Hel" ) );
+			assertFalse( snapshot.search( "z" ) );
+
+			assertEquals( trie.searchPrefix( "Hel" ), snapshot.searchPrefix( "Hel" ) );
+			assertEquals( trie.searchPrefix( "Hel", 2 ), snapshot.searchPrefix( "Hel", 2 ) );
+			assertTrue( snapshot.searchPrefix( "z" ).isEmpty() );
+		}
+	}
+
+	@Test
+	public void testEmpty() throws IOException {
+
+		try ( PatriciaTrieSnapshot snapshot = writeAndOpen( new PatriciaTrie() ) ) {
+			assertTrue( snapshot.isEmpty() );
+			assertFalse( snapshot.search( "A" ) );
+			assertTrue( snapshot.searchPrefix( "A" ).isEmpty() );
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testNotASnapshot() throws IOException {
+
+		Path file = folder.newFile().toPath();
+		Files.write( file, "not a snapshot at all".getBytes() );
+		PatriciaTrieSnapshot.open( file );
+	}
+
+	@Test
+	public void testAgainstTrie() throws IOException {
+
+		Random random = new Random( 17 );
+		for ( int round = 0; round < 30; round++ ) {
+			PatriciaTrie trie = new PatriciaTrie();
+			TreeSet<String> keys = new TreeSet<String>();
+			for ( int i = 0; i < 500; i++ ) {
+				String key = PatriciaTrieTest.randomKey( random );
+				trie.insert( key, null );
+				keys.add( key );
+			}
+
+			try ( PatriciaTrieSnapshot snapshot = writeAndOpen( trie ) ) {
+				assertEquals( trie.size(), snapshot.size() );
+				for ( int i = 0; i < 300; i++ ) {
+					String key = PatriciaTrieTest.randomKey( random );
+					assertEquals( key, trie.search( key ), snapshot.search( key ) );
+
+					String prefix = key.substring( 0, 1 + random.nextInt( key.length() ) );
+					assertEquals( prefix, new ArrayList<String>( keys.subSet( prefix, prefix + Character.MAX_VALUE ) ),
+							snapshot.searchPrefix( prefix ) );
+				}
+			}
+		}
+	}
+
+	private PatriciaTrieSnapshot writeAndOpen(PatriciaTrie trie) throws IOException {
+
+		Path file = folder.newFile().toPath();
+		PatriciaTrieSnapshot.write( trie, file );
+
+		return PatriciaTrieSnapshot.open( file );
+	}
+}
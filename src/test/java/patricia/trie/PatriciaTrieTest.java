@@ -2,7 +2,23 @@ package patricia.trie;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -152,6 +168,128 @@ public class PatriciaTrieTest {
 		eachNodeCheck( nodes, 3, 1, "low" );
 	}
 
+	@Test
+	public void testInsertWithView() {
+		NodeView view = new NodeView();
+
+		assertTrue( "expecting insert()==true for A", patricia.insert( "A", view ) );
+		eachViewCheck( view, -1, null, 1, "A", -1, null, 1, "A" );
+
+		assertTrue( "expecting insert()==true for S", patricia.insert( "S", view ) );
+		eachViewCheck( view, 1, "A", 3, "S", 1, "A", 3, "S" );
+
+		assertTrue( "expecting insert()==true for E", patricia.insert( "E", view ) );
+		eachViewCheck( view, 3, "S", 5, "E", 1, "A", 5, "E" );
+
+		assertFalse( "expecting insert()==false for S", patricia.insert( "S", view ) );
+		eachViewCheck( view, 1, "A", 3, "S", 5, "E", 3, "S" );
+
+		assertFalse( "expecting insert()==false for null", patricia.insert( null, view ) );
+		assertTrue( "expecting view.isEmpty()==true", view.isEmpty() );
+		assertFalse( "expecting insert()==false for empty string", patricia.insert( "", null ) );
+	}
+
+	@Test
+	public void testInsertDuplicate() {
+		patricia.insert( "A" );
+		patricia.insert( "S" );
+
+		Node[] nodes = patricia.insert( "A" );
+		notNullCheck( nodes );
+		eachNodeNullCheck( nodes, 0 );
+		eachNodeCheck( nodes, 1, 1, "A" );
+
+		nodes = patricia.insert( "S" );
+		notNullCheck( nodes );
+		eachNodeCheck( nodes, 1, 3, "S" );
+
+		checkSearched( true, patricia.search( "A" ), "A" );
+		checkSearched( true, patricia.search( "S" ), "S" );
+		checkSearched( false, patricia.search( "B" ), "B" );
+	}
+
+	@Test
+	public void testInsertAboveHead() {
+		// '0' has its left most one bit after the first bit where 'A' and '0' differ.
+		patricia.insert( "0" );
+		patricia.insert( "A" );
+		patricia.insert( "01" );
+		patricia.insert( "Apple" );
+		patricia.insert( " " );
+
+		checkSearched( true, patricia.search( "0" ), "0" );
+		checkSearched( true, patricia.search( "A" ), "A" );
+		checkSearched( true, patricia.search( "01" ), "01" );
+		checkSearched( true, patricia.search( "Apple" ), "Apple" );
+		checkSearched( true, patricia.search( " " ), " " );
+		checkSearched( false, patricia.search( "1" ), "1" );
+		checkSearched( false, patricia.search( "App" ), "App" );
+	}
+
+	@Test
+	public void testInsertBelowFirstHead() {
+		// "\u0005" becomes head on bit 5 and gets "\r" above it, leaving its left pointer empty. "\u0004" then
+		// differs from "\u0005" on bit 7 and "\u0001" from "\u0004" on bit 5, the bit of "\u0005".
+		String[] keys = { "\u0005", "\r", "\u0004", "\u0001" };
+		for ( String key : keys ) {
+			patricia.insert( key );
+		}
+
+		for ( String key : keys ) {
+			checkSearched( true, patricia.search( key ), key );
+		}
+		checkSearched( false, patricia.search( "\u0003" ), "\u0003" );
+		assertEquals( "\u0004", patricia.select( 1 ) );
+		assertEquals( 2, patricia.rank( "\u0005" ) );
+	}
+
+	@Test
+	public void testInsertZeroBytesKey() {
+		// "\0" encodes to a zero byte, the bits of the empty key, whether it comes first or later
+		assertFalse( patricia.insert( "\0", null ) );
+		assertFalse( patricia.insert( "\0\0".getBytes(), 0, 2 ) );
+		assertTrue( patricia.isEmpty() );
+		assertTrue( new PatriciaTrie( "\0" ).isEmpty() );
+
+		patricia.insert( "a", null );
+		assertFalse( patricia.insert( "\0", null ) );
+		checkSearched( false, patricia.search( "\0" ), "\0" );
+		assertEquals( 1, patricia.size() );
+
+		PatriciaTrie loaded = PatriciaTrie.bulkLoad( Arrays.asList( "\0", "\0a", "b" ).iterator() );
+		assertEquals( Arrays.asList( "\0a", "b" ), Arrays.asList( loaded.select( 0 ), loaded.select( 1 ) ) );
+		assertEquals( 2, loaded.size() );
+		PatriciaTrie parallel = PatriciaTrie.parallelBulkLoad( Arrays.asList( "\0", "\0a", "b" ) );
+		assertEquals( 2, parallel.size() );
+		assertTrue( parallel.search( "\0a" ) );
+	}
+
+	@Test
+	public void testSearchWithView() {
+		patricia.insert( "A" );
+		patricia.insert( "S" );
+		patricia.insert( "E" );
+
+		NodeView view = new NodeView();
+		assertTrue( "expecting search()==true for E", patricia.search( "E", view ) );
+		eachViewCheck( view, 3, "S", 5, "E", 1, "A", 5, "E" );
+
+		assertFalse( "expecting search()==false for B", patricia.search( "B", view ) );
+		assertTrue( "expecting view.isEmpty()==true", view.isEmpty() );
+	}
+
+	private void eachViewCheck(NodeView view, int parentBitIndex, String parentKey, int bitIndex, String key,
+			int leftBitIndex, String leftKey, int rightBitIndex, String rightKey) {
+		assertEquals( "parent bit index", parentBitIndex, view.getParentBitIndex() );
+		assertEquals( "parent key", parentKey, view.getParentKey() );
+		assertEquals( "bit index", bitIndex, view.getBitIndex() );
+		assertEquals( "key", key, view.getKey() );
+		assertEquals( "left bit index", leftBitIndex, view.getLeftBitIndex() );
+		assertEquals( "left key", leftKey, view.getLeftKey() );
+		assertEquals( "right bit index", rightBitIndex, view.getRightBitIndex() );
+		assertEquals( "right key", rightKey, view.getRightKey() );
+	}
+
 	private void notNullCheck(Node[] nodes) {
 		assertNotNull( "expecting nodes!=null but found null", nodes );
 		assertTrue( "expecting nodes.length==4 but found " + nodes.length, nodes.length == 4 );
@@ -290,6 +428,520 @@ public class PatriciaTrieTest {
 		checkPrefixSize( 3, results.size() );
 	}
 
+	@Test
+	public void testSearchPrefixLimit() {
+
+		insertAll( "Hello", "Huge", "Here", "there", "hello", "Health", "Health Center", "Hello World", "Help", "Hex" );
+
+		List<String> results = patricia.searchPrefix( "He", 3 );
+		assertEquals( Arrays.asList( "Health", "Health Center", "Hello" ), results );
+
+		results = patricia.searchPrefix( "He" );
+		assertEquals( Arrays.asList( "Health", "Health Center", "Hello", "Hello World", "Help", "Here", "Hex" ),
+				results );
+
+		results = patricia.searchPrefix( "Hello World!" );
+		checkPrefixSize( 0, results.size() );
+	}
+
+	@Test
+	public void testPrefixIterator() {
+
+		insertAll( "S", "A", "ABC", "B", "AB", "0" );
+
+		Iterator<String> it = patricia.prefixIterator( "A" );
+		assertEquals( "A", it.next() );
+		assertEquals( "AB", it.next() );
+		assertEquals( "ABC", it.next() );
+		assertFalse( "expecting it.hasNext()==false", it.hasNext() );
+
+		assertFalse( "expecting it.hasNext()==false", patricia.prefixIterator( "C" ).hasNext() );
+		assertEquals( Arrays.asList( "0" ), patricia.streamPrefix( "0" ).collect( Collectors.toList() ) );
+		assertEquals( 1L, patricia.streamPrefix( "AB" ).limit( 1 ).count() );
+		assertEquals( 2L, patricia.streamPrefix( "AB" ).count() );
+	}
+
+	@Test
+	public void testCountPrefix() {
+
+		insertAll( "Hello", "Huge", "Here", "there", "hello", "After", "health", "Health", "Health Center",
+				"Hello World", "Help", "Hex", "Horn", "hH", "need some help" );
+
+		assertEquals( 9, patricia.countPrefix( "H" ) );
+		assertEquals( 7, patricia.countPrefix( "He" ) );
+		assertEquals( 2, patricia.countPrefix( "Hello" ) );
+		assertEquals( 3, patricia.countPrefix( "h" ) );
+		assertEquals( 0, patricia.countPrefix( "z" ) );
+		assertEquals( 0, patricia.countPrefix( "Hello World!" ) );
+		assertEquals( patricia.searchPrefix( "He" ).size(), patricia.countPrefix( "He" ) );
+	}
+
+	@Test
+	public void testRankAndSelect() {
+
+		insertAll( "S", "A", "ABC", "B", "0", "AB" );
+		String[] sorted = { "0", "A", "AB", "ABC", "B", "S" };
+
+		for ( int i = 0; i < sorted.length; i++ ) {
+			assertEquals( sorted[i], patricia.select( i ) );
+			assertEquals( i, patricia.rank( sorted[i] ) );
+		}
+
+		assertEquals( 0, patricia.rank( " " ) );
+		assertEquals( 4, patricia.rank( "AC" ) );
+		assertEquals( 5, patricia.rank( "C" ) );
+		assertEquals( 6, patricia.rank( "z" ) );
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testSelectOutOfRange() {
+		insertAll( "A", "B" );
+		patricia.select( 2 );
+	}
+
+	@Test
+	public void testLongestPrefixOf() {
+
+		insertAll( "/", "/api", "/api/v1", "/api/v1/users", "/static", "/apix", "10.0", "10.0.0", "192.168" );
+
+		assertEquals( "/api/v1", patricia.longestPrefixOf( "/api/v1/orders/7" ) );
+		assertEquals( "/api/v1/users", patricia.longestPrefixOf( "/api/v1/users" ) );
+		assertEquals( "/", patricia.longestPrefixOf( "/apps" ) );
+		assertEquals( "10.0.0", patricia.longestPrefixOf( "10.0.0.1" ) );
+		assertEquals( "10.0", patricia.longestPrefixOf( "10.0.1.1" ) );
+		assertNull( patricia.longestPrefixOf( "192.1" ) );
+		assertNull( patricia.longestPrefixOf( "api" ) );
+		assertEquals( Arrays.asList( "/", "/api", "/api/v1", "/api/v1/users" ),
+				patricia.allPrefixesOf( "/api/v1/users/42" ) );
+		assertTrue( patricia.allPrefixesOf( "172.16.0.1" ).isEmpty() );
+	}
+
+	@Test
+	public void testLongestPrefixOfBelowOtherPath() {
+		// "a" hangs on the left of the node telling "aA" from "a\u0001", off the path of "aB"
+		insertAll( "aA", "a\u0001", "a" );
+
+		assertEquals( "a", patricia.longestPrefixOf( "aB" ) );
+		assertEquals( "aA", patricia.longestPrefixOf( "aAB" ) );
+	}
+
+	@Test
+	public void testAllPrefixesOfRandomKeys() {
+
+		Random random = new Random( 29 );
+		for ( int round = 0; round < 100; round++ ) {
+			patricia.clear();
+			TreeSet<String> keys = new TreeSet<String>();
+			for ( int i = 0; i < 200; i++ ) {
+				String key = randomKey( random, "ab\u0001" );
+				patricia.insert( key );
+				keys.add( key );
+			}
+
+			for ( int i = 0; i < 100; i++ ) {
+				String key = randomKey( random, "ab\u0001" );
+				List<String> expected = new ArrayList<String>();
+				for ( int length = 1; length <= key.length(); length++ ) {
+					if ( keys.contains( key.substring( 0, length ) ) ) {
+						expected.add( key.substring( 0, length ) );
+					}
+				}
+
+				assertEquals( key, expected, patricia.allPrefixesOf( key ) );
+				assertEquals( key, expected.isEmpty() ? null : expected.get( expected.size() - 1 ),
+						patricia.longestPrefixOf( key ) );
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testLongestPrefixOfEmptyKey() {
+		patricia.longestPrefixOf( "" );
+	}
+
+	@Test
+	public void testByteAndCharSequenceKeys() {
+
+		byte[] packet = "GET /caf\u00e9 HTTP".getBytes( StandardCharsets.UTF_8 );
+		assertTrue( patricia.insert( packet, 4, 6 ) );
+		assertFalse( patricia.insert( packet, 4, 6 ) );
+		assertTrue( patricia.insert( new StringBuilder( "/cafe" ), null ) );
+		assertTrue( patricia.insert( ByteBuffer.wrap( packet ), 0, 3 ) );
+
+		assertTrue( patricia.search( "/caf\u00e9" ) );
+		assertTrue( patricia.search( "GET" ) );
+		assertTrue( patricia.search( packet, 4, 6 ) );
+		assertFalse( patricia.search( packet, 4, 5 ) );
+		assertTrue( patricia.search( new StringBuilder( "x/cafe" ).subSequence( 1, 6 ) ) );
+		assertFalse( patricia.search( new StringBuilder( "/caf" ) ) );
+
+		ByteBuffer direct = ByteBuffer.allocateDirect( packet.length ).order( ByteOrder.LITTLE_ENDIAN );
+		direct.put( packet );
+		assertTrue( patricia.search( direct, 4, 6 ) );
+		assertTrue( patricia.search( direct, 0, 3 ) );
+		assertFalse( patricia.search( direct, 0, 4 ) );
+		assertEquals( packet.length, direct.position() );
+
+		List<String> expected = Arrays.asList( "/cafe", "/caf\u00e9" );
+		assertEquals( expected, patricia.searchPrefix( packet, 4, 4 ) );
+		assertEquals( expected, patricia.searchPrefix( direct, 4, 4 ) );
+		assertEquals( expected, patricia.searchPrefix( new StringBuilder( "/caf" ) ) );
+		assertEquals( Arrays.asList( "/caf\u00e9" ), patricia.searchPrefix( "/caf\u00e9" ) );
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testSearchBytesOutOfRange() {
+		patricia.search( new byte[4], 2, 3 );
+	}
+
+	@Test
+	public void testEncodeCharSequence() {
+
+		Random random = new Random( 31 );
+		for ( int i = 0; i < 1000; i++ ) {
+			StringBuilder chars = new StringBuilder();
+			for ( int j = random.nextInt( 8 ); j > 0; j-- ) {
+				// ASCII, two and three byte chars, and surrogates paired or not
+				int[] bounds = { 0x80, 0x800, 0xd800, 0xe000, 0x10000 };
+				chars.append( (char) random.nextInt( bounds[random.nextInt( bounds.length )] ) );
+			}
+
+			assertArrayEquals( chars.toString().getBytes( StandardCharsets.UTF_8 ), KeyBits.encode( chars ) );
+		}
+	}
+
+	@Test
+	public void testSearchAll() {
+
+		insertAll( "S", "A", "ABC", "B", "0", "AB" );
+
+		BitSet found = patricia.searchAll( Arrays.asList( "AB", "C", null, "S", "", "AB", "ABCD", "0" ) );
+		assertEquals( "{0, 3, 5, 7}", found.toString() );
+		assertTrue( patricia.containsAll( Arrays.asList( "0", "S", "ABC" ) ) );
+		assertFalse( patricia.containsAll( Arrays.asList( "0", "S", "AC" ) ) );
+		assertTrue( new PatriciaTrie().searchAll( Arrays.asList( "A" ) ).isEmpty() );
+	}
+
+	@Test
+	public void testSearchAllSameAsSearch() {
+
+		// an unpaired surrogate encodes to the same bytes as '?', but it's a different String
+		insertAll( "x?", "xy", "é" );
+		assertFalse( patricia.insert( "x\uD800", null ) );
+
+		List<String> batch = Arrays.asList( "x\uD800", "x?", "\uDC00", "?", "xy", "é" );
+		BitSet found = patricia.searchAll( batch );
+		for ( int i = 0; i < batch.size(); i++ ) {
+			assertEquals( batch.get( i ), patricia.search( batch.get( i ) ), found.get( i ) );
+		}
+		assertEquals( "{1, 4, 5}", found.toString() );
+	}
+
+	@Test
+	public void testSearchAllRandomKeys() {
+
+		Random random = new Random( 37 );
+		for ( int round = 0; round < 50; round++ ) {
+			patricia.clear();
+			List<String> batch = new ArrayList<String>();
+			for ( int i = 0; i < 300; i++ ) {
+				String key = randomKey( random );
+				patricia.insert( key );
+				batch.add( key );
+			}
+			for ( int i = 0; i < 300; i++ ) {
+				batch.add( randomKey( random ) );
+			}
+			Collections.shuffle( batch, random );
+
+			BitSet found = patricia.searchAll( batch );
+			for ( int i = 0; i < batch.size(); i++ ) {
+				assertEquals( batch.get( i ), patricia.search( batch.get( i ) ), found.get( i ) );
+			}
+		}
+	}
+
+	@Test
+	public void testSearchFuzzy() {
+
+		insertAll( "hello", "help", "hell", "yellow", "hallo", "he", "world" );
+
+		assertEquals( Arrays.asList( "hallo", "hell", "hello" ), toList( patricia.searchFuzzy( "hello", 1 ) ) );
+		assertEquals( Arrays.asList( "hallo", "he", "hell", "hello", "help", "yellow" ),
+				toList( patricia.searchFuzzy( "hello", 3 ) ) );
+		assertEquals( Arrays.asList( "world" ), toList( patricia.searchFuzzy( "world", 0 ) ) );
+		assertEquals( Arrays.asList( "he" ), toList( patricia.searchFuzzy( "", 2 ) ) );
+		assertFalse( new PatriciaTrie().searchFuzzy( "a", 2 ).hasNext() );
+	}
+
+	@Test
+	public void testSearchFuzzyRandomKeys() {
+
+		Random random = new Random( 43 );
+		// x stands for a char encoded in four bytes, unpaired surrogates are not kept by the encoding
+		String alphabet = "ab\u0001\u00e9\u4e2dx";
+		for ( int round = 0; round < 50; round++ ) {
+			patricia.clear();
+			TreeSet<String> keys = new TreeSet<String>();
+			for ( int i = 0; i < 200; i++ ) {
+				String key = randomKey( random, alphabet ).replace( "x", "\ud83d\ude00" );
+				patricia.insert( key );
+				keys.add( key );
+			}
+
+			for ( int i = 0; i < 20; i++ ) {
+				String query = randomKey( random, alphabet ).replace( "x", "\ud83d\ude00" );
+				int maxEdits = random.nextInt( 4 );
+				List<String> expected = new ArrayList<String>();
+				for ( String key : keys ) {
+					if ( editDistance( key, query ) <= maxEdits ) {
+						expected.add( key );
+					}
+				}
+
+				List<String> found = toList( patricia.searchFuzzy( query, maxEdits ) );
+				Collections.sort( found );
+				assertEquals( query + " " + maxEdits, expected, found );
+			}
+		}
+	}
+
+	@Test
+	public void testSearchFuzzyPrunes() {
+
+		Random random = new Random( 47 );
+		String alphabet = "abcdefghijklmnopqrstuvwxyz";
+		for ( int i = 0; i < 20000; i++ ) {
+			patricia.insert( randomKey( random, alphabet ) + randomKey( random, alphabet ) );
+		}
+
+		FuzzyIterator it = (FuzzyIterator) patricia.searchFuzzy( "fuzzy", 1 );
+		toList( it );
+		assertTrue( String.valueOf( it.getVisited() ), it.getVisited() < patricia.size() / 10 );
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSearchFuzzyNegativeEdits() {
+		patricia.searchFuzzy( "a", -1 );
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testPrefixIteratorEmptyPrefix() {
+		patricia.prefixIterator( "" );
+	}
+
+	@Test
+	public void testBulkLoad() {
+
+		Random random = new Random( 3 );
+		for ( int round = 0; round < 100; round++ ) {
+			TreeSet<String> keys = new TreeSet<String>();
+			int count = random.nextInt( 300 );
+			for ( int i = 0; i < count; i++ ) {
+				keys.add( randomKey( random ) );
+			}
+
+			patricia.clear();
+			insertAll( keys.toArray( new String[keys.size()] ) );
+			PatriciaTrie loaded = PatriciaTrie.bulkLoad( keys.stream() );
+
+			assertEquals( keys.size(), loaded.size() );
+			checkSameNode( patricia.getHead(), loaded.getHead() );
+			for ( String key : keys ) {
+				assertTrue( key, loaded.search( key ) );
+			}
+		}
+	}
+
+	@Test
+	public void testBulkLoadSkipsDuplicates() {
+
+		PatriciaTrie loaded = PatriciaTrie.bulkLoad( Arrays.asList( "A", "A", "", "B", "B" ).iterator() );
+		assertEquals( 2, loaded.size() );
+		assertEquals( "A", loaded.select( 0 ) );
+		assertEquals( "B", loaded.select( 1 ) );
+	}
+
+	@Test
+	public void testParallelBulkLoad() {
+
+		ForkJoinPool pool = new ForkJoinPool( 4 );
+		Random random = new Random( 5 );
+		for ( int round = 0; round < 100; round++ ) {
+			TreeSet<String> keys = new TreeSet<String>();
+			int count = random.nextInt( 2000 );
+			for ( int i = 0; i < count; i++ ) {
+				keys.add( randomKey( random ) );
+			}
+
+			List<String> sorted = new ArrayList<String>( keys );
+			if ( !sorted.isEmpty() ) {
+				// skipped like a serial load does
+				sorted.add( random.nextInt( sorted.size() ), null );
+				sorted.add( sorted.indexOf( keys.first() ) + 1, keys.first() );
+			}
+
+			PatriciaTrie serial = PatriciaTrie.bulkLoad( sorted.iterator() );
+			PatriciaTrie parallel = PatriciaTrie.parallelBulkLoad( sorted, pool, 1 + random.nextInt( 64 ) );
+
+			assertEquals( serial.size(), parallel.size() );
+			checkSameNode( serial.getHead(), parallel.getHead() );
+		}
+
+		pool.shutdown();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParallelBulkLoadUnsorted() {
+		PatriciaTrie.parallelBulkLoad( Arrays.asList( "A", "C", "B" ), ForkJoinPool.commonPool(), 1 );
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBulkLoadUnsorted() {
+		PatriciaTrie.bulkLoad( Arrays.asList( "A", "C", "B" ).iterator() );
+	}
+
+	@Test
+	public void testWriteAndReadFrom() throws IOException {
+
+		Random random = new Random( 19 );
+		for ( int round = 0; round < 50; round++ ) {
+			patricia.clear();
+			// a key on the empty left pointer of head
+			insertAll( "@", " " );
+			for ( int i = random.nextInt( 500 ); i > 0; i-- ) {
+				patricia.insert( randomKey( random ), null );
+			}
+
+			PatriciaTrie read = writeAndRead( patricia );
+			assertEquals( patricia.size(), read.size() );
+			checkSameNode( patricia.getHead(), read.getHead() );
+			assertEquals( patricia.select( patricia.size() - 1 ), read.select( read.size() - 1 ) );
+		}
+
+		assertTrue( writeAndRead( new PatriciaTrie() ).isEmpty() );
+	}
+
+	@Test(expected = IOException.class)
+	public void testReadFromTruncated() throws IOException {
+
+		insertAll( "S", "A", "ABC", "B" );
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		patricia.writeTo( Channels.newChannel( out ) );
+		byte[] bytes = Arrays.copyOf( out.toByteArray(), out.size() - 3 );
+
+		PatriciaTrie.readFrom( Channels.newChannel( new ByteArrayInputStream( bytes ) ) );
+	}
+
+	private PatriciaTrie writeAndRead(PatriciaTrie trie) throws IOException {
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		trie.writeTo( Channels.newChannel( out ) );
+
+		return PatriciaTrie.readFrom( Channels.newChannel( new ByteArrayInputStream( out.toByteArray() ) ) );
+	}
+
+	/**
+	 * Compares two tries node by node, following downward pointers and the keys of upward pointers.
+	 */
+	static void checkSameNode(Node expected, Node res) {
+
+		if ( expected == null ) {
+			assertNull( res );
+			return;
+		}
+
+		assertNotNull( expected.toString(), res );
+		assertEquals( expected.getKey(), res.getKey() );
+		assertEquals( expected.getKey(), expected.getBitIndex(), res.getBitIndex() );
+		assertEquals( expected.getKey(), expected.getCount(), res.getCount() );
+		assertEquals( expected.getKey(), expected.getParent() == null ? null : expected.getParent().getKey(),
+				res.getParent() == null ? null : res.getParent().getKey() );
+
+		checkSameChild( expected, expected.getLeft(), res, res.getLeft() );
+		checkSameChild( expected, expected.getRight(), res, res.getRight() );
+	}
+
+	private static void checkSameChild(Node expected, Node expectedNext, Node res, Node resNext) {
+
+		if ( TrieCursor.isDownward( expected, expectedNext ) ) {
+			assertTrue( res.getKey(), TrieCursor.isDownward( res, resNext ) );
+			checkSameNode( expectedNext, resNext );
+		}
+		else if ( expectedNext == null ) {
+			assertNull( resNext );
+		}
+		else {
+			assertFalse( res.getKey(), TrieCursor.isDownward( res, resNext ) );
+			assertEquals( expectedNext.getKey(), resNext.getKey() );
+		}
+	}
+
+	static String randomKey(Random random) {
+
+		int length = 1 + random.nextInt( 6 );
+		char[] chars = new char[length];
+		for ( int i = 0; i < length; i++ ) {
+			chars[i] = (char) ( '0' + random.nextInt( 75 ) );
+		}
+
+		return new String( chars );
+	}
+
+	private static String randomKey(Random random, String alphabet) {
+
+		int length = 1 + random.nextInt( 8 );
+		char[] chars = new char[length];
+		for ( int i = 0; i < length; i++ ) {
+			chars[i] = alphabet.charAt( random.nextInt( alphabet.length() ) );
+		}
+
+		return new String( chars );
+	}
+
+	private static int editDistance(String a, String b) {
+
+		int[] row = new int[b.length() + 1];
+		for ( int j = 0; j <= b.length(); j++ ) {
+			row[j] = j;
+		}
+		for ( int i = 1; i <= a.length(); i++ ) {
+			int diagonal = row[0];
+			row[0] = i;
+			for ( int j = 1; j <= b.length(); j++ ) {
+				int above = row[j];
+				row[j] = Math.min( Math.min( row[j - 1], above ) + 1,
+						diagonal + ( a.charAt( i - 1 ) == b.charAt( j - 1 ) ? 0 : 1 ) );
+				diagonal = above;
+			}
+		}
+
+		return row[b.length()];
+	}
+
+	/**
+	 * Keys in the order the iterator returns them, e.g. a {@link RangeCursor}. Shared by the tests of the other tries.
+	 */
+	static List<String> toList(Iterator<String> it) {
+
+		List<String> keys = new ArrayList<String>();
+		while ( it.hasNext() ) {
+			keys.add( it.next() );
+		}
+
+		return keys;
+	}
+
+	static List<String> toList(Iterable<String> keys) {
+		return toList( keys.iterator() );
+	}
+
+	private void insertAll(String... keys) {
+		for ( String key : keys ) {
+			patricia.insert( key, null );
+		}
+	}
+
 	private void checkPrefixSize(int expected, int res) {
 		assertTrue( "expecting results.size()==" + expected + " but found " + res, expected == res );
 
@@ -0,0 +1,147 @@
+package patricia.trie;
+
+import static org.junit.Assert.*;
+import static patricia.trie.PatriciaTrieTest.toList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class PersistentPatriciaTrieTest {
+
+	@Test
+	public void testInsertKeepsOldVersions() {
+
+		PersistentPatriciaTrie empty = PersistentPatriciaTrie.empty();
+		PersistentPatriciaTrie one = empty.insert( "Hello" );
+		PersistentPatriciaTrie two = one.insert( "Help" );
+		PersistentPatriciaTrie three = two.insertAll( Arrays.asList( "A", "Hello", null, "", "Hell" ) );
+
+		assertTrue( empty.isEmpty() );
+		assertEquals( 1, one.size() );
+		assertEquals( 2, two.size() );
+		assertEquals( 4, three.size() );
+		assertTrue( one.search( "Hello" ) );
+		assertFalse( one.search( "Help" ) );
+		assertTrue( two.search( "Help" ) );
+		assertFalse( two.search( "Hell" ) );
+		assertEquals( Arrays.asList( "A", "Hell", "Hello", "Help" ), toList( three ) );
+		assertEquals( Arrays.asList( "Hell", "Hello" ), three.searchPrefix( "Hell" ) );
+		assertTrue( three.searchPrefix( "B" ).isEmpty() );
+
+		assertSame( three, three.insert( "Hello" ) );
+		assertSame( three, three.insert( "" ) );
+	}
+
+	@Test
+	public void testSameOrderAsPatriciaTrie() {
+
+		Random random = new Random( 67 );
+		for ( int round = 0; round < 30; round++ ) {
+			PatriciaTrie patricia = new PatriciaTrie();
+			PersistentPatriciaTrie persistent = PersistentPatriciaTrie.empty();
+			List<PersistentPatriciaTrie> versions = new ArrayList<PersistentPatriciaTrie>();
+			List<List<String>> contents = new ArrayList<List<String>>();
+			for ( int i = 0; i < 300; i++ ) {
+				// control chars too, keys PatriciaTrie puts on the empty left pointer of the first head
+				String key = round % 2 == 0 ? PatriciaTrieTest.randomKey( random )
+						: String.valueOf( (char) ( 1 + random.nextInt( 15 ) ) ) + random.nextInt( 100 );
+				assertEquals( key, patricia.insert( key, null ), persistent.insert( key ) != persistent );
+				persistent = persistent.insert( key );
+				if ( i % 50 == 0 ) {
+					versions.add( persistent );
+					contents.add( toList( patricia.range( null, null ) ) );
+				}
+			}
+
+			assertEquals( patricia.size(), persistent.size() );
+			assertEquals( toList( patricia.range( null, null ) ), toList( persistent ) );
+			for ( int i = 0; i < versions.size(); i++ ) {
+				assertEquals( contents.get( i ), toList( versions.get( i ) ) );
+			}
+
+			String prefix = PatriciaTrieTest.randomKey( random ).substring( 0, 1 );
+			assertEquals( patricia.searchPrefix( prefix ), persistent.searchPrefix( prefix ) );
+		}
+	}
+
+	@Test
+	public void testReadersSeeWholeBatches() throws Exception {
+
+		final VersionedPatriciaTrie versions = new VersionedPatriciaTrie();
+		final AtomicBoolean writing = new AtomicBoolean( true );
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		List<Thread> threads = new ArrayList<Thread>();
+
+		for ( int w = 0; w < 2; w++ ) {
+			final int writer = w;
+			threads.add( new Thread( () -> {
+				for ( int batch = 0; batch < 200; batch++ ) {
+					List<String> keys = new ArrayList<String>();
+					for ( int i = 0; i < 10; i++ ) {
+						keys.add( "w" + writer + "b" + batch + "-" + i );
+					}
+					versions.insertAll( keys );
+				}
+			} ) );
+		}
+
+		for ( int r = 0; r < 2; r++ ) {
+			threads.add( new Thread( () -> {
+				try {
+					while ( writing.get() ) {
+						PersistentPatriciaTrie version = versions.current();
+						Map<String, Integer> batches = new HashMap<String, Integer>();
+						for ( String key : version ) {
+							batches.merge( key.substring( 0, key.indexOf( '-' ) ), 1, Integer::sum );
+						}
+						for ( Map.Entry<String, Integer> batch : batches.entrySet() ) {
+							assertEquals( batch.getKey(), 10, batch.getValue().intValue() );
+						}
+						assertEquals( batches.size() * 10, version.size() );
+					}
+				}
+				catch ( Throwable e ) {
+					failure.compareAndSet( null, e );
+				}
+			} ) );
+		}
+
+		for ( Thread t : threads ) {
+			t.start();
+		}
+		threads.get( 0 ).join();
+		threads.get( 1 ).join();
+		writing.set( false );
+		for ( Thread t : threads ) {
+			t.join();
+		}
+
+		if ( failure.get() != null ) {
+			throw new AssertionError( failure.get() );
+		}
+		assertEquals( 4000, versions.current().size() );
+	}
+
+	@Test
+	public void testPublish() {
+
+		VersionedPatriciaTrie versions = new VersionedPatriciaTrie();
+		PersistentPatriciaTrie first = versions.current();
+		assertTrue( versions.publish( first, first.insert( "A" ) ) );
+		assertFalse( versions.publish( first, first.insert( "B" ) ) );
+		assertEquals( Arrays.asList( "A" ), toList( versions.current() ) );
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSearchPrefixEmptyPrefix() {
+		PersistentPatriciaTrie.empty().searchPrefix( "" );
+	}
+}
@@ -0,0 +1,162 @@
+package patricia.trie;
+
+import static org.junit.Assert.*;
+import static patricia.trie.PatriciaTrieTest.toList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class RangeCursorTest {
+
+	private PatriciaTrie patricia;
+
+	@Before
+	public void setUp() throws Exception {
+		patricia = new PatriciaTrie();
+	}
+
+	@Test
+	public void testNeighbours() {
+
+		insertAll( "B", "D", "DA", "F" );
+
+		assertEquals( "B", patricia.ceiling( "A" ) );
+		assertEquals( "D", patricia.ceiling( "D" ) );
+		assertEquals( "DA", patricia.ceiling( "D0" ) );
+		assertNull( patricia.ceiling( "G" ) );
+		assertEquals( "DA", patricia.floor( "E" ) );
+		assertEquals( "D", patricia.floor( "D" ) );
+		assertNull( patricia.floor( "A" ) );
+		assertEquals( "DA", patricia.next( "D" ) );
+		assertNull( patricia.next( "F" ) );
+		assertEquals( "B", patricia.previous( "D" ) );
+		assertNull( patricia.previous( "B" ) );
+		assertNull( new PatriciaTrie().ceiling( "A" ) );
+	}
+
+	@Test
+	public void testRange() {
+
+		insertAll( "B", "D", "DA", "F", "H" );
+
+		assertEquals( Arrays.asList( "D", "DA", "F" ), toList( patricia.range( "C", "H" ) ) );
+		assertEquals( Arrays.asList( "DA", "F", "H" ), toList( patricia.range( "D", false, "H", true ) ) );
+		assertEquals( Arrays.asList( "B", "D", "DA" ), toList( patricia.headSet( "F", false ) ) );
+		assertEquals( Arrays.asList( "F", "H" ), toList( patricia.tailSet( "F", true ) ) );
+		assertEquals( Arrays.asList( "B", "D", "DA", "F", "H" ), toList( patricia.range( null, null ) ) );
+		assertTrue( toList( patricia.range( "G", "E" ) ).isEmpty() );
+		assertFalse( new PatriciaTrie().range( null, null ).hasNext() );
+	}
+
+	@Test
+	public void testKeysDifferingBeforeHeadBitIndex() {
+
+		// all of the keys start with '/', so the head bit index is past the first byte
+		insertAll( "/", "/a", "/b" );
+		TreeSet<String> keys = new TreeSet<String>( Arrays.asList( "/", "/a", "/b" ) );
+
+		for ( String key : Arrays.asList( "A", " ", "\u0001", "/\u0001", "/c" ) ) {
+			assertEquals( key, keys.ceiling( key ), patricia.ceiling( key ) );
+			assertEquals( key, keys.floor( key ), patricia.floor( key ) );
+			assertEquals( key, keys.higher( key ), patricia.next( key ) );
+			assertEquals( key, keys.lower( key ), patricia.previous( key ) );
+			assertEquals( key, new ArrayList<String>( keys.tailSet( key, true ) ), toList( patricia.range( key,
+					null ) ) );
+			assertEquals( key, new ArrayList<String>( keys.headSet( key, false ) ), toList( patricia.headSet( key,
+					false ) ) );
+		}
+		assertEquals( Arrays.asList( "/", "/a", "/b" ), toList( patricia.range( " ", "A" ) ) );
+	}
+
+	@Test
+	public void testRangeRandomKeys() {
+
+		Random random = new Random( 59 );
+		for ( int round = 0; round < 30; round++ ) {
+			patricia.clear();
+			TreeSet<String> keys = new TreeSet<String>();
+			for ( int i = 0; i < 300; i++ ) {
+				String key = PatriciaTrieTest.randomKey( random );
+				patricia.insert( key );
+				keys.add( key );
+			}
+
+			for ( int i = 0; i < 50; i++ ) {
+				String from = PatriciaTrieTest.randomKey( random );
+				String to = PatriciaTrieTest.randomKey( random );
+				boolean fromInclusive = random.nextBoolean();
+				boolean toInclusive = random.nextBoolean();
+				if ( from.compareTo( to ) > 0 ) {
+					String swap = from;
+					from = to;
+					to = swap;
+				}
+
+				assertEquals( from + " " + to, new ArrayList<String>( keys.subSet( from, fromInclusive, to, toInclusive ) ),
+						toList( patricia.range( from, fromInclusive, to, toInclusive ) ) );
+				assertEquals( keys.ceiling( from ), patricia.ceiling( from ) );
+				assertEquals( keys.floor( from ), patricia.floor( from ) );
+				assertEquals( keys.higher( from ), patricia.next( from ) );
+				assertEquals( keys.lower( from ), patricia.previous( from ) );
+			}
+		}
+	}
+
+	@Test
+	public void testPagesFromToken() {
+
+		Random random = new Random( 61 );
+		TreeSet<String> keys = new TreeSet<String>();
+		for ( int i = 0; i < 1000; i++ ) {
+			String key = PatriciaTrieTest.randomKey( random );
+			patricia.insert( key );
+			keys.add( key );
+		}
+
+		List<String> pages = new ArrayList<String>();
+		RangeCursor cursor = patricia.tailSet( "5", true );
+		RangeCursor.Token token = cursor.token();
+		assertEquals( keys.ceiling( "5" ), token.getKey() );
+		while ( token.getKey() != null ) {
+			cursor = patricia.resume( token );
+			List<String> page = cursor.next( 25 );
+			assertTrue( page.size() == 25 || !cursor.hasNext() );
+			pages.addAll( page );
+			token = cursor.token();
+
+			// keys inserted between pages don't break the next one
+			patricia.insert( PatriciaTrieTest.randomKey( random ) );
+		}
+
+		List<String> expected = new ArrayList<String>( keys.tailSet( "5", true ) );
+		for ( int i = 1; i < pages.size(); i++ ) {
+			assertTrue( pages.get( i - 1 ).compareTo( pages.get( i ) ) < 0 );
+		}
+		assertTrue( pages.containsAll( expected ) );
+		assertTrue( patricia.tailSet( "5", true ).next( 0 ).isEmpty() );
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testResumeTokenOfAnotherTrie() {
+
+		insertAll( "A" );
+		new PatriciaTrie().resume( patricia.range( null, null ).token() );
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCeilingEmptyKey() {
+		patricia.ceiling( "" );
+	}
+
+	private void insertAll(String... keys) {
+		for ( String key : keys ) {
+			patricia.insert( key, null );
+		}
+	}
+}
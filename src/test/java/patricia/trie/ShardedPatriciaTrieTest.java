@@ -0,0 +1,131 @@
+package patricia.trie;
+
+import static org.junit.Assert.*;
+import static patricia.trie.PatriciaTrieTest.toList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class ShardedPatriciaTrieTest {
+
+	@Test
+	public void testInsertAndSearch() {
+
+		ShardedPatriciaTrie trie = new ShardedPatriciaTrie( 4, 3 );
+		assertTrue( trie.isEmpty() );
+		assertTrue( trie.insert( "Hello", null ) );
+		assertTrue( trie.insert( "Help", null ) );
+		assertTrue( trie.insert( "hello", null ) );
+		assertFalse( trie.insert( "Hello", null ) );
+		assertFalse( trie.insert( "", null ) );
+		assertFalse( trie.insert( null, null ) );
+
+		assertEquals( 3, trie.size() );
+		assertTrue( trie.search( "Help" ) );
+		assertFalse( trie.search( "Hel" ) );
+		assertFalse( trie.search( null ) );
+		assertEquals( Arrays.asList( "Hello", "Help" ), trie.searchPrefix( "Hel" ) );
+		assertEquals( Arrays.asList( "Hello", "Help", "hello" ), toList( trie ) );
+
+		trie.clear();
+		assertTrue( trie.isEmpty() );
+		assertEquals( 0, trie.size() );
+	}
+
+	@Test
+	public void testSameAsPatriciaTrie() {
+
+		Random random = new Random( 23 );
+		for ( int fromBit : new int[] { 0, 3, 13 } ) {
+			for ( int shardBits : new int[] { 1, 3, 5 } ) {
+				PatriciaTrie patricia = new PatriciaTrie();
+				ShardedPatriciaTrie sharded = new ShardedPatriciaTrie( shardBits, fromBit );
+				for ( int i = 0; i < 2000; i++ ) {
+					String key = PatriciaTrieTest.randomKey( random );
+					assertEquals( key, patricia.insert( key, null ), sharded.insert( key, null ) );
+				}
+
+				assertEquals( patricia.size(), sharded.size() );
+				assertEquals( toList( patricia.range( null, null ) ), toList( sharded ) );
+				for ( int i = 0; i < 50; i++ ) {
+					String key = PatriciaTrieTest.randomKey( random );
+					assertEquals( key, patricia.search( key ), sharded.search( key ) );
+					String prefix = key.substring( 0, 1 + random.nextInt( Math.min( 3, key.length() ) ) );
+					assertEquals( prefix, patricia.searchPrefix( prefix ), sharded.searchPrefix( prefix ) );
+					assertEquals( prefix, patricia.countPrefix( prefix ), sharded.countPrefix( prefix ) );
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testPrefixReachesOnlyItsShards() {
+
+		ShardedPatriciaTrie trie = new ShardedPatriciaTrie( 4, 3 );
+		// 'a' is 01100001, bits 3 to 6 are 0000
+		assertArrayEquals( new int[] { 0 }, trie.reachableShards( KeyBits.encode( "a" ) ) );
+		assertEquals( 0, trie.shardOf( KeyBits.encode( "abc" ) ) );
+		// 'r' is 01110010, bits 3 to 6 are 1001
+		assertEquals( 9, trie.shardOf( KeyBits.encode( "r" ) ) );
+
+		ShardedPatriciaTrie wide = new ShardedPatriciaTrie( 4, 6 );
+		// bits 6 and 7 of 'a', 01, the next 2 bits are not covered by the prefix
+		assertArrayEquals( new int[] { 4, 5, 6, 7 }, wide.reachableShards( KeyBits.encode( "a" ) ) );
+	}
+
+	@Test
+	public void testConcurrentInserts() throws Exception {
+
+		final ShardedPatriciaTrie trie = new ShardedPatriciaTrie( 3, 3 );
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for ( int t = 0; t < 4; t++ ) {
+			final int writer = t;
+			threads.add( new Thread( () -> {
+				try {
+					for ( int i = 0; i < 5000; i++ ) {
+						String key = Integer.toString( i * 4 + writer, 36 );
+						assertTrue( key, trie.insert( key, null ) );
+						assertTrue( key, trie.search( key ) );
+					}
+				}
+				catch ( Throwable e ) {
+					failure.compareAndSet( null, e );
+				}
+			} ) );
+		}
+
+		for ( Thread t : threads ) {
+			t.start();
+		}
+		for ( Thread t : threads ) {
+			t.join();
+		}
+
+		if ( failure.get() != null ) {
+			throw new AssertionError( failure.get() );
+		}
+
+		assertEquals( 20000, trie.size() );
+		List<String> keys = toList( trie );
+		assertEquals( 20000, keys.size() );
+		for ( int i = 1; i < keys.size(); i++ ) {
+			assertTrue( KeyBits.compare( KeyBits.encode( keys.get( i - 1 ) ), KeyBits.encode( keys.get( i ) ) ) < 0 );
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidShardBits() {
+		new ShardedPatriciaTrie( ShardedPatriciaTrie.MAX_SHARD_BITS + 1 );
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSearchPrefixEmptyPrefix() {
+		new ShardedPatriciaTrie( 2 ).searchPrefix( "" );
+	}
+}
@@ -0,0 +1,208 @@
+package patricia.trie;
+
+import static org.junit.Assert.*;
+import static patricia.trie.PatriciaTrieTest.toList;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SharedPrefixPatriciaTrieTest {
+
+	@Test
+	public void testSearch() {
+
+		SharedPrefixPatriciaTrie trie = new SharedPrefixPatriciaTrie();
+		for ( String key : Arrays.asList( "Hello", "Help", "Hell", "A", "中文", "Helping" ) ) {
+			assertTrue( trie.insert( key, null ) );
+		}
+		assertFalse( trie.insert( "Help", null ) );
+
+		assertEquals( 6, trie.size() );
+		assertTrue( trie.search( "Hell" ) );
+		assertTrue( trie.search( "中文" ) );
+		assertFalse( trie.search( "Hel" ) );
+		assertFalse( trie.search( "Helpi" ) );
+		assertFalse( trie.search( "B" ) );
+		assertEquals( Arrays.asList( "Hell", "Hello", "Help", "Helping" ), sorted( trie.searchPrefix( "Hel" ) ) );
+		assertEquals( 2, trie.countPrefix( "Hell" ) );
+		assertEquals( Arrays.asList( "A", "Hell", "Hello", "Help", "Helping", "中文" ), toList( trie.range( null, null ) ) );
+	}
+
+	@Test
+	public void testSameAsPatriciaTrie() {
+
+		Random random = new Random( 37 );
+		for ( int round = 0; round < 10; round++ ) {
+			PatriciaTrie trie = new PatriciaTrie();
+			SharedPrefixPatriciaTrie shared = new SharedPrefixPatriciaTrie();
+			List<String> keys = new ArrayList<String>();
+			for ( int i = 0; i < 3000; i++ ) {
+				// keys with a shared prefix too, and control chars sorting before it
+				String key = round % 2 == 0 ? PatriciaTrieTest.randomKey( random )
+						: "http://example.com/" + (char) ( random.nextInt( 3 ) ) + random.nextInt( 1000 );
+				boolean inserted = trie.insert( key, null );
+				assertEquals( key, inserted, shared.insert( key, null ) );
+				if ( inserted ) {
+					keys.add( key );
+				}
+			}
+
+			assertEquals( trie.size(), shared.size() );
+			assertEquals( toList( trie.range( null, null ) ), toList( shared.range( null, null ) ) );
+			for ( String key : keys ) {
+				assertTrue( key, shared.search( key ) );
+				String prefix = key.substring( 0, 1 + random.nextInt( key.length() ) );
+				assertEquals( prefix, sorted( trie.searchPrefix( prefix ) ), sorted( shared.searchPrefix( prefix ) ) );
+				assertEquals( prefix, trie.countPrefix( prefix ), shared.countPrefix( prefix ) );
+			}
+			for ( int i = 0; i < 1000; i++ ) {
+				String key = PatriciaTrieTest.randomKey( random );
+				assertEquals( key, trie.search( key ), shared.search( key ) );
+			}
+		}
+	}
+
+	@Test
+	public void testKeyReadingOverrides() {
+
+		Random random = new Random( 41 );
+		PatriciaTrie trie = new PatriciaTrie();
+		SharedPrefixPatriciaTrie shared = new SharedPrefixPatriciaTrie();
+		List<String> keys = new ArrayList<String>();
+		for ( int i = 0; i < 2000; i++ ) {
+			// paths, so that keys are prefixes of one another
+			String key = randomPath( random );
+			trie.insert( key, null );
+			if ( shared.insert( key, null ) ) {
+				keys.add( key );
+			}
+		}
+
+		// the hooks of each node against the same reads of its whole key
+		TrieCursor cursor = new TrieCursor();
+		for ( boolean on = cursor.first( shared.getHead() ); on; on = cursor.next() ) {
+			Node node = cursor.getNode();
+			byte[] keyBytes = node.getKeyBytes();
+			for ( int i = 0; i < 5; i++ ) {
+				byte[] other = KeyBits.encode( random.nextBoolean() ? randomPath( random ) : keys.get( random
+						.nextInt( keys.size() ) ) );
+				byte[] prefix = Arrays.copyOf( other, 1 + random.nextInt( other.length ) );
+				assertEquals( KeyBits.startsWith( keyBytes, prefix ), node.startsWith( prefix ) );
+				assertEquals( Integer.signum( KeyBits.compare( keyBytes, other ) ), Integer.signum( node
+						.compareKey( other ) ) );
+				assertEquals( Arrays.equals( keyBytes, other ), node.keyEquals( other, 0, other.length ) );
+				assertEquals( Arrays.equals( keyBytes, other ), node.keyEquals( ByteBuffer.wrap( other ), 0,
+						other.length ) );
+			}
+			assertTrue( node.keyEquals( keyBytes, 0, keyBytes.length ) );
+			assertTrue( node.startsWith( keyBytes ) );
+			assertEquals( 0, node.compareKey( keyBytes ) );
+		}
+
+		// the searches reading keys through them
+		List<String> searched = new ArrayList<String>();
+		for ( int i = 0; i < 500; i++ ) {
+			String key = random.nextBoolean() ? randomPath( random ) : keys.get( random.nextInt( keys.size() ) );
+			searched.add( key );
+			byte[] keyBytes = KeyBits.encode( key );
+			ByteBuffer direct = ByteBuffer.allocateDirect( keyBytes.length );
+			direct.put( keyBytes );
+			assertEquals( key, trie.search( direct, 0, keyBytes.length ), shared.search( direct, 0,
+					keyBytes.length ) );
+			assertEquals( key, trie.allPrefixesOf( key ), shared.allPrefixesOf( key ) );
+			assertEquals( key, trie.longestPrefixOf( key ), shared.longestPrefixOf( key ) );
+
+			String prefix = key.substring( 0, 1 + random.nextInt( key.length() ) );
+			assertEquals( prefix, toList( trie.prefixIterator( prefix ) ), toList( shared.prefixIterator(
+					prefix ) ) );
+			assertEquals( prefix, trie.countPrefix( prefix ), shared.countPrefix( prefix ) );
+			assertEquals( key, toList( trie.range( prefix, key ) ), toList( shared.range( prefix, key ) ) );
+		}
+		assertEquals( trie.searchAll( searched ), shared.searchAll( searched ) );
+	}
+
+	@Test
+	public void testStoresSharedPrefixOnce() {
+
+		SharedPrefixPatriciaTrie trie = new SharedPrefixPatriciaTrie();
+		long keyBytes = 0;
+		for ( int i = 0; i < 10000; i++ ) {
+			String key = String.format( "http://example.com/catalog/items/%08d", i );
+			trie.insert( key, null );
+			keyBytes += key.length();
+		}
+
+		assertTrue( trie.getStoredKeyBytes() + " of " + keyBytes, trie.getStoredKeyBytes() * 4 < keyBytes );
+		assertTrue( trie.search( "http://example.com/catalog/items/00001234" ) );
+		assertEquals( 10, trie.countPrefix( "http://example.com/catalog/items/0000123" ) );
+	}
+
+	@Test
+	public void testNewHeadAndShortKeys() {
+
+		PatriciaTrie expected = new PatriciaTrie( "b" );
+		SharedPrefixPatriciaTrie trie = new SharedPrefixPatriciaTrie( "b" );
+		// keys sorting before the head key, and keys shorter than the byte of the bit index of their parent
+		for ( String key : Arrays.asList( "a\u0000b", "a", "a\u0000c", "ab", "\u0001" ) ) {
+			expected.insert( key, null );
+			trie.insert( key, null );
+		}
+
+		for ( String key : Arrays.asList( "b", "a\u0000b", "a", "a\u0000c", "ab", "\u0001" ) ) {
+			assertTrue( key, trie.search( key ) );
+		}
+		assertFalse( trie.search( "a\u0000" ) );
+		assertEquals( sorted( expected.searchPrefix( "a\u0000" ) ), sorted( trie.searchPrefix( "a\u0000" ) ) );
+		assertEquals( sorted( expected.searchPrefix( "a" ) ), sorted( trie.searchPrefix( "a" ) ) );
+		assertEquals( Arrays.asList( "\u0001", "a", "a\u0000b", "a\u0000c", "ab", "b" ), toList( trie.range( null, null ) ) );
+	}
+
+	@Test
+	public void testClear() {
+
+		SharedPrefixPatriciaTrie trie = new SharedPrefixPatriciaTrie( "Hello" );
+		trie.insert( "Help", null );
+		trie.clear();
+
+		assertTrue( trie.isEmpty() );
+		assertEquals( 0, trie.getStoredKeyBytes() );
+		assertFalse( trie.search( "Hello" ) );
+		trie.insert( "Hex", null );
+		assertEquals( Arrays.asList( "Hex" ), toList( trie.range( null, null ) ) );
+	}
+
+	private static String randomPath(Random random) {
+
+		StringBuilder path = new StringBuilder( "/" );
+		int depth = 1 + random.nextInt( 4 );
+		for ( int i = 0; i < depth; i++ ) {
+			path.append( (char) ( 'a' + random.nextInt( 3 ) ) ).append( random.nextInt( 4 ) );
+			if ( i < depth - 1 ) {
+				path.append( '/' );
+			}
+		}
+
+		return path.toString();
+	}
+
+	private static List<String> sorted(List<String> keys) {
+
+		List<String> list = new ArrayList<String>( keys );
+		Collections.sort( list, new Comparator<String>() {
+
+			@Override
+			public int compare(String a, String b) {
+				return KeyBits.compare( KeyBits.encode( a ), KeyBits.encode( b ) );
+			}
+		} );
+
+		return list;
+	}
+}
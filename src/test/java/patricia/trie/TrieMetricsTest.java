@@ -0,0 +1,174 @@
+package patricia.trie;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TrieMetricsTest {
+
+	private PatriciaTrie patricia;
+
+	@Before
+	public void setUp() throws Exception {
+		patricia = new PatriciaTrie();
+	}
+
+	@Test
+	public void testShapeKeptByInserts() {
+
+		Random random = new Random( 41 );
+		for ( int round = 0; round < 50; round++ ) {
+			patricia.clear();
+			TrieMetrics metrics = patricia.enableMetrics();
+			for ( int i = 0; i < 200; i++ ) {
+				// control chars too, to put keys on the empty left pointer of the first head
+				patricia.insert( round % 2 == 0 ? PatriciaTrieTest.randomKey( random )
+						: String.valueOf( (char) ( 1 + random.nextInt( 15 ) ) ) + random.nextInt( 10 ), null );
+			}
+
+			checkShape( metrics );
+
+			patricia.disableMetrics();
+			TrieMetrics rebuilt = patricia.enableMetrics();
+			assertNotSame( metrics, rebuilt );
+			assertEquals( metrics.getMaxDepth(), rebuilt.getMaxDepth() );
+			assertEquals( metrics.getAverageDepth(), rebuilt.getAverageDepth(), 1e-9 );
+			assertArrayEquals( metrics.getBitIndexHistogram(), rebuilt.getBitIndexHistogram() );
+			patricia.disableMetrics();
+		}
+	}
+
+	@Test
+	public void testEnableAfterBulkLoad() {
+
+		patricia = PatriciaTrie.bulkLoad( Arrays.asList( "A", "AB", "ABC", "B", "S" ).iterator() );
+		checkShape( patricia.enableMetrics() );
+	}
+
+	@Test
+	public void testCounters() {
+
+		insertAll( "Hello", "Help", "A" );
+		TrieMetrics metrics = patricia.enableMetrics();
+		assertSame( metrics, patricia.getMetrics() );
+
+		patricia.insert( "Hex", null );
+		patricia.insert( "Hex", null );
+		assertEquals( 2, metrics.getInsertCount() );
+		assertEquals( 4, metrics.getKeyCount() );
+		assertEquals( metrics.getInsertBitTests() + 2, metrics.getInsertNodesVisited() );
+
+		patricia.search( "Hello" );
+		patricia.search( "Hell" );
+		patricia.search( "Help".getBytes(), 0, 4 );
+		assertEquals( 3, metrics.getSearchCount() );
+		assertTrue( metrics.getSearchBitTests() >= 3 );
+		assertEquals( metrics.getSearchBitTests() + 3, metrics.getSearchNodesVisited() );
+
+		assertEquals( 3, patricia.searchPrefix( "He" ).size() );
+		assertTrue( patricia.searchPrefix( "z" ).isEmpty() );
+		assertEquals( 2, metrics.getSearchPrefixCount() );
+		assertEquals( 1, metrics.getSearchPrefixMissCount() );
+		assertEquals( metrics.getSearchPrefixBitTests() + 3, metrics.getSearchPrefixNodesVisited() );
+
+		metrics.resetCounters();
+		assertEquals( 0, metrics.getSearchCount() );
+		assertEquals( 4, metrics.getKeyCount() );
+
+		// the same bits are counted whichever way the key is given
+		patricia.search( "Hello" );
+		long bitTests = metrics.getSearchBitTests();
+		assertTrue( bitTests > 0 );
+		patricia.search( "Hello".getBytes(), 0, 5 );
+		ByteBuffer direct = ByteBuffer.allocateDirect( 5 );
+		direct.put( "Hello".getBytes() );
+		patricia.search( direct, 0, 5 );
+		assertEquals( 3 * bitTests, metrics.getSearchBitTests() );
+		metrics.resetCounters();
+
+		patricia.disableMetrics();
+		assertNull( patricia.getMetrics() );
+		patricia.search( "Hello" );
+		assertEquals( 0, metrics.getSearchCount() );
+	}
+
+	@Test
+	public void testClear() {
+
+		TrieMetrics metrics = patricia.enableMetrics();
+		insertAll( "A", "B", "C" );
+		patricia.clear();
+		assertEquals( 0, metrics.getKeyCount() );
+		assertEquals( 0, metrics.getMaxDepth() );
+		assertEquals( 0, metrics.getAverageDepth(), 0 );
+
+		insertAll( "D" );
+		checkShape( metrics );
+	}
+
+	@Test
+	public void testRegister() throws Exception {
+
+		insertAll( "A", "B", "C" );
+		TrieMetrics metrics = patricia.enableMetrics();
+		ObjectName name = metrics.register( "testRegister" );
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			assertEquals( 3, server.getAttribute( name, "KeyCount" ) );
+			assertEquals( metrics.getMaxDepth(), server.getAttribute( name, "MaxDepth" ) );
+		}
+		finally {
+			metrics.unregister();
+		}
+
+		assertFalse( ManagementFactory.getPlatformMBeanServer().isRegistered( name ) );
+	}
+
+	/**
+	 * Checks the shape against the bits tested by a search of each key.
+	 */
+	private void checkShape(TrieMetrics metrics) {
+
+		long depthSum = 0;
+		int maxDepth = 0;
+		long[] histogram = new long[TrieMetrics.HISTOGRAM_SIZE];
+		TrieCursor cursor = new TrieCursor();
+		for ( boolean found = cursor.first( patricia.getHead() ); found; found = cursor.next() ) {
+			Node node = cursor.getNode();
+			histogram[Math.min( node.getBitIndex() >>> 3, histogram.length - 1 )]++;
+
+			int depth = 1;
+			Node from = patricia.getHead();
+			Node next = TrieCursor.getChild( from, KeyBits.bitAt( node.getKeyBytes(), from.getBitIndex() ) );
+			while ( TrieCursor.isDownward( from, next ) ) {
+				depth++;
+				from = next;
+				next = TrieCursor.getChild( from, KeyBits.bitAt( node.getKeyBytes(), from.getBitIndex() ) );
+			}
+			assertSame( node, next );
+
+			depthSum += depth;
+			maxDepth = Math.max( maxDepth, depth );
+		}
+
+		assertEquals( patricia.size(), metrics.getKeyCount() );
+		assertEquals( maxDepth, metrics.getMaxDepth() );
+		assertEquals( (double) depthSum / patricia.size(), metrics.getAverageDepth(), 1e-9 );
+		assertArrayEquals( histogram, metrics.getBitIndexHistogram() );
+	}
+
+	private void insertAll(String... keys) {
+		for ( String key : keys ) {
+			patricia.insert( key, null );
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package patricia.trie;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class WeightedPatriciaTrieTest {
+
+	private WeightedPatriciaTrie trie;
+
+	@Before
+	public void setUp() throws Exception {
+		trie = new WeightedPatriciaTrie();
+	}
+
+	@Test
+	public void testTopK() {
+
+		assertTrue( trie.insert( "hello", 5 ) );
+		assertTrue( trie.insert( "help", 9 ) );
+		assertTrue( trie.insert( "helium", 1 ) );
+		assertTrue( trie.insert( "hero", 7 ) );
+		assertTrue( trie.insert( "world", 100 ) );
+		trie.insert( "he", null );
+
+		assertEquals( Arrays.asList( "help", "hero", "hello" ), trie.topK( "he", 3 ) );
+		assertEquals( Arrays.asList( "help", "hello", "helium" ), trie.topK( "hel", 10 ) );
+		assertEquals( Arrays.asList( "world" ), trie.topK( "w", 3 ) );
+		assertTrue( trie.topK( "x", 3 ).isEmpty() );
+		assertTrue( trie.topK( "he", 0 ).isEmpty() );
+		assertEquals( 0, trie.getWeight( "he" ) );
+
+		// setting the weight again moves the key
+		assertFalse( trie.insert( "helium", 20 ) );
+		assertEquals( 20, trie.getWeight( "helium" ) );
+		assertEquals( Arrays.asList( "helium", "help" ), trie.topK( "he", 2 ) );
+		assertFalse( trie.insert( "help", -3 ) );
+		assertEquals( Arrays.asList( "helium", "hero", "hello", "he", "help" ), trie.topK( "he", 10 ) );
+		assertEquals( 0, trie.getWeight( "missing" ) );
+	}
+
+	@Test
+	public void testTopKRandomKeys() {
+
+		Random random = new Random( 53 );
+		for ( int round = 0; round < 30; round++ ) {
+			trie.clear();
+			Map<String, Long> weights = new HashMap<String, Long>();
+			for ( int i = 0; i < 500; i++ ) {
+				// control chars too, to put keys on the empty left pointer of the first head
+				String key = round % 2 == 0 ? PatriciaTrieTest.randomKey( random )
+						: String.valueOf( (char) ( 1 + random.nextInt( 15 ) ) ) + random.nextInt( 100 );
+				if ( random.nextInt( 4 ) == 0 ) {
+					trie.insert( key, null );
+					weights.putIfAbsent( key, 0L );
+				}
+				else {
+					long weight = random.nextInt( 2000 ) - 1000;
+					trie.insert( key, weight );
+					weights.put( key, weight );
+				}
+			}
+
+			checkMaxWeights( trie.getHead() );
+			for ( int i = 0; i < 50; i++ ) {
+				String prefix = PatriciaTrieTest.randomKey( random ).substring( 0, 1 );
+				int k = random.nextInt( 20 );
+				List<Long> expected = new ArrayList<Long>();
+				for ( Map.Entry<String, Long> entry : weights.entrySet() ) {
+					if ( entry.getKey().startsWith( prefix ) ) {
+						expected.add( entry.getValue() );
+					}
+				}
+				Collections.sort( expected, Collections.reverseOrder() );
+				expected = expected.subList( 0, Math.min( k, expected.size() ) );
+
+				List<Long> found = new ArrayList<Long>();
+				for ( String key : trie.topK( prefix, k ) ) {
+					assertTrue( key, key.startsWith( prefix ) );
+					found.add( trie.getWeight( key ) );
+				}
+				assertEquals( prefix, expected, found );
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTopKEmptyPrefix() {
+		trie.topK( "", 1 );
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTopKNegativeK() {
+		trie.topK( "a", -1 );
+	}
+
+	/**
+	 * Checks the highest weight of every downward node against the keys under it, returning the highest weight of
+	 * the subtree.
+	 */
+	private static long checkMaxWeights(Node node) {
+
+		long maxWeight = Math.max( maxWeightUnder( node, node.getLeft() ), maxWeightUnder( node, node.getRight() ) );
+		assertEquals( node.getKey(), maxWeight, ( (WeightedPatriciaTrie.WeightedNode) node ).getMaxWeight() );
+
+		return maxWeight;
+	}
+
+	private static long maxWeightUnder(Node node, Node next) {
+
+		if ( next == null ) {
+			return Long.MIN_VALUE;
+		}
+
+		return TrieCursor.isDownward( node, next ) ? checkMaxWeights( next )
+				: ( (WeightedPatriciaTrie.WeightedNode) next ).getWeight();
+	}
+}